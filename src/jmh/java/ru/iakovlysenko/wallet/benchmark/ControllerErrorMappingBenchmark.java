@@ -0,0 +1,143 @@
+package ru.iakovlysenko.wallet.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletBinaryProperties;
+import ru.iakovlysenko.wallet.controller.WalletControllerImpl;
+import ru.iakovlysenko.wallet.controller.WalletOperationPipeline;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryPageResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.dto.WalletPayoutRequest;
+import ru.iakovlysenko.wallet.dto.WalletPayoutResponse;
+import ru.iakovlysenko.wallet.dto.WalletTransferResponse;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.admission.OperationAdmission;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Цепочка {@code onErrorResume} в {@link WalletControllerImpl#performOperation}: успешный ответ
+ * и каждая ветка отображения ошибки в статус. Исключение создается на каждый вызов, как в сервисе,
+ * поэтому в результат входит и заполнение стека.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerErrorMappingBenchmark {
+
+    @Param({"success", "notFound", "insufficientFunds", "internalError"})
+    public String outcome;
+
+    private WalletControllerImpl walletController;
+    private WalletOperationRequest request;
+
+    @Setup
+    public void setUp() {
+        UUID walletId = UUID.randomUUID();
+        request = new WalletOperationRequest(walletId, OperationType.WITHDRAW, 1000L);
+        WalletOperationResponse response = new WalletOperationResponse(walletId, Money.ofUnits(1000),
+                "Операция WITHDRAW выполнена успешно");
+        WalletService walletService = new OutcomeWalletService(outcome, response);
+        walletController = new WalletControllerImpl(walletService, new WalletOperationPipeline(walletService,
+                Validation.buildDefaultValidatorFactory().getValidator(), new WalletBinaryProperties(),
+                new OperationAdmission(null, null, new SimpleMeterRegistry())));
+    }
+
+    @Benchmark
+    public ResponseEntity<WalletOperationResponse> performOperation() {
+        return walletController.performOperation(request, null).block();
+    }
+
+    /**
+     * Сервис, всегда возвращающий заданный исход операции; остальные методы ничего не находят.
+     */
+    private record OutcomeWalletService(String outcome, WalletOperationResponse response) implements WalletService {
+
+        @Override
+        public Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount) {
+            return switch (outcome) {
+                case "success" -> Mono.just(response);
+                case "notFound" -> Mono.error(new WalletNotFoundException("Кошелек не найден: " + walletId));
+                case "insufficientFunds" -> Mono.error(
+                        new InsufficientFundsException(Money.ZERO, Money.ofUnits(amount)));
+                case "internalError" -> Mono.error(new IllegalStateException("Соединение закрыто"));
+                default -> throw new IllegalArgumentException("Неизвестный исход: " + outcome);
+            };
+        }
+
+        @Override
+        public Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount,
+                                                              String idempotencyKey) {
+            return performOperation(walletId, operationType, amount);
+        }
+
+        @Override
+        public Mono<WalletBalanceResponse> getBalance(UUID walletId) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<WalletBalanceResponse> getConsistentBalance(UUID walletId) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Flux<WalletBatchItemResponse> performBatch(List<WalletOperationRequest> requests) {
+            return Flux.empty();
+        }
+
+        @Override
+        public Mono<WalletTransferResponse> transfer(UUID fromWalletId, UUID toWalletId, Long amount) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<WalletPayoutResponse> payout(WalletPayoutRequest request) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<WalletHistoryPageResponse> getOperations(UUID walletId, String cursor, Integer limit) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Flux<WalletHistoryItemResponse> streamOperations(UUID walletId, String cursor) {
+            return Flux.empty();
+        }
+
+        @Override
+        public Flux<WalletBalanceResponse> streamBalance(UUID walletId) {
+            return Flux.empty();
+        }
+
+    }
+
+}
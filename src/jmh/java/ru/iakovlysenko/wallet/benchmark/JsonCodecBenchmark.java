@@ -0,0 +1,91 @@
+package ru.iakovlysenko.wallet.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование и декодирование ДТО операции тем же {@link ObjectMapper}, что собирает Spring Boot.
+ * Reader и writer получаются заранее, как их кеширует {@code Jackson2JsonEncoder}/{@code Jackson2JsonDecoder}.
+ * {@code format=cbor} - тот же построитель с фабрикой CBOR, как у двоичного протокола API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"json", "cbor"})
+    private String format;
+
+    private ObjectWriter requestWriter;
+    private ObjectReader requestReader;
+    private ObjectWriter responseWriter;
+    private ObjectReader responseReader;
+
+    private WalletOperationRequest request;
+    private WalletOperationResponse response;
+    private byte[] requestJson;
+    private byte[] responseJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        ObjectMapper objectMapper = "cbor".equals(format) ? builder.factory(new CBORFactory()).build() : builder.build();
+        requestWriter = objectMapper.writerFor(WalletOperationRequest.class);
+        requestReader = objectMapper.readerFor(WalletOperationRequest.class);
+        responseWriter = objectMapper.writerFor(WalletOperationResponse.class);
+        responseReader = objectMapper.readerFor(WalletOperationResponse.class);
+
+        UUID walletId = UUID.randomUUID();
+        request = new WalletOperationRequest(walletId, OperationType.DEPOSIT, 1000L);
+        response = new WalletOperationResponse(walletId, Money.ofUnits(1_000_000),
+                OperationType.DEPOSIT.successMessage());
+        requestJson = requestWriter.writeValueAsBytes(request);
+        responseJson = responseWriter.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() throws IOException {
+        return requestWriter.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public WalletOperationRequest decodeRequest() throws IOException {
+        return requestReader.readValue(requestJson);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() throws IOException {
+        return responseWriter.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public WalletOperationResponse decodeResponse() throws IOException {
+        return responseReader.readValue(responseJson);
+    }
+
+}
@@ -0,0 +1,65 @@
+package ru.iakovlysenko.wallet.benchmark;
+
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link WalletRepository} поверх {@link ConcurrentHashMap} без обращения к БД.
+ * Реализованы только методы, которые вызывают сервис и движки; остальные бросают {@link UnsupportedOperationException}.
+ * Прокси добавляет к каждому вызову массив аргументов, это учитывается в базовой линии наравне с кодом сервиса.
+ */
+final class WalletRepositoryStub {
+
+    private WalletRepositoryStub() {
+    }
+
+    static WalletRepository create(Map<UUID, Money> balances) {
+        return (WalletRepository) Proxy.newProxyInstance(
+                WalletRepository.class.getClassLoader(),
+                new Class<?>[]{WalletRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> findById(balances, (UUID) args[0]);
+                    case "insertOrIgnore" -> {
+                        balances.putIfAbsent((UUID) args[0], (Money) args[1]);
+                        yield Mono.just(1);
+                    }
+                    case "updateBalance", "updateBalanceIfVersion" -> {
+                        balances.put((UUID) args[0], (Money) args[1]);
+                        yield Mono.just(1);
+                    }
+                    case "depositAtomically" -> Mono.just(
+                            balances.merge((UUID) args[0], (Money) args[1], Money::plus));
+                    case "withdrawAtomically" -> withdraw(balances, (UUID) args[0], (Money) args[1]);
+                    case "lockBalance" -> Mono.justOrEmpty(balances.get((UUID) args[0]));
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "WalletRepositoryStub";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Mono<Wallet> findById(Map<UUID, Money> balances, UUID walletId) {
+        Money balance = balances.get(walletId);
+        return balance == null ? Mono.empty() : Mono.just(new Wallet(walletId, balance));
+    }
+
+    private static Mono<Money> withdraw(Map<UUID, Money> balances, UUID walletId, Money amount) {
+        Money[] result = new Money[1];
+        balances.computeIfPresent(walletId, (id, balance) -> {
+            if (balance.isLessThan(amount)) {
+                return balance;
+            }
+            result[0] = balance.minus(amount);
+            return result[0];
+        });
+        return Mono.justOrEmpty(result[0]);
+    }
+
+}
@@ -0,0 +1,85 @@
+package ru.iakovlysenko.wallet.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.WalletServiceImpl;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Накладные расходы {@link WalletServiceImpl} без БД: репозиторий заменен на {@link WalletRepositoryStub},
+ * транзакции — на сквозные, сервис собирается {@link WalletServiceFixture}. Измеряется собственная стоимость
+ * сервиса и движка: реактивная цепочка, арифметика {@link Money}, публикация изменения в кеш и формирование ответа.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalletServiceBenchmark {
+
+    private static final int WALLETS = 1024;
+
+    @Param({"classic", "atomic"})
+    public String engine;
+
+    @Param({"true", "false"})
+    public boolean cacheEnabled;
+
+    private WalletService walletService;
+    private UUID[] walletIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Map<UUID, Money> balances = new ConcurrentHashMap<>();
+        walletIds = new UUID[WALLETS];
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds[i] = UUID.randomUUID();
+            balances.put(walletIds[i], Money.ofUnits(1_000_000));
+        }
+        walletService = WalletServiceFixture.builder(WalletRepositoryStub.create(balances))
+                .engine(engine)
+                .cacheEnabled(cacheEnabled)
+                .build();
+    }
+
+    private UUID nextWallet() {
+        next = (next + 1) & (WALLETS - 1);
+        return walletIds[next];
+    }
+
+    @Benchmark
+    public WalletOperationResponse deposit() {
+        return walletService.performOperation(nextWallet(), OperationType.DEPOSIT, 1L).block();
+    }
+
+    @Benchmark
+    public WalletOperationResponse withdraw() {
+        return walletService.performOperation(nextWallet(), OperationType.WITHDRAW, 1L).block();
+    }
+
+    @Benchmark
+    public WalletBalanceResponse getBalance() {
+        return walletService.getBalance(nextWallet()).block();
+    }
+
+}
@@ -0,0 +1,198 @@
+package ru.iakovlysenko.wallet.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransaction;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionCallback;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletBatchProperties;
+import ru.iakovlysenko.wallet.config.WalletCacheProperties;
+import ru.iakovlysenko.wallet.config.WalletEngineProperties;
+import ru.iakovlysenko.wallet.config.WalletHistoryProperties;
+import ru.iakovlysenko.wallet.config.WalletIdempotencyProperties;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.config.WalletMetricsProperties;
+import ru.iakovlysenko.wallet.config.WalletReplicaProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.config.WalletStreamProperties;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.ReplicaRepository;
+import ru.iakovlysenko.wallet.repository.ShardRepository;
+import ru.iakovlysenko.wallet.repository.WalletBatchRepository;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.repository.WalletTransferRepository;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.WalletServiceImpl;
+import ru.iakovlysenko.wallet.service.cache.BalanceCache;
+import ru.iakovlysenko.wallet.service.engine.AtomicWalletEngine;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangePublisher;
+import ru.iakovlysenko.wallet.service.engine.ReadModifyWriteWalletEngine;
+import ru.iakovlysenko.wallet.service.engine.WalletBatchExecutor;
+import ru.iakovlysenko.wallet.service.engine.WalletEngine;
+import ru.iakovlysenko.wallet.service.engine.WalletTransferExecutor;
+import ru.iakovlysenko.wallet.service.history.WalletHistoryReader;
+import ru.iakovlysenko.wallet.service.idempotency.IdempotencyStore;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRouter;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+import ru.iakovlysenko.wallet.service.stream.BalanceStream;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * Сборка {@link WalletServiceImpl} без БД для бенчмарков.
+ * Баланс хранится в переданном {@link WalletRepository}, транзакции сквозные, журнал, шардирование и реплика отключены.
+ * Компоненты, которые бенчмарк не вызывает (пакеты, переводы, история, подписки, ключи идемпотентности в БД),
+ * собираются поверх пустого {@link DatabaseClient}: запросы ничего не находят и ничего не меняют.
+ */
+final class WalletServiceFixture {
+
+    private final WalletRepository walletRepository;
+    private String engine = "classic";
+    private boolean cacheEnabled = true;
+
+    private WalletServiceFixture(WalletRepository walletRepository) {
+        this.walletRepository = walletRepository;
+    }
+
+    static WalletServiceFixture builder(WalletRepository walletRepository) {
+        return new WalletServiceFixture(walletRepository);
+    }
+
+    /**
+     * Движок операций: {@code classic} или {@code atomic}.
+     */
+    WalletServiceFixture engine(String engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    WalletServiceFixture cacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+        return this;
+    }
+
+    WalletService build() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DatabaseClient database = empty(DatabaseClient.class);
+        TransactionalOperator transactionalOperator = new PassThroughTransactionalOperator();
+
+        WalletCacheProperties cacheProperties = new WalletCacheProperties();
+        cacheProperties.setEnabled(cacheEnabled);
+        BalanceCache balanceCache = new BalanceCache(cacheProperties, meterRegistry);
+        BalanceChangePublisher publisher = new BalanceChangePublisher(List.of(balanceCache));
+        WalletMetrics walletMetrics = new WalletMetrics(meterRegistry, new WalletMetricsProperties());
+        WalletLedgerProperties ledgerProperties = new WalletLedgerProperties();
+        ledgerProperties.setEnabled(false);
+        LedgerWriter ledgerWriter = new LedgerWriter(new WalletOperationRepository(database), ledgerProperties);
+        IdempotencyKeyRepository idempotencyKeyRepository = new IdempotencyKeyRepository(database);
+        WalletShardingProperties shardingProperties = new WalletShardingProperties();
+        ShardRouter shardRouter = new ShardRouter(new ShardRepository(database),
+                empty(ReactiveTransactionManager.class), transactionalOperator, shardingProperties);
+
+        WalletEngine walletEngine = switch (engine) {
+            case "classic" -> new ReadModifyWriteWalletEngine(walletRepository, idempotencyKeyRepository,
+                    transactionalOperator, publisher, ledgerWriter, walletMetrics, new WalletEngineProperties());
+            case "atomic" -> new AtomicWalletEngine(walletRepository, idempotencyKeyRepository,
+                    transactionalOperator, publisher, ledgerWriter);
+            default -> throw new IllegalArgumentException("Неизвестный движок: " + engine);
+        };
+
+        return new WalletServiceImpl(
+                walletRepository,
+                walletEngine,
+                new WalletBatchExecutor(new WalletBatchRepository(database), transactionalOperator, publisher,
+                        ledgerWriter, shardRouter, new WalletBatchProperties()),
+                new WalletTransferExecutor(new WalletTransferRepository(database), walletRepository,
+                        transactionalOperator, publisher, ledgerWriter),
+                balanceCache,
+                walletMetrics,
+                new IdempotencyStore(idempotencyKeyRepository, shardRouter, new WalletIdempotencyProperties(),
+                        meterRegistry),
+                new WalletHistoryReader(new WalletOperationRepository(database), new WalletHistoryProperties()),
+                new BalanceStream(walletRepository, shardRouter, new WalletStreamProperties(), meterRegistry),
+                shardRouter,
+                new ReplicaRouter(new ReplicaRepository(database), new WalletReplicaProperties(), shardingProperties,
+                        meterRegistry));
+    }
+
+    /**
+     * Пустая реализация интерфейса: {@link Mono} и {@link Flux} завершаются без элементов, вложенные интерфейсы
+     * (спецификации запроса {@link DatabaseClient}) тоже пустые, остальные значения - по умолчанию для типа.
+     */
+    private static <T> T empty(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Class<?> result = method.getReturnType();
+                    return switch (method.getName()) {
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "empty " + type.getSimpleName();
+                        default -> {
+                            if (result == Mono.class) {
+                                yield Mono.empty();
+                            } else if (result == Flux.class) {
+                                yield Flux.empty();
+                            } else if (result == boolean.class) {
+                                yield false;
+                            } else if (result == int.class) {
+                                yield 0;
+                            } else if (result == long.class) {
+                                yield 0L;
+                            } else if (result.isInterface()) {
+                                yield empty(result);
+                            }
+                            yield null;
+                        }
+                    };
+                }));
+    }
+
+    /**
+     * Транзакция без транзакции: цепочка и обратный вызов выполняются как есть.
+     */
+    private static final class PassThroughTransactionalOperator implements TransactionalOperator {
+
+        @Override
+        public <T> Flux<T> transactional(Flux<T> flux) {
+            return flux;
+        }
+
+        @Override
+        public <T> Mono<T> transactional(Mono<T> mono) {
+            return mono;
+        }
+
+        @Override
+        public <T> Flux<T> execute(TransactionCallback<T> action) {
+            return Flux.defer(() -> action.doInTransaction(new PassThroughTransaction()));
+        }
+
+    }
+
+    private static final class PassThroughTransaction implements ReactiveTransaction {
+
+        private boolean rollbackOnly;
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public boolean isRollbackOnly() {
+            return rollbackOnly;
+        }
+
+    }
+
+}
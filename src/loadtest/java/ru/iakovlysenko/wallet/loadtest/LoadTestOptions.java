@@ -0,0 +1,78 @@
+package ru.iakovlysenko.wallet.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Параметры нагрузочного теста из аргументов вида {@code --key=value}.
+ * Неизвестные аргументы передаются приложению, например {@code --wallet.engine.mode=atomic}.
+ */
+record LoadTestOptions(
+        String dbUrl,
+        int concurrency,
+        int wallets,
+        String skew,
+        double zipfExponent,
+        double readRatio,
+        double withdrawRatio,
+        Duration warmup,
+        Duration duration,
+        List<String> applicationArgs
+) {
+
+    private static final String PREFIX = "--";
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String key = arg.startsWith(PREFIX) && separator > 0 ? arg.substring(PREFIX.length(), separator) : null;
+            if (key != null && isOwn(key)) {
+                options.put(key, arg.substring(separator + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+
+        LoadTestOptions result = new LoadTestOptions(
+                options.get("db-url"),
+                Integer.parseInt(options.getOrDefault("concurrency", "64")),
+                Integer.parseInt(options.getOrDefault("wallets", "1000")),
+                options.getOrDefault("skew", "uniform"),
+                Double.parseDouble(options.getOrDefault("zipf-exponent", "1.1")),
+                Double.parseDouble(options.getOrDefault("read-ratio", "0.2")),
+                Double.parseDouble(options.getOrDefault("withdraw-ratio", "0.3")),
+                DurationStyle.detectAndParse(options.getOrDefault("warmup", "5s")),
+                DurationStyle.detectAndParse(options.getOrDefault("duration", "30s")),
+                List.copyOf(applicationArgs));
+        result.validate();
+        return result;
+    }
+
+    private static boolean isOwn(String key) {
+        return switch (key) {
+            case "db-url", "concurrency", "wallets", "skew", "zipf-exponent",
+                    "read-ratio", "withdraw-ratio", "warmup", "duration" -> true;
+            default -> false;
+        };
+    }
+
+    private void validate() {
+        if (concurrency < 1 || wallets < 1) {
+            throw new IllegalArgumentException("concurrency и wallets должны быть положительными");
+        }
+        if (!"uniform".equals(skew) && !"zipf".equals(skew)) {
+            throw new IllegalArgumentException("skew должен быть uniform или zipf: " + skew);
+        }
+        if (readRatio < 0 || readRatio > 1 || withdrawRatio < 0 || withdrawRatio > 1) {
+            throw new IllegalArgumentException("read-ratio и withdraw-ratio должны быть в диапазоне [0, 1]");
+        }
+    }
+
+}
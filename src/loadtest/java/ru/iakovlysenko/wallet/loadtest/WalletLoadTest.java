@@ -0,0 +1,207 @@
+package ru.iakovlysenko.wallet.loadtest;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import ru.iakovlysenko.wallet.WalletApplication;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузочный тест сервиса целиком: HTTP, движок, пул соединений и Postgres.
+ * Поднимает Postgres (встроенный, если не задан {@code --db-url=host:port/database}), запускает приложение
+ * на случайном порту с применением changelog Liquibase, пополняет {@code --wallets} кошельков
+ * и в течение {@code --duration} держит {@code --concurrency} запросов в полете.
+ * Задержки считаются в HdrHistogram отдельно для пополнения, списания и чтения баланса.
+ *
+ * <pre>
+ * mvn -P loadtest test-compile exec:exec -Dloadtest.args="--concurrency=256 --skew=zipf --wallet.engine.mode=atomic"
+ * </pre>
+ */
+public final class WalletLoadTest {
+
+    private static final long INITIAL_BALANCE = 1_000_000;
+    private static final int SEED_CHUNK = 1000;
+    private static final long MAX_AMOUNT = 100;
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private enum Kind { DEPOSIT, WITHDRAW, BALANCE }
+
+    private final LoadTestOptions options;
+    private final WalletSampler sampler;
+    private final Map<Kind, Histogram> latencies = new EnumMap<>(Kind.class);
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+    private WebClient webClient;
+
+    private WalletLoadTest(LoadTestOptions options) {
+        this.options = options;
+        this.sampler = "zipf".equals(options.skew())
+                ? WalletSampler.zipf(options.wallets(), options.zipfExponent())
+                : WalletSampler.uniform(options.wallets());
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        EmbeddedPostgres embeddedPostgres = options.dbUrl() == null ? EmbeddedPostgres.builder().start() : null;
+        String dbUrl = embeddedPostgres != null
+                ? "localhost:" + embeddedPostgres.getPort() + "/postgres"
+                : options.dbUrl();
+
+        System.setProperty("logging.level.root", "WARN");
+        System.setProperty("logging.level.liquibase", "WARN");
+        System.setProperty("logging.level.org.springframework.jdbc", "WARN");
+        System.setProperty("logging.level.org.springframework.boot.jdbc", "WARN");
+        System.setProperty("logging.level.org.springframework.boot.autoconfigure.liquibase", "WARN");
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WalletApplication.class)
+                .properties(
+                        "SERVER_PORT=0",
+                        "LOG_LEVEL=WARN",
+                        "DB_URL_R2DBC=r2dbc:postgresql://" + dbUrl,
+                        "DB_URL_JDBC=jdbc:postgresql://" + dbUrl)
+                .run(options.applicationArgs().toArray(String[]::new))) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            new WalletLoadTest(options).execute(port);
+        } finally {
+            if (embeddedPostgres != null) {
+                embeddedPostgres.close();
+            }
+        }
+    }
+
+    private void execute(int port) {
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(options.concurrency())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port + "/api/v1")
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                .build();
+
+        try {
+            System.out.printf(Locale.ROOT, "Пополнение %d кошельков на %d%n", options.wallets(), INITIAL_BALANCE);
+            seed();
+
+            System.out.printf(Locale.ROOT, "Прогрев %s%n", options.warmup());
+            run(options.warmup());
+            reset();
+
+            System.out.printf(Locale.ROOT, "Замер %s: concurrency=%d, wallets=%d, skew=%s, доля горячего кошелька=%.4f%n",
+                    options.duration(), options.concurrency(), options.wallets(), options.skew(), sampler.hotShare());
+            long started = System.nanoTime();
+            run(options.duration());
+            report(Duration.ofNanos(System.nanoTime() - started));
+        } finally {
+            connections.dispose();
+        }
+    }
+
+    private void seed() {
+        UUID[] walletIds = sampler.walletIds();
+        Flux.range(0, (walletIds.length + SEED_CHUNK - 1) / SEED_CHUNK)
+                .concatMap(chunk -> webClient.post()
+                        .uri("/wallets/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Arrays.stream(walletIds, chunk * SEED_CHUNK,
+                                        Math.min(walletIds.length, (chunk + 1) * SEED_CHUNK))
+                                .map(walletId -> new WalletOperationRequest(walletId, OperationType.DEPOSIT, INITIAL_BALANCE))
+                                .toList())
+                        .retrieve()
+                        .toBodilessEntity())
+                .blockLast();
+    }
+
+    private void run(Duration duration) {
+        Flux.range(0, Integer.MAX_VALUE)
+                .flatMap(ignored -> request(), options.concurrency())
+                .take(duration)
+                .blockLast();
+    }
+
+    private Mono<Void> request() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID walletId = sampler.next();
+        Kind kind = random.nextDouble() < options.readRatio() ? Kind.BALANCE
+                : random.nextDouble() < options.withdrawRatio() ? Kind.WITHDRAW
+                : Kind.DEPOSIT;
+
+        WebClient.RequestHeadersSpec<?> spec = kind == Kind.BALANCE
+                ? webClient.get().uri("/wallets/{walletId}", walletId)
+                : webClient.post().uri("/wallet")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new WalletOperationRequest(walletId,
+                                kind == Kind.DEPOSIT ? OperationType.DEPOSIT : OperationType.WITHDRAW,
+                                random.nextLong(1, MAX_AMOUNT + 1)));
+
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return spec.exchangeToMono(response -> response.releaseBody()
+                            .thenReturn(String.valueOf(response.statusCode().value())))
+                    .onErrorResume(error -> Mono.just(error.getClass().getSimpleName()))
+                    .doOnNext(status -> {
+                        latencies.get(kind).recordValue(
+                                Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started), HIGHEST_TRACKABLE_MICROS));
+                        statuses.computeIfAbsent(kind + " " + status, key -> new LongAdder()).increment();
+                    })
+                    .then();
+        });
+    }
+
+    private void reset() {
+        latencies.values().forEach(Histogram::reset);
+        statuses.clear();
+    }
+
+    private void report(Duration elapsed) {
+        double seconds = elapsed.toNanos() / 1e9;
+        long total = 0;
+        System.out.printf(Locale.ROOT, "%n%-10s %10s %10s %10s %10s %10s %10s%n",
+                "операция", "запросов", "rps", "p50, мс", "p99, мс", "p999, мс", "max, мс");
+        for (Kind kind : Kind.values()) {
+            Histogram histogram = latencies.get(kind);
+            total += histogram.getTotalCount();
+            System.out.printf(Locale.ROOT, "%-10s %10d %10.0f %10.2f %10.2f %10.2f %10.2f%n",
+                    kind, histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                    millis(histogram, 50), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0);
+        }
+        System.out.printf(Locale.ROOT, "%-10s %10d %10.0f%n%n", "ВСЕГО", total, total / seconds);
+
+        List<String> keys = statuses.keySet().stream().sorted().toList();
+        for (String key : keys) {
+            System.out.printf(Locale.ROOT, "%-30s %10d%n", key, statuses.get(key).sum());
+        }
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+}
@@ -0,0 +1,75 @@
+package ru.iakovlysenko.wallet.loadtest;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выбор кошелька для очередного запроса.
+ * Кошелек с рангом 0 — засеянный Liquibase {@code 550e8400-e29b-41d4-a716-446655440000},
+ * при распределении Zipf он получает наибольшую долю запросов.
+ */
+final class WalletSampler {
+
+    static final UUID HOT_WALLET = UUID.fromString("550e8400-e29b-41d4-a716-446655440000");
+
+    private static final long ID_PREFIX = 0x10ad7e5700000000L;
+
+    private final UUID[] walletIds;
+    private final double[] cumulative;
+
+    private WalletSampler(UUID[] walletIds, double[] cumulative) {
+        this.walletIds = walletIds;
+        this.cumulative = cumulative;
+    }
+
+    static WalletSampler uniform(int wallets) {
+        return new WalletSampler(walletIds(wallets), null);
+    }
+
+    /**
+     * Распределение Zipf: вероятность ранга {@code k} пропорциональна {@code 1 / (k + 1)^exponent}.
+     */
+    static WalletSampler zipf(int wallets, double exponent) {
+        double[] cumulative = new double[wallets];
+        double sum = 0;
+        for (int rank = 0; rank < wallets; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < wallets; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return new WalletSampler(walletIds(wallets), cumulative);
+    }
+
+    private static UUID[] walletIds(int wallets) {
+        UUID[] walletIds = new UUID[wallets];
+        walletIds[0] = HOT_WALLET;
+        for (int rank = 1; rank < wallets; rank++) {
+            walletIds[rank] = new UUID(ID_PREFIX, rank);
+        }
+        return walletIds;
+    }
+
+    UUID[] walletIds() {
+        return walletIds;
+    }
+
+    UUID next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (cumulative == null) {
+            return walletIds[random.nextInt(walletIds.length)];
+        }
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return walletIds[Math.min(rank < 0 ? -rank - 1 : rank, walletIds.length - 1)];
+    }
+
+    /**
+     * Доля запросов, приходящаяся на горячий кошелек.
+     */
+    double hotShare() {
+        return cumulative == null ? 1.0 / walletIds.length : cumulative[0];
+    }
+
+}
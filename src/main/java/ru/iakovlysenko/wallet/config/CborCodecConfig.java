@@ -0,0 +1,51 @@
+package ru.iakovlysenko.wallet.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolverBuilder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import ru.iakovlysenko.wallet.controller.codec.LengthDelimitedCborDecoder;
+import ru.iakovlysenko.wallet.controller.codec.LengthDelimitedCborEncoder;
+import ru.iakovlysenko.wallet.controller.codec.SingleValueCborEncoder;
+
+/**
+ * Двоичный протокол API: {@code application/cbor} для одиночных запросов и ответов
+ * и поток кадров {@code application/x-cbor-stream}.
+ * Маппер CBOR строится тем же построителем, что и JSON, поэтому разделяет его модули и настройки.
+ * Настройки подключаются явно, чтобы кодеки и контроллер собирались и в срезе WebFlux без сканирования настроек.
+ */
+@Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(WalletBinaryProperties.class)
+public class CborCodecConfig implements WebFluxConfigurer {
+
+    private final Jackson2ObjectMapperBuilder objectMapperBuilder;
+    private final WalletBinaryProperties binaryProperties;
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        ObjectMapper cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+        configurer.customCodecs().register(new Jackson2CborDecoder(cborMapper, MediaType.APPLICATION_CBOR));
+        configurer.customCodecs().register(new SingleValueCborEncoder(cborMapper));
+        configurer.customCodecs().register(new LengthDelimitedCborDecoder(cborMapper, binaryProperties.getMaxFrameSize()));
+        configurer.customCodecs().register(new LengthDelimitedCborEncoder(cborMapper));
+    }
+
+    /**
+     * Кодеки CBOR стоят в списке раньше JSON, поэтому без {@code Accept} или с {@code Accept: *}{@code /*}
+     * предпочитается JSON: прежние клиенты получают те же ответы.
+     */
+    @Override
+    public void configureContentTypeResolver(RequestedContentTypeResolverBuilder builder) {
+        builder.headerResolver();
+        builder.fixedResolver(MediaType.APPLICATION_JSON, MediaType.ALL);
+    }
+
+}
@@ -0,0 +1,109 @@
+package ru.iakovlysenko.wallet.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Конфигурация режима исполнения через JDBC ({@code wallet.jdbc.enabled}).
+ * Пул HikariCP готовит выражения на сервере с {@code prepare-threshold} выполнений и кеширует их
+ * в соединении, пакеты вставок драйвер переписывает в многострочные выражения.
+ * Блокирующие вызовы исполняются планировщиком над исполнителем с виртуальным потоком на задачу,
+ * а без виртуальных потоков (Java до 21) - над пулом потоков платформы.
+ * Менеджер транзакций JDBC не публикуется бином, чтобы не конкурировать с реактивным {@code transactionManager}.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "wallet.jdbc", name = "enabled", havingValue = "true")
+public class JdbcConfig {
+
+    /**
+     * Адрес и учетные данные по умолчанию берутся у Liquibase, который и так ходит в основную базу по JDBC.
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource jdbcDataSource(WalletJdbcProperties properties,
+                                           WalletPoolProperties poolProperties,
+                                           LiquibaseProperties liquibaseProperties,
+                                           MeterRegistry meterRegistry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("wallet-jdbc");
+        config.setJdbcUrl(properties.getUrl() != null ? properties.getUrl() : liquibaseProperties.getUrl());
+        config.setUsername(properties.getUsername() != null ? properties.getUsername() : liquibaseProperties.getUser());
+        config.setPassword(properties.getPassword() != null ? properties.getPassword() : liquibaseProperties.getPassword());
+        config.setMaximumPoolSize(properties.getMaxSize());
+        config.setMinimumIdle(Math.min(properties.getMinIdle(), properties.getMaxSize()));
+        config.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+        config.setMaxLifetime(poolProperties.getMaxLifeTime().toMillis());
+        config.setIdleTimeout(poolProperties.getMaxIdleTime().toMillis());
+        config.setMetricRegistry(meterRegistry);
+
+        WalletPoolProperties.Driver driver = poolProperties.getDriver();
+        config.addDataSourceProperty("prepareThreshold", properties.getPrepareThreshold());
+        config.addDataSourceProperty("preparedStatementCacheQueries", driver.getPreparedStatementCacheQueries());
+        config.addDataSourceProperty("reWriteBatchedInserts", properties.isReWriteBatchedInserts());
+        config.addDataSourceProperty("defaultRowFetchSize", driver.getFetchSize());
+        config.addDataSourceProperty("tcpNoDelay", driver.isTcpNoDelay());
+        config.addDataSourceProperty("tcpKeepAlive", driver.isTcpKeepAlive());
+        if (driver.getApplicationName() != null) {
+            config.addDataSourceProperty("ApplicationName", driver.getApplicationName());
+        }
+        if (driver.getStatementTimeout() != null) {
+            config.addDataSourceProperty("options", "-c statement_timeout=" + driver.getStatementTimeout().toMillis());
+        }
+        return new HikariDataSource(config);
+    }
+
+    @Bean
+    public NamedParameterJdbcTemplate namedParameterJdbcTemplate(HikariDataSource jdbcDataSource) {
+        return new NamedParameterJdbcTemplate(jdbcDataSource);
+    }
+
+    @Bean
+    public TransactionTemplate jdbcTransactionTemplate(HikariDataSource jdbcDataSource) {
+        return new TransactionTemplate(new DataSourceTransactionManager(jdbcDataSource));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService jdbcExecutor(WalletJdbcProperties properties) {
+        if (properties.isVirtualThreads()) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                log.info("Запросы JDBC исполняются на виртуальных потоках");
+                return executor;
+            } catch (NoSuchMethodException e) {
+                log.warn("Виртуальные потоки недоступны в Java {}, запросы JDBC исполняются на {} потоках платформы",
+                        Runtime.version().feature(), properties.getThreads());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Не удалось создать исполнитель на виртуальных потоках", e);
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(properties.getThreads(), task -> {
+            Thread thread = new Thread(task, "wallet-jdbc-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(ExecutorService jdbcExecutor) {
+        return Schedulers.fromExecutorService(jdbcExecutor, "wallet-jdbc");
+    }
+
+}
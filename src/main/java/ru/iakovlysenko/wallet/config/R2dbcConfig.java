@@ -1,14 +1,52 @@
 package ru.iakovlysenko.wallet.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionFactoryProvider;
+import io.r2dbc.spi.ConnectionFactories;
 import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.DialectResolver;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
 import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
 import org.springframework.transaction.ReactiveTransactionManager;
 import org.springframework.transaction.reactive.TransactionalOperator;
+import ru.iakovlysenko.wallet.config.converter.MoneyReadingConverter;
+import ru.iakovlysenko.wallet.config.converter.MoneyRowReadingConverter;
+import ru.iakovlysenko.wallet.config.converter.MoneyWritingConverter;
+import ru.iakovlysenko.wallet.service.metrics.MeteredConnectionFactory;
+import ru.iakovlysenko.wallet.service.metrics.MeteredTransactionalOperator;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRoutingConnectionFactory;
+import ru.iakovlysenko.wallet.service.shard.ShardRoutingConnectionFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Конфигурация R2DBC.
+ * При {@code wallet.sharding.enabled} вместо фабрики соединений Spring Boot создается маршрутизирующая фабрика
+ * над пулами шардов, а схема каждого шарда с {@code jdbc-url} обновляется Liquibase при запуске.
+ * При {@code wallet.replica.enabled} без шардирования фабрика направляет помеченные чтения на пул реплики,
+ * остальные запросы - на пул основной базы из {@code spring.r2dbc}.
+ * Все пулы создаются здесь с таймаутами, проверкой соединений и параметрами драйвера из {@code wallet.pool}.
  */
 @Configuration
 public class R2dbcConfig {
@@ -19,8 +57,174 @@ public class R2dbcConfig {
     }
 
     @Bean
-    public TransactionalOperator transactionalOperator(ReactiveTransactionManager transactionManager) {
-        return TransactionalOperator.create(transactionManager);
+    public TransactionalOperator transactionalOperator(ReactiveTransactionManager transactionManager,
+                                                       MeterRegistry meterRegistry) {
+        return new MeteredTransactionalOperator(TransactionalOperator.create(transactionManager), meterRegistry);
+    }
+
+    /**
+     * Пул основной базы из {@code spring.r2dbc} вместо пула Spring Boot, чтобы к нему применялись
+     * настройки {@code wallet.pool}. Метрики {@code r2dbc.pool.*} Spring Boot публикует по имени бина.
+     */
+    @Bean(name = "connectionFactory")
+    @ConditionalOnExpression("!${wallet.sharding.enabled:false} and !${wallet.replica.enabled:false}")
+    public ConnectionFactory primaryConnectionFactory(R2dbcProperties r2dbcProperties,
+                                                      WalletPoolProperties properties) {
+        return pool("connectionFactory", primaryConnectionOptions(r2dbcProperties),
+                properties.getMaxSize(), properties.getMinIdle(), properties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "wallet.sharding", name = "enabled", havingValue = "true")
+    public ConnectionFactory connectionFactory(WalletShardingProperties properties,
+                                               WalletPoolProperties poolProperties,
+                                               MeterRegistry meterRegistry) {
+        Map<String, ConnectionPool> pools = new LinkedHashMap<>();
+        Map<String, ConnectionFactory> targets = new LinkedHashMap<>();
+        for (WalletShardingProperties.Shard shard : properties.getShards()) {
+            ConnectionPool pool = pool(shard.getName(), shardConnectionOptions(shard),
+                    shard.getMaxSize(), shard.getMinIdle(), poolProperties);
+            new ConnectionPoolMetrics(pool, shard.getName(), Tags.empty()).bindTo(meterRegistry);
+            pools.put(shard.getName(), pool);
+            targets.put(shard.getName(), new MeteredConnectionFactory(pool, meterRegistry));
+        }
+        return new ShardRoutingConnectionFactory(pools, targets);
+    }
+
+    private static ConnectionFactoryOptions primaryConnectionOptions(R2dbcProperties r2dbcProperties) {
+        return connectionOptions(r2dbcProperties.getUrl(), r2dbcProperties.getUsername(),
+                r2dbcProperties.getPassword());
+    }
+
+    private static ConnectionFactoryOptions shardConnectionOptions(WalletShardingProperties.Shard shard) {
+        return connectionOptions(shard.getUrl(), shard.getUsername(), shard.getPassword());
+    }
+
+    private static ConnectionFactoryOptions connectionOptions(String url, String username, String password) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (username != null) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (password != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        return options.build();
+    }
+
+    /**
+     * Создает пул с общими настройками {@code wallet.pool} и параметрами драйвера поверх адреса базы.
+     */
+    static ConnectionPool pool(String name, ConnectionFactoryOptions options, int maxSize, int minIdle,
+                               WalletPoolProperties properties) {
+        WalletPoolProperties.Driver driver = properties.getDriver();
+        ConnectionFactoryOptions.Builder driverOptions = options.mutate()
+                .option(PostgresqlConnectionFactoryProvider.PREPARED_STATEMENT_CACHE_QUERIES,
+                        driver.getPreparedStatementCacheQueries())
+                .option(PostgresqlConnectionFactoryProvider.FETCH_SIZE, driver.getFetchSize())
+                .option(PostgresqlConnectionFactoryProvider.TCP_NODELAY, driver.isTcpNoDelay())
+                .option(PostgresqlConnectionFactoryProvider.TCP_KEEPALIVE, driver.isTcpKeepAlive());
+        if (driver.getApplicationName() != null) {
+            driverOptions.option(PostgresqlConnectionFactoryProvider.APPLICATION_NAME, driver.getApplicationName());
+        }
+        if (driver.getStatementTimeout() != null) {
+            driverOptions.option(PostgresqlConnectionFactoryProvider.STATEMENT_TIMEOUT, driver.getStatementTimeout());
+        }
+        ConnectionPoolConfiguration.Builder pool = ConnectionPoolConfiguration.builder(
+                        ConnectionFactories.get(driverOptions.build()))
+                .name(name)
+                .maxSize(maxSize)
+                .minIdle(Math.min(minIdle, maxSize))
+                .initialSize(Math.min(properties.getInitialSize(), maxSize))
+                .maxAcquireTime(properties.getMaxAcquireTime())
+                .maxCreateConnectionTime(properties.getMaxCreateConnectionTime())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .maxLifeTime(properties.getMaxLifeTime())
+                .backgroundEvictionInterval(properties.getBackgroundEvictionInterval())
+                .acquireRetry(properties.getAcquireRetry())
+                .maxValidationTime(properties.getMaxValidationTime())
+                .validationDepth(properties.getValidationDepth());
+        if (properties.getValidationQuery() != null && !properties.getValidationQuery().isBlank()) {
+            pool.validationQuery(properties.getValidationQuery());
+        }
+        return new ConnectionPool(pool.build());
+    }
+
+    /**
+     * Пул основной базы сохраняет имя {@code connectionFactory} в метриках {@code r2dbc.pool.*},
+     * как у фабрики без реплики; учетные данные реплики по умолчанию берутся у основной базы.
+     */
+    @Bean
+    @ConditionalOnExpression("${wallet.replica.enabled:false} and !${wallet.sharding.enabled:false}")
+    public ConnectionFactory replicaRoutingConnectionFactory(R2dbcProperties r2dbcProperties,
+                                                             WalletReplicaProperties properties,
+                                                             WalletPoolProperties poolProperties,
+                                                             MeterRegistry meterRegistry) {
+        ConnectionPool primary = pool("connectionFactory", primaryConnectionOptions(r2dbcProperties),
+                poolProperties.getMaxSize(), poolProperties.getMinIdle(), poolProperties);
+        ConnectionPool replica = pool("replica", connectionOptions(properties.getUrl(),
+                        properties.getUsername() != null ? properties.getUsername() : r2dbcProperties.getUsername(),
+                        properties.getPassword() != null ? properties.getPassword() : r2dbcProperties.getPassword()),
+                properties.getMaxSize(), properties.getMinIdle(), poolProperties);
+        new ConnectionPoolMetrics(primary, "connectionFactory", Tags.empty()).bindTo(meterRegistry);
+        new ConnectionPoolMetrics(replica, "replica", Tags.empty()).bindTo(meterRegistry);
+        return new ReplicaRoutingConnectionFactory(
+                new MeteredConnectionFactory(primary, meterRegistry),
+                new MeteredConnectionFactory(replica, meterRegistry),
+                List.of(primary, replica));
+    }
+
+    /**
+     * Применяет миграции основной базы к каждому шарду с заданным {@code jdbc-url}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "wallet.sharding", name = "enabled", havingValue = "true")
+    public InitializingBean shardLiquibase(WalletShardingProperties properties,
+                                           LiquibaseProperties liquibaseProperties,
+                                           ResourceLoader resourceLoader) {
+        return () -> {
+            for (WalletShardingProperties.Shard shard : properties.getShards()) {
+                if (shard.getJdbcUrl() == null) {
+                    continue;
+                }
+                SpringLiquibase liquibase = new SpringLiquibase();
+                liquibase.setDataSource(DataSourceBuilder.create()
+                        .type(SimpleDriverDataSource.class)
+                        .url(shard.getJdbcUrl())
+                        .username(shard.getUsername())
+                        .password(shard.getPassword())
+                        .build());
+                liquibase.setChangeLog(liquibaseProperties.getChangeLog());
+                liquibase.setDefaultSchema(liquibaseProperties.getDefaultSchema());
+                liquibase.setLiquibaseSchema(liquibaseProperties.getLiquibaseSchema());
+                liquibase.setResourceLoader(resourceLoader);
+                liquibase.afterPropertiesSet();
+            }
+        };
+    }
+
+    @Bean
+    public R2dbcCustomConversions r2dbcCustomConversions(ConnectionFactory connectionFactory) {
+        return R2dbcCustomConversions.of(DialectResolver.getDialect(connectionFactory),
+                List.of(new MoneyReadingConverter(), new MoneyRowReadingConverter(), new MoneyWritingConverter()));
+    }
+
+    /**
+     * Оборачивает фабрику соединений для замера ожидания соединения из пула.
+     * Пулы шардов и реплики оборачиваются при создании, маршрутизирующие фабрики над ними не оборачиваются.
+     */
+    @Bean
+    public static BeanPostProcessor meteredConnectionFactoryPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ConnectionFactory connectionFactory
+                        && !(bean instanceof MeteredConnectionFactory)
+                        && !(bean instanceof AbstractRoutingConnectionFactory)) {
+                    return new MeteredConnectionFactory(connectionFactory, meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
     }
 
 }
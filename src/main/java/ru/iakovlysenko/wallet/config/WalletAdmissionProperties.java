@@ -0,0 +1,77 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки допуска запросов к API кошельков.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.admission")
+public class WalletAdmissionProperties {
+
+    /**
+     * Ограничение частоты запросов к кошельку и числа одновременных запросов.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Средняя частота запросов к одному кошельку в секунду.
+     */
+    private double walletRate = 50;
+
+    /**
+     * Сколько запросов к одному кошельку допускается подряд сверх средней частоты.
+     */
+    private int walletBurst = 100;
+
+    /**
+     * Наибольшее число кошельков, для которых узел помнит частоту запросов.
+     */
+    private long maxWallets = 100_000;
+
+    /**
+     * Наибольшее число одновременных запросов. 0 - {@code concurrency-per-connection} на соединение пула.
+     */
+    private int maxConcurrent = 0;
+
+    /**
+     * Число одновременных запросов на соединение пула без явного {@code max-concurrent}.
+     */
+    private int concurrencyPerConnection = 4;
+
+    /**
+     * Наименьший предел одновременных запросов при сбросе нагрузки. 0 - по числу соединений пула.
+     */
+    private int minConcurrent = 0;
+
+    /**
+     * Среднее ожидание соединения из пула, выше которого предел одновременных запросов снижается.
+     */
+    private Duration maxAcquireWait = Duration.ofMillis(50);
+
+    /**
+     * Период пересчета предела по ожиданию соединения.
+     */
+    private Duration adjustInterval = Duration.ofMillis(200);
+
+    /**
+     * Во сколько раз снижается предел, пока ожидание соединения выше {@code max-acquire-wait}.
+     */
+    private double decreaseFactor = 0.75;
+
+    /**
+     * На сколько предел растет за период, пока ожидание соединения в норме.
+     */
+    private int increaseStep = 2;
+
+    /**
+     * Наибольшее тело операции или перевода, которое читается ради id кошелька; больше - ответ {@code 413}.
+     * По умолчанию равно пределу кодеков Spring ({@code spring.codec.max-in-memory-size}), при его увеличении
+     * нужно увеличить и этот предел.
+     */
+    private int maxBodySize = 256 * 1024;
+
+}
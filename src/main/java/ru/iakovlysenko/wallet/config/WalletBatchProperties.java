@@ -0,0 +1,18 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки пакетной обработки операций.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.batch")
+public class WalletBatchProperties {
+
+    /**
+     * Число операций, обрабатываемых в одной транзакции.
+     */
+    private int chunkSize = 1000;
+
+}
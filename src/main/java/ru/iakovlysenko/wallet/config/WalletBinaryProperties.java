@@ -0,0 +1,23 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки двоичного протокола API для внутренних клиентов.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.binary")
+public class WalletBinaryProperties {
+
+    /**
+     * Сколько операций потока одного соединения выполняется одновременно; 1 - строго по одной.
+     */
+    private int pipelineDepth = 16;
+
+    /**
+     * Наибольший размер кадра потока в байтах.
+     */
+    private int maxFrameSize = 64 * 1024;
+
+}
@@ -0,0 +1,67 @@
+package ru.iakovlysenko.wallet.config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Pattern;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Настройки кеша балансов.
+ */
+@Data
+@Validated
+@ConfigurationProperties(prefix = "wallet.cache")
+public class WalletCacheProperties {
+
+    /**
+     * Чтение баланса через кеш.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Максимальное число кошельков в кеше.
+     */
+    private long maxSize = 100_000;
+
+    /**
+     * Время жизни записи после загрузки или обновления.
+     */
+    private Duration ttl = Duration.ofSeconds(5);
+
+    @Valid
+    private Coherence coherence = new Coherence();
+
+    /**
+     * Настройки согласования кешей между узлами через Postgres LISTEN/NOTIFY.
+     */
+    @Data
+    public static class Coherence {
+
+        /**
+         * Рассылка и прием уведомлений об изменении кошельков.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Канал уведомлений. Подставляется в {@code LISTEN} как идентификатор, поэтому допускает только
+         * строчные латинские буквы, цифры и подчеркивание.
+         */
+        @Pattern(regexp = "[a-z_][a-z0-9_]*")
+        private String channel = "wallet_changed";
+
+        /**
+         * Окно объединения изменений в одно уведомление.
+         */
+        private Duration window = Duration.ofMillis(20);
+
+        /**
+         * Задержка перед повторным подключением после обрыва.
+         */
+        private Duration reconnectDelay = Duration.ofSeconds(1);
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки движка операций над кошельками.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.engine")
+public class WalletEngineProperties {
+
+    /**
+     * Режим движка: classic, atomic, coalescing, single-writer.
+     */
+    private String mode = "classic";
+
+    private Coalescing coalescing = new Coalescing();
+
+    private SingleWriter singleWriter = new SingleWriter();
+
+    private Retry retry = new Retry();
+
+    /**
+     * Настройки группировки операций по кошельку.
+     */
+    @Data
+    public static class Coalescing {
+
+        /**
+         * Окно накопления операций одного кошелька перед записью.
+         */
+        private Duration window = Duration.ofMillis(5);
+
+        /**
+         * Максимальное число операций в одной группе, при достижении группа пишется сразу.
+         */
+        private int maxBatchSize = 64;
+
+    }
+
+    /**
+     * Настройки движка с единственным писателем на кошелек.
+     */
+    @Data
+    public static class SingleWriter {
+
+        /**
+         * Число полос; кошелек закреплен за полосой хешем id.
+         */
+        private int lanes = 64;
+
+        /**
+         * Максимальное число операций, записываемых полосой за один раз.
+         */
+        private int maxBatchSize = 256;
+
+        /**
+         * Максимальное число кошельков, балансы которых держатся в памяти всеми полосами.
+         */
+        private int maxWallets = 100_000;
+
+    }
+
+    /**
+     * Повтор операции классического движка при параллельном изменении кошелька.
+     */
+    @Data
+    public static class Retry {
+
+        /**
+         * Максимальное число повторов после первой попытки.
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * Пауза перед первым повтором, дальше растет экспоненциально.
+         */
+        private Duration minBackoff = Duration.ofMillis(5);
+
+        /**
+         * Предельная пауза между повторами.
+         */
+        private Duration maxBackoff = Duration.ofMillis(100);
+
+        /**
+         * Доля случайного разброса паузы от 0 до 1.
+         */
+        private double jitter = 0.5;
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки чтения истории операций.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.history")
+public class WalletHistoryProperties {
+
+    /**
+     * Размер страницы, если клиент не задал {@code limit}.
+     */
+    private int pageSize = 50;
+
+    /**
+     * Число записей, читаемых одним запросом при потоковой выгрузке.
+     */
+    private int streamChunkSize = 1000;
+
+}
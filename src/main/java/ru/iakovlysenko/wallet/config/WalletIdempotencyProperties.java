@@ -0,0 +1,40 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки ключей идемпотентности.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.idempotency")
+public class WalletIdempotencyProperties {
+
+    /**
+     * Максимальное число результатов в памяти узла.
+     */
+    private long cacheMaxSize = 100_000;
+
+    /**
+     * Время жизни результата в памяти узла, дальше повтор читается из БД.
+     */
+    private Duration cacheTtl = Duration.ofMinutes(10);
+
+    /**
+     * Срок хранения ключа в БД; повтор после этого срока выполняется как новая операция.
+     */
+    private Duration retention = Duration.ofHours(24);
+
+    /**
+     * Период удаления устаревших ключей.
+     */
+    private Duration purgeInterval = Duration.ofMinutes(10);
+
+    /**
+     * Число ключей, удаляемых одним выражением.
+     */
+    private int purgeBatchSize = 10_000;
+
+}
@@ -0,0 +1,67 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки режима исполнения запросов через JDBC.
+ * Пул HikariCP открывается к основной базе; параметры драйвера из {@code wallet.pool.driver} действуют и для него.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.jdbc")
+public class WalletJdbcProperties {
+
+    /**
+     * Операции, чтение баланса, пакеты и переводы выполняются блокирующим JDBC вместо R2DBC.
+     * Не поддерживается при шардировании.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Адрес JDBC основной базы.
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /**
+     * Наибольшее число соединений пула.
+     */
+    private int maxSize = 20;
+
+    /**
+     * Число соединений, которые пул держит открытыми без нагрузки.
+     */
+    private int minIdle = 2;
+
+    /**
+     * Наибольшее ожидание свободного соединения, после него запрос завершается ошибкой.
+     */
+    private Duration connectionTimeout = Duration.ofSeconds(3);
+
+    /**
+     * После скольких выполнений выражение готовится на сервере. 1 - с первого выполнения.
+     */
+    private int prepareThreshold = 1;
+
+    /**
+     * Переписывать пакеты вставок в многострочные {@code INSERT ... VALUES (...), (...)}.
+     */
+    private boolean reWriteBatchedInserts = true;
+
+    /**
+     * Исполнять запросы на виртуальных потоках, по одному на запрос. Требует Java 21,
+     * на более ранних версиях используются {@code threads} потоков платформы.
+     */
+    private boolean virtualThreads = true;
+
+    /**
+     * Число потоков платформы без виртуальных потоков.
+     */
+    private int threads = 64;
+
+}
@@ -0,0 +1,23 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки журнала операций.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.ledger")
+public class WalletLedgerProperties {
+
+    /**
+     * Запись журнала {@code wallet_operations} в транзакции операции.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Наибольшее число записей в одном многострочном INSERT; большие наборы вставляются несколькими выражениями.
+     */
+    private int flushSize = 1000;
+
+}
@@ -0,0 +1,18 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки метрик и отладочного логирования.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.metrics")
+public class WalletMetricsProperties {
+
+    /**
+     * Доля операций от 0 до 1, для которых пишется отладочный лог горячего пути при уровне DEBUG.
+     */
+    private double traceSampleRate = 0.0;
+
+}
@@ -0,0 +1,65 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки секционирования таблиц кошельков и журнала.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.partitioning")
+public class WalletPartitioningProperties {
+
+    /**
+     * Создание месячных секций журнала заранее.
+     */
+    private boolean enabled = true;
+
+    /**
+     * На сколько месяцев вперед от текущего создаются секции журнала.
+     */
+    private int monthsAhead = 3;
+
+    /**
+     * Период проверки секций журнала.
+     */
+    private Duration checkInterval = Duration.ofHours(12);
+
+    private Migration migration = new Migration();
+
+    /**
+     * Настройки переноса данных из несекционированных таблиц.
+     */
+    @Data
+    public static class Migration {
+
+        /**
+         * Перенос при запуске узла. Достаточно включить на одном узле.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Число строк, копируемых одним выражением.
+         */
+        private int chunkSize = 10_000;
+
+        /**
+         * Пауза между частями, ограничивающая нагрузку на БД.
+         */
+        private Duration chunkPause = Duration.ofMillis(50);
+
+        /**
+         * Время ожидания блокировки таблиц при переключении; при превышении переключение повторяется.
+         */
+        private Duration lockTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Число попыток переключения.
+         */
+        private int swapAttempts = 10;
+
+    }
+
+}
@@ -0,0 +1,140 @@
+package ru.iakovlysenko.wallet.config;
+
+import io.r2dbc.spi.ValidationDepth;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки пулов соединений R2DBC и драйвера PostgreSQL.
+ * Размеры задаются здесь для основной базы, а для шардов и реплики - в их собственных настройках;
+ * таймауты, проверка соединений, кеш подготовленных выражений и прогрев общие для всех пулов.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.pool")
+public class WalletPoolProperties {
+
+    /**
+     * Наибольшее число соединений пула основной базы.
+     */
+    private int maxSize = 10;
+
+    /**
+     * Число соединений, которые пул основной базы держит открытыми без нагрузки.
+     */
+    private int minIdle = 1;
+
+    /**
+     * Число соединений, которые пул открывает при запуске. Для шардов и реплики ограничено их {@code max-size}.
+     */
+    private int initialSize = 1;
+
+    /**
+     * Наибольшее ожидание свободного соединения, после него запрос завершается ошибкой.
+     */
+    private Duration maxAcquireTime = Duration.ofSeconds(3);
+
+    /**
+     * Наибольшее время открытия нового соединения.
+     */
+    private Duration maxCreateConnectionTime = Duration.ofSeconds(5);
+
+    /**
+     * Сколько свободное соединение живет в пуле сверх {@code min-idle}.
+     */
+    private Duration maxIdleTime = Duration.ofMinutes(30);
+
+    /**
+     * Наибольшее время жизни соединения. Закрытое по сроку соединение заменяется новым без прогрева выражений.
+     */
+    private Duration maxLifeTime = Duration.ofHours(1);
+
+    /**
+     * Период фоновой очистки пула от соединений с истекшим сроком.
+     */
+    private Duration backgroundEvictionInterval = Duration.ofSeconds(30);
+
+    /**
+     * Число повторов получения соединения, если выданное пулом не прошло проверку.
+     */
+    private int acquireRetry = 1;
+
+    /**
+     * Запрос проверки соединения при выдаче из пула. Пустое значение - проверка драйвером
+     * на глубину {@code validation-depth}.
+     */
+    private String validationQuery;
+
+    /**
+     * Глубина проверки соединения без {@code validation-query}: {@code LOCAL} - состояние соединения
+     * на клиенте, {@code REMOTE} - обмен с сервером.
+     */
+    private ValidationDepth validationDepth = ValidationDepth.LOCAL;
+
+    /**
+     * Наибольшее время проверки соединения.
+     */
+    private Duration maxValidationTime = Duration.ofSeconds(1);
+
+    private Driver driver = new Driver();
+
+    private Warmup warmup = new Warmup();
+
+    /**
+     * Настройки драйвера r2dbc-postgresql.
+     */
+    @Data
+    public static class Driver {
+
+        /**
+         * Размер кеша подготовленных выражений соединения: {@code -1} - без ограничения, {@code 0} - без кеша.
+         * Запросы с переменным списком {@code IN} дают разный текст, поэтому кеш ограничен.
+         */
+        private int preparedStatementCacheQueries = 256;
+
+        /**
+         * Число строк, которые драйвер получает за один запрос курсора; {@code 0} - все строки сразу.
+         */
+        private int fetchSize = 0;
+
+        /**
+         * Отправка пакетов без задержки Нейгла: запросы, отправленные в соединение подряд, уходят сразу,
+         * не дожидаясь ответа на предыдущие.
+         */
+        private boolean tcpNoDelay = true;
+
+        private boolean tcpKeepAlive = true;
+
+        /**
+         * Ограничение времени выполнения выражения на сервере, по умолчанию без ограничения.
+         */
+        private Duration statementTimeout;
+
+        /**
+         * Имя приложения в {@code pg_stat_activity}.
+         */
+        private String applicationName = "wallet";
+
+    }
+
+    /**
+     * Прогрев пулов при запуске.
+     */
+    @Data
+    public static class Warmup {
+
+        /**
+         * Открывать {@code initial-size} соединений каждого пула и готовить на них выражения
+         * репозитория кошельков до готовности приложения принимать запросы.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Наибольшее время прогрева. Незавершенный прогрев не мешает запуску.
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+
+    }
+
+}
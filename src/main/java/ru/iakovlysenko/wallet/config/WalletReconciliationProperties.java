@@ -0,0 +1,65 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки сверки балансов кошельков с журналом операций.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.reconciliation")
+public class WalletReconciliationProperties {
+
+    /**
+     * Периодическая сверка. Достаточно включить на одном узле.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Задержка первой сверки после запуска.
+     */
+    private Duration initialDelay = Duration.ofMinutes(1);
+
+    /**
+     * Период сверки.
+     */
+    private Duration interval = Duration.ofHours(1);
+
+    /**
+     * Число кошельков, сверяемых одним запросом.
+     */
+    private int chunkSize = 500;
+
+    /**
+     * Число диапазонов id, которые просматриваются одновременно; столько же соединений занимает сверка.
+     */
+    private int parallelism = 2;
+
+    /**
+     * Пауза между частями одного диапазона.
+     */
+    private Duration chunkPause = Duration.ofMillis(20);
+
+    /**
+     * Отставание снимка от текущего времени. Записи журнала старше него считаются записанными окончательно
+     * и входят в снимок; должно превышать задержку записи журнала с повторами.
+     */
+    private Duration settle = Duration.ofMinutes(1);
+
+    /**
+     * Пауза перед повторной проверкой расхождений: за неё журнал дописывает операции, которые
+     * на момент первой проверки были только в буфере.
+     */
+    private Duration recheckDelay = Duration.ofSeconds(5);
+
+    /**
+     * Наибольшее число запросов, ожидающих соединения в пулах, при котором сверка продолжает работу.
+     * При большем числе очередная часть откладывается на {@code throttle-backoff}.
+     */
+    private int maxPendingAcquires = 0;
+
+    private Duration throttleBackoff = Duration.ofMillis(200);
+
+}
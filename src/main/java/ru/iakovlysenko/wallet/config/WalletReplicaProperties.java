@@ -0,0 +1,63 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки чтения с реплики основной базы.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.replica")
+public class WalletReplicaProperties {
+
+    /**
+     * Чтение баланса и истории с реплики. Не действует при шардировании.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Адрес R2DBC реплики.
+     */
+    private String url;
+
+    /**
+     * Пользователь реплики, по умолчанию как у основной базы.
+     */
+    private String username;
+
+    private String password;
+
+    /**
+     * Наибольшее число соединений пула реплики.
+     */
+    private int maxSize = 10;
+
+    /**
+     * Число соединений, которые пул реплики держит открытыми без нагрузки.
+     */
+    private int minIdle = 1;
+
+    /**
+     * Наибольшее отставание реплики, при котором с неё еще читают.
+     */
+    private Duration maxLag = Duration.ofSeconds(1);
+
+    /**
+     * Период проверки отставания реплики.
+     */
+    private Duration lagCheckInterval = Duration.ofSeconds(1);
+
+    /**
+     * Сколько после изменения кошелька на этом узле его баланс и история читаются с основной базы.
+     * Должно быть не меньше {@code max-lag}.
+     */
+    private Duration readYourWritesWindow = Duration.ofSeconds(1);
+
+    /**
+     * Наибольшее число недавно измененных кошельков, которые помнит узел.
+     */
+    private long recentWritesMaxSize = 100_000;
+
+}
@@ -0,0 +1,100 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки распределения кошельков по нескольким базам данных.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.sharding")
+public class WalletShardingProperties {
+
+    /**
+     * Распределение по шардам. Выключенное означает одну базу из {@code spring.r2dbc}.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Число точек каждого шарда на кольце согласованного хеширования.
+     */
+    private int virtualNodes = 256;
+
+    /**
+     * Шарды в порядке объявления; первый обслуживает запросы вне кошелька.
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    private Rebalance rebalance = new Rebalance();
+
+    /**
+     * Подключение к шарду.
+     */
+    @Data
+    public static class Shard {
+
+        /**
+         * Имя шарда, от него зависит положение шарда на кольце.
+         */
+        private String name;
+
+        /**
+         * Адрес R2DBC.
+         */
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        /**
+         * Адрес JDBC для миграций Liquibase. Без него схема шарда не обновляется приложением.
+         */
+        private String jdbcUrl;
+
+        /**
+         * Наибольшее число соединений пула шарда.
+         */
+        private int maxSize = 10;
+
+        /**
+         * Число соединений, которые пул держит открытыми без нагрузки.
+         */
+        private int minIdle = 1;
+
+    }
+
+    /**
+     * Настройки перераспределения кошельков при добавлении шардов.
+     */
+    @Data
+    public static class Rebalance {
+
+        /**
+         * Имена шардов кольца до добавления новых. Непустой список включает поиск кошелька
+         * на прежнем шарде и задается на всех узлах до запуска переноса.
+         */
+        private List<String> previousShards = new ArrayList<>();
+
+        /**
+         * Перенос кошельков на новые шарды при запуске узла. Включается на одном узле.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Число кошельков, просматриваемых за один запрос.
+         */
+        private int chunkSize = 1000;
+
+        /**
+         * Пауза между частями, ограничивающая нагрузку на шарды.
+         */
+        private Duration chunkPause = Duration.ofMillis(100);
+
+    }
+
+}
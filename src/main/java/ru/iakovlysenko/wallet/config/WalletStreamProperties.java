@@ -0,0 +1,18 @@
+package ru.iakovlysenko.wallet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки потока изменений баланса.
+ */
+@Data
+@ConfigurationProperties(prefix = "wallet.stream")
+public class WalletStreamProperties {
+
+    /**
+     * Максимальное число одновременных подписок на узле; сверх него подписка отклоняется.
+     */
+    private int maxSubscribers = 10_000;
+
+}
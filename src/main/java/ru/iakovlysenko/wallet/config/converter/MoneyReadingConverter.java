@@ -0,0 +1,20 @@
+package ru.iakovlysenko.wallet.config.converter;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Чтение {@code DECIMAL(19, 2)} в {@link Money}.
+ */
+@ReadingConverter
+public class MoneyReadingConverter implements Converter<BigDecimal, Money> {
+
+    @Override
+    public Money convert(BigDecimal source) {
+        return Money.of(source);
+    }
+
+}
@@ -0,0 +1,23 @@
+package ru.iakovlysenko.wallet.config.converter;
+
+import io.r2dbc.spi.Row;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Чтение однострочного результата {@code RETURNING balance} в {@link Money}.
+ * Без него Spring Data принимает {@link Money} за сущность и пытается собрать её по именам колонок.
+ */
+@ReadingConverter
+public class MoneyRowReadingConverter implements Converter<Row, Money> {
+
+    @Override
+    public Money convert(Row source) {
+        BigDecimal value = source.get(0, BigDecimal.class);
+        return value == null ? null : Money.of(value);
+    }
+
+}
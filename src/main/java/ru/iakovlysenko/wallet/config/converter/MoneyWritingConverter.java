@@ -0,0 +1,20 @@
+package ru.iakovlysenko.wallet.config.converter;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.WritingConverter;
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Запись {@link Money} в {@code DECIMAL(19, 2)}.
+ */
+@WritingConverter
+public class MoneyWritingConverter implements Converter<Money, BigDecimal> {
+
+    @Override
+    public BigDecimal convert(Money source) {
+        return source.toBigDecimal();
+    }
+
+}
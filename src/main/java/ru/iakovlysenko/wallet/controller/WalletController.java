@@ -1,12 +1,28 @@
 package ru.iakovlysenko.wallet.controller;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.controller.codec.WalletMediaTypes;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
 import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
 import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.dto.WalletPayoutRequest;
+import ru.iakovlysenko.wallet.dto.WalletTransferRequest;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -17,14 +33,72 @@ public interface WalletController {
 
     /**
      * Метод, осуществляющий операцию.
+     * Повтор запроса с тем же заголовком {@code Idempotency-Key} возвращает сохраненный ответ без повторного применения.
+     * Кроме JSON принимает и отдает {@code application/cbor}.
      */
     @PostMapping("/wallet")
-    Mono<ResponseEntity<WalletOperationResponse>> performOperation(@Valid @RequestBody WalletOperationRequest request);
+    Mono<ResponseEntity<WalletOperationResponse>> performOperation(@Valid @RequestBody WalletOperationRequest request,
+                                                                   @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey);
+
+    /**
+     * Метод, осуществляющий поток операций по одному соединению в {@code application/x-cbor-stream}.
+     * Клиент шлет следующие операции, не дожидаясь ответов; результаты возвращаются кадрами в порядке операций.
+     */
+    @PostMapping(value = "/wallet",
+            consumes = WalletMediaTypes.CBOR_STREAM_VALUE, produces = WalletMediaTypes.CBOR_STREAM_VALUE)
+    Flux<WalletBatchItemResponse> performOperations(@RequestBody Flux<WalletOperationFrame> requests);
+
+    /**
+     * Метод, осуществляющий пакет операций. Результаты возвращаются в порядке запросов.
+     */
+    @PostMapping("/wallets/batch")
+    Mono<ResponseEntity<Object>> performBatch(
+            @RequestBody @NotEmpty @Size(max = 100_000) List<@Valid WalletOperationRequest> requests);
+
+    /**
+     * Метод, осуществляющий перевод между кошельками в одной транзакции.
+     */
+    @PostMapping("/wallets/transfer")
+    Mono<ResponseEntity<Object>> transfer(@Valid @RequestBody WalletTransferRequest request);
+
+    /**
+     * Метод, осуществляющий выплаты с одного кошелька нескольким получателям: все или ни одной.
+     */
+    @PostMapping("/wallets/payout")
+    Mono<ResponseEntity<Object>> payout(@Valid @RequestBody WalletPayoutRequest request);
 
     /**
      * Метод для получения баланса.
+     * Заголовок {@code Cache-Control: no-cache} требует чтения из БД в обход кеша.
+     * Кроме JSON отдает {@code application/cbor}.
      */
     @GetMapping("/wallets/{walletId}")
-    Mono<ResponseEntity<Object>> getBalance(@PathVariable UUID walletId);
+    Mono<ResponseEntity<Object>> getBalance(@PathVariable UUID walletId,
+                                            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl);
+
+    /**
+     * Метод для подписки на баланс по SSE: текущий баланс сразу, затем после каждого изменения.
+     * Медленный клиент получает только последний баланс.
+     */
+    @GetMapping(value = "/wallets/{walletId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<WalletBalanceResponse>> streamBalance(@PathVariable UUID walletId);
+
+    /**
+     * Метод для получения страницы истории операций, от новых к старым.
+     * Следующая страница запрашивается с {@code cursor} из ответа.
+     */
+    @GetMapping(value = "/wallets/{walletId}/operations", produces = MediaType.APPLICATION_JSON_VALUE)
+    Mono<ResponseEntity<Object>> getOperations(@PathVariable UUID walletId,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) @Min(1) @Max(1000) Integer limit);
+
+    /**
+     * Метод для потоковой выгрузки истории операций в NDJSON или SSE.
+     * Записи отдаются по мере чтения из БД с учетом скорости клиента; {@code cursor} продолжает выгрузку.
+     */
+    @GetMapping(value = "/wallets/{walletId}/operations",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    Flux<WalletHistoryItemResponse> streamOperations(@PathVariable UUID walletId,
+                                                     @RequestParam(required = false) String cursor);
 
 }
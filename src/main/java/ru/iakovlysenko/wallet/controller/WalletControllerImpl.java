@@ -2,19 +2,36 @@ package ru.iakovlysenko.wallet.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.iakovlysenko.wallet.dto.ErrorResponse;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
 import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
 import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.dto.WalletPayoutRequest;
+import ru.iakovlysenko.wallet.dto.WalletTransferRequest;
+import ru.iakovlysenko.wallet.exception.ConcurrentUpdateException;
+import ru.iakovlysenko.wallet.exception.CrossShardOperationException;
+import ru.iakovlysenko.wallet.exception.IdempotencyKeyReuseException;
 import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.InvalidCursorException;
 import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
 import ru.iakovlysenko.wallet.service.WalletService;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -24,14 +41,34 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class WalletControllerImpl implements WalletController {
 
+    private static final String NO_CACHE = "no-cache";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    private static final String BALANCE_EVENT = "balance";
+
+    /**
+     * Период комментария-пульса в потоке SSE: не дает прокси закрыть тихое соединение
+     * и обнаруживает отключившихся клиентов.
+     */
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
     private final WalletService walletService;
+    private final WalletOperationPipeline operationPipeline;
 
     @Override
-    public Mono<ResponseEntity<WalletOperationResponse>> performOperation(@Valid @RequestBody WalletOperationRequest request) {
+    public Mono<ResponseEntity<WalletOperationResponse>> performOperation(@Valid @RequestBody WalletOperationRequest request,
+                                                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return Mono.just(ResponseEntity.badRequest()
+                    .body(new WalletOperationResponse(
+                            request.walletId(),
+                            null,
+                            "Ключ идемпотентности должен содержать от 1 до " + MAX_IDEMPOTENCY_KEY_LENGTH + " символов")));
+        }
         return walletService.performOperation(
                         request.walletId(),
                         request.operationType(),
-                        request.amount())
+                        request.amount(),
+                        idempotencyKey)
                 .map(ResponseEntity::ok)
                 .onErrorResume(WalletNotFoundException.class, ex ->
                         Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -45,6 +82,18 @@ public class WalletControllerImpl implements WalletController {
                                         request.walletId(),
                                         null,
                                         ex.getMessage()))))
+                .onErrorResume(IdempotencyKeyReuseException.class, ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.valueOf(422))
+                                .body(new WalletOperationResponse(
+                                        request.walletId(),
+                                        null,
+                                        ex.getMessage()))))
+                .onErrorResume(ConcurrentUpdateException.class, ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.CONFLICT)
+                                .body(new WalletOperationResponse(
+                                        request.walletId(),
+                                        null,
+                                        ex.getMessage()))))
                 .onErrorResume(ex -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body(new WalletOperationResponse(
                                 request.walletId(),
@@ -53,8 +102,66 @@ public class WalletControllerImpl implements WalletController {
     }
 
     @Override
-    public Mono<ResponseEntity<Object>> getBalance(@PathVariable UUID walletId) {
-        return walletService.getBalance(walletId)
+    public Flux<WalletBatchItemResponse> performOperations(@RequestBody Flux<WalletOperationFrame> requests) {
+        return operationPipeline.performAll(requests);
+    }
+
+    @Override
+    public Mono<ResponseEntity<Object>> performBatch(@RequestBody List<WalletOperationRequest> requests) {
+        return walletService.performBatch(requests)
+                .collectList()
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .onErrorResume(ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                .body(new ErrorResponse(
+                                        "INTERNAL_ERROR",
+                                        "Внутренняя ошибка сервера",
+                                        HttpStatus.INTERNAL_SERVER_ERROR.value()))));
+    }
+
+    @Override
+    public Mono<ResponseEntity<Object>> transfer(@Valid @RequestBody WalletTransferRequest request) {
+        return transferResponse(walletService.transfer(
+                request.fromWalletId(),
+                request.toWalletId(),
+                request.amount()));
+    }
+
+    @Override
+    public Mono<ResponseEntity<Object>> payout(@Valid @RequestBody WalletPayoutRequest request) {
+        return transferResponse(walletService.payout(request));
+    }
+
+    private Mono<ResponseEntity<Object>> transferResponse(Mono<?> transfer) {
+        return transfer
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .onErrorResume(InsufficientFundsException.class, ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                                .body(new ErrorResponse(
+                                        "INSUFFICIENT_FUNDS",
+                                        ex.getMessage(),
+                                        HttpStatus.UNPROCESSABLE_ENTITY.value()))))
+                .onErrorResume(CrossShardOperationException.class, ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                                .body(new ErrorResponse(
+                                        "CROSS_SHARD_OPERATION",
+                                        ex.getMessage(),
+                                        HttpStatus.UNPROCESSABLE_ENTITY.value()))))
+                .onErrorResume(ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                .body(new ErrorResponse(
+                                        "INTERNAL_ERROR",
+                                        "Внутренняя ошибка сервера",
+                                        HttpStatus.INTERNAL_SERVER_ERROR.value()))));
+    }
+
+    @Override
+    public Mono<ResponseEntity<Object>> getBalance(@PathVariable UUID walletId,
+                                                   @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        Mono<WalletBalanceResponse> balance = cacheControl != null && cacheControl.contains(NO_CACHE)
+                ? walletService.getConsistentBalance(walletId)
+                : walletService.getBalance(walletId);
+        return balance
                 .<ResponseEntity<Object>>map(ResponseEntity::ok)
                 .onErrorResume(WalletNotFoundException.class, ex ->
                         Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -70,4 +177,39 @@ public class WalletControllerImpl implements WalletController {
                                         HttpStatus.INTERNAL_SERVER_ERROR.value()))));
     }
 
+    @Override
+    public Flux<ServerSentEvent<WalletBalanceResponse>> streamBalance(@PathVariable UUID walletId) {
+        return Flux.merge(
+                walletService.streamBalance(walletId)
+                        .map(balance -> ServerSentEvent.builder(balance).event(BALANCE_EVENT).build()),
+                Flux.interval(HEARTBEAT_INTERVAL)
+                        .map(tick -> ServerSentEvent.<WalletBalanceResponse>builder().comment("heartbeat").build()));
+    }
+
+    @Override
+    public Mono<ResponseEntity<Object>> getOperations(@PathVariable UUID walletId,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit) {
+        return walletService.getOperations(walletId, cursor, limit)
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .onErrorResume(InvalidCursorException.class, ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                .body(new ErrorResponse(
+                                        "INVALID_CURSOR",
+                                        ex.getMessage(),
+                                        HttpStatus.BAD_REQUEST.value()))))
+                .onErrorResume(ex ->
+                        Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                .body(new ErrorResponse(
+                                        "INTERNAL_ERROR",
+                                        "Внутренняя ошибка сервера",
+                                        HttpStatus.INTERNAL_SERVER_ERROR.value()))));
+    }
+
+    @Override
+    public Flux<WalletHistoryItemResponse> streamOperations(@PathVariable UUID walletId,
+                                                            @RequestParam(required = false) String cursor) {
+        return walletService.streamOperations(walletId, cursor);
+    }
+
 }
@@ -0,0 +1,101 @@
+package ru.iakovlysenko.wallet.controller;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletBinaryProperties;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
+import ru.iakovlysenko.wallet.exception.AdmissionRejectedException;
+import ru.iakovlysenko.wallet.exception.ConcurrentUpdateException;
+import ru.iakovlysenko.wallet.exception.IdempotencyKeyReuseException;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.admission.OperationAdmission;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Операции, которые клиент шлет по одному соединению, не дожидаясь ответов: поток CBOR по HTTP и каналы RSocket.
+ * Результат каждой операции - результат пакета со статусом; ошибка одной операции не обрывает поток.
+ * Каждая операция проходит допуск {@link OperationAdmission}, отказ - результат со статусом {@code 429}.
+ */
+@Component
+@RequiredArgsConstructor
+public class WalletOperationPipeline {
+
+    private final WalletService walletService;
+    private final Validator validator;
+    private final WalletBinaryProperties binaryProperties;
+    private final OperationAdmission operationAdmission;
+
+    /**
+     * Выполняет до {@code pipeline-depth} операций одновременно и возвращает результаты в порядке операций.
+     * Операция кошелька начинается после завершения предыдущей операции того же кошелька,
+     * поэтому операции одного кошелька применяются в порядке потока.
+     * Следующие операции запрашиваются у клиента по мере завершения выполняющихся.
+     */
+    public Flux<WalletBatchItemResponse> performAll(Flux<WalletOperationFrame> requests) {
+        Map<UUID, Mono<WalletBatchItemResponse>> tails = new ConcurrentHashMap<>();
+        return requests.flatMapSequential(request -> ordered(request, tails), binaryProperties.getPipelineDepth());
+    }
+
+    /**
+     * Ставит операцию за последней выполняющейся операцией того же кошелька.
+     */
+    private Mono<WalletBatchItemResponse> ordered(WalletOperationFrame request,
+                                                  Map<UUID, Mono<WalletBatchItemResponse>> tails) {
+        if (request.walletId() == null) {
+            return perform(request);
+        }
+        Mono<WalletBatchItemResponse> operation = Mono.defer(() -> perform(request));
+        Mono<WalletBatchItemResponse> previous = tails.get(request.walletId());
+        Mono<WalletBatchItemResponse> tail = (previous == null ? operation : previous.then(operation)).cache();
+        tails.put(request.walletId(), tail);
+        return tail.doFinally(signal -> tails.remove(request.walletId(), tail));
+    }
+
+    public Mono<WalletBatchItemResponse> perform(WalletOperationFrame request) {
+        Set<ConstraintViolation<WalletOperationFrame>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return Mono.just(error(request, HttpStatus.BAD_REQUEST, message));
+        }
+        return operationAdmission.admit(request.walletId(), Mono.defer(() -> walletService.performOperation(
+                        request.walletId(), request.operationType(), request.amount(), request.idempotencyKey())))
+                .map(response -> new WalletBatchItemResponse(
+                        response.walletId(),
+                        HttpStatus.OK.value(),
+                        response.balance(),
+                        response.message()))
+                .onErrorResume(AdmissionRejectedException.class, ex ->
+                        Mono.just(error(request, HttpStatus.TOO_MANY_REQUESTS, ex.getMessage())))
+                .onErrorResume(WalletNotFoundException.class, ex ->
+                        Mono.just(error(request, HttpStatus.NOT_FOUND, ex.getMessage())))
+                .onErrorResume(InsufficientFundsException.class, ex ->
+                        Mono.just(error(request, HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage())))
+                .onErrorResume(IdempotencyKeyReuseException.class, ex ->
+                        Mono.just(error(request, HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage())))
+                .onErrorResume(ConcurrentUpdateException.class, ex ->
+                        Mono.just(error(request, HttpStatus.CONFLICT, ex.getMessage())))
+                .onErrorResume(ex ->
+                        Mono.just(error(request, HttpStatus.INTERNAL_SERVER_ERROR, "Внутренняя ошибка сервера")));
+    }
+
+    private static WalletBatchItemResponse error(WalletOperationFrame request, HttpStatus status, String message) {
+        return new WalletBatchItemResponse(request.walletId(), status.value(), null, message);
+    }
+
+}
@@ -0,0 +1,46 @@
+package ru.iakovlysenko.wallet.controller;
+
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
+
+import java.util.UUID;
+
+/**
+ * Интерфейс под реализацию контроллера RSocket.
+ * Операции и баланс по одному долгоживущему соединению: запросы мультиплексируются, поток ограничивается
+ * запросами {@code REQUEST_N} клиента.
+ * Ошибка запроса баланса возвращается телом {@link ru.iakovlysenko.wallet.dto.ErrorResponse} с кодом и статусом, как в HTTP.
+ */
+public interface WalletRSocketController {
+
+    /**
+     * Метод, осуществляющий операцию (request-response).
+     * Ошибка операции возвращается результатом со статусом, как в пакете.
+     */
+    @MessageMapping("wallet.operation")
+    Mono<WalletBatchItemResponse> performOperation(WalletOperationFrame request);
+
+    /**
+     * Метод, осуществляющий поток операций (request-channel). Результаты возвращаются в порядке операций.
+     */
+    @MessageMapping("wallet.operations")
+    Flux<WalletBatchItemResponse> performOperations(Flux<WalletOperationFrame> requests);
+
+    /**
+     * Метод для получения баланса (request-response).
+     */
+    @MessageMapping("wallets.{walletId}.balance")
+    Mono<WalletBalanceResponse> getBalance(@DestinationVariable UUID walletId);
+
+    /**
+     * Метод для подписки на баланс (request-stream): текущий баланс сразу, затем после каждого изменения.
+     */
+    @MessageMapping("wallets.{walletId}.stream")
+    Flux<WalletBalanceResponse> streamBalance(@DestinationVariable UUID walletId);
+
+}
@@ -0,0 +1,78 @@
+package ru.iakovlysenko.wallet.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.dto.ErrorResponse;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
+import ru.iakovlysenko.wallet.exception.AdmissionRejectedException;
+import ru.iakovlysenko.wallet.exception.TooManySubscribersException;
+import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.admission.OperationAdmission;
+
+import java.util.UUID;
+
+/**
+ * Реализация {@link WalletRSocketController}
+ */
+@Slf4j
+@Controller
+@RequiredArgsConstructor
+public class WalletRSocketControllerImpl implements WalletRSocketController {
+
+    private final WalletService walletService;
+    private final WalletOperationPipeline operationPipeline;
+    private final OperationAdmission operationAdmission;
+
+    @Override
+    public Mono<WalletBatchItemResponse> performOperation(WalletOperationFrame request) {
+        return operationPipeline.perform(request);
+    }
+
+    @Override
+    public Flux<WalletBatchItemResponse> performOperations(Flux<WalletOperationFrame> requests) {
+        return operationPipeline.performAll(requests);
+    }
+
+    @Override
+    public Mono<WalletBalanceResponse> getBalance(@DestinationVariable UUID walletId) {
+        return operationAdmission.admit(walletId, Mono.defer(() -> walletService.getBalance(walletId)));
+    }
+
+    @Override
+    public Flux<WalletBalanceResponse> streamBalance(@DestinationVariable UUID walletId) {
+        return operationAdmission.admitStream(walletId, Flux.defer(() -> walletService.streamBalance(walletId)));
+    }
+
+    @MessageExceptionHandler(WalletNotFoundException.class)
+    public Mono<ErrorResponse> handleWalletNotFoundException(WalletNotFoundException ex) {
+        return Mono.just(new ErrorResponse("NOT_FOUND", ex.getMessage(), HttpStatus.NOT_FOUND.value()));
+    }
+
+    @MessageExceptionHandler(AdmissionRejectedException.class)
+    public Mono<ErrorResponse> handleAdmissionRejectedException(AdmissionRejectedException ex) {
+        return Mono.just(new ErrorResponse(ex.getError(), ex.getMessage(), HttpStatus.TOO_MANY_REQUESTS.value()));
+    }
+
+    @MessageExceptionHandler(TooManySubscribersException.class)
+    public Mono<ErrorResponse> handleTooManySubscribersException(TooManySubscribersException ex) {
+        log.warn(ex.getMessage());
+        return Mono.just(new ErrorResponse("TOO_MANY_SUBSCRIBERS", ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE.value()));
+    }
+
+    @MessageExceptionHandler
+    public Mono<ErrorResponse> handleException(Exception ex) {
+        log.error("Ошибка запроса RSocket: {}", ex.getMessage());
+        return Mono.just(new ErrorResponse("INTERNAL_ERROR", "Внутренняя ошибка сервера",
+                HttpStatus.INTERNAL_SERVER_ERROR.value()));
+    }
+
+}
@@ -0,0 +1,127 @@
+package ru.iakovlysenko.wallet.controller.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Читает поток {@link WalletMediaTypes#CBOR_STREAM}: каждое сообщение читается, как только пришел его кадр целиком,
+ * не дожидаясь конца тела запроса.
+ */
+public class LengthDelimitedCborDecoder implements Decoder<Object> {
+
+    private static final int LENGTH_SIZE = 4;
+
+    private final ObjectMapper objectMapper;
+    private final int maxFrameSize;
+
+    public LengthDelimitedCborDecoder(ObjectMapper objectMapper, int maxFrameSize) {
+        this.objectMapper = objectMapper;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return mimeType != null && WalletMediaTypes.CBOR_STREAM.isCompatibleWith(mimeType);
+    }
+
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                               MimeType mimeType, Map<String, Object> hints) {
+        ObjectReader reader = objectMapper.readerFor(objectMapper.constructType(elementType.getType()));
+        return Flux.defer(() -> {
+            FrameReader frames = new FrameReader(reader);
+            return Flux.from(inputStream)
+                    .concatMapIterable(frames::read)
+                    .concatWith(Mono.defer(() -> frames.isEmpty()
+                            ? Mono.empty()
+                            : Mono.error(new DecodingException("Поток оборвался посреди кадра"))));
+        });
+    }
+
+    @Override
+    public Mono<Object> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                     MimeType mimeType, Map<String, Object> hints) {
+        return decode(inputStream, elementType, mimeType, hints).singleOrEmpty();
+    }
+
+    @Override
+    public List<MimeType> getDecodableMimeTypes() {
+        return List.of(WalletMediaTypes.CBOR_STREAM);
+    }
+
+    /**
+     * Копит байты незаконченного кадра между буферами одного тела.
+     */
+    private final class FrameReader {
+
+        private final ObjectReader reader;
+        private byte[] pending = new byte[256];
+        private int start;
+        private int end;
+
+        private FrameReader(ObjectReader reader) {
+            this.reader = reader;
+        }
+
+        List<Object> read(DataBuffer buffer) {
+            try {
+                append(buffer);
+                List<Object> messages = new ArrayList<>();
+                while (end - start >= LENGTH_SIZE) {
+                    int size = (pending[start] & 0xFF) << 24 | (pending[start + 1] & 0xFF) << 16
+                            | (pending[start + 2] & 0xFF) << 8 | pending[start + 3] & 0xFF;
+                    if (size < 0 || size > maxFrameSize) {
+                        throw new DataBufferLimitException("Кадр больше " + maxFrameSize + " байт: " + size);
+                    }
+                    if (end - start - LENGTH_SIZE < size) {
+                        break;
+                    }
+                    messages.add(reader.readValue(pending, start + LENGTH_SIZE, size));
+                    start += LENGTH_SIZE + size;
+                }
+                return messages;
+            } catch (IOException e) {
+                throw new DecodingException("Неверный кадр CBOR: " + e.getMessage(), e);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        boolean isEmpty() {
+            return start == end;
+        }
+
+        private void append(DataBuffer buffer) {
+            int count = buffer.readableByteCount();
+            if (start > 0) {
+                System.arraycopy(pending, start, pending, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (pending.length - end < count) {
+                byte[] grown = new byte[Math.max(pending.length * 2, end + count)];
+                System.arraycopy(pending, 0, grown, 0, end);
+                pending = grown;
+            }
+            buffer.read(pending, end, count);
+            end += count;
+        }
+
+    }
+
+}
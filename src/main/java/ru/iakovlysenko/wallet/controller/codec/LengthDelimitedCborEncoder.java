@@ -0,0 +1,75 @@
+package ru.iakovlysenko.wallet.controller.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пишет поток {@link WalletMediaTypes#CBOR_STREAM}: каждое сообщение - отдельный кадр,
+ * отправляемый клиенту сразу после записи.
+ */
+public class LengthDelimitedCborEncoder implements HttpMessageEncoder<Object> {
+
+    private static final int LENGTH_SIZE = 4;
+
+    private final ObjectMapper objectMapper;
+
+    public LengthDelimitedCborEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return mimeType != null && WalletMediaTypes.CBOR_STREAM.isCompatibleWith(mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        ObjectWriter writer = objectMapper.writerFor(objectMapper.constructType(elementType.getType()));
+        return Flux.from(inputStream).map(value -> encode(writer, value, bufferFactory));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  MimeType mimeType, Map<String, Object> hints) {
+        return encode(objectMapper.writerFor(objectMapper.constructType(valueType.getType())), value, bufferFactory);
+    }
+
+    private static DataBuffer encode(ObjectWriter writer, Object value, DataBufferFactory bufferFactory) {
+        byte[] body;
+        try {
+            body = writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new EncodingException("Ошибка записи кадра CBOR: " + e.getMessage(), e);
+        }
+        DataBuffer buffer = bufferFactory.allocateBuffer(LENGTH_SIZE + body.length);
+        buffer.write(new byte[]{(byte) (body.length >>> 24), (byte) (body.length >>> 16),
+                (byte) (body.length >>> 8), (byte) body.length});
+        buffer.write(body);
+        return buffer;
+    }
+
+    @Override
+    public List<MimeType> getEncodableMimeTypes() {
+        return List.of(WalletMediaTypes.CBOR_STREAM);
+    }
+
+    @Override
+    public List<MediaType> getStreamingMediaTypes() {
+        return List.of(WalletMediaTypes.CBOR_STREAM);
+    }
+
+}
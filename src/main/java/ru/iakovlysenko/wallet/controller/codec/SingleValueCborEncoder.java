@@ -0,0 +1,37 @@
+package ru.iakovlysenko.wallet.controller.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * {@code application/cbor} для одиночных ответов.
+ * {@link Jackson2CborEncoder} кодирует только через {@code encodeValue}, а запись ответа WebFlux вызывает
+ * {@code encode} и для одного значения; поток значений по-прежнему не поддерживается -
+ * для него есть {@link WalletMediaTypes#CBOR_STREAM}.
+ */
+public class SingleValueCborEncoder extends Jackson2CborEncoder {
+
+    public SingleValueCborEncoder(ObjectMapper objectMapper) {
+        super(objectMapper, MediaType.APPLICATION_CBOR);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        if (!(inputStream instanceof Mono<?> value)) {
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+        return value.map(body -> encodeValue(body, bufferFactory, elementType, mimeType, hints)).flux();
+    }
+
+}
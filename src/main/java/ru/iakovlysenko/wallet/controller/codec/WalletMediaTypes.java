@@ -0,0 +1,20 @@
+package ru.iakovlysenko.wallet.controller.codec;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Типы содержимого двоичного протокола.
+ */
+public final class WalletMediaTypes {
+
+    public static final String CBOR_STREAM_VALUE = "application/x-cbor-stream";
+
+    /**
+     * Поток кадров: длина тела в 4 байтах от старшего к младшему, затем тело CBOR.
+     */
+    public static final MediaType CBOR_STREAM = MediaType.parseMediaType(CBOR_STREAM_VALUE);
+
+    private WalletMediaTypes() {
+    }
+
+}
@@ -0,0 +1,262 @@
+package ru.iakovlysenko.wallet.controller.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletAdmissionProperties;
+import ru.iakovlysenko.wallet.controller.codec.WalletMediaTypes;
+import ru.iakovlysenko.wallet.dto.ErrorResponse;
+import ru.iakovlysenko.wallet.service.admission.AdaptiveConcurrencyLimiter;
+import ru.iakovlysenko.wallet.service.admission.WalletRateLimiter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Допуск запросов к API кошельков до контроллера.
+ * Запрос сначала занимает место в пределе одновременных запросов {@link AdaptiveConcurrencyLimiter}, затем
+ * забирает токен кошелька в {@link WalletRateLimiter}. Кошелек берется из пути {@code /wallets/{walletId}},
+ * а у операции и перевода - из поля верхнего уровня тела JSON или CBOR: {@code walletId} или {@code fromWalletId};
+ * тело до {@code max-body-size} читается один раз и передается контроллеру. Пакеты и выплаты ограничиваются только пределом одновременных запросов;
+ * подписки на баланс и потоки истории - только частотой запросов к кошельку. Поток операций
+ * {@code application/x-cbor-stream} фильтр не буферизует и не ограничивает: каждый кадр проходит
+ * {@link ru.iakovlysenko.wallet.service.admission.OperationAdmission} в конвейере операций, с пределом
+ * одновременных запросов и частотой запросов к кошельку кадра.
+ * Отказ - ответ {@code 429} с {@code Retry-After} из заранее закодированного тела, без обращения к БД.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "wallet.admission", name = "enabled", havingValue = "true")
+public class AdmissionWebFilter implements WebFilter {
+
+    private static final String API = "/api/v1/";
+    private static final String WALLETS = "/api/v1/wallets/";
+    private static final String OPERATION = "/api/v1/wallet";
+    private static final String TRANSFER = "/api/v1/wallets/transfer";
+    private static final String STREAM = "/stream";
+    private static final String OPERATIONS = "/operations";
+    private static final int UUID_LENGTH = 36;
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final CBORFactory CBOR = new CBORFactory();
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final WalletRateLimiter walletRateLimiter;
+    private final byte[] overloadedBody;
+    private final byte[] walletRateLimitedBody;
+    private final Counter overloaded;
+    private final Counter walletRateLimited;
+    private final int maxBodySize;
+
+    public AdmissionWebFilter(AdaptiveConcurrencyLimiter concurrencyLimiter,
+                              WalletRateLimiter walletRateLimiter,
+                              ObjectMapper objectMapper,
+                              WalletAdmissionProperties properties,
+                              MeterRegistry meterRegistry) throws JsonProcessingException {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.walletRateLimiter = walletRateLimiter;
+        this.maxBodySize = properties.getMaxBodySize();
+        this.overloadedBody = objectMapper.writeValueAsBytes(new ErrorResponse("OVERLOADED",
+                "Сервис перегружен, повторите запрос позже", HttpStatus.TOO_MANY_REQUESTS.value()));
+        this.walletRateLimitedBody = objectMapper.writeValueAsBytes(new ErrorResponse("WALLET_RATE_LIMITED",
+                "Слишком много запросов к кошельку, повторите запрос позже", HttpStatus.TOO_MANY_REQUESTS.value()));
+        this.overloaded = rejected(meterRegistry, "concurrency");
+        this.walletRateLimited = rejected(meterRegistry, "wallet");
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("wallet.admission.rejected")
+                .description("Отклоненные при допуске запросы")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().value();
+        if (!path.startsWith(API)) {
+            return chain.filter(exchange);
+        }
+        if (isStreaming(request, path)) {
+            return admitWallet(exchange, chain, path);
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            overloaded.increment();
+            return reject(exchange, overloadedBody, 1);
+        }
+        return Mono.defer(() -> admitWallet(exchange, chain, path))
+                .doFinally(signal -> concurrencyLimiter.release());
+    }
+
+    private Mono<Void> admitWallet(ServerWebExchange exchange, WebFilterChain chain, String path) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() == HttpMethod.GET) {
+            UUID walletId = pathWalletId(path);
+            long waitNanos = walletId == null ? 0 : walletRateLimiter.tryAcquire(walletId);
+            return waitNanos == 0 ? chain.filter(exchange) : rejectWallet(exchange, waitNanos);
+        }
+        MediaType contentType = request.getHeaders().getContentType();
+        if (request.getMethod() != HttpMethod.POST || !(path.equals(OPERATION) || path.equals(TRANSFER))
+                || contentType != null && WalletMediaTypes.CBOR_STREAM.equalsTypeAndSubtype(contentType)) {
+            return chain.filter(exchange);
+        }
+        String field = path.equals(OPERATION) ? "walletId" : "fromWalletId";
+        JsonFactory format = contentType != null && MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(contentType)
+                ? CBOR
+                : JSON;
+        return DataBufferUtils.join(request.getBody(), maxBodySize)
+                .map(body -> {
+                    UUID walletId = bodyWalletId(body, field, format);
+                    long waitNanos = walletId == null ? 0 : walletRateLimiter.tryAcquire(walletId);
+                    if (waitNanos > 0) {
+                        DataBufferUtils.release(body);
+                        return rejectWallet(exchange, waitNanos);
+                    }
+                    return chain.filter(exchange.mutate().request(new ServerHttpRequestDecorator(request) {
+                        @Override
+                        public Flux<DataBuffer> getBody() {
+                            return Flux.just(body);
+                        }
+                    }).build());
+                })
+                .defaultIfEmpty(Mono.defer(() -> chain.filter(exchange)))
+                .flatMap(Function.identity())
+                .onErrorMap(DataBufferLimitException.class,
+                        ex -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, ex.getMessage()));
+    }
+
+    private Mono<Void> rejectWallet(ServerWebExchange exchange, long waitNanos) {
+        walletRateLimited.increment();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        return reject(exchange, walletRateLimitedBody, retryAfterSeconds);
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, byte[] body, long retryAfterSeconds) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    /**
+     * Подписки на баланс, потоки истории и поток операций держат запрос открытым, поэтому не занимают место
+     * в пределе одновременных запросов. Решение принимается по маршруту: {@code GET /wallets/{walletId}/stream},
+     * {@code GET /wallets/{walletId}/operations} с потоковым {@code Accept} и {@code POST /wallet}
+     * с телом {@code application/x-cbor-stream}.
+     */
+    static boolean isStreaming(ServerHttpRequest request, String path) {
+        if (request.getMethod() == HttpMethod.POST) {
+            MediaType contentType = request.getHeaders().getContentType();
+            return path.equals(OPERATION) && contentType != null
+                    && WalletMediaTypes.CBOR_STREAM.equalsTypeAndSubtype(contentType);
+        }
+        if (request.getMethod() != HttpMethod.GET || pathWalletId(path) == null) {
+            return false;
+        }
+        String route = path.substring(WALLETS.length() + UUID_LENGTH);
+        if (route.equals(STREAM)) {
+            return true;
+        }
+        if (!route.equals(OPERATIONS)) {
+            return false;
+        }
+        for (MediaType accept : request.getHeaders().getAccept()) {
+            if (MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(accept)
+                    || MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(accept)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Id кошелька из {@code /api/v1/wallets/{walletId}[/...]}.
+     */
+    static UUID pathWalletId(String path) {
+        if (!path.startsWith(WALLETS) || path.length() < WALLETS.length() + UUID_LENGTH) {
+            return null;
+        }
+        int end = WALLETS.length() + UUID_LENGTH;
+        if (path.length() > end && path.charAt(end) != '/') {
+            return null;
+        }
+        return parse(path.substring(WALLETS.length(), end));
+    }
+
+    /**
+     * Значение поля верхнего уровня {@code field} тела JSON или CBOR как UUID: строкой или, в CBOR, 16 байтами,
+     * как UUID пишет Jackson. Разбор потоковый и останавливается на поле; полный разбор тела остается контроллеру.
+     * Если поле не найдено или не является UUID, запрос ограничивается только пределом одновременных запросов.
+     * Позиция чтения буфера не меняется, тело целиком передается контроллеру.
+     */
+    static UUID bodyWalletId(DataBuffer body, String field, JsonFactory format) {
+        byte[] bytes = new byte[body.readableByteCount()];
+        int position = body.readPosition();
+        body.read(bytes);
+        body.readPosition(position);
+        try (JsonParser parser = format.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!field.equals(name)) {
+                    parser.skipChildren();
+                } else if (value == JsonToken.VALUE_STRING) {
+                    return parse(parser.getText());
+                } else if (value == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                    byte[] binary = parser.getBinaryValue();
+                    if (binary.length != 16) {
+                        return null;
+                    }
+                    ByteBuffer uuid = ByteBuffer.wrap(binary);
+                    return new UUID(uuid.getLong(), uuid.getLong());
+                } else {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static UUID parse(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
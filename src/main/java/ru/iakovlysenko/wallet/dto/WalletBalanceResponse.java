@@ -1,6 +1,7 @@
 package ru.iakovlysenko.wallet.dto;
 
-import java.math.BigDecimal;
+import ru.iakovlysenko.wallet.model.Money;
+
 import java.util.UUID;
 
 /**
@@ -10,6 +11,6 @@ import java.util.UUID;
  */
 public record WalletBalanceResponse(
         UUID walletId,
-        BigDecimal balance
+        Money balance
 ) {
 }
@@ -0,0 +1,20 @@
+package ru.iakovlysenko.wallet.dto;
+
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.util.UUID;
+
+/**
+ * ДТО представляющая результат одной операции пакета.
+ * @param walletId
+ * @param status
+ * @param balance
+ * @param message
+ */
+public record WalletBatchItemResponse(
+        UUID walletId,
+        int status,
+        Money balance,
+        String message
+) {
+}
@@ -0,0 +1,26 @@
+package ru.iakovlysenko.wallet.dto;
+
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * ДТО представляющая запись истории операций кошелька.
+ * @param id
+ * @param operationType
+ * @param amount
+ * @param balanceBefore
+ * @param balanceAfter
+ * @param createdAt
+ */
+public record WalletHistoryItemResponse(
+        UUID id,
+        OperationType operationType,
+        Money amount,
+        Money balanceBefore,
+        Money balanceAfter,
+        LocalDateTime createdAt
+) {
+}
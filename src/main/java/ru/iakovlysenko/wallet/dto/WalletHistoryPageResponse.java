@@ -0,0 +1,17 @@
+package ru.iakovlysenko.wallet.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * ДТО представляющая страницу истории операций кошелька.
+ * @param walletId
+ * @param items
+ * @param nextCursor курсор следующей страницы, {@code null} на последней странице
+ */
+public record WalletHistoryPageResponse(
+        UUID walletId,
+        List<WalletHistoryItemResponse> items,
+        String nextCursor
+) {
+}
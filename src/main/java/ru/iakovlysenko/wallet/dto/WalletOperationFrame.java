@@ -0,0 +1,34 @@
+package ru.iakovlysenko.wallet.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.util.UUID;
+
+/**
+ * ДТО представляющая операцию в потоке операций: поток CBOR по HTTP и каналы RSocket.
+ * Ключ идемпотентности необязателен и действует как заголовок {@code Idempotency-Key} одиночной операции.
+ * @param walletId
+ * @param operationType
+ * @param amount
+ * @param idempotencyKey
+ */
+public record WalletOperationFrame(
+        @NotNull
+        UUID walletId,
+
+        @NotNull
+        OperationType operationType,
+
+        @NotNull
+        @Positive
+        Long amount,
+
+        @Size(min = 1, max = 255)
+        @Pattern(regexp = ".*\\S.*")
+        String idempotencyKey
+) {
+}
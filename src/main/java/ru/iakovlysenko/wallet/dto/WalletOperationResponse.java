@@ -1,6 +1,7 @@
 package ru.iakovlysenko.wallet.dto;
 
-import java.math.BigDecimal;
+import ru.iakovlysenko.wallet.model.Money;
+
 import java.util.UUID;
 
 /**
@@ -11,7 +12,7 @@ import java.util.UUID;
  */
 public record WalletOperationResponse(
         UUID walletId,
-        BigDecimal balance,
+        Money balance,
         String message
 ) {
 }
@@ -0,0 +1,48 @@
+package ru.iakovlysenko.wallet.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * ДТО представляющая запрос на выплаты с одного кошелька.
+ * @param fromWalletId
+ * @param payouts
+ */
+public record WalletPayoutRequest(
+        @NotNull
+        UUID fromWalletId,
+
+        @NotEmpty
+        @Size(max = 1000)
+        List<@Valid @NotNull Payout> payouts
+) {
+
+    @AssertTrue(message = "кошелек отправителя не может быть получателем")
+    public boolean isSourceNotRecipient() {
+        return fromWalletId == null || payouts == null
+                || payouts.stream().noneMatch(payout -> payout != null && fromWalletId.equals(payout.toWalletId()));
+    }
+
+    /**
+     * Выплата одному получателю.
+     * @param toWalletId
+     * @param amount
+     */
+    public record Payout(
+            @NotNull
+            UUID toWalletId,
+
+            @NotNull
+            @Positive
+            Long amount
+    ) {
+    }
+
+}
@@ -0,0 +1,21 @@
+package ru.iakovlysenko.wallet.dto;
+
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * ДТО представляющая ответ на выполненные выплаты.
+ * @param fromWalletId
+ * @param balance
+ * @param recipients балансы получателей после выплаты
+ * @param message
+ */
+public record WalletPayoutResponse(
+        UUID fromWalletId,
+        Money balance,
+        List<WalletBalanceResponse> recipients,
+        String message
+) {
+}
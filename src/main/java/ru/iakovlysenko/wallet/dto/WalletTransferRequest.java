@@ -0,0 +1,32 @@
+package ru.iakovlysenko.wallet.dto;
+
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+import java.util.UUID;
+
+/**
+ * ДТО представляющая запрос на перевод между кошельками.
+ * @param fromWalletId
+ * @param toWalletId
+ * @param amount
+ */
+public record WalletTransferRequest(
+        @NotNull
+        UUID fromWalletId,
+
+        @NotNull
+        UUID toWalletId,
+
+        @NotNull
+        @Positive
+        Long amount
+) {
+
+    @AssertTrue(message = "кошельки отправителя и получателя должны различаться")
+    public boolean isDistinctWallets() {
+        return fromWalletId == null || !fromWalletId.equals(toWalletId);
+    }
+
+}
@@ -0,0 +1,22 @@
+package ru.iakovlysenko.wallet.dto;
+
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.util.UUID;
+
+/**
+ * ДТО представляющая ответ на выполненный перевод.
+ * @param fromWalletId
+ * @param fromBalance
+ * @param toWalletId
+ * @param toBalance
+ * @param message
+ */
+public record WalletTransferResponse(
+        UUID fromWalletId,
+        Money fromBalance,
+        UUID toWalletId,
+        Money toBalance,
+        String message
+) {
+}
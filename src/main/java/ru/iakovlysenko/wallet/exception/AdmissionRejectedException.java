@@ -0,0 +1,15 @@
+package ru.iakovlysenko.wallet.exception;
+
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final String error;
+
+    public AdmissionRejectedException(String error, String message) {
+        super(message);
+        this.error = error;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
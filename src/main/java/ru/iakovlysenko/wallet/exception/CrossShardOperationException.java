@@ -0,0 +1,7 @@
+package ru.iakovlysenko.wallet.exception;
+
+public class CrossShardOperationException extends RuntimeException {
+    public CrossShardOperationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.iakovlysenko.wallet.exception;
+
+public class IdempotencyKeyReuseException extends RuntimeException {
+    public IdempotencyKeyReuseException(String key) {
+        super("Ключ идемпотентности уже использован для другой операции: " + key);
+    }
+}
@@ -1,7 +1,13 @@
 package ru.iakovlysenko.wallet.exception;
 
+import ru.iakovlysenko.wallet.model.Money;
+
 public class InsufficientFundsException extends RuntimeException {
     public InsufficientFundsException(String message) {
         super(message);
     }
+
+    public InsufficientFundsException(Money balance, Money required) {
+        this("Недостаточно средств. Текущий баланс: " + balance + ", требуется: " + required.toPlainString());
+    }
 }
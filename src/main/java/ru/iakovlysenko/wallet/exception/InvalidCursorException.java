@@ -0,0 +1,7 @@
+package ru.iakovlysenko.wallet.exception;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String cursor) {
+        super("Некорректный курсор истории операций: " + cursor);
+    }
+}
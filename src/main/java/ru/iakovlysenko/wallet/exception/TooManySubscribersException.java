@@ -0,0 +1,7 @@
+package ru.iakovlysenko.wallet.exception;
+
+public class TooManySubscribersException extends RuntimeException {
+    public TooManySubscribersException(int maxSubscribers) {
+        super("Превышено число подписок на изменения баланса: " + maxSubscribers);
+    }
+}
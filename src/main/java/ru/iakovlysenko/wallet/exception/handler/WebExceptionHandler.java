@@ -1,13 +1,18 @@
 package ru.iakovlysenko.wallet.exception.handler;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.MessageSourceResolvable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.validation.FieldError;
 import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
 import org.springframework.web.server.ServerWebInputException;
 import ru.iakovlysenko.wallet.dto.ErrorResponse;
+import ru.iakovlysenko.wallet.exception.InvalidCursorException;
+import ru.iakovlysenko.wallet.exception.TooManySubscribersException;
 
 /**
  * Хендлер ошибок.
@@ -28,6 +33,19 @@ public class WebExceptionHandler {
                 .body(new ErrorResponse("VALIDATION_ERROR", message, HttpStatus.BAD_REQUEST.value()));
     }
 
+    @ExceptionHandler(HandlerMethodValidationException.class)
+    public ResponseEntity<ErrorResponse> handleMethodValidationException(HandlerMethodValidationException ex) {
+        String message = ex.getAllValidationResults().stream()
+                .flatMap(result -> result.getResolvableErrors().stream())
+                .map(this::formatError)
+                .reduce((a, b) -> a + "; " + b)
+                .orElse("Ошибка валидации");
+
+        log.warn("Ошибка валидации: {}", message);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new ErrorResponse("VALIDATION_ERROR", message, HttpStatus.BAD_REQUEST.value()));
+    }
+
     @ExceptionHandler(ServerWebInputException.class)
     public ResponseEntity<ErrorResponse> handleInvalidJsonException(ServerWebInputException ex) {
         log.warn("Неверный формат JSON: {}", ex.getMessage());
@@ -35,4 +53,25 @@ public class WebExceptionHandler {
                 .body(new ErrorResponse("INVALID_JSON", "Неверный формат JSON", HttpStatus.BAD_REQUEST.value()));
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidCursorException(InvalidCursorException ex) {
+        log.warn(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new ErrorResponse("INVALID_CURSOR", ex.getMessage(), HttpStatus.BAD_REQUEST.value()));
+    }
+
+    @ExceptionHandler(TooManySubscribersException.class)
+    public ResponseEntity<ErrorResponse> handleTooManySubscribersException(TooManySubscribersException ex) {
+        log.warn(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ErrorResponse("TOO_MANY_SUBSCRIBERS", ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE.value()));
+    }
+
+    private String formatError(MessageSourceResolvable error) {
+        if (error instanceof FieldError fieldError) {
+            return fieldError.getField() + ": " + fieldError.getDefaultMessage();
+        }
+        return error.getDefaultMessage();
+    }
+
 }
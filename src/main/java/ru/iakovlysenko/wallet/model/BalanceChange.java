@@ -0,0 +1,20 @@
+package ru.iakovlysenko.wallet.model;
+
+import java.util.UUID;
+
+/**
+ * Результат применённой к кошельку операции.
+ * @param walletId
+ * @param operationType
+ * @param amount
+ * @param balanceBefore
+ * @param balanceAfter
+ */
+public record BalanceChange(
+        UUID walletId,
+        OperationType operationType,
+        Money amount,
+        Money balanceBefore,
+        Money balanceAfter
+) {
+}
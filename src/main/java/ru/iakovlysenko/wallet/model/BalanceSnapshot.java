@@ -0,0 +1,18 @@
+package ru.iakovlysenko.wallet.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Снимок баланса кошелька {@code wallet_balance_snapshots}: баланс с учетом всех записей журнала
+ * не новее {@code asOf}.
+ * @param walletId
+ * @param balance
+ * @param asOf
+ */
+public record BalanceSnapshot(
+        UUID walletId,
+        Money balance,
+        LocalDateTime asOf
+) {
+}
@@ -0,0 +1,36 @@
+package ru.iakovlysenko.wallet.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Результат операции, выполненной с ключом идемпотентности {@code idempotency_keys}.
+ * @param key
+ * @param walletId
+ * @param operationType
+ * @param amount
+ * @param balance
+ * @param createdAt
+ */
+public record IdempotencyRecord(
+        String key,
+        UUID walletId,
+        OperationType operationType,
+        Money amount,
+        Money balance,
+        LocalDateTime createdAt
+) {
+
+    public static IdempotencyRecord of(String key, BalanceChange change, LocalDateTime createdAt) {
+        return new IdempotencyRecord(key, change.walletId(), change.operationType(), change.amount(),
+                change.balanceAfter(), createdAt);
+    }
+
+    /**
+     * Проверяет, что повтор пришел с тем же запросом, что и исходная операция.
+     */
+    public boolean matches(UUID walletId, OperationType operationType, Money amount) {
+        return this.walletId.equals(walletId) && this.operationType == operationType && this.amount.equals(amount);
+    }
+
+}
@@ -0,0 +1,55 @@
+package ru.iakovlysenko.wallet.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Баланс кошелька и его расчет по журналу операций.
+ * Расчет начинается от снимка или, без него, от {@code balance_before} первой записи журнала.
+ * @param walletId
+ * @param balance баланс в {@code wallets}
+ * @param version версия кошелька
+ * @param base баланс снимка или до первой записи журнала; {@code null}, если нет ни снимка, ни записей
+ * @param asOf время снимка или {@code null}, если расчет идет по всему журналу
+ * @param settledDelta изменение баланса записями после снимка до границы нового снимка
+ * @param delta изменение баланса всеми записями после снимка
+ */
+public record LedgerBalance(
+        UUID walletId,
+        Money balance,
+        long version,
+        Money base,
+        LocalDateTime asOf,
+        Money settledDelta,
+        Money delta
+) {
+
+    /**
+     * Есть ли от чего считать баланс по журналу.
+     */
+    public boolean isVerifiable() {
+        return base != null;
+    }
+
+    /**
+     * Баланс по журналу.
+     */
+    public Money expected() {
+        return base.plus(delta);
+    }
+
+    public boolean matches() {
+        return expected().equals(balance);
+    }
+
+    /**
+     * Снимок на границе {@code horizon}. Снимок новее границы не сдвигается назад.
+     */
+    public BalanceSnapshot snapshot(LocalDateTime horizon) {
+        if (asOf != null && asOf.isAfter(horizon)) {
+            return new BalanceSnapshot(walletId, base, asOf);
+        }
+        return new BalanceSnapshot(walletId, base.plus(settledDelta), horizon);
+    }
+
+}
@@ -0,0 +1,86 @@
+package ru.iakovlysenko.wallet.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Денежная сумма в копейках, соответствует столбцу {@code DECIMAL(19, 2)}.
+ * Арифметика выполняется над {@code long} с контролем переполнения, без выделения {@link BigDecimal}.
+ * В JSON пишется числом с двумя знаками после точки, как и {@code BigDecimal} из БД.
+ * @param minorUnits
+ */
+@JsonSerialize(using = MoneyJsonSerializer.class)
+@JsonDeserialize(using = MoneyJsonDeserializer.class)
+public record Money(long minorUnits) implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_UNIT = 100;
+
+    /**
+     * Сумма в целых единицах, например из {@code WalletOperationRequest.amount}.
+     */
+    public static Money ofUnits(long units) {
+        return new Money(Math.multiplyExact(units, MINOR_PER_UNIT));
+    }
+
+    /**
+     * Сумма из десятичного значения. Больше двух знаков после точки или выход за {@code long} - ошибка.
+     */
+    public static Money of(BigDecimal value) {
+        return new Money(value.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    /**
+     * Запись с двумя знаками после точки: {@code 1000.00}, {@code -0.50}.
+     */
+    @Override
+    public String toString() {
+        long units = minorUnits / MINOR_PER_UNIT;
+        long cents = Math.abs(minorUnits % MINOR_PER_UNIT);
+        StringBuilder result = new StringBuilder(24);
+        if (minorUnits < 0 && units == 0) {
+            result.append('-');
+        }
+        result.append(units).append('.');
+        if (cents < 10) {
+            result.append('0');
+        }
+        return result.append(cents).toString();
+    }
+
+    /**
+     * Запись без нулевой дробной части: {@code 1000}, {@code 0.5}.
+     */
+    public String toPlainString() {
+        return minorUnits % MINOR_PER_UNIT == 0
+                ? Long.toString(minorUnits / MINOR_PER_UNIT)
+                : toBigDecimal().stripTrailingZeros().toPlainString();
+    }
+
+}
@@ -0,0 +1,28 @@
+package ru.iakovlysenko.wallet.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Пишет {@link Money} JSON-числом с двумя знаками после точки.
+ * Двоичные форматы не пишут число из готовой строки, поэтому в CBOR сумма пишется десятичной дробью.
+ */
+public class MoneyJsonSerializer extends StdSerializer<Money> {
+
+    public MoneyJsonSerializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public void serialize(Money value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (generator.canWriteFormattedNumbers()) {
+            generator.writeNumber(value.toString());
+        } else {
+            generator.writeNumber(value.toBigDecimal());
+        }
+    }
+
+}
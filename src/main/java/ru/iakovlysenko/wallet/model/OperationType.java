@@ -5,5 +5,14 @@ package ru.iakovlysenko.wallet.model;
  */
 public enum OperationType {
     DEPOSIT,
-    WITHDRAW
+    WITHDRAW;
+
+    /**
+     * Сообщение об успешной операции, собранное один раз, а не на каждый ответ.
+     */
+    private final String successMessage = "Операция " + name() + " выполнена успешно";
+
+    public String successMessage() {
+        return successMessage;
+    }
 }
@@ -7,7 +7,6 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Column;
 import org.springframework.data.relational.core.mapping.Table;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 /**
@@ -30,6 +29,16 @@ public class Wallet {
      * Баланс кошелька.
      */
     @Column("balance")
-    private BigDecimal balance;
+    private Money balance;
+
+    /**
+     * Версия строки, увеличивается каждым изменением баланса.
+     */
+    @Column("version")
+    private long version;
+
+    public Wallet(UUID id, Money balance) {
+        this(id, balance, 0);
+    }
 
 }
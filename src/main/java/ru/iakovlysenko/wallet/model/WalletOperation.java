@@ -0,0 +1,25 @@
+package ru.iakovlysenko.wallet.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Запись журнала операций {@code wallet_operations}.
+ * @param id
+ * @param walletId
+ * @param operationType
+ * @param amount
+ * @param balanceBefore
+ * @param balanceAfter
+ * @param createdAt
+ */
+public record WalletOperation(
+        UUID id,
+        UUID walletId,
+        OperationType operationType,
+        Money amount,
+        Money balanceBefore,
+        Money balanceAfter,
+        LocalDateTime createdAt
+) {
+}
@@ -0,0 +1,138 @@
+package ru.iakovlysenko.wallet.repository;
+
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Репозиторий ключей идемпотентности.
+ * Ключи пишутся в транзакции изменения баланса, повтор ключа отклоняется первичным ключом таблицы
+ * с {@link org.springframework.dao.DuplicateKeyException}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IdempotencyKeyRepository {
+
+    /**
+     * Число параметров на одну строку.
+     */
+    public static final int COLUMNS = 6;
+
+    private static final String INSERT_PREFIX = "INSERT INTO wallet.idempotency_keys "
+            + "(key, wallet_id, operation_type, amount, balance, created_at) VALUES ";
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<IdempotencyRecord> findByKey(String key) {
+        return databaseClient.sql("SELECT key, wallet_id, operation_type, amount, balance, created_at "
+                        + "FROM wallet.idempotency_keys WHERE key = :key")
+                .bind("key", key)
+                .map((row, metadata) -> toRecord(row))
+                .one();
+    }
+
+    public Flux<IdempotencyRecord> findByWalletId(UUID walletId) {
+        return databaseClient.sql("SELECT key, wallet_id, operation_type, amount, balance, created_at "
+                        + "FROM wallet.idempotency_keys WHERE wallet_id = :walletId")
+                .bind("walletId", walletId)
+                .map((row, metadata) -> toRecord(row))
+                .all();
+    }
+
+    /**
+     * Возвращает ключи, которые уже записаны.
+     */
+    public Flux<String> findExisting(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql("SELECT key FROM wallet.idempotency_keys WHERE key IN (:keys)")
+                .bind("keys", keys)
+                .map((row, metadata) -> row.get("key", String.class))
+                .all();
+    }
+
+    public Mono<Long> insert(IdempotencyRecord record) {
+        return insertAll(List.of(record));
+    }
+
+    /**
+     * Вставляет записи одним многострочным выражением {@code INSERT ... VALUES (...), (...)}.
+     */
+    public Mono<Long> insertAll(List<IdempotencyRecord> records) {
+        if (records.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + records.size() * 40).append(INSERT_PREFIX);
+        for (int i = 0; i < records.size(); i++) {
+            int base = i * COLUMNS;
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append('(');
+            for (int column = 1; column <= COLUMNS; column++) {
+                if (column > 1) {
+                    sql.append(", ");
+                }
+                sql.append('$').append(base + column);
+            }
+            sql.append(')');
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < records.size(); i++) {
+            IdempotencyRecord record = records.get(i);
+            int base = i * COLUMNS;
+            spec = spec.bind(base, record.key())
+                    .bind(base + 1, record.walletId())
+                    .bind(base + 2, record.operationType().name())
+                    .bind(base + 3, record.amount().toBigDecimal())
+                    .bind(base + 4, record.balance().toBigDecimal())
+                    .bind(base + 5, record.createdAt());
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    /**
+     * Удаляет до {@code limit} записей, созданных раньше {@code before}.
+     */
+    public Mono<Long> deleteCreatedBefore(LocalDateTime before, int limit) {
+        return databaseClient.sql("DELETE FROM wallet.idempotency_keys WHERE key IN "
+                        + "(SELECT key FROM wallet.idempotency_keys WHERE created_at < :before LIMIT :limit)")
+                .bind("before", before)
+                .bind("limit", limit)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> deleteByWalletId(UUID walletId) {
+        return databaseClient.sql("DELETE FROM wallet.idempotency_keys WHERE wallet_id = :walletId")
+                .bind("walletId", walletId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static IdempotencyRecord toRecord(Row row) {
+        return new IdempotencyRecord(
+                row.get("key", String.class),
+                row.get("wallet_id", UUID.class),
+                OperationType.valueOf(row.get("operation_type", String.class)),
+                Money.of(row.get("amount", BigDecimal.class)),
+                Money.of(row.get("balance", BigDecimal.class)),
+                row.get("created_at", LocalDateTime.class));
+    }
+
+}
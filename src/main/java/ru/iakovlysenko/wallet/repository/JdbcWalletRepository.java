@@ -0,0 +1,248 @@
+package ru.iakovlysenko.wallet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Репозиторий кошельков для режима исполнения через JDBC.
+ * Выражения те же, что у репозиториев R2DBC; с {@code prepare-threshold=1} каждое готовится на сервере
+ * при первом выполнении в соединении. Групповые вставки и обновления отправляются пакетом JDBC,
+ * блокировка строк читает все кошельки одним выражением с массивом id.
+ * Методы блокирующие и должны вызываться вне потоков событий.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "wallet.jdbc", name = "enabled", havingValue = "true")
+public class JdbcWalletRepository {
+
+    private static final String DEPOSIT = """
+            INSERT INTO wallet.wallets (id, balance) VALUES (:id, :amount)
+            ON CONFLICT (id) DO UPDATE
+            SET balance = wallet.wallets.balance + EXCLUDED.balance, version = wallet.wallets.version + 1
+            RETURNING balance""";
+
+    private static final String WITHDRAW = """
+            UPDATE wallet.wallets SET balance = balance - :amount, version = version + 1
+            WHERE id = :id AND balance >= :amount
+            RETURNING balance""";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public Optional<Money> findBalance(UUID walletId) {
+        return jdbcTemplate.query("SELECT balance FROM wallet.wallets WHERE id = :id",
+                        new MapSqlParameterSource("id", walletId),
+                        (rs, rowNum) -> Money.of(rs.getBigDecimal("balance")))
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Пополнение одним выражением: создает кошелек при отсутствии и возвращает новый баланс.
+     */
+    public Money deposit(UUID walletId, Money amount) {
+        return jdbcTemplate.queryForObject(DEPOSIT, amountParameters(walletId, amount),
+                (rs, rowNum) -> Money.of(rs.getBigDecimal("balance")));
+    }
+
+    /**
+     * Условное списание одним выражением. Пустой результат означает нехватку средств или отсутствие кошелька.
+     */
+    public Optional<Money> withdraw(UUID walletId, Money amount) {
+        return jdbcTemplate.query(WITHDRAW, amountParameters(walletId, amount),
+                        (rs, rowNum) -> Money.of(rs.getBigDecimal("balance")))
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Пополнение с записью журнала тем же выражением {@link WalletRepository#DEPOSIT_RECORDED}.
+     */
+    public Money depositRecorded(UUID walletId, Money amount, UUID operationId, LocalDateTime createdAt) {
+        return jdbcTemplate.queryForObject(WalletRepository.DEPOSIT_RECORDED,
+                recordedParameters(walletId, amount, operationId, createdAt),
+                (rs, rowNum) -> Money.of(rs.getBigDecimal("balance_after")));
+    }
+
+    /**
+     * Условное списание с записью журнала тем же выражением {@link WalletRepository#WITHDRAW_RECORDED}.
+     */
+    public Optional<Money> withdrawRecorded(UUID walletId, Money amount, UUID operationId, LocalDateTime createdAt) {
+        return jdbcTemplate.query(WalletRepository.WITHDRAW_RECORDED,
+                        recordedParameters(walletId, amount, operationId, createdAt),
+                        (rs, rowNum) -> Money.of(rs.getBigDecimal("balance_after")))
+                .stream()
+                .findFirst();
+    }
+
+    public Optional<IdempotencyRecord> findIdempotencyKey(String key) {
+        return jdbcTemplate.query("SELECT key, wallet_id, operation_type, amount, balance, created_at "
+                                + "FROM wallet.idempotency_keys WHERE key = :key",
+                        new MapSqlParameterSource("key", key),
+                        (rs, rowNum) -> toRecord(rs))
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Записывает ключ идемпотентности. Повтор ключа отклоняется с
+     * {@link org.springframework.dao.DuplicateKeyException}.
+     */
+    public void insertIdempotencyKey(IdempotencyRecord record) {
+        jdbcTemplate.update("INSERT INTO wallet.idempotency_keys "
+                        + "(key, wallet_id, operation_type, amount, balance, created_at) "
+                        + "VALUES (:key, :walletId, :operationType, :amount, :balance, :createdAt)",
+                new MapSqlParameterSource()
+                        .addValue("key", record.key())
+                        .addValue("walletId", record.walletId())
+                        .addValue("operationType", record.operationType().name())
+                        .addValue("amount", record.amount().toBigDecimal())
+                        .addValue("balance", record.balance().toBigDecimal())
+                        .addValue("createdAt", record.createdAt()));
+    }
+
+    /**
+     * Создает отсутствующие кошельки с нулевым балансом одним пакетом.
+     */
+    public void insertMissing(Collection<UUID> walletIds) {
+        if (walletIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO wallet.wallets (id, balance) VALUES (:id, 0) ON CONFLICT (id) DO NOTHING",
+                walletIds.stream()
+                        .map(walletId -> new MapSqlParameterSource("id", walletId))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Вставляет записи журнала операций одним пакетом.
+     */
+    public void insertOperations(List<WalletOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO wallet.wallet_operations "
+                        + "(id, wallet_id, operation_type, amount, balance_before, balance_after, created_at) "
+                        + "VALUES (:id, :walletId, :operationType, :amount, :balanceBefore, :balanceAfter, :createdAt)",
+                operations.stream()
+                        .map(operation -> new MapSqlParameterSource()
+                                .addValue("id", operation.id())
+                                .addValue("walletId", operation.walletId())
+                                .addValue("operationType", operation.operationType().name())
+                                .addValue("amount", operation.amount().toBigDecimal())
+                                .addValue("balanceBefore", operation.balanceBefore().toBigDecimal())
+                                .addValue("balanceAfter", operation.balanceAfter().toBigDecimal())
+                                .addValue("createdAt", operation.createdAt()))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Блокирует строки кошельков в порядке id и возвращает их балансы.
+     */
+    public Map<UUID, Money> lockAll(Collection<UUID> walletIds) {
+        Map<UUID, Money> balances = new LinkedHashMap<>();
+        if (walletIds.isEmpty()) {
+            return balances;
+        }
+        jdbcTemplate.query("SELECT id, balance FROM wallet.wallets WHERE id = ANY(:ids) ORDER BY id FOR UPDATE",
+                new MapSqlParameterSource("ids", walletIds.toArray(UUID[]::new)),
+                rs -> {
+                    balances.put(rs.getObject("id", UUID.class), Money.of(rs.getBigDecimal("balance")));
+                });
+        return balances;
+    }
+
+    /**
+     * Записывает новые балансы одним пакетом.
+     */
+    public void updateBalances(Map<UUID, Money> balances) {
+        if (balances.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("UPDATE wallet.wallets SET balance = :balance, version = version + 1 WHERE id = :id",
+                balances.entrySet().stream()
+                        .map(entry -> new MapSqlParameterSource()
+                                .addValue("id", entry.getKey())
+                                .addValue("balance", entry.getValue().toBigDecimal()))
+                        .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Перевод выражением {@link WalletTransferRepository}. Пустой результат означает нехватку средств
+     * или отсутствие отправителя.
+     */
+    public Optional<WalletTransferRepository.TransferBalances> transfer(UUID fromId, UUID toId, Money amount) {
+        return jdbcTemplate.query(WalletTransferRepository.TRANSFER,
+                        new MapSqlParameterSource()
+                                .addValue("fromId", fromId)
+                                .addValue("toId", toId)
+                                .addValue("amount", amount.toBigDecimal()),
+                        (rs, rowNum) -> new WalletTransferRepository.TransferBalances(
+                                Money.of(rs.getBigDecimal("from_balance")),
+                                Money.of(rs.getBigDecimal("to_balance"))))
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Выплата выражением {@link WalletTransferRepository}. Возвращает балансы отправителя и получателей,
+     * пустой результат означает нехватку средств или отсутствие отправителя.
+     */
+    public List<WalletTransferRepository.WalletBalance> payout(UUID fromId, List<UUID> toIds, List<Money> amounts,
+                                                               Money total) {
+        BigDecimal[] amountValues = new BigDecimal[amounts.size()];
+        for (int i = 0; i < amountValues.length; i++) {
+            amountValues[i] = amounts.get(i).toBigDecimal();
+        }
+        return jdbcTemplate.query(WalletTransferRepository.PAYOUT,
+                new MapSqlParameterSource()
+                        .addValue("fromId", fromId)
+                        .addValue("toIds", toIds.toArray(UUID[]::new))
+                        .addValue("amounts", amountValues)
+                        .addValue("total", total.toBigDecimal()),
+                (rs, rowNum) -> new WalletTransferRepository.WalletBalance(
+                        rs.getObject("id", UUID.class),
+                        Money.of(rs.getBigDecimal("balance"))));
+    }
+
+    private static MapSqlParameterSource amountParameters(UUID walletId, Money amount) {
+        return new MapSqlParameterSource()
+                .addValue("id", walletId)
+                .addValue("amount", amount.toBigDecimal());
+    }
+
+    private static MapSqlParameterSource recordedParameters(UUID walletId, Money amount, UUID operationId,
+                                                            LocalDateTime createdAt) {
+        return amountParameters(walletId, amount)
+                .addValue("operationId", operationId)
+                .addValue("createdAt", createdAt);
+    }
+
+    private static IdempotencyRecord toRecord(ResultSet rs) throws SQLException {
+        return new IdempotencyRecord(
+                rs.getString("key"),
+                rs.getObject("wallet_id", UUID.class),
+                OperationType.valueOf(rs.getString("operation_type")),
+                Money.of(rs.getBigDecimal("amount")),
+                Money.of(rs.getBigDecimal("balance")),
+                rs.getObject("created_at", LocalDateTime.class));
+    }
+
+}
@@ -0,0 +1,177 @@
+package ru.iakovlysenko.wallet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.UUID;
+
+/**
+ * Репозиторий секций и переноса данных в секционированные таблицы.
+ * До переноса секционированы теневые таблицы {@code wallets_partitioned} и {@code wallet_operations_partitioned};
+ * переключение переименовывает их в {@code wallets} и {@code wallet_operations}, а прежние таблицы - в {@code *_legacy}.
+ * Имена таблиц в DDL не параметризуются, поэтому подставляются только константы и даты.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PartitionRepository {
+
+    public static final String WALLETS = "wallets";
+    public static final String OPERATIONS = "wallet_operations";
+    public static final String WALLETS_PARTITIONED = "wallets_partitioned";
+    public static final String OPERATIONS_PARTITIONED = "wallet_operations_partitioned";
+
+    /**
+     * Наименьший UUID: начало обхода таблицы по id.
+     */
+    public static final UUID MIN_ID = new UUID(0, 0);
+
+    private static final String FIND_PARTITIONED = """
+            SELECT c.relname FROM pg_partitioned_table p
+            JOIN pg_class c ON c.oid = p.partrelid
+            WHERE c.relnamespace = 'wallet'::regnamespace AND c.relname = :name
+            """;
+
+    private static final String INSTALL_MIRROR_TRIGGERS = """
+            CREATE OR REPLACE TRIGGER mirror_wallets AFTER INSERT OR UPDATE OR DELETE ON wallet.wallets
+                FOR EACH ROW EXECUTE FUNCTION wallet.mirror_wallets();
+            CREATE OR REPLACE TRIGGER mirror_wallet_operations AFTER INSERT ON wallet.wallet_operations
+                FOR EACH ROW EXECUTE FUNCTION wallet.mirror_wallet_operations()
+            """;
+
+    private static final String COPY_WALLETS_CHUNK = """
+            WITH chunk AS (
+                SELECT id, balance, version FROM wallet.wallets WHERE id > :after ORDER BY id LIMIT :size
+            ), copied AS (
+                INSERT INTO wallet.wallets_partitioned (id, balance, version)
+                SELECT id, balance, version FROM chunk
+                ON CONFLICT (id) DO NOTHING
+            )
+            SELECT id FROM chunk ORDER BY id DESC LIMIT 1
+            """;
+
+    private static final String FIND_OPERATION_MONTHS = """
+            SELECT DISTINCT date_trunc('month', created_at) AS month FROM (
+                SELECT created_at FROM wallet.wallet_operations WHERE id > :after ORDER BY id LIMIT :size
+            ) chunk
+            """;
+
+    private static final String COPY_OPERATIONS_CHUNK = """
+            WITH chunk AS (
+                SELECT id, wallet_id, operation_type, amount, balance_before, balance_after, created_at
+                FROM wallet.wallet_operations WHERE id > :after ORDER BY id LIMIT :size
+            ), copied AS (
+                INSERT INTO wallet.wallet_operations_partitioned
+                    (id, wallet_id, operation_type, amount, balance_before, balance_after, created_at)
+                SELECT * FROM chunk
+                ON CONFLICT (id, created_at) DO NOTHING
+            )
+            SELECT id FROM chunk ORDER BY id DESC LIMIT 1
+            """;
+
+    /**
+     * Переключение: все изменения прежних таблиц уже повторены триггерами, поэтому под блокировкой
+     * остается только переименование. Индекс истории и первичные ключи получают прежние имена.
+     */
+    private static final String SWAP = """
+            LOCK TABLE wallet.wallets, wallet.wallet_operations IN ACCESS EXCLUSIVE MODE;
+            DROP TRIGGER mirror_wallets ON wallet.wallets;
+            DROP TRIGGER mirror_wallet_operations ON wallet.wallet_operations;
+            ALTER TABLE wallet.wallets RENAME TO wallets_legacy;
+            ALTER TABLE wallet.wallets_legacy RENAME CONSTRAINT wallets_pkey TO wallets_legacy_pkey;
+            ALTER TABLE wallet.wallet_operations RENAME TO wallet_operations_legacy;
+            ALTER TABLE wallet.wallet_operations_legacy RENAME CONSTRAINT wallet_operations_pkey TO wallet_operations_legacy_pkey;
+            ALTER INDEX wallet.idx_wallet_operations_wallet_id_created_at_id
+                RENAME TO idx_wallet_operations_legacy_wallet_id_created_at_id;
+            ALTER TABLE wallet.wallets_partitioned RENAME TO wallets;
+            ALTER TABLE wallet.wallets RENAME CONSTRAINT pk_wallets_partitioned TO wallets_pkey;
+            ALTER TABLE wallet.wallet_operations_partitioned RENAME TO wallet_operations;
+            ALTER TABLE wallet.wallet_operations RENAME CONSTRAINT pk_wallet_operations_partitioned TO wallet_operations_pkey;
+            ALTER INDEX wallet.idx_wallet_operations_partitioned_wallet_id_created_at_id
+                RENAME TO idx_wallet_operations_wallet_id_created_at_id
+            """;
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Проверяет, секционирована ли таблица схемы {@code wallet}.
+     */
+    public Mono<Boolean> isPartitioned(String table) {
+        return databaseClient.sql(FIND_PARTITIONED)
+                .bind("name", table)
+                .map((row, metadata) -> row.get("relname", String.class))
+                .one()
+                .hasElement();
+    }
+
+    /**
+     * Создает месячную секцию журнала {@code wallet_operations_YYYY_MM}, если её еще нет.
+     */
+    public Mono<Void> createMonthPartition(String parent, YearMonth month) {
+        if (!OPERATIONS.equals(parent) && !OPERATIONS_PARTITIONED.equals(parent)) {
+            throw new IllegalArgumentException("Неизвестная таблица журнала: " + parent);
+        }
+        String sql = String.format("CREATE TABLE IF NOT EXISTS wallet.%s_%d_%02d PARTITION OF wallet.%s "
+                        + "FOR VALUES FROM ('%s') TO ('%s')",
+                OPERATIONS, month.getYear(), month.getMonthValue(), parent, month.atDay(1), month.plusMonths(1).atDay(1));
+        return databaseClient.sql(sql).then();
+    }
+
+    /**
+     * Включает повторение изменений прежних таблиц в секционированные.
+     */
+    public Mono<Void> installMirrorTriggers() {
+        return databaseClient.sql(INSTALL_MIRROR_TRIGGERS).then();
+    }
+
+    /**
+     * Копирует до {@code size} кошельков с id больше {@code after}.
+     * Возвращает id последнего скопированного или пустой результат, если копировать больше нечего.
+     * Уже перенесенные триггером строки не перезаписываются: они новее копируемых.
+     */
+    public Mono<UUID> copyWalletsChunk(UUID after, int size) {
+        return copyChunk(COPY_WALLETS_CHUNK, after, size);
+    }
+
+    /**
+     * Возвращает месяцы записей журнала, которые скопирует следующий вызов {@link #copyOperationsChunk}.
+     */
+    public Flux<YearMonth> findOperationMonths(UUID after, int size) {
+        return databaseClient.sql(FIND_OPERATION_MONTHS)
+                .bind("after", after)
+                .bind("size", size)
+                .map((row, metadata) -> YearMonth.from(row.get("month", LocalDateTime.class)))
+                .all();
+    }
+
+    /**
+     * Копирует до {@code size} записей журнала с id больше {@code after}, аналогично {@link #copyWalletsChunk}.
+     */
+    public Mono<UUID> copyOperationsChunk(UUID after, int size) {
+        return copyChunk(COPY_OPERATIONS_CHUNK, after, size);
+    }
+
+    /**
+     * Переименовывает таблицы в одной транзакции. Ожидание блокировки ограничено {@code lockTimeout},
+     * чтобы переключение не задерживало операции за собой в очереди блокировок.
+     */
+    public Mono<Void> swap(Duration lockTimeout) {
+        return databaseClient.sql("SET LOCAL lock_timeout = '" + lockTimeout.toMillis() + "ms'")
+                .then()
+                .then(databaseClient.sql(SWAP).then());
+    }
+
+    private Mono<UUID> copyChunk(String sql, UUID after, int size) {
+        return databaseClient.sql(sql)
+                .bind("after", after)
+                .bind("size", size)
+                .map((row, metadata) -> row.get("id", UUID.class))
+                .one();
+    }
+
+}
@@ -0,0 +1,132 @@
+package ru.iakovlysenko.wallet.repository;
+
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.BalanceSnapshot;
+import ru.iakovlysenko.wallet.model.LedgerBalance;
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Репозиторий сверки балансов с журналом операций.
+ * Изменение баланса записью журнала считается как {@code balance_after - balance_before}, поэтому сумма
+ * не зависит от типа и порядка записей. Записи кошелька после снимка читаются по индексу
+ * {@code (wallet_id, created_at, id)}, а в секционированном журнале - только из секций новее снимка.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ReconciliationRepository {
+
+    /**
+     * Наибольший UUID: верхняя граница последнего диапазона id.
+     */
+    public static final UUID MAX_ID = new UUID(-1L, -1L);
+
+    private static final String LEDGER_AFTER_SNAPSHOT = """
+            SELECT w.id, w.balance, w.version, s.as_of,
+                   COALESCE(s.balance, o.first_balance) AS base,
+                   COALESCE(o.settled_delta, 0) AS settled_delta,
+                   COALESCE(o.delta, 0) AS delta
+            FROM (SELECT id, balance, version FROM wallet.wallets
+                  WHERE id > :after AND id < :before ORDER BY id LIMIT :limit) w
+            LEFT JOIN wallet.wallet_balance_snapshots s ON s.wallet_id = w.id
+            LEFT JOIN LATERAL (
+                SELECT (array_agg(op.balance_before ORDER BY op.created_at, op.id))[1] AS first_balance,
+                       SUM(op.balance_after - op.balance_before) FILTER (WHERE op.created_at <= :horizon) AS settled_delta,
+                       SUM(op.balance_after - op.balance_before) AS delta
+                FROM wallet.wallet_operations op
+                WHERE op.wallet_id = w.id AND (s.as_of IS NULL OR op.created_at > s.as_of)
+            ) o ON TRUE
+            ORDER BY w.id""";
+
+    private static final String WHOLE_LEDGER = """
+            SELECT w.id, w.balance, w.version, NULL::TIMESTAMP AS as_of,
+                   o.first_balance AS base,
+                   COALESCE(o.settled_delta, 0) AS settled_delta,
+                   COALESCE(o.delta, 0) AS delta
+            FROM wallet.wallets w
+            LEFT JOIN LATERAL (
+                SELECT (array_agg(op.balance_before ORDER BY op.created_at, op.id))[1] AS first_balance,
+                       SUM(op.balance_after - op.balance_before) FILTER (WHERE op.created_at <= :horizon) AS settled_delta,
+                       SUM(op.balance_after - op.balance_before) AS delta
+                FROM wallet.wallet_operations op
+                WHERE op.wallet_id = w.id
+            ) o ON TRUE
+            WHERE w.id = ANY(:ids)""";
+
+    private static final String SAVE_SNAPSHOTS = """
+            INSERT INTO wallet.wallet_balance_snapshots (wallet_id, balance, as_of, verified_at)
+            SELECT id, balance, as_of, NOW() FROM unnest(:ids, :balances, :asOfs) AS snapshot(id, balance, as_of)
+            ON CONFLICT (wallet_id) DO UPDATE
+            SET balance = EXCLUDED.balance, as_of = EXCLUDED.as_of, verified_at = EXCLUDED.verified_at""";
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Возвращает до {@code limit} кошельков с id в интервале {@code (after, before)} в порядке возрастания
+     * и их расчет по журналу от снимка. Записи не новее {@code horizon} входят в {@code settled_delta}.
+     */
+    public Flux<LedgerBalance> findAfterSnapshot(UUID after, UUID before, int limit, LocalDateTime horizon) {
+        return databaseClient.sql(LEDGER_AFTER_SNAPSHOT)
+                .bind("after", after)
+                .bind("before", before)
+                .bind("limit", limit)
+                .bind("horizon", horizon)
+                .map((row, metadata) -> ledgerBalance(row))
+                .all();
+    }
+
+    /**
+     * Возвращает кошельки и их расчет по всему журналу без снимков.
+     */
+    public Flux<LedgerBalance> findByWholeLedger(Collection<UUID> walletIds, LocalDateTime horizon) {
+        return databaseClient.sql(WHOLE_LEDGER)
+                .bind("ids", walletIds.toArray(UUID[]::new))
+                .bind("horizon", horizon)
+                .map((row, metadata) -> ledgerBalance(row))
+                .all();
+    }
+
+    public Mono<Long> saveSnapshots(List<BalanceSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return Mono.just(0L);
+        }
+        UUID[] ids = new UUID[snapshots.size()];
+        BigDecimal[] balances = new BigDecimal[snapshots.size()];
+        LocalDateTime[] asOfs = new LocalDateTime[snapshots.size()];
+        for (int i = 0; i < snapshots.size(); i++) {
+            BalanceSnapshot snapshot = snapshots.get(i);
+            ids[i] = snapshot.walletId();
+            balances[i] = snapshot.balance().toBigDecimal();
+            asOfs[i] = snapshot.asOf();
+        }
+        return databaseClient.sql(SAVE_SNAPSHOTS)
+                .bind("ids", ids)
+                .bind("balances", balances)
+                .bind("asOfs", asOfs)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static LedgerBalance ledgerBalance(Row row) {
+        BigDecimal base = row.get("base", BigDecimal.class);
+        return new LedgerBalance(
+                row.get("id", UUID.class),
+                Money.of(row.get("balance", BigDecimal.class)),
+                row.get("version", Long.class),
+                base != null ? Money.of(base) : null,
+                row.get("as_of", LocalDateTime.class),
+                Money.of(row.get("settled_delta", BigDecimal.class)),
+                Money.of(row.get("delta", BigDecimal.class)));
+    }
+
+}
@@ -0,0 +1,35 @@
+package ru.iakovlysenko.wallet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Репозиторий состояния реплики. Запросы выполняются на базе, выбранной контекстом вызова.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ReplicaRepository {
+
+    /**
+     * Отставание воспроизведения журнала. Реплика, получившая весь журнал, не отстает,
+     * даже если последняя транзакция была давно; основная база не отстает никогда.
+     */
+    private static final String FIND_LAG = """
+            SELECT CASE
+                       WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                       ELSE COALESCE(EXTRACT(EPOCH FROM NOW() - pg_last_xact_replay_timestamp()) * 1000, 0)
+                   END::BIGINT AS lag_ms""";
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<Duration> findLag() {
+        return databaseClient.sql(FIND_LAG)
+                .map((row, metadata) -> Duration.ofMillis(row.get("lag_ms", Long.class)))
+                .one();
+    }
+
+}
@@ -0,0 +1,137 @@
+package ru.iakovlysenko.wallet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.Wallet;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Репозиторий размещения кошельков по шардам и их переноса.
+ * Запросы выполняются на шарде из контекста вызова.
+ * На время переноса на прежних шардах ставятся триггеры {@code BEFORE INSERT}, которые ждут блокировки строки
+ * переносимого кошелька и отклоняют запись с кодом {@value #WALLET_MOVED} для уже перенесенных кошельков.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ShardRepository {
+
+    /**
+     * SQLSTATE ошибки записи в кошелек, перенесенный на другой шард.
+     */
+    public static final String WALLET_MOVED = "WM001";
+
+    /**
+     * Наименьший UUID: начало обхода таблицы по id.
+     */
+    public static final UUID MIN_ID = new UUID(0, 0);
+
+    private static final String INSTALL_MOVE_TRIGGERS = """
+            CREATE OR REPLACE TRIGGER reject_moved_wallets BEFORE INSERT ON wallet.wallets
+                FOR EACH ROW EXECUTE FUNCTION wallet.reject_moved_wallet('id');
+            CREATE OR REPLACE TRIGGER reject_moved_wallet_operations BEFORE INSERT ON wallet.wallet_operations
+                FOR EACH ROW EXECUTE FUNCTION wallet.reject_moved_wallet('wallet_id');
+            CREATE OR REPLACE TRIGGER reject_moved_idempotency_keys BEFORE INSERT ON wallet.idempotency_keys
+                FOR EACH ROW EXECUTE FUNCTION wallet.reject_moved_wallet('wallet_id')
+            """;
+
+    private static final String DROP_MOVE_TRIGGERS = """
+            DROP TRIGGER IF EXISTS reject_moved_wallets ON wallet.wallets;
+            DROP TRIGGER IF EXISTS reject_moved_wallet_operations ON wallet.wallet_operations;
+            DROP TRIGGER IF EXISTS reject_moved_idempotency_keys ON wallet.idempotency_keys;
+            DELETE FROM wallet.wallet_moves
+            """;
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<Boolean> exists(UUID walletId) {
+        return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM wallet.wallets WHERE id = :id) AS present")
+                .bind("id", walletId)
+                .map((row, metadata) -> row.get("present", Boolean.class))
+                .one();
+    }
+
+    /**
+     * Возвращает id кошельков, которые есть на шарде.
+     */
+    public Flux<UUID> findExisting(Collection<UUID> walletIds) {
+        return databaseClient.sql("SELECT id FROM wallet.wallets WHERE id IN (:ids)")
+                .bind("ids", walletIds)
+                .map((row, metadata) -> row.get("id", UUID.class))
+                .all();
+    }
+
+    /**
+     * Возвращает до {@code limit} id кошельков больше {@code after} в порядке возрастания.
+     */
+    public Flux<UUID> findIdsAfter(UUID after, int limit) {
+        return databaseClient.sql("SELECT id FROM wallet.wallets WHERE id > :after ORDER BY id LIMIT :limit")
+                .bind("after", after)
+                .bind("limit", limit)
+                .map((row, metadata) -> row.get("id", UUID.class))
+                .all();
+    }
+
+    /**
+     * Блокирует строку кошелька до конца транзакции переноса. Пустой результат означает, что кошелька уже нет.
+     */
+    public Mono<Wallet> lockForMove(UUID walletId) {
+        return databaseClient.sql("SELECT id, balance, version FROM wallet.wallets WHERE id = :id FOR UPDATE")
+                .bind("id", walletId)
+                .map((row, metadata) -> new Wallet(
+                        row.get("id", UUID.class),
+                        Money.of(row.get("balance", BigDecimal.class)),
+                        row.get("version", Long.class)))
+                .one();
+    }
+
+    /**
+     * Записывает кошелек на шард назначения, заменяя копию от прерванного переноса.
+     */
+    public Mono<Long> upsert(Wallet wallet) {
+        return databaseClient.sql("""
+                        INSERT INTO wallet.wallets (id, balance, version) VALUES (:id, :balance, :version)
+                        ON CONFLICT (id) DO UPDATE SET balance = EXCLUDED.balance, version = EXCLUDED.version""")
+                .bind("id", wallet.getId())
+                .bind("balance", wallet.getBalance().toBigDecimal())
+                .bind("version", wallet.getVersion())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * Отмечает кошелек перенесенным: после фиксации триггеры отклоняют запись в него на этом шарде.
+     */
+    public Mono<Long> markMoved(UUID walletId, String shard) {
+        return databaseClient.sql("INSERT INTO wallet.wallet_moves (id, shard) VALUES (:id, :shard) ON CONFLICT (id) DO NOTHING")
+                .bind("id", walletId)
+                .bind("shard", shard)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> delete(UUID walletId) {
+        return databaseClient.sql("DELETE FROM wallet.wallets WHERE id = :id")
+                .bind("id", walletId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Void> installMoveTriggers() {
+        return databaseClient.sql(INSTALL_MOVE_TRIGGERS).then();
+    }
+
+    /**
+     * Снимает триггеры и очищает отметки о перенесенных кошельках.
+     */
+    public Mono<Void> dropMoveTriggers() {
+        return databaseClient.sql(DROP_MOVE_TRIGGERS).then();
+    }
+
+}
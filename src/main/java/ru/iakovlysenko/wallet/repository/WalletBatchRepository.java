@@ -0,0 +1,121 @@
+package ru.iakovlysenko.wallet.repository;
+
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.Wallet;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Репозиторий групповых операций над кошельками.
+ * Многострочные выражения выполняются через {@link Statement#add()}, драйвер отправляет их одним пакетом.
+ */
+@Repository
+@RequiredArgsConstructor
+public class WalletBatchRepository {
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Возвращает балансы найденных кошельков без блокировки.
+     */
+    public Flux<Wallet> findAll(Collection<UUID> ids) {
+        return databaseClient.sql("SELECT id, balance FROM wallet.wallets WHERE id IN (:ids)")
+                .bind("ids", ids)
+                .map((row, metadata) -> new Wallet(row.get("id", UUID.class), Money.of(row.get("balance", BigDecimal.class))))
+                .all();
+    }
+
+    /**
+     * Блокирует найденные кошельки в порядке id и возвращает их балансы.
+     */
+    public Flux<Wallet> lockAll(Collection<UUID> ids) {
+        return databaseClient.sql("SELECT id, balance FROM wallet.wallets WHERE id IN (:ids) ORDER BY id FOR UPDATE")
+                .bind("ids", ids)
+                .map((row, metadata) -> new Wallet(row.get("id", UUID.class), Money.of(row.get("balance", BigDecimal.class))))
+                .all();
+    }
+
+    /**
+     * Создает отсутствующие кошельки с нулевым балансом.
+     */
+    public Mono<Long> insertMissing(Collection<UUID> ids) {
+        List<Object[]> rows = new ArrayList<>(ids.size());
+        ids.forEach(id -> rows.add(new Object[]{id, BigDecimal.ZERO}));
+        return executeBatch("INSERT INTO wallet.wallets (id, balance) VALUES ($1, $2) ON CONFLICT (id) DO NOTHING", rows);
+    }
+
+    /**
+     * Записывает новые балансы кошельков.
+     */
+    public Mono<Long> updateBalances(Map<UUID, Money> balances) {
+        List<Object[]> rows = new ArrayList<>(balances.size());
+        balances.forEach((id, balance) -> rows.add(new Object[]{balance.toBigDecimal(), id}));
+        return executeBatch("UPDATE wallet.wallets SET balance = $1, version = version + 1 WHERE id = $2", rows);
+    }
+
+    /**
+     * Записывает новые балансы кошельков, у которых текущий баланс совпадает с ожидаемым.
+     * Возвращает id кошельков, баланс которых изменился в обход ожидания, их строки не обновляются.
+     */
+    public Flux<UUID> compareAndSetBalances(List<BalanceUpdate> updates) {
+        List<Object[]> rows = new ArrayList<>(updates.size());
+        updates.forEach(update -> rows.add(new Object[]{
+                update.balance().toBigDecimal(), update.walletId(), update.expected().toBigDecimal()}));
+        return executeBatchRows("UPDATE wallet.wallets SET balance = $1, version = version + 1 WHERE id = $2 AND balance = $3", rows)
+                .index()
+                .filter(updated -> updated.getT2() == 0)
+                .map(updated -> updates.get(updated.getT1().intValue()).walletId());
+    }
+
+    private Mono<Long> executeBatch(String sql, List<Object[]> rows) {
+        return executeBatchRows(sql, rows).reduce(0L, Long::sum);
+    }
+
+    /**
+     * Возвращает число обновленных строк по каждой строке пакета в порядке {@code rows}.
+     */
+    private Flux<Long> executeBatchRows(String sql, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(sql);
+                    for (int i = 0; i < rows.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        Object[] row = rows.get(i);
+                        for (int column = 0; column < row.length; column++) {
+                            statement.bind(column, row[column]);
+                        }
+                    }
+                    return Flux.from(statement.execute()).concatMap(Result::getRowsUpdated);
+                });
+    }
+
+    /**
+     * Обновление баланса при условии, что текущий баланс равен {@code expected}.
+     * @param walletId
+     * @param expected
+     * @param balance
+     */
+    public record BalanceUpdate(
+            UUID walletId,
+            Money expected,
+            Money balance
+    ) {
+    }
+
+}
@@ -0,0 +1,120 @@
+package ru.iakovlysenko.wallet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Репозиторий журнала операций.
+ * История кошелька читается по ключу {@code (created_at, id)} от новых к старым: сравнение строк
+ * {@code (created_at, id) < (...)} продолжает обход индекса {@code idx_wallet_operations_wallet_id_created_at_id}
+ * с места курсора, поэтому стоимость страницы не зависит от её номера, в отличие от {@code OFFSET}.
+ * Отдельное условие {@code created_at <= ...} нужно для секционированного журнала: по сравнению строк
+ * Postgres не отсекает месячные секции новее курсора, а по нему отсекает.
+ */
+@Repository
+@RequiredArgsConstructor
+public class WalletOperationRepository {
+
+    /**
+     * Число параметров на одну строку журнала.
+     */
+    public static final int COLUMNS = 7;
+
+    private static final String INSERT_PREFIX = "INSERT INTO wallet.wallet_operations "
+            + "(id, wallet_id, operation_type, amount, balance_before, balance_after, created_at) VALUES ";
+
+    private static final String SELECT_PREFIX = "SELECT id, wallet_id, operation_type, amount, balance_before, balance_after, created_at "
+            + "FROM wallet.wallet_operations WHERE wallet_id = :walletId ";
+
+    private static final String FIND_FIRST_PAGE = SELECT_PREFIX
+            + "ORDER BY created_at DESC, id DESC LIMIT :limit";
+
+    private static final String FIND_PAGE_AFTER = SELECT_PREFIX
+            + "AND created_at <= :createdAt AND (created_at, id) < (:createdAt, :id) ORDER BY created_at DESC, id DESC LIMIT :limit";
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Возвращает до {@code limit} записей кошелька, начиная с самой новой
+     * или следующей за записью {@code (afterCreatedAt, afterId)}, если она задана.
+     */
+    public Flux<WalletOperation> findPage(UUID walletId, LocalDateTime afterCreatedAt, UUID afterId, int limit) {
+        DatabaseClient.GenericExecuteSpec spec = afterId == null
+                ? databaseClient.sql(FIND_FIRST_PAGE)
+                : databaseClient.sql(FIND_PAGE_AFTER)
+                        .bind("createdAt", afterCreatedAt)
+                        .bind("id", afterId);
+        return spec.bind("walletId", walletId)
+                .bind("limit", limit)
+                .map((row, metadata) -> new WalletOperation(
+                        row.get("id", UUID.class),
+                        row.get("wallet_id", UUID.class),
+                        OperationType.valueOf(row.get("operation_type", String.class)),
+                        Money.of(row.get("amount", BigDecimal.class)),
+                        Money.of(row.get("balance_before", BigDecimal.class)),
+                        Money.of(row.get("balance_after", BigDecimal.class)),
+                        row.get("created_at", LocalDateTime.class)))
+                .all();
+    }
+
+    /**
+     * Удаляет все записи кошелька.
+     */
+    public Mono<Long> deleteByWalletId(UUID walletId) {
+        return databaseClient.sql("DELETE FROM wallet.wallet_operations WHERE wallet_id = :walletId")
+                .bind("walletId", walletId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * Вставляет записи одним многострочным выражением {@code INSERT ... VALUES (...), (...)}.
+     */
+    public Mono<Long> insertAll(List<WalletOperation> operations) {
+        if (operations.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + operations.size() * 48).append(INSERT_PREFIX);
+        for (int i = 0; i < operations.size(); i++) {
+            int base = i * COLUMNS;
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append('(');
+            for (int column = 1; column <= COLUMNS; column++) {
+                if (column > 1) {
+                    sql.append(", ");
+                }
+                sql.append('$').append(base + column);
+            }
+            sql.append(')');
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < operations.size(); i++) {
+            WalletOperation operation = operations.get(i);
+            int base = i * COLUMNS;
+            spec = spec.bind(base, operation.id())
+                    .bind(base + 1, operation.walletId())
+                    .bind(base + 2, operation.operationType().name())
+                    .bind(base + 3, operation.amount().toBigDecimal())
+                    .bind(base + 4, operation.balanceBefore().toBigDecimal())
+                    .bind(base + 5, operation.balanceAfter().toBigDecimal())
+                    .bind(base + 6, operation.createdAt());
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+}
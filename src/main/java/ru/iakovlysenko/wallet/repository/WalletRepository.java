@@ -5,9 +5,10 @@ import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.Money;
 import ru.iakovlysenko.wallet.model.Wallet;
 
-import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 /**
@@ -16,16 +17,88 @@ import java.util.UUID;
 @Repository
 public interface WalletRepository extends R2dbcRepository<Wallet, UUID> {
 
+    /**
+     * Пополнение с записью журнала: upsert баланса и вставка записи журнала в одном выражении.
+     */
+    String DEPOSIT_RECORDED = """
+            WITH changed AS (
+                INSERT INTO wallet.wallets (id, balance) VALUES (:id, :amount)
+                ON CONFLICT (id) DO UPDATE
+                SET balance = wallet.wallets.balance + EXCLUDED.balance, version = wallet.wallets.version + 1
+                RETURNING id, balance)
+            INSERT INTO wallet.wallet_operations
+                (id, wallet_id, operation_type, amount, balance_before, balance_after, created_at)
+            SELECT :operationId, id, 'DEPOSIT', :amount, balance - :amount, balance, :createdAt FROM changed
+            RETURNING balance_after""";
+
+    /**
+     * Условное списание с записью журнала в одном выражении. Запись появляется только при успешном списании.
+     */
+    String WITHDRAW_RECORDED = """
+            WITH changed AS (
+                UPDATE wallet.wallets SET balance = balance - :amount, version = version + 1
+                WHERE id = :id AND balance >= :amount
+                RETURNING id, balance)
+            INSERT INTO wallet.wallet_operations
+                (id, wallet_id, operation_type, amount, balance_before, balance_after, created_at)
+            SELECT :operationId, id, 'WITHDRAW', :amount, balance + :amount, balance, :createdAt FROM changed
+            RETURNING balance_after""";
+
     @Query("SELECT * FROM wallet.wallets WHERE id = :id")
     @Override
     Mono<Wallet> findById(UUID id);
 
     @Modifying
     @Query("INSERT INTO wallet.wallets (id, balance) VALUES (:id, :balance) ON CONFLICT (id) DO NOTHING")
-    Mono<Integer> insertOrIgnore(UUID id, BigDecimal balance);
+    Mono<Integer> insertOrIgnore(UUID id, Money balance);
 
     @Modifying
-    @Query("UPDATE wallet.wallets SET balance = :balance WHERE id = :id")
-    Mono<Integer> updateBalance(UUID id, BigDecimal balance);
+    @Query("UPDATE wallet.wallets SET balance = :balance, version = version + 1 WHERE id = :id")
+    Mono<Integer> updateBalance(UUID id, Money balance);
+
+    /**
+     * Записывает баланс, только если версия кошелька не изменилась с момента чтения.
+     * Ноль обновленных строк означает параллельное изменение.
+     */
+    @Modifying
+    @Query("UPDATE wallet.wallets SET balance = :balance, version = version + 1 WHERE id = :id AND version = :version")
+    Mono<Integer> updateBalanceIfVersion(UUID id, Money balance, long version);
+
+    /**
+     * Пополнение одним выражением: создает кошелек при отсутствии и возвращает новый баланс.
+     */
+    @Query("""
+            INSERT INTO wallet.wallets (id, balance) VALUES (:id, :amount)
+            ON CONFLICT (id) DO UPDATE
+            SET balance = wallet.wallets.balance + EXCLUDED.balance, version = wallet.wallets.version + 1
+            RETURNING balance""")
+    Mono<Money> depositAtomically(UUID id, Money amount);
+
+    /**
+     * Условное списание одним выражением. Пустой результат означает нехватку средств или отсутствие кошелька.
+     */
+    @Query("""
+            UPDATE wallet.wallets SET balance = balance - :amount, version = version + 1
+            WHERE id = :id AND balance >= :amount
+            RETURNING balance""")
+    Mono<Money> withdrawAtomically(UUID id, Money amount);
+
+    /**
+     * {@link #depositAtomically} с записью журнала {@code operationId} в том же выражении.
+     */
+    @Query(DEPOSIT_RECORDED)
+    Mono<Money> depositAtomicallyRecorded(UUID id, Money amount, UUID operationId, LocalDateTime createdAt);
+
+    /**
+     * {@link #withdrawAtomically} с записью журнала {@code operationId} в том же выражении.
+     */
+    @Query(WITHDRAW_RECORDED)
+    Mono<Money> withdrawAtomicallyRecorded(UUID id, Money amount, UUID operationId, LocalDateTime createdAt);
+
+    /**
+     * Блокирует строку кошелька до конца транзакции и возвращает текущий баланс.
+     */
+    @Query("SELECT balance FROM wallet.wallets WHERE id = :id FOR UPDATE")
+    Mono<Money> lockBalance(UUID id);
 
 }
@@ -0,0 +1,125 @@
+package ru.iakovlysenko.wallet.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.Money;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Репозиторий переводов между кошельками.
+ * Перевод выполняется одним выражением: CTE {@code locked} блокирует все участвующие строки в порядке id,
+ * поэтому встречные переводы ждут друг друга, а не взаимоблокируются. Подзапрос {@code count(*)} по {@code locked}
+ * вычисляется до списания и гарантирует, что все блокировки взяты до первого изменения.
+ * Списание проверяет остаток в {@code WHERE}, зачисление выполняется upsert-ом только при успешном списании,
+ * так что отсутствующий получатель создается, а при нехватке средств не меняется ничего.
+ */
+@Repository
+@RequiredArgsConstructor
+public class WalletTransferRepository {
+
+    static final String TRANSFER = """
+            WITH locked AS (
+                SELECT id FROM wallet.wallets WHERE id IN (:fromId, :toId) ORDER BY id FOR UPDATE
+            ), debited AS (
+                UPDATE wallet.wallets SET balance = balance - :amount, version = version + 1
+                WHERE id = :fromId AND balance >= :amount AND (SELECT count(*) FROM locked) > 0
+                RETURNING balance
+            ), credited AS (
+                INSERT INTO wallet.wallets (id, balance)
+                SELECT :toId, :amount FROM debited
+                ON CONFLICT (id) DO UPDATE SET balance = wallet.wallets.balance + EXCLUDED.balance,
+                                               version = wallet.wallets.version + 1
+                RETURNING balance
+            )
+            SELECT debited.balance AS from_balance, credited.balance AS to_balance FROM debited, credited
+            """;
+
+    static final String PAYOUT = """
+            WITH payouts AS (
+                SELECT id, SUM(amount) AS amount FROM unnest(:toIds, :amounts) AS payout(id, amount) GROUP BY id
+            ), locked AS (
+                SELECT id FROM wallet.wallets WHERE id = :fromId OR id IN (SELECT id FROM payouts)
+                ORDER BY id FOR UPDATE
+            ), debited AS (
+                UPDATE wallet.wallets SET balance = balance - :total, version = version + 1
+                WHERE id = :fromId AND balance >= :total AND (SELECT count(*) FROM locked) > 0
+                RETURNING id, balance
+            ), credited AS (
+                INSERT INTO wallet.wallets (id, balance)
+                SELECT payouts.id, payouts.amount FROM payouts, debited
+                ON CONFLICT (id) DO UPDATE SET balance = wallet.wallets.balance + EXCLUDED.balance,
+                                               version = wallet.wallets.version + 1
+                RETURNING id, balance
+            )
+            SELECT id, balance FROM debited
+            UNION ALL
+            SELECT id, balance FROM credited
+            """;
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Переводит {@code amount} и возвращает балансы отправителя и получателя после перевода.
+     * Пустой результат означает нехватку средств или отсутствие отправителя.
+     */
+    public Mono<TransferBalances> transfer(UUID fromId, UUID toId, Money amount) {
+        return databaseClient.sql(TRANSFER)
+                .bind("fromId", fromId)
+                .bind("toId", toId)
+                .bind("amount", amount.toBigDecimal())
+                .map((row, metadata) -> new TransferBalances(
+                        Money.of(row.get("from_balance", BigDecimal.class)),
+                        Money.of(row.get("to_balance", BigDecimal.class))))
+                .one();
+    }
+
+    /**
+     * Списывает с отправителя сумму выплат и зачисляет каждому получателю его часть.
+     * Возвращает балансы после выплаты: отправителя и каждого получателя.
+     * Пустой результат означает нехватку средств или отсутствие отправителя.
+     */
+    public Flux<WalletBalance> payout(UUID fromId, List<UUID> toIds, List<Money> amounts, Money total) {
+        BigDecimal[] amountValues = new BigDecimal[amounts.size()];
+        for (int i = 0; i < amountValues.length; i++) {
+            amountValues[i] = amounts.get(i).toBigDecimal();
+        }
+        return databaseClient.sql(PAYOUT)
+                .bind("fromId", fromId)
+                .bind("toIds", toIds.toArray(UUID[]::new))
+                .bind("amounts", amountValues)
+                .bind("total", total.toBigDecimal())
+                .map((row, metadata) -> new WalletBalance(
+                        row.get("id", UUID.class),
+                        Money.of(row.get("balance", BigDecimal.class))))
+                .all();
+    }
+
+    /**
+     * Балансы участников перевода после его выполнения.
+     * @param fromBalance
+     * @param toBalance
+     */
+    public record TransferBalances(
+            Money fromBalance,
+            Money toBalance
+    ) {
+    }
+
+    /**
+     * Баланс кошелька после выплаты.
+     * @param walletId
+     * @param balance
+     */
+    public record WalletBalance(
+            UUID walletId,
+            Money balance
+    ) {
+    }
+
+}
@@ -1,10 +1,19 @@
 package ru.iakovlysenko.wallet.service;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryPageResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
 import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.dto.WalletPayoutRequest;
+import ru.iakovlysenko.wallet.dto.WalletPayoutResponse;
+import ru.iakovlysenko.wallet.dto.WalletTransferResponse;
 import ru.iakovlysenko.wallet.model.OperationType;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -12,5 +21,13 @@ import java.util.UUID;
  */
 public interface WalletService {
     Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount);
+    Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount, String idempotencyKey);
     Mono<WalletBalanceResponse> getBalance(UUID walletId);
+    Mono<WalletBalanceResponse> getConsistentBalance(UUID walletId);
+    Flux<WalletBalanceResponse> streamBalance(UUID walletId);
+    Flux<WalletBatchItemResponse> performBatch(List<WalletOperationRequest> requests);
+    Mono<WalletTransferResponse> transfer(UUID fromWalletId, UUID toWalletId, Long amount);
+    Mono<WalletPayoutResponse> payout(WalletPayoutRequest request);
+    Mono<WalletHistoryPageResponse> getOperations(UUID walletId, String cursor, Integer limit);
+    Flux<WalletHistoryItemResponse> streamOperations(UUID walletId, String cursor);
 }
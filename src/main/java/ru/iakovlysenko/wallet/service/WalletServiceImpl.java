@@ -2,22 +2,52 @@ package ru.iakovlysenko.wallet.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryPageResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
 import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
-import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.dto.WalletPayoutRequest;
+import ru.iakovlysenko.wallet.dto.WalletPayoutResponse;
+import ru.iakovlysenko.wallet.dto.WalletTransferResponse;
+import ru.iakovlysenko.wallet.exception.IdempotencyKeyReuseException;
 import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
 import ru.iakovlysenko.wallet.model.OperationType;
 import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.model.WalletOperation;
 import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.cache.BalanceCache;
+import ru.iakovlysenko.wallet.service.engine.OperationOutcome;
+import ru.iakovlysenko.wallet.service.engine.WalletBatchExecutor;
+import ru.iakovlysenko.wallet.service.engine.WalletEngine;
+import ru.iakovlysenko.wallet.service.engine.WalletTransferExecutor;
+import ru.iakovlysenko.wallet.service.history.HistoryCursor;
+import ru.iakovlysenko.wallet.service.history.WalletHistoryReader;
+import ru.iakovlysenko.wallet.service.idempotency.IdempotencyStore;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRouter;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+import ru.iakovlysenko.wallet.service.stream.BalanceStream;
 
-import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
  * Реализация {@link WalletService}
+ * Операция с ключом идемпотентности сначала ищется в памяти узла. При промахе движок применяет её
+ * и записывает ключ в транзакции баланса; если ключ уже записан другим запросом, ответ восстанавливается из БД.
+ * Запросы кошелька выполняются на его шарде, перевод и выплата - только между кошельками одного шарда.
+ * Баланс и история читаются с реплики, если она достаточно свежая; чтение без кеша всегда идет на основную базу.
  */
 @Slf4j
 @Service
@@ -25,70 +55,185 @@ import java.util.UUID;
 public class WalletServiceImpl implements WalletService {
 
     private final WalletRepository walletRepository;
-    private final TransactionalOperator transactionalOperator;
+    private final WalletEngine walletEngine;
+    private final WalletBatchExecutor walletBatchExecutor;
+    private final WalletTransferExecutor walletTransferExecutor;
+    private final BalanceCache balanceCache;
+    private final WalletMetrics walletMetrics;
+    private final IdempotencyStore idempotencyStore;
+    private final WalletHistoryReader walletHistoryReader;
+    private final BalanceStream balanceStream;
+    private final ShardRouter shardRouter;
+    private final ReplicaRouter replicaRouter;
 
 
     @Override
     public Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount) {
-        BigDecimal amountDecimal = BigDecimal.valueOf(amount);
-
-        Mono<WalletOperationResponse> operation = findWalletById(walletId)
-                .switchIfEmpty(createWalletIfNotExists(walletId))
-                .flatMap(wallet -> {
-                    BigDecimal newBalance;
-                    if (operationType == OperationType.DEPOSIT) {
-                        newBalance = wallet.getBalance().add(amountDecimal);
-                    } else {
-                        if (wallet.getBalance().compareTo(amountDecimal) < 0) {
-                            return Mono.error(new InsufficientFundsException(
-                                    String.format("Недостаточно средств. Текущий баланс: %s, требуется: %s",
-                                            wallet.getBalance(), amountDecimal)));
-                        }
-                        newBalance = wallet.getBalance().subtract(amountDecimal);
-                    }
-
-                    return updateWalletBalance(walletId, newBalance)
-                            .then(findWalletById(walletId))
-                            .map(updatedWallet -> new WalletOperationResponse(
-                                    updatedWallet.getId(),
-                                    updatedWallet.getBalance(),
-                                    String.format("Операция %s выполнена успешно", operationType.name())
-                            ));
-                });
-
-        return transactionalOperator.transactional(operation);
+        return walletMetrics.timeOperation(operationType, shardRouter.route(walletId,
+                        () -> walletEngine.apply(walletId, operationType, amount))
+                .map(change -> new WalletOperationResponse(
+                        change.walletId(),
+                        change.balanceAfter(),
+                        operationType.successMessage()
+                )));
+    }
+
+    @Override
+    public Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount,
+                                                          String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return performOperation(walletId, operationType, amount);
+        }
+        return walletMetrics.timeOperation(operationType, shardRouter.route(walletId, () -> Mono.defer(() -> {
+            IdempotencyRecord cached = idempotencyStore.getIfPresent(idempotencyKey);
+            if (cached != null) {
+                return replay(cached, walletId, operationType, amount);
+            }
+            return walletEngine.apply(walletId, operationType, amount, idempotencyKey)
+                    .map(change -> {
+                        IdempotencyRecord record = IdempotencyRecord.of(idempotencyKey, change, LocalDateTime.now());
+                        idempotencyStore.put(record);
+                        return toResponse(record);
+                    })
+                    .onErrorResume(DuplicateKeyException.class, ex -> idempotencyStore.load(idempotencyKey)
+                            .switchIfEmpty(Mono.error(ex))
+                            .flatMap(record -> replay(record, walletId, operationType, amount)));
+        })));
+    }
+
+    private Mono<WalletOperationResponse> replay(IdempotencyRecord record, UUID walletId,
+                                                 OperationType operationType, Long amount) {
+        if (!record.matches(walletId, operationType, Money.ofUnits(amount))) {
+            return Mono.error(new IdempotencyKeyReuseException(record.key()));
+        }
+        log.debug("Повтор операции по ключу идемпотентности: key={}, walletId={}", record.key(), walletId);
+        return Mono.just(toResponse(record));
+    }
+
+    private WalletOperationResponse toResponse(IdempotencyRecord record) {
+        return new WalletOperationResponse(
+                record.walletId(),
+                record.balance(),
+                record.operationType().successMessage());
     }
 
     @Override
     public Mono<WalletBalanceResponse> getBalance(UUID walletId) {
-        return findWalletById(walletId)
-                .switchIfEmpty(Mono.error(new WalletNotFoundException("Кошелек не найден: " + walletId)))
-                .map(wallet -> new WalletBalanceResponse(wallet.getId(), wallet.getBalance()));
+        return walletMetrics.timeBalanceRead(false, balanceCache.get(walletId,
+                        id -> shardRouter.route(id, () -> replicaRouter.read(id, findWalletById(id)))
+                                .map(Wallet::getBalance))
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException("Кошелек не найден: " + walletId)))
+                .map(balance -> new WalletBalanceResponse(walletId, balance)));
     }
 
-    private Mono<Wallet> findWalletById(UUID walletId) {
-        log.debug("Поиск кошелька по id: {}", walletId);
-        return walletRepository.findById(walletId)
-                .doOnNext(wallet -> log.debug("Найден кошелек: id={}, balance={}", wallet.getId(), wallet.getBalance()))
-                .doOnError(error -> log.error("Ошибка поиска кошелька {}: {}", walletId, error.getMessage()));
+    @Override
+    public Mono<WalletBalanceResponse> getConsistentBalance(UUID walletId) {
+        return walletMetrics.timeBalanceRead(true, shardRouter.route(walletId, () -> findWalletById(walletId))
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException("Кошелек не найден: " + walletId)))
+                .map(wallet -> new WalletBalanceResponse(wallet.getId(), wallet.getBalance())));
     }
 
-    private Mono<Wallet> createWalletIfNotExists(UUID walletId) {
-        log.debug("Кошелек {} не найден, создаем новый с балансом 0", walletId);
-        return walletRepository.insertOrIgnore(walletId, BigDecimal.ZERO)
-                .then(findWalletById(walletId))
-                .switchIfEmpty(Mono.error(new WalletNotFoundException("Кошелек не найден: " + walletId)));
+    @Override
+    public Flux<WalletBalanceResponse> streamBalance(UUID walletId) {
+        return balanceStream.subscribe(walletId)
+                .map(balance -> new WalletBalanceResponse(walletId, balance));
     }
 
-    private Mono<Void> updateWalletBalance(UUID walletId, BigDecimal newBalance) {
-        log.debug("Обновление баланса: id={}, newBalance={}", walletId, newBalance);
-        return walletRepository.updateBalance(walletId, newBalance)
-                .doOnNext(rowsUpdated -> log.debug("Результат обновление: {} кол-во обновлений {}", rowsUpdated, walletId))
-                .filter(rowsUpdated -> rowsUpdated > 0)
-                .switchIfEmpty(Mono.defer(() -> {
-                    log.error("Ничего не обновилось для: {}", walletId);
-                    return Mono.error(new WalletNotFoundException("Кошелек не найден: " + walletId));
-                }))
-                .then();
+    @Override
+    public Flux<WalletBatchItemResponse> performBatch(List<WalletOperationRequest> requests) {
+        return Flux.fromIterable(requests)
+                .zipWith(walletBatchExecutor.execute(requests), this::toBatchItem);
     }
+
+    @Override
+    public Mono<WalletTransferResponse> transfer(UUID fromWalletId, UUID toWalletId, Long amount) {
+        return walletMetrics.timeTransfer(false, shardRouter.route(List.of(fromWalletId, toWalletId),
+                        () -> walletTransferExecutor.transfer(fromWalletId, toWalletId, amount))
+                .map(changes -> new WalletTransferResponse(
+                        fromWalletId,
+                        changes.get(0).balanceAfter(),
+                        toWalletId,
+                        changes.get(1).balanceAfter(),
+                        "Перевод выполнен успешно")));
+    }
+
+    @Override
+    public Mono<WalletPayoutResponse> payout(WalletPayoutRequest request) {
+        List<UUID> toWalletIds = request.payouts().stream().map(WalletPayoutRequest.Payout::toWalletId).toList();
+        List<Long> amounts = request.payouts().stream().map(WalletPayoutRequest.Payout::amount).toList();
+        List<UUID> walletIds = new ArrayList<>(toWalletIds.size() + 1);
+        walletIds.add(request.fromWalletId());
+        walletIds.addAll(toWalletIds);
+        return walletMetrics.timeTransfer(true, shardRouter.route(walletIds,
+                        () -> walletTransferExecutor.payout(request.fromWalletId(), toWalletIds, amounts))
+                .map(changes -> new WalletPayoutResponse(
+                        request.fromWalletId(),
+                        changes.get(0).balanceAfter(),
+                        changes.subList(1, changes.size()).stream()
+                                .map(change -> new WalletBalanceResponse(change.walletId(), change.balanceAfter()))
+                                .toList(),
+                        String.format("Выплаты выполнены успешно: %d", toWalletIds.size()))));
+    }
+
+    @Override
+    public Mono<WalletHistoryPageResponse> getOperations(UUID walletId, String cursor, Integer limit) {
+        return shardRouter.route(walletId,
+                        () -> replicaRouter.read(walletId,
+                                Mono.defer(() -> walletHistoryReader.page(walletId, HistoryCursor.decode(cursor), limit))))
+                .map(page -> new WalletHistoryPageResponse(
+                        walletId,
+                        page.operations().stream().map(this::toHistoryItem).toList(),
+                        page.next() != null ? page.next().encode() : null));
+    }
+
+    @Override
+    public Flux<WalletHistoryItemResponse> streamOperations(UUID walletId, String cursor) {
+        return shardRouter.routeMany(walletId,
+                        () -> replicaRouter.readMany(walletId,
+                                Flux.defer(() -> walletHistoryReader.stream(walletId, HistoryCursor.decode(cursor)))))
+                .map(this::toHistoryItem);
+    }
+
+    private WalletHistoryItemResponse toHistoryItem(WalletOperation operation) {
+        return new WalletHistoryItemResponse(
+                operation.id(),
+                operation.operationType(),
+                operation.amount(),
+                operation.balanceBefore(),
+                operation.balanceAfter(),
+                operation.createdAt());
+    }
+
+    private WalletBatchItemResponse toBatchItem(WalletOperationRequest request, OperationOutcome outcome) {
+        if (outcome.isSuccess()) {
+            return new WalletBatchItemResponse(
+                    request.walletId(),
+                    HttpStatus.OK.value(),
+                    outcome.change().balanceAfter(),
+                    request.operationType().successMessage());
+        }
+        if (outcome.isRejected()) {
+            return new WalletBatchItemResponse(
+                    request.walletId(),
+                    HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    null,
+                    outcome.error().getMessage());
+        }
+        return new WalletBatchItemResponse(
+                request.walletId(),
+                HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                null,
+                "Внутренняя ошибка сервера");
+    }
+
+    private Mono<Wallet> findWalletById(UUID walletId) {
+        Mono<Wallet> wallet = walletRepository.findById(walletId)
+                .doOnError(error -> log.error("Ошибка поиска кошелька {}: {}", walletId, error.getMessage()));
+        if (!walletMetrics.sampleTrace(log)) {
+            return wallet;
+        }
+        log.debug("Поиск кошелька по id: {}", walletId);
+        return wallet.doOnNext(found -> log.debug("Найден кошелек: id={}, balance={}", found.getId(), found.getBalance()));
+    }
+
 }
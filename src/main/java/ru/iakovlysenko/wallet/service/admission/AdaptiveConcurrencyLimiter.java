@@ -0,0 +1,146 @@
+package ru.iakovlysenko.wallet.service.admission;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import ru.iakovlysenko.wallet.config.WalletAdmissionProperties;
+import ru.iakovlysenko.wallet.config.WalletJdbcProperties;
+import ru.iakovlysenko.wallet.config.WalletPoolProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Предел одновременных запросов, подстраиваемый по ожиданию соединения из пула.
+ * Наибольший предел - {@code max-concurrent} или {@code concurrency-per-connection} на соединение пула,
+ * через который идут запросы: JDBC в режиме {@code wallet.jdbc}, иначе пулы шардов или основной базы.
+ * Раз в {@code adjust-interval} считается среднее ожидание соединения за период по таймерам
+ * {@code wallet.r2dbc.acquire} и {@code hikaricp.connections.acquire}: выше {@code max-acquire-wait} предел
+ * умножается на {@code decrease-factor}, но не опускается ниже {@code min-concurrent}, иначе растет
+ * на {@code increase-step}. Запросы сверх предела отклоняются сразу, не дожидаясь соединения.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.admission", name = "enabled", havingValue = "true")
+public class AdaptiveConcurrencyLimiter {
+
+    private final MeterRegistry meterRegistry;
+    private final WalletAdmissionProperties properties;
+    private final int maxLimit;
+    private final int minLimit;
+    private final long maxAcquireWaitNanos;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private long lastCount;
+    private double lastTotalNanos;
+    private Disposable adjusting;
+
+    public AdaptiveConcurrencyLimiter(WalletAdmissionProperties properties,
+                                      WalletPoolProperties poolProperties,
+                                      WalletShardingProperties shardingProperties,
+                                      WalletJdbcProperties jdbcProperties,
+                                      MeterRegistry meterRegistry) {
+        int connections = connections(poolProperties, shardingProperties, jdbcProperties);
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.maxLimit = properties.getMaxConcurrent() > 0
+                ? properties.getMaxConcurrent()
+                : connections * properties.getConcurrencyPerConnection();
+        this.minLimit = Math.min(maxLimit, properties.getMinConcurrent() > 0 ? properties.getMinConcurrent() : connections);
+        this.maxAcquireWaitNanos = properties.getMaxAcquireWait().toNanos();
+        this.limit = new AtomicInteger(maxLimit);
+        Gauge.builder("wallet.admission.limit", limit, AtomicInteger::get)
+                .description("Текущий предел одновременных запросов")
+                .register(meterRegistry);
+        Gauge.builder("wallet.admission.in.flight", inFlight, AtomicInteger::get)
+                .description("Выполняющиеся запросы")
+                .register(meterRegistry);
+    }
+
+    private static int connections(WalletPoolProperties poolProperties,
+                                   WalletShardingProperties shardingProperties,
+                                   WalletJdbcProperties jdbcProperties) {
+        if (jdbcProperties.isEnabled()) {
+            return jdbcProperties.getMaxSize();
+        }
+        if (shardingProperties.isEnabled()) {
+            return shardingProperties.getShards().stream().mapToInt(WalletShardingProperties.Shard::getMaxSize).sum();
+        }
+        return poolProperties.getMaxSize();
+    }
+
+    @PostConstruct
+    void start() {
+        adjusting = Flux.interval(properties.getAdjustInterval(), properties.getAdjustInterval())
+                .onBackpressureDrop()
+                .subscribe(tick -> adjust());
+    }
+
+    @PreDestroy
+    void stop() {
+        adjusting.dispose();
+    }
+
+    /**
+     * Занимает место под запрос, если предел не достигнут.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int limit() {
+        return limit.get();
+    }
+
+    /**
+     * Пересчитывает предел по среднему ожиданию соединения с прошлого пересчета.
+     */
+    void adjust() {
+        long count = 0;
+        double totalNanos = 0;
+        for (String name : new String[]{"wallet.r2dbc.acquire", "hikaricp.connections.acquire"}) {
+            for (Timer timer : meterRegistry.find(name).timers()) {
+                count += timer.count();
+                totalNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+            }
+        }
+        long acquired = count - lastCount;
+        double waitedNanos = totalNanos - lastTotalNanos;
+        lastCount = count;
+        lastTotalNanos = totalNanos;
+
+        int current = limit.get();
+        if (acquired > 0 && waitedNanos / acquired > maxAcquireWaitNanos) {
+            int decreased = Math.max(minLimit, (int) (current * properties.getDecreaseFactor()));
+            if (decreased < current) {
+                limit.set(decreased);
+                log.debug("Ожидание соединения {} мс выше порога, предел одновременных запросов снижен до {}",
+                        TimeUnit.NANOSECONDS.toMillis((long) (waitedNanos / acquired)), decreased);
+            }
+        } else if (current < maxLimit) {
+            limit.set(Math.min(maxLimit, current + properties.getIncreaseStep()));
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package ru.iakovlysenko.wallet.service.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.exception.AdmissionRejectedException;
+
+import java.util.UUID;
+
+/**
+ * Допуск отдельных операций, которые приходят не запросом HTTP: кадры потока операций и запросы RSocket.
+ * Проверки те же, что у HTTP: место в пределе {@link AdaptiveConcurrencyLimiter} на время операции,
+ * затем токен кошелька в {@link WalletRateLimiter}. Отказ - {@link AdmissionRejectedException} без обращения к БД,
+ * отказы считаются в {@code wallet.admission.rejected} вместе с отказами HTTP.
+ * При {@code wallet.admission.enabled=false} операции допускаются без проверок.
+ */
+@Component
+public class OperationAdmission {
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final WalletRateLimiter walletRateLimiter;
+    private final Counter overloaded;
+    private final Counter walletRateLimited;
+
+    public OperationAdmission(@Nullable AdaptiveConcurrencyLimiter concurrencyLimiter,
+                              @Nullable WalletRateLimiter walletRateLimiter,
+                              MeterRegistry meterRegistry) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.walletRateLimiter = walletRateLimiter;
+        this.overloaded = rejected(meterRegistry, "concurrency");
+        this.walletRateLimited = rejected(meterRegistry, "wallet");
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("wallet.admission.rejected")
+                .description("Отклоненные при допуске запросы")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Выполняет операцию кошелька, если она допущена; место в пределе занимается при подписке.
+     */
+    public <T> Mono<T> admit(UUID walletId, Mono<T> operation) {
+        if (concurrencyLimiter == null) {
+            return operation;
+        }
+        return Mono.defer(() -> {
+            if (!concurrencyLimiter.tryAcquire()) {
+                overloaded.increment();
+                return Mono.error(new AdmissionRejectedException("OVERLOADED", "Сервис перегружен, повторите запрос позже"));
+            }
+            AdmissionRejectedException rejected = acquireWallet(walletId);
+            if (rejected != null) {
+                concurrencyLimiter.release();
+                return Mono.error(rejected);
+            }
+            return operation.doFinally(signal -> concurrencyLimiter.release());
+        });
+    }
+
+    /**
+     * Подписка держит соединение открытым, поэтому ограничивается только частотой запросов к кошельку.
+     */
+    public <T> Flux<T> admitStream(UUID walletId, Flux<T> stream) {
+        if (walletRateLimiter == null) {
+            return stream;
+        }
+        return Flux.defer(() -> {
+            AdmissionRejectedException rejected = acquireWallet(walletId);
+            return rejected != null ? Flux.error(rejected) : stream;
+        });
+    }
+
+    private AdmissionRejectedException acquireWallet(UUID walletId) {
+        if (walletId == null || walletRateLimiter.tryAcquire(walletId) == 0) {
+            return null;
+        }
+        walletRateLimited.increment();
+        return new AdmissionRejectedException("WALLET_RATE_LIMITED", "Слишком много запросов к кошельку, повторите запрос позже");
+    }
+
+}
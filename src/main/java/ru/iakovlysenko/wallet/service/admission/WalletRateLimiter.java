@@ -0,0 +1,72 @@
+package ru.iakovlysenko.wallet.service.admission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.iakovlysenko.wallet.config.WalletAdmissionProperties;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничение частоты запросов к кошельку корзиной токенов.
+ * Корзина кошелька - одно число, момент её полного наполнения (GCRA): каждый запрос сдвигает его на интервал
+ * {@code 1 / wallet-rate}, и запрос допускается, если момент опережает текущее время не больше чем
+ * на {@code wallet-burst} интервалов. Проверка - одно сравнение с заменой без блокировок.
+ * Корзины лежат в кеше с сегментированной таблицей и вытеснением по размеру; корзина кошелька без запросов
+ * дольше времени наполнения удаляется, так как она уже полная.
+ * Метрики кеша публикуются как {@code cache.*} с тегом {@code cache=wallet.admission}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "wallet.admission", name = "enabled", havingValue = "true")
+public class WalletRateLimiter {
+
+    private final Cache<UUID, AtomicLong> buckets;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier clock;
+
+    @Autowired
+    public WalletRateLimiter(WalletAdmissionProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    WalletRateLimiter(WalletAdmissionProperties properties, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / properties.getWalletRate()));
+        this.burstNanos = intervalNanos * Math.max(1, properties.getWalletBurst());
+        this.clock = clock;
+        this.buckets = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(properties.getMaxWallets())
+                .expireAfterAccess(Duration.ofNanos(burstNanos))
+                .recordStats()
+                .<UUID, AtomicLong>build(), "wallet.admission");
+    }
+
+    /**
+     * Забирает токен кошелька. Возвращает 0, если запрос допущен, иначе - через сколько наносекунд
+     * появится следующий токен.
+     */
+    public long tryAcquire(UUID walletId) {
+        long now = clock.getAsLong();
+        AtomicLong bucket = buckets.get(walletId, id -> new AtomicLong(now));
+        while (true) {
+            long refilled = bucket.get();
+            long next = Math.max(refilled, now) + intervalNanos;
+            long debt = next - now;
+            if (debt > burstNanos) {
+                return debt - burstNanos;
+            }
+            if (bucket.compareAndSet(refilled, next)) {
+                return 0;
+            }
+        }
+    }
+
+}
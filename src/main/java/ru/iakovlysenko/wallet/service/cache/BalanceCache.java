@@ -0,0 +1,100 @@
+package ru.iakovlysenko.wallet.service.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletCacheProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangeListener;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Кеш балансов с чтением через кеш и обновлением при коммите.
+ * Запись обновляется, только если её значение совпадает с балансом до операции, иначе удаляется:
+ * так изменения, пришедшие не по порядку, или параллельная загрузка не оставят в кеше устаревший баланс.
+ * Метрики попаданий и промахов публикуются как {@code cache.*} с тегом {@code cache=wallet.balance}.
+ * Без {@code wallet.cache.coherence} изменения других узлов сюда не приходят, о чем предупреждает лог при запуске.
+ */
+@Slf4j
+@Component
+public class BalanceCache implements BalanceChangeListener {
+
+    private final boolean enabled;
+    private final AsyncCache<UUID, Money> cache;
+
+    public BalanceCache(WalletCacheProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .buildAsync(), "wallet.balance");
+        if (enabled && !properties.getCoherence().isEnabled()) {
+            log.warn("Кеш баланса включен без согласования между узлами: при нескольких узлах баланс может отставать "
+                    + "до {}, включите wallet.cache.coherence.enabled", properties.getTtl());
+        }
+    }
+
+    /**
+     * Возвращает баланс из кеша, при промахе загружает его через {@code loader}.
+     * Одновременные промахи по одному кошельку выполняют одну загрузку.
+     */
+    public Mono<Money> get(UUID walletId, Function<UUID, Mono<Money>> loader) {
+        if (!enabled) {
+            return loader.apply(walletId);
+        }
+        return Mono.fromFuture(() -> cache.get(walletId, (id, executor) -> loader.apply(id).toFuture()));
+    }
+
+    /**
+     * Удаляет запись кошелька.
+     */
+    public void invalidate(UUID walletId) {
+        cache.synchronous().invalidate(walletId);
+    }
+
+    /**
+     * Удаляет все записи.
+     */
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    @Override
+    public void onCommitted(List<BalanceChange> changes) {
+        if (!enabled) {
+            return;
+        }
+        ConcurrentMap<UUID, CompletableFuture<Money>> entries = cache.asMap();
+        for (BalanceChange change : changes) {
+            CompletableFuture<Money> cached = entries.get(change.walletId());
+            if (cached != null && !advance(entries, cached, change)) {
+                log.debug("Сброс кеша баланса: id={}", change.walletId());
+                invalidate(change.walletId());
+            }
+        }
+    }
+
+    /**
+     * Сравнение с заменой без {@code compute}: вычисление на представлении асинхронного кеша
+     * ждет незавершенную загрузку и может рекурсивно обновить ту же запись из обработчика её завершения.
+     */
+    private boolean advance(ConcurrentMap<UUID, CompletableFuture<Money>> entries,
+                            CompletableFuture<Money> cached,
+                            BalanceChange change) {
+        Money current = cached.isDone() && !cached.isCompletedExceptionally() ? cached.join() : null;
+        return change.balanceBefore().equals(current)
+                && entries.replace(change.walletId(), cached, CompletableFuture.completedFuture(change.balanceAfter()));
+    }
+
+}
@@ -0,0 +1,232 @@
+package ru.iakovlysenko.wallet.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import ru.iakovlysenko.wallet.config.WalletCacheProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangeListener;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRouter;
+import ru.iakovlysenko.wallet.service.stream.BalanceStream;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Согласование кешей балансов между узлами через Postgres LISTEN/NOTIFY.
+ * Узел собирает id измененных кошельков за окно {@code window} и отправляет их одним {@code pg_notify}
+ * в формате {@code nodeId|id,id,...}. Получив уведомление другого узла, удаляет эти кошельки из своего кеша
+ * и перечитывает их баланс для подписчиков {@link BalanceStream}.
+ * Для уведомлений держится одно отдельное соединение вне пула. После переподключения кеш очищается целиком,
+ * а балансы подписок перечитываются, так как уведомления за время обрыва потеряны. Собственные уведомления,
+ * которые не удалось отправить за время обрыва, считаются в {@code wallet.cache.coherence.dropped};
+ * после переподключения узел отправляет {@code nodeId|*}, и другие узлы поступают так же.
+ * Кошельки из уведомлений некоторое время читаются с основной базы,
+ * чтобы кеш не загрузил с реплики баланс до изменения.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.cache.coherence", name = "enabled", havingValue = "true")
+public class BalanceCacheCoherence implements BalanceChangeListener {
+
+    /**
+     * Не больше 8000 байт полезной нагрузки NOTIFY: id узла и до 200 id кошельков.
+     */
+    private static final int MAX_WALLETS_PER_NOTIFICATION = 200;
+
+    private static final char NODE_SEPARATOR = '|';
+    private static final char ID_SEPARATOR = ',';
+    private static final String ALL = "*";
+
+    private final BalanceCache balanceCache;
+    private final ReplicaRouter replicaRouter;
+    private final BalanceStream balanceStream;
+    private final ConnectionFactory connectionFactory;
+    private final String channel;
+    private final Duration window;
+    private final Duration reconnectDelay;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Counter dropped;
+    private final AtomicBoolean droppedSinceConnect = new AtomicBoolean();
+
+    private FluxSink<UUID> changed;
+    private final Disposable.Composite subscriptions = Disposables.composite();
+    private volatile PostgresqlConnection connection;
+
+    public BalanceCacheCoherence(BalanceCache balanceCache,
+                                 ReplicaRouter replicaRouter,
+                                 BalanceStream balanceStream,
+                                 R2dbcProperties r2dbcProperties,
+                                 WalletCacheProperties properties,
+                                 MeterRegistry meterRegistry) {
+        this.balanceCache = balanceCache;
+        this.replicaRouter = replicaRouter;
+        this.balanceStream = balanceStream;
+        this.connectionFactory = ConnectionFactories.get(dedicatedConnectionOptions(r2dbcProperties));
+        this.channel = properties.getCoherence().getChannel();
+        this.window = properties.getCoherence().getWindow();
+        this.reconnectDelay = properties.getCoherence().getReconnectDelay();
+        this.dropped = Counter.builder("wallet.cache.coherence.dropped")
+                .description("Измененные кошельки, уведомление о которых не отправлено из-за обрыва канала")
+                .register(meterRegistry);
+    }
+
+    private static ConnectionFactoryOptions dedicatedConnectionOptions(R2dbcProperties r2dbcProperties) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(r2dbcProperties.getUrl()).mutate();
+        if (r2dbcProperties.getUsername() != null) {
+            options.option(ConnectionFactoryOptions.USER, r2dbcProperties.getUsername());
+        }
+        if (r2dbcProperties.getPassword() != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, r2dbcProperties.getPassword());
+        }
+        return options.build();
+    }
+
+    @PostConstruct
+    void start() {
+        subscriptions.add(Flux.usingWhen(
+                        Mono.from(connectionFactory.create()).cast(PostgresqlConnection.class),
+                        this::listen,
+                        PostgresqlConnection::close)
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, reconnectDelay)
+                        .doBeforeRetry(signal -> log.warn("Переподключение к каналу {}: {}",
+                                channel, signal.failure().getMessage())))
+                .subscribe(this::handle));
+
+        subscriptions.add(Flux.<UUID>create(sink -> changed = sink)
+                .bufferTimeout(MAX_WALLETS_PER_NOTIFICATION, window)
+                .onBackpressureBuffer()
+                .concatMap(walletIds -> {
+                    Set<UUID> distinct = new LinkedHashSet<>(walletIds);
+                    return send(encode(distinct)).doOnNext(sent -> {
+                        if (!sent) {
+                            drop(distinct.size());
+                        }
+                    });
+                })
+                .subscribe());
+    }
+
+    @PreDestroy
+    void stop() {
+        subscriptions.dispose();
+    }
+
+    @Override
+    public void onCommitted(List<BalanceChange> changes) {
+        for (BalanceChange change : changes) {
+            changed.next(change.walletId());
+        }
+    }
+
+    private Flux<Notification> listen(PostgresqlConnection listenConnection) {
+        return listenConnection.createStatement("LISTEN " + channel)
+                .execute()
+                .flatMap(result -> result.getRowsUpdated())
+                .then(Mono.fromRunnable(() -> {
+                    connection = listenConnection;
+                    balanceCache.invalidateAll();
+                    balanceStream.reloadAll();
+                    log.info("Подписка на канал {} активна", channel);
+                }))
+                .then(Mono.defer(() -> droppedSinceConnect.getAndSet(false)
+                        ? send(nodeId + NODE_SEPARATOR + ALL).doOnNext(sent -> droppedSinceConnect.compareAndSet(false, !sent))
+                        : Mono.empty()))
+                .thenMany(listenConnection.getNotifications())
+                .doFinally(signal -> connection = null);
+    }
+
+    /**
+     * Отправляет уведомление; {@code false}, если канал недоступен или отправка не удалась.
+     */
+    private Mono<Boolean> send(String payload) {
+        PostgresqlConnection current = connection;
+        if (current == null) {
+            return Mono.just(false);
+        }
+        return current.createStatement("SELECT pg_notify($1, $2)")
+                .bind(0, channel)
+                .bind(1, payload)
+                .execute()
+                .flatMap(result -> result.map((row, metadata) -> Boolean.TRUE))
+                .then(Mono.just(true))
+                .onErrorResume(error -> {
+                    log.warn("Ошибка отправки уведомления в канал {}: {}", channel, error.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    /**
+     * Учитывает неотправленное уведомление; первое за обрыв пишется в лог предупреждением.
+     */
+    private void drop(int wallets) {
+        dropped.increment(wallets);
+        if (!droppedSinceConnect.getAndSet(true)) {
+            log.warn("Канал {} недоступен, уведомления о кошельках пропускаются до переподключения", channel);
+        }
+    }
+
+    String encode(Set<UUID> walletIds) {
+        StringBuilder payload = new StringBuilder(nodeId.length() + 1 + walletIds.size() * 37)
+                .append(nodeId)
+                .append(NODE_SEPARATOR);
+        boolean first = true;
+        for (UUID walletId : walletIds) {
+            if (!first) {
+                payload.append(ID_SEPARATOR);
+            }
+            payload.append(walletId);
+            first = false;
+        }
+        return payload.toString();
+    }
+
+    private boolean isOwn(String payload, int separator) {
+        return separator == nodeId.length() && payload.startsWith(nodeId);
+    }
+
+    void handle(Notification notification) {
+        String payload = notification.getParameter();
+        int separator = payload == null ? -1 : payload.indexOf(NODE_SEPARATOR);
+        if (separator < 0 || isOwn(payload, separator)) {
+            return;
+        }
+        if (ALL.equals(payload.substring(separator + 1))) {
+            log.info("Узел пропустил уведомления, кеш баланса очищается");
+            balanceCache.invalidateAll();
+            balanceStream.reloadAll();
+            return;
+        }
+        for (String walletId : payload.substring(separator + 1).split(String.valueOf(ID_SEPARATOR))) {
+            try {
+                UUID id = UUID.fromString(walletId);
+                replicaRouter.markWritten(id);
+                balanceCache.invalidate(id);
+                balanceStream.reload(id);
+            } catch (IllegalArgumentException ex) {
+                log.warn("Некорректный id кошелька в уведомлении: {}", walletId);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Движок атомарного обновления: операция выполняется одним условным SQL-выражением с {@code RETURNING}.
+ * Пополнение совмещено с созданием кошелька через upsert, списание проверяет остаток в {@code WHERE}.
+ * Запись журнала вставляется тем же выражением через изменяющий CTE, поэтому операция остается одним обращением к БД.
+ * Явная транзакция открывается только для операции с ключом идемпотентности, чтобы ключ и баланс
+ * зафиксировались вместе.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "wallet.engine", name = "mode", havingValue = "atomic")
+public class AtomicWalletEngine implements WalletEngine {
+
+    private final WalletRepository walletRepository;
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final BalanceChangePublisher balanceChangePublisher;
+    private final LedgerWriter ledgerWriter;
+
+    @Override
+    public Mono<BalanceChange> apply(UUID walletId, OperationType operationType, long amount, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return update(walletId, operationType, Money.ofUnits(amount))
+                    .doOnNext(balanceChangePublisher::publish);
+        }
+        return transactionalOperator.transactional(update(walletId, operationType, Money.ofUnits(amount))
+                        .flatMap(change -> idempotencyKeyRepository
+                                .insert(IdempotencyRecord.of(idempotencyKey, change, LocalDateTime.now()))
+                                .thenReturn(change)))
+                .doOnNext(balanceChangePublisher::publish);
+    }
+
+    private Mono<BalanceChange> update(UUID walletId, OperationType operationType, Money amountMoney) {
+        if (operationType == OperationType.DEPOSIT) {
+            return deposit(walletId, amountMoney)
+                    .map(balance -> new BalanceChange(walletId, operationType, amountMoney,
+                            balance.minus(amountMoney), balance));
+        }
+
+        return withdraw(walletId, amountMoney)
+                .map(balance -> new BalanceChange(walletId, operationType, amountMoney,
+                        balance.plus(amountMoney), balance))
+                .switchIfEmpty(Mono.defer(() -> insufficientFunds(walletId, amountMoney)));
+    }
+
+    private Mono<Money> deposit(UUID walletId, Money amount) {
+        if (!ledgerWriter.isEnabled()) {
+            return walletRepository.depositAtomically(walletId, amount);
+        }
+        return walletRepository.depositAtomicallyRecorded(walletId, amount, UUID.randomUUID(), LocalDateTime.now());
+    }
+
+    private Mono<Money> withdraw(UUID walletId, Money amount) {
+        if (!ledgerWriter.isEnabled()) {
+            return walletRepository.withdrawAtomically(walletId, amount);
+        }
+        return walletRepository.withdrawAtomicallyRecorded(walletId, amount, UUID.randomUUID(), LocalDateTime.now());
+    }
+
+    /**
+     * Медленный путь: строка не обновилась, читаем текущий баланс только ради сообщения об ошибке.
+     * Отсутствующий кошелек трактуется как кошелек с нулевым балансом, как и в классическом движке.
+     */
+    private Mono<BalanceChange> insufficientFunds(UUID walletId, Money amount) {
+        return walletRepository.findById(walletId)
+                .map(Wallet::getBalance)
+                .defaultIfEmpty(Money.ZERO)
+                .flatMap(balance -> {
+                    log.debug("Списание отклонено: id={}, balance={}, amount={}", walletId, balance, amount);
+                    return Mono.error(new InsufficientFundsException(balance, amount));
+                });
+    }
+
+}
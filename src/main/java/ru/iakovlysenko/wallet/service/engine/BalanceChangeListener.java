@@ -0,0 +1,15 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import ru.iakovlysenko.wallet.model.BalanceChange;
+
+import java.util.List;
+
+/**
+ * Слушатель зафиксированных изменений баланса.
+ * Вызывается движком после коммита, поэтому не должен блокировать поток и обращаться к БД синхронно.
+ */
+public interface BalanceChangeListener {
+
+    void onCommitted(List<BalanceChange> changes);
+
+}
@@ -0,0 +1,38 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+
+import java.util.List;
+
+/**
+ * Рассылает зафиксированные изменения баланса всем {@link BalanceChangeListener}.
+ * Ошибка одного слушателя не влияет на остальных и на результат операции.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BalanceChangePublisher {
+
+    private final List<BalanceChangeListener> listeners;
+
+    public void publish(BalanceChange change) {
+        publish(List.of(change));
+    }
+
+    public void publish(List<BalanceChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (BalanceChangeListener listener : listeners) {
+            try {
+                listener.onCommitted(changes);
+            } catch (RuntimeException ex) {
+                log.error("Ошибка слушателя {}: {}", listener.getClass().getSimpleName(), ex.getMessage());
+            }
+        }
+    }
+
+}
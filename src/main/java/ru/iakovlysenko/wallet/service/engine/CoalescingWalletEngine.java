@@ -0,0 +1,222 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+import ru.iakovlysenko.wallet.config.WalletEngineProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Движок с группировкой операций (group commit).
+ * Операции одного кошелька копятся в течение окна или до заполнения группы, затем применяются
+ * в одной транзакции: одна блокировка строки и одно обновление баланса на всю группу.
+ * Списания проверяются по порядку относительно текущего баланса группы, каждый вызывающий
+ * получает баланс после своей операции.
+ * Ключи идемпотентности группы проверяются после блокировки строки: повтор ключа с другого узла ждет
+ * фиксации первой операции и отклоняется, новые ключи вставляются одним выражением в той же транзакции,
+ * как и записи журнала успешных операций группы.
+ * Транзакция группы открывается на шарде, к которому привязан запрос первой операции.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.engine", name = "mode", havingValue = "coalescing")
+public class CoalescingWalletEngine implements WalletEngine {
+
+    private final WalletRepository walletRepository;
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final BalanceChangePublisher balanceChangePublisher;
+    private final LedgerWriter ledgerWriter;
+    private final Duration window;
+    private final int maxBatchSize;
+
+    private final ConcurrentMap<UUID, Batch> batches = new ConcurrentHashMap<>();
+
+    public CoalescingWalletEngine(WalletRepository walletRepository,
+                                  IdempotencyKeyRepository idempotencyKeyRepository,
+                                  TransactionalOperator transactionalOperator,
+                                  BalanceChangePublisher balanceChangePublisher,
+                                  LedgerWriter ledgerWriter,
+                                  WalletEngineProperties properties) {
+        this.walletRepository = walletRepository;
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.balanceChangePublisher = balanceChangePublisher;
+        this.ledgerWriter = ledgerWriter;
+        this.window = properties.getCoalescing().getWindow();
+        this.maxBatchSize = properties.getCoalescing().getMaxBatchSize();
+    }
+
+    @Override
+    public Mono<BalanceChange> apply(UUID walletId, OperationType operationType, long amount, String idempotencyKey) {
+        Money amountMoney = Money.ofUnits(amount);
+        return Mono.create(sink -> enqueue(walletId, new PendingOperation(operationType, amountMoney, idempotencyKey, sink)));
+    }
+
+    private void enqueue(UUID walletId, PendingOperation operation) {
+        Batch[] created = new Batch[1];
+        Batch[] full = new Batch[1];
+
+        batches.compute(walletId, (id, batch) -> {
+            if (batch == null) {
+                batch = new Batch(id);
+                created[0] = batch;
+            }
+            batch.operations.add(operation);
+            if (batch.operations.size() >= maxBatchSize) {
+                full[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+
+        if (full[0] != null) {
+            flush(full[0]);
+        } else if (created[0] != null) {
+            Batch batch = created[0];
+            Schedulers.parallel().schedule(() -> {
+                if (batches.remove(batch.walletId, batch)) {
+                    flush(batch);
+                }
+            }, window.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush(Batch batch) {
+        log.debug("Запись группы операций: id={}, size={}", batch.walletId, batch.operations.size());
+
+        Mono<List<OperationOutcome>> transaction = walletRepository.lockBalance(batch.walletId)
+                .switchIfEmpty(Mono.defer(() -> walletRepository.insertOrIgnore(batch.walletId, Money.ZERO)
+                        .then(walletRepository.lockBalance(batch.walletId))))
+                .flatMap(balance -> findExistingKeys(batch).flatMap(existingKeys -> {
+                    List<OperationOutcome> outcomes = applyInOrder(batch, balance, existingKeys);
+                    Money finalBalance = outcomes.stream()
+                            .filter(OperationOutcome::isSuccess)
+                            .reduce((first, second) -> second)
+                            .map(outcome -> outcome.change().balanceAfter())
+                            .orElse(null);
+                    if (finalBalance == null) {
+                        return Mono.just(outcomes);
+                    }
+                    return walletRepository.updateBalance(batch.walletId, finalBalance)
+                            .then(ledgerWriter.write(OperationOutcome.changes(outcomes)))
+                            .then(saveIdempotencyKeys(batch, outcomes))
+                            .thenReturn(outcomes);
+                }));
+
+        transactionalOperator.transactional(transaction)
+                .contextWrite(ShardRouter.propagate(batch.operations.get(0).sink.contextView()))
+                .subscribe(
+                        outcomes -> complete(batch, outcomes),
+                        error -> {
+                            log.error("Ошибка записи группы операций {}: {}", batch.walletId, error.getMessage());
+                            batch.operations.forEach(operation -> operation.sink.error(error));
+                        });
+    }
+
+    private Mono<Set<String>> findExistingKeys(Batch batch) {
+        List<String> keys = new ArrayList<>();
+        for (PendingOperation operation : batch.operations) {
+            if (operation.idempotencyKey != null) {
+                keys.add(operation.idempotencyKey);
+            }
+        }
+        if (keys.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        return idempotencyKeyRepository.findExisting(keys).collect(HashSet::new, Set::add);
+    }
+
+    /**
+     * Применяет операции по порядку; операция с уже использованным ключом, в том числе внутри группы, пропускается.
+     */
+    private List<OperationOutcome> applyInOrder(Batch batch, Money balance, Set<String> existingKeys) {
+        List<OperationOutcome> outcomes = new ArrayList<>(batch.operations.size());
+        Set<String> usedKeys = new HashSet<>(existingKeys);
+        Money running = balance;
+        for (PendingOperation operation : batch.operations) {
+            if (operation.idempotencyKey != null && !usedKeys.add(operation.idempotencyKey)) {
+                outcomes.add(OperationOutcome.duplicate(operation.idempotencyKey));
+                continue;
+            }
+            OperationOutcome outcome = OperationOutcome.apply(
+                    batch.walletId, operation.operationType, operation.amount, running);
+            if (outcome.isSuccess()) {
+                running = outcome.change().balanceAfter();
+            }
+            outcomes.add(outcome);
+        }
+        return outcomes;
+    }
+
+    private Mono<Long> saveIdempotencyKeys(Batch batch, List<OperationOutcome> outcomes) {
+        List<IdempotencyRecord> records = idempotencyRecords(batch, outcomes);
+        return records.isEmpty() ? Mono.empty() : idempotencyKeyRepository.insertAll(records);
+    }
+
+    private List<IdempotencyRecord> idempotencyRecords(Batch batch, List<OperationOutcome> outcomes) {
+        List<IdempotencyRecord> records = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < outcomes.size(); i++) {
+            String idempotencyKey = batch.operations.get(i).idempotencyKey;
+            if (idempotencyKey != null && outcomes.get(i).isSuccess()) {
+                records.add(IdempotencyRecord.of(idempotencyKey, outcomes.get(i).change(), now));
+            }
+        }
+        return records;
+    }
+
+    private void complete(Batch batch, List<OperationOutcome> outcomes) {
+        balanceChangePublisher.publish(OperationOutcome.changes(outcomes));
+        for (int i = 0; i < outcomes.size(); i++) {
+            OperationOutcome outcome = outcomes.get(i);
+            MonoSink<BalanceChange> sink = batch.operations.get(i).sink;
+            if (outcome.isSuccess()) {
+                sink.success(outcome.change());
+            } else {
+                sink.error(outcome.error());
+            }
+        }
+    }
+
+    private record PendingOperation(OperationType operationType, Money amount, String idempotencyKey,
+                                    MonoSink<BalanceChange> sink) {
+    }
+
+    /**
+     * Группа операций одного кошелька. Список изменяется только внутри {@code compute} по ключу кошелька.
+     */
+    private static final class Batch {
+
+        private final UUID walletId;
+        private final List<PendingOperation> operations = new ArrayList<>();
+
+        private Batch(UUID walletId) {
+            this.walletId = walletId;
+        }
+
+    }
+
+}
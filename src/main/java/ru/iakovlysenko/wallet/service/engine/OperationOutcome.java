@@ -0,0 +1,79 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import org.springframework.dao.DuplicateKeyException;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Итог одной операции в группе: изменение баланса либо ошибка.
+ * @param change
+ * @param error
+ */
+public record OperationOutcome(
+        BalanceChange change,
+        RuntimeException error
+) {
+
+    /**
+     * Применяет операцию к текущему балансу группы без обращения к БД.
+     */
+    public static OperationOutcome apply(UUID walletId, OperationType operationType, Money amount, Money running) {
+        if (operationType == OperationType.WITHDRAW && running.isLessThan(amount)) {
+            return new OperationOutcome(null, new InsufficientFundsException(running, amount));
+        }
+        Money next = operationType == OperationType.DEPOSIT
+                ? running.plus(amount)
+                : running.minus(amount);
+        return new OperationOutcome(new BalanceChange(walletId, operationType, amount, running, next), null);
+    }
+
+    /**
+     * Итог операции, ключ идемпотентности которой уже записан: операция не применяется.
+     */
+    static OperationOutcome duplicate(String idempotencyKey) {
+        return new OperationOutcome(null, new DuplicateKeyException("Ключ идемпотентности уже использован: " + idempotencyKey));
+    }
+
+    /**
+     * Итоги операций части пакета, транзакция которой откатилась: ни одна операция части не применена.
+     */
+    public static List<OperationOutcome> aborted(int size, Throwable error) {
+        RuntimeException cause = error instanceof RuntimeException runtime ? runtime : new IllegalStateException(error);
+        List<OperationOutcome> outcomes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            outcomes.add(new OperationOutcome(null, cause));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Возвращает изменения успешных операций группы.
+     */
+    public static List<BalanceChange> changes(List<OperationOutcome> outcomes) {
+        List<BalanceChange> changes = new ArrayList<>(outcomes.size());
+        for (OperationOutcome outcome : outcomes) {
+            if (outcome.isSuccess()) {
+                changes.add(outcome.change());
+            }
+        }
+        return changes;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Операция отклонена правилами кошелька, а не сбоем записи.
+     */
+    public boolean isRejected() {
+        return error instanceof InsufficientFundsException;
+    }
+
+}
@@ -0,0 +1,159 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+import ru.iakovlysenko.wallet.config.WalletEngineProperties;
+import ru.iakovlysenko.wallet.exception.ConcurrentUpdateException;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Классический движок: чтение кошелька, расчёт баланса в Java и запись в одной транзакции.
+ * Запись оптимистичная: баланс обновляется, только если версия кошелька не изменилась с момента чтения.
+ * При параллельном изменении транзакция откатывается и повторяется целиком с экспоненциальной паузой и разбросом
+ * не более {@code wallet.engine.retry.max-attempts} раз, после чего операция завершается {@link ConcurrentUpdateException}.
+ * Запись журнала вставляется в той же транзакции после баланса.
+ * Ключ идемпотентности вставляется последним выражением транзакции; повтор ключа откатывает её без повторов.
+ * Отладочный лог пишется только для операций, попавших в выборку {@code wallet.metrics.trace-sample-rate}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.engine", name = "mode", havingValue = "classic", matchIfMissing = true)
+public class ReadModifyWriteWalletEngine implements WalletEngine {
+
+    private final WalletRepository walletRepository;
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final BalanceChangePublisher balanceChangePublisher;
+    private final LedgerWriter ledgerWriter;
+    private final WalletMetrics walletMetrics;
+    private final RetryBackoffSpec conflictRetry;
+
+    public ReadModifyWriteWalletEngine(WalletRepository walletRepository,
+                                       IdempotencyKeyRepository idempotencyKeyRepository,
+                                       TransactionalOperator transactionalOperator,
+                                       BalanceChangePublisher balanceChangePublisher,
+                                       LedgerWriter ledgerWriter,
+                                       WalletMetrics walletMetrics,
+                                       WalletEngineProperties properties) {
+        this.walletRepository = walletRepository;
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.balanceChangePublisher = balanceChangePublisher;
+        this.ledgerWriter = ledgerWriter;
+        this.walletMetrics = walletMetrics;
+        this.conflictRetry = conflictRetry(properties.getRetry(), walletMetrics);
+    }
+
+    private static RetryBackoffSpec conflictRetry(WalletEngineProperties.Retry retry, WalletMetrics walletMetrics) {
+        return Retry.backoff(retry.getMaxAttempts(), retry.getMinBackoff())
+                .maxBackoff(retry.getMaxBackoff())
+                .jitter(retry.getJitter())
+                .filter(ConcurrencyFailureException.class::isInstance)
+                .doBeforeRetry(signal -> walletMetrics.recordRetry(WalletMetrics.RetryComponent.CLASSIC))
+                .onRetryExhaustedThrow((spec, signal) -> new ConcurrentUpdateException(
+                        "Кошелек изменяется параллельно, повторите операцию", signal.failure()));
+    }
+
+    @Override
+    public Mono<BalanceChange> apply(UUID walletId, OperationType operationType, long amount, String idempotencyKey) {
+        Money amountMoney = Money.ofUnits(amount);
+        boolean trace = walletMetrics.sampleTrace(log);
+
+        Mono<BalanceChange> operation = Mono.defer(() -> findWalletById(walletId, trace))
+                .switchIfEmpty(Mono.defer(() -> createWalletIfNotExists(walletId, trace)))
+                .flatMap(wallet -> {
+                    Money newBalance;
+                    if (operationType == OperationType.DEPOSIT) {
+                        newBalance = wallet.getBalance().plus(amountMoney);
+                    } else {
+                        if (wallet.getBalance().isLessThan(amountMoney)) {
+                            return Mono.error(new InsufficientFundsException(wallet.getBalance(), amountMoney));
+                        }
+                        newBalance = wallet.getBalance().minus(amountMoney);
+                    }
+
+                    BalanceChange change = new BalanceChange(
+                            walletId,
+                            operationType,
+                            amountMoney,
+                            wallet.getBalance(),
+                            newBalance
+                    );
+                    return updateWalletBalance(walletId, newBalance, wallet.getVersion(), trace)
+                            .then(ledgerWriter.write(List.of(change)))
+                            .then(saveIdempotencyKey(idempotencyKey, change))
+                            .thenReturn(change);
+                });
+
+        return transactionalOperator.transactional(operation)
+                .retryWhen(conflictRetry)
+                .doOnNext(balanceChangePublisher::publish);
+    }
+
+    private Mono<Wallet> findWalletById(UUID walletId, boolean trace) {
+        Mono<Wallet> wallet = walletRepository.findById(walletId)
+                .doOnError(error -> log.error("Ошибка поиска кошелька {}: {}", walletId, error.getMessage()));
+        if (!trace) {
+            return wallet;
+        }
+        log.debug("Поиск кошелька по id: {}", walletId);
+        return wallet.doOnNext(found -> log.debug("Найден кошелек: id={}, balance={}", found.getId(), found.getBalance()));
+    }
+
+    private Mono<Wallet> createWalletIfNotExists(UUID walletId, boolean trace) {
+        if (trace) {
+            log.debug("Кошелек {} не найден, создаем новый с балансом 0", walletId);
+        }
+        return walletRepository.insertOrIgnore(walletId, Money.ZERO)
+                .then(findWalletById(walletId, trace))
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException("Кошелек не найден: " + walletId)));
+    }
+
+    private Mono<Void> saveIdempotencyKey(String idempotencyKey, BalanceChange change) {
+        if (idempotencyKey == null) {
+            return Mono.empty();
+        }
+        return idempotencyKeyRepository.insert(IdempotencyRecord.of(idempotencyKey, change, LocalDateTime.now()))
+                .then();
+    }
+
+    private Mono<Void> updateWalletBalance(UUID walletId, Money newBalance, long version, boolean trace) {
+        Mono<Integer> update = walletRepository.updateBalanceIfVersion(walletId, newBalance, version);
+        if (trace) {
+            log.debug("Обновление баланса: id={}, newBalance={}", walletId, newBalance);
+            update = update.doOnNext(rowsUpdated -> log.debug("Результат обновление: {} кол-во обновлений {}", rowsUpdated, walletId));
+        }
+        return update
+                .filter(rowsUpdated -> rowsUpdated > 0)
+                .switchIfEmpty(Mono.defer(() -> {
+                    if (trace) {
+                        log.debug("Кошелек {} изменен параллельно, версия {} устарела", walletId, version);
+                    }
+                    return Mono.error(new OptimisticLockingFailureException(
+                            "Версия кошелька " + walletId + " изменилась: " + version));
+                }))
+                .then();
+    }
+
+}
@@ -0,0 +1,509 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import ru.iakovlysenko.wallet.config.WalletEngineProperties;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletBatchRepository;
+import ru.iakovlysenko.wallet.repository.WalletBatchRepository.BalanceUpdate;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Движок с единственным писателем на кошелек.
+ * Кошельки распределены по {@code lanes} полосам хешем id. Полоса обрабатывает свои операции строго по очереди
+ * пачками до {@code max-batch-size} и держит баланс кошельков в памяти, поэтому БД только сохраняет результат:
+ * одно пакетное условное обновление на пачку без блокировок строк.
+ * Условие {@code balance = ожидаемый} защищает от записи в обход полосы (пакетный эндпоинт, другие узлы):
+ * при расхождении баланс перечитывается и операции кошелька применяются заново.
+ * Отказ из-за нехватки средств без обновления кошелька условием не проверяется, поэтому баланс такого кошелька
+ * перед отказом сверяется с БД. Изменения, опубликованные другими писателями этого узла, вытесняют кошелек из памяти
+ * перед следующей пачкой полосы.
+ * Кошелек, которого нет в БД, создается в транзакции пачки и только если его баланс изменился.
+ * Пачка записывается в транзакции: уже использованные ключи идемпотентности отклоняются до расчета,
+ * новые ключи и записи журнала вставляются вместе с балансами кошельков, обновленных без расхождения.
+ * Если ключ успел вставить другой узел, повторяются только кошельки с этим ключом.
+ * Без ключей, новых кошельков и при отключенном журнале транзакция не открывается.
+ * При шардировании пачка делится по шарду запросов и части записываются на своих шардах по очереди.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.engine", name = "mode", havingValue = "single-writer")
+public class SingleWriterWalletEngine implements WalletEngine, BalanceChangeListener {
+
+    /**
+     * Число попыток применить операции кошелька при записи в обход полосы.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final WalletBatchRepository walletBatchRepository;
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final BalanceChangePublisher balanceChangePublisher;
+    private final LedgerWriter ledgerWriter;
+    private final WalletMetrics walletMetrics;
+    private final int maxBatchSize;
+    private final Lane[] lanes;
+
+    public SingleWriterWalletEngine(WalletBatchRepository walletBatchRepository,
+                                    IdempotencyKeyRepository idempotencyKeyRepository,
+                                    TransactionalOperator transactionalOperator,
+                                    @Lazy BalanceChangePublisher balanceChangePublisher,
+                                    LedgerWriter ledgerWriter,
+                                    WalletMetrics walletMetrics,
+                                    WalletEngineProperties properties) {
+        this.walletBatchRepository = walletBatchRepository;
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.balanceChangePublisher = balanceChangePublisher;
+        this.ledgerWriter = ledgerWriter;
+        this.walletMetrics = walletMetrics;
+
+        WalletEngineProperties.SingleWriter singleWriter = properties.getSingleWriter();
+        this.maxBatchSize = singleWriter.getMaxBatchSize();
+        this.lanes = new Lane[singleWriter.getLanes()];
+        int walletsPerLane = Math.max(1, singleWriter.getMaxWallets() / lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(walletsPerLane);
+        }
+    }
+
+    @Override
+    public Mono<BalanceChange> apply(UUID walletId, OperationType operationType, long amount, String idempotencyKey) {
+        Money amountMoney = Money.ofUnits(amount);
+        return Mono.create(sink -> lane(walletId)
+                .submit(new PendingOperation(walletId, operationType, amountMoney, idempotencyKey, sink)));
+    }
+
+    /**
+     * Запоминает опубликованные балансы; собственные изменения полосы совпадают с балансом в памяти и не вытесняют его.
+     */
+    @Override
+    public void onCommitted(List<BalanceChange> changes) {
+        for (BalanceChange change : changes) {
+            lane(change.walletId()).observe(change);
+        }
+    }
+
+    private Lane lane(UUID walletId) {
+        return lanes[Math.floorMod(walletId.hashCode(), lanes.length)];
+    }
+
+    private record PendingOperation(UUID walletId, OperationType operationType, Money amount, String idempotencyKey,
+                                    MonoSink<BalanceChange> sink) {
+    }
+
+    /**
+     * Полоса: очередь с несколькими производителями и одним потребителем.
+     * Карта балансов читается и изменяется только обработчиком полосы, видимость между потоками
+     * обеспечивает флаг {@code running}. Опубликованные балансы копятся в {@code observed} до следующей пачки,
+     * при переполнении полоса забывает все балансы.
+     */
+    private final class Lane {
+
+        private final Queue<PendingOperation> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final Map<UUID, Money> observed = new ConcurrentHashMap<>();
+        private final Set<UUID> absent = new HashSet<>();
+        private final int maxWallets;
+        private final Map<UUID, Money> balances;
+        private volatile boolean overflowed;
+
+        private Lane(int maxWallets) {
+            this.maxWallets = maxWallets;
+            this.balances = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, Money> eldest) {
+                    if (size() > maxWallets) {
+                        absent.remove(eldest.getKey());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private void observe(BalanceChange change) {
+            if (observed.size() < maxWallets) {
+                observed.put(change.walletId(), change.balanceAfter());
+            } else {
+                overflowed = true;
+            }
+        }
+
+        /**
+         * Вытесняет кошельки, опубликованный баланс которых расходится с балансом в памяти.
+         */
+        private void evictObserved() {
+            if (overflowed) {
+                overflowed = false;
+                observed.clear();
+                balances.clear();
+                absent.clear();
+                return;
+            }
+            for (UUID walletId : observed.keySet()) {
+                Money balance = observed.remove(walletId);
+                Money cached = balances.get(walletId);
+                if (cached != null && !cached.equals(balance)) {
+                    forget(walletId);
+                }
+            }
+        }
+
+        private void forget(UUID walletId) {
+            balances.remove(walletId);
+            absent.remove(walletId);
+        }
+
+        private void submit(PendingOperation operation) {
+            queue.offer(operation);
+            drain();
+        }
+
+        private void drain() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            List<PendingOperation> batch = new ArrayList<>();
+            PendingOperation operation;
+            while (batch.size() < maxBatchSize && (operation = queue.poll()) != null) {
+                batch.add(operation);
+            }
+            if (batch.isEmpty()) {
+                running.set(false);
+                if (!queue.isEmpty()) {
+                    drain();
+                }
+                return;
+            }
+            evictObserved();
+            Flux.fromIterable(partition(batch).values())
+                    .concatMap(part -> process(group(part), 1)
+                            .contextWrite(ShardRouter.propagate(part.get(0).sink().contextView())))
+                    .doFinally(signal -> {
+                        running.set(false);
+                        drain();
+                    })
+                    .subscribe();
+        }
+
+        private Map<String, List<PendingOperation>> partition(List<PendingOperation> batch) {
+            Map<String, List<PendingOperation>> parts = new LinkedHashMap<>();
+            for (PendingOperation operation : batch) {
+                parts.computeIfAbsent(ShardRouter.shardName(operation.sink().contextView()), shard -> new ArrayList<>())
+                        .add(operation);
+            }
+            return parts;
+        }
+
+        private Map<UUID, List<PendingOperation>> group(List<PendingOperation> batch) {
+            Map<UUID, List<PendingOperation>> groups = new LinkedHashMap<>();
+            for (PendingOperation operation : batch) {
+                groups.computeIfAbsent(operation.walletId(), id -> new ArrayList<>()).add(operation);
+            }
+            return groups;
+        }
+
+        private Mono<Void> process(Map<UUID, List<PendingOperation>> groups, int attempt) {
+            return load(groups.keySet())
+                    .then(Mono.defer(() -> persist(groups, attempt)))
+                    .onErrorResume(error -> {
+                        log.error("Ошибка записи полосы: wallets={}, error={}", groups.size(), error.getMessage());
+                        groups.forEach((walletId, operations) -> {
+                            forget(walletId);
+                            operations.forEach(operation -> operation.sink().error(error));
+                        });
+                        return Mono.empty();
+                    });
+        }
+
+        /**
+         * Загружает балансы кошельков, которых нет в памяти.
+         * Отсутствующие в БД получают нулевой баланс в памяти, строка создается при записи пачки.
+         */
+        private Mono<Void> load(Set<UUID> walletIds) {
+            Set<UUID> missing = new HashSet<>();
+            for (UUID walletId : walletIds) {
+                if (!balances.containsKey(walletId)) {
+                    missing.add(walletId);
+                }
+            }
+            if (missing.isEmpty()) {
+                return Mono.empty();
+            }
+            return walletBatchRepository.findAll(missing)
+                    .doOnNext(wallet -> {
+                        balances.put(wallet.getId(), wallet.getBalance());
+                        missing.remove(wallet.getId());
+                    })
+                    .then(Mono.fromRunnable(() -> missing.forEach(walletId -> {
+                        balances.put(walletId, Money.ZERO);
+                        absent.add(walletId);
+                    })));
+        }
+
+        private Mono<Void> persist(Map<UUID, List<PendingOperation>> groups, int attempt) {
+            Map<UUID, List<OperationOutcome>> outcomes = new LinkedHashMap<>();
+            List<BalanceUpdate> updates = new ArrayList<>();
+            Set<String> keys = idempotencyKeys(groups);
+            Set<String> claimed = new HashSet<>();
+
+            Mono<Set<String>> existing = keys.isEmpty()
+                    ? Mono.just(Set.of())
+                    : idempotencyKeyRepository.findExisting(keys).collect(HashSet<String>::new, Set::add);
+            Mono<Set<UUID>> write = existing
+                    .flatMap(existingKeys -> {
+                        applyInOrder(groups, existingKeys, outcomes, updates);
+                        return createAbsent(updates).then(compareAndSet(updates));
+                    })
+                    .flatMap(conflicted -> verifyRejected(rejected(outcomes, updates), conflicted))
+                    .flatMap(conflicted -> {
+                        List<IdempotencyRecord> records = idempotencyRecords(groups, outcomes, conflicted);
+                        records.forEach(record -> claimed.add(record.key()));
+                        return saveIdempotencyKeys(records)
+                                .then(ledgerWriter.write(committedChanges(outcomes, conflicted)))
+                                .thenReturn(conflicted);
+                    });
+            if (!keys.isEmpty() || ledgerWriter.isEnabled() || groups.keySet().stream().anyMatch(absent::contains)) {
+                write = transactionalOperator.transactional(write);
+            }
+
+            return write.flatMap(conflicted -> {
+                Map<UUID, List<PendingOperation>> retry = new LinkedHashMap<>();
+                for (BalanceUpdate update : updates) {
+                    if (!conflicted.contains(update.walletId())) {
+                        balances.put(update.walletId(), update.balance());
+                        absent.remove(update.walletId());
+                    }
+                }
+                outcomes.forEach((walletId, walletOutcomes) -> {
+                    if (conflicted.contains(walletId)) {
+                        forget(walletId);
+                        retry.put(walletId, groups.get(walletId));
+                    }
+                });
+                balanceChangePublisher.publish(committedChanges(outcomes, conflicted));
+                outcomes.forEach((walletId, walletOutcomes) -> {
+                    if (!conflicted.contains(walletId)) {
+                        complete(groups.get(walletId), walletOutcomes);
+                    }
+                });
+                return retry(retry, attempt);
+            }).onErrorResume(DuplicateKeyException.class, error -> retryTakenKeys(groups, claimed, attempt, error));
+        }
+
+        /**
+         * Ключ идемпотентности вставлен другим узлом между проверкой и записью, транзакция пачки откатилась целиком.
+         * Кошельки с занятыми ключами повторяются через {@link #retry}, остальные кошельки пачки записываются заново.
+         */
+        private Mono<Void> retryTakenKeys(Map<UUID, List<PendingOperation>> groups, Set<String> claimed, int attempt,
+                                          DuplicateKeyException error) {
+            if (claimed.isEmpty()) {
+                return Mono.error(error);
+            }
+            return idempotencyKeyRepository.findExisting(claimed).collect(HashSet<String>::new, Set::add)
+                    .flatMap(taken -> {
+                        Map<UUID, List<PendingOperation>> duplicated = new LinkedHashMap<>();
+                        Map<UUID, List<PendingOperation>> others = new LinkedHashMap<>();
+                        groups.forEach((walletId, operations) -> {
+                            boolean hit = operations.stream().anyMatch(operation ->
+                                    operation.idempotencyKey() != null && taken.contains(operation.idempotencyKey()));
+                            (hit ? duplicated : others).put(walletId, operations);
+                        });
+                        if (duplicated.isEmpty()) {
+                            return Mono.error(error);
+                        }
+                        log.debug("Ключ идемпотентности занят другим узлом: wallets={}, attempt={}",
+                                duplicated.size(), attempt);
+                        return (others.isEmpty() ? Mono.<Void>empty() : persist(others, attempt))
+                                .then(Mono.defer(() -> retry(duplicated, attempt)));
+                    });
+        }
+
+        private List<BalanceChange> committedChanges(Map<UUID, List<OperationOutcome>> outcomes, Set<UUID> conflicted) {
+            List<BalanceChange> changes = new ArrayList<>();
+            outcomes.forEach((walletId, walletOutcomes) -> {
+                if (!conflicted.contains(walletId)) {
+                    changes.addAll(OperationOutcome.changes(walletOutcomes));
+                }
+            });
+            return changes;
+        }
+
+        private Set<String> idempotencyKeys(Map<UUID, List<PendingOperation>> groups) {
+            Set<String> keys = new HashSet<>();
+            groups.values().forEach(operations -> operations.forEach(operation -> {
+                if (operation.idempotencyKey() != null) {
+                    keys.add(operation.idempotencyKey());
+                }
+            }));
+            return keys;
+        }
+
+        /**
+         * Применяет операции кошельков к балансам в памяти; операция с уже использованным ключом пропускается.
+         */
+        private void applyInOrder(Map<UUID, List<PendingOperation>> groups, Set<String> existingKeys,
+                                  Map<UUID, List<OperationOutcome>> outcomes, List<BalanceUpdate> updates) {
+            Set<String> usedKeys = new HashSet<>(existingKeys);
+            groups.forEach((walletId, operations) -> {
+                Money expected = balances.get(walletId);
+                Money running = expected;
+                List<OperationOutcome> walletOutcomes = new ArrayList<>(operations.size());
+                for (PendingOperation operation : operations) {
+                    if (operation.idempotencyKey() != null && !usedKeys.add(operation.idempotencyKey())) {
+                        walletOutcomes.add(OperationOutcome.duplicate(operation.idempotencyKey()));
+                        continue;
+                    }
+                    OperationOutcome outcome = OperationOutcome.apply(
+                            walletId, operation.operationType(), operation.amount(), running);
+                    if (outcome.isSuccess()) {
+                        running = outcome.change().balanceAfter();
+                    }
+                    walletOutcomes.add(outcome);
+                }
+                outcomes.put(walletId, walletOutcomes);
+                if (!running.equals(expected)) {
+                    updates.add(new BalanceUpdate(walletId, expected, running));
+                }
+            });
+        }
+
+        private Mono<Set<UUID>> compareAndSet(List<BalanceUpdate> updates) {
+            if (updates.isEmpty()) {
+                return Mono.just(Set.of());
+            }
+            return walletBatchRepository.compareAndSetBalances(updates)
+                    .collect(HashSet<UUID>::new, Set::add);
+        }
+
+        private Mono<Long> createAbsent(List<BalanceUpdate> updates) {
+            Set<UUID> created = new HashSet<>();
+            for (BalanceUpdate update : updates) {
+                if (absent.contains(update.walletId())) {
+                    created.add(update.walletId());
+                }
+            }
+            return created.isEmpty() ? Mono.empty() : walletBatchRepository.insertMissing(created);
+        }
+
+        /**
+         * Кошельки, операция которых отклонена из-за нехватки средств, а баланс не обновлялся.
+         */
+        private Set<UUID> rejected(Map<UUID, List<OperationOutcome>> outcomes, List<BalanceUpdate> updates) {
+            Set<UUID> updated = new HashSet<>();
+            updates.forEach(update -> updated.add(update.walletId()));
+            Set<UUID> rejected = new HashSet<>();
+            outcomes.forEach((walletId, walletOutcomes) -> {
+                if (!updated.contains(walletId) && walletOutcomes.stream()
+                        .anyMatch(outcome -> outcome.error() instanceof InsufficientFundsException)) {
+                    rejected.add(walletId);
+                }
+            });
+            return rejected;
+        }
+
+        /**
+         * Сверяет балансы отклоненных кошельков с БД; расхождение обрабатывается как запись в обход полосы.
+         */
+        private Mono<Set<UUID>> verifyRejected(Set<UUID> rejected, Set<UUID> conflicted) {
+            if (rejected.isEmpty()) {
+                return Mono.just(conflicted);
+            }
+            Map<UUID, Money> actual = new HashMap<>();
+            return walletBatchRepository.findAll(rejected)
+                    .doOnNext(wallet -> actual.put(wallet.getId(), wallet.getBalance()))
+                    .then(Mono.fromSupplier(() -> {
+                        Set<UUID> stale = new HashSet<>(conflicted);
+                        for (UUID walletId : rejected) {
+                            Money cached = balances.get(walletId);
+                            if (cached == null || !cached.equals(actual.getOrDefault(walletId, Money.ZERO))) {
+                                stale.add(walletId);
+                            }
+                        }
+                        return stale;
+                    }));
+        }
+
+        private Mono<Long> saveIdempotencyKeys(List<IdempotencyRecord> records) {
+            return records.isEmpty() ? Mono.empty() : idempotencyKeyRepository.insertAll(records);
+        }
+
+        private List<IdempotencyRecord> idempotencyRecords(Map<UUID, List<PendingOperation>> groups,
+                                                           Map<UUID, List<OperationOutcome>> outcomes,
+                                                           Set<UUID> conflicted) {
+            List<IdempotencyRecord> records = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            outcomes.forEach((walletId, walletOutcomes) -> {
+                if (conflicted.contains(walletId)) {
+                    return;
+                }
+                List<PendingOperation> operations = groups.get(walletId);
+                for (int i = 0; i < walletOutcomes.size(); i++) {
+                    String idempotencyKey = operations.get(i).idempotencyKey();
+                    if (idempotencyKey != null && walletOutcomes.get(i).isSuccess()) {
+                        records.add(IdempotencyRecord.of(idempotencyKey, walletOutcomes.get(i).change(), now));
+                    }
+                }
+            });
+            return records;
+        }
+
+        private Mono<Void> retry(Map<UUID, List<PendingOperation>> groups, int attempt) {
+            if (groups.isEmpty()) {
+                return Mono.empty();
+            }
+            walletMetrics.recordRetries(WalletMetrics.RetryComponent.SINGLE_WRITER, groups.size());
+            if (attempt >= MAX_ATTEMPTS) {
+                IllegalStateException error = new IllegalStateException(
+                        "Баланс кошелька изменяется в обход движка, попыток: " + attempt);
+                groups.values().forEach(operations -> operations.forEach(operation -> operation.sink().error(error)));
+                return Mono.empty();
+            }
+            log.debug("Баланс изменен в обход полосы, повтор: wallets={}, attempt={}", groups.size(), attempt);
+            return process(groups, attempt + 1);
+        }
+
+        private void complete(List<PendingOperation> operations, List<OperationOutcome> outcomes) {
+            for (int i = 0; i < outcomes.size(); i++) {
+                OperationOutcome outcome = outcomes.get(i);
+                MonoSink<BalanceChange> sink = operations.get(i).sink();
+                if (outcome.isSuccess()) {
+                    sink.success(outcome.change());
+                } else {
+                    sink.error(outcome.error());
+                }
+            }
+        }
+
+    }
+
+}
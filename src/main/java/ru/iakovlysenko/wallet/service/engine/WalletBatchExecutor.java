@@ -0,0 +1,141 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletBatchProperties;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.WalletBatchRepository;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.shard.Shard;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Исполнитель пакета операций.
+ * Пакет режется на части по {@code wallet.batch.chunk-size}, каждая часть выполняется в своей транзакции
+ * многострочными выражениями: создание кошельков для пополнений, блокировка строк, запись балансов и журнала.
+ * Операции внутри части применяются по порядку, как если бы пришли отдельными запросами.
+ * Ошибка части откатывает только ее: операции части получают ошибку, итоги зафиксированных частей сохраняются.
+ * При шардировании пакет делится по шардам кошельков, каждая доля выполняется на своем шарде,
+ * итоги собираются обратно в порядке запросов.
+ */
+@Slf4j
+@Component
+public class WalletBatchExecutor {
+
+    private final WalletBatchRepository walletBatchRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final BalanceChangePublisher balanceChangePublisher;
+    private final LedgerWriter ledgerWriter;
+    private final ShardRouter shardRouter;
+    private final int chunkSize;
+
+    public WalletBatchExecutor(WalletBatchRepository walletBatchRepository,
+                               TransactionalOperator transactionalOperator,
+                               BalanceChangePublisher balanceChangePublisher,
+                               LedgerWriter ledgerWriter,
+                               ShardRouter shardRouter,
+                               WalletBatchProperties properties) {
+        this.walletBatchRepository = walletBatchRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.balanceChangePublisher = balanceChangePublisher;
+        this.ledgerWriter = ledgerWriter;
+        this.shardRouter = shardRouter;
+        this.chunkSize = properties.getChunkSize();
+    }
+
+    /**
+     * Выполняет операции и возвращает итоги в порядке запросов.
+     */
+    public Flux<OperationOutcome> execute(List<WalletOperationRequest> requests) {
+        if (!shardRouter.isSharded()) {
+            return executeOnShard(requests, transactionalOperator);
+        }
+        Set<UUID> walletIds = new TreeSet<>();
+        requests.forEach(request -> walletIds.add(request.walletId()));
+        return shardRouter.locate(walletIds).flatMapMany(placement -> {
+            Map<Shard, List<Integer>> indices = new LinkedHashMap<>();
+            for (int i = 0; i < requests.size(); i++) {
+                indices.computeIfAbsent(placement.get(requests.get(i).walletId()), shard -> new ArrayList<>()).add(i);
+            }
+            OperationOutcome[] outcomes = new OperationOutcome[requests.size()];
+            return Flux.fromIterable(indices.entrySet())
+                    .concatMap(entry -> {
+                        List<Integer> shardIndices = entry.getValue();
+                        List<WalletOperationRequest> shardRequests = shardIndices.stream().map(requests::get).toList();
+                        Shard shard = entry.getKey();
+                        return shard.bind(executeOnShard(shardRequests, shard.transactionalOperator()).collectList())
+                                .doOnNext(shardOutcomes -> {
+                                    for (int i = 0; i < shardOutcomes.size(); i++) {
+                                        outcomes[shardIndices.get(i)] = shardOutcomes.get(i);
+                                    }
+                                });
+                    })
+                    .thenMany(Flux.defer(() -> Flux.fromArray(outcomes)));
+        });
+    }
+
+    private Flux<OperationOutcome> executeOnShard(List<WalletOperationRequest> requests,
+                                                  TransactionalOperator operator) {
+        return Flux.fromIterable(requests)
+                .buffer(chunkSize)
+                .concatMap(chunk -> operator.transactional(executeChunk(chunk))
+                        .doOnNext(outcomes -> balanceChangePublisher.publish(OperationOutcome.changes(outcomes)))
+                        .onErrorResume(error -> {
+                            log.error("Ошибка части пакета: operations={}, error={}", chunk.size(), error.getMessage());
+                            return Mono.just(OperationOutcome.aborted(chunk.size(), error));
+                        }))
+                .flatMapIterable(outcomes -> outcomes);
+    }
+
+    private Mono<List<OperationOutcome>> executeChunk(List<WalletOperationRequest> chunk) {
+        Set<UUID> walletIds = new TreeSet<>();
+        Set<UUID> depositWalletIds = new TreeSet<>();
+        for (WalletOperationRequest request : chunk) {
+            walletIds.add(request.walletId());
+            if (request.operationType() == OperationType.DEPOSIT) {
+                depositWalletIds.add(request.walletId());
+            }
+        }
+        log.debug("Выполнение части пакета: operations={}, wallets={}", chunk.size(), walletIds.size());
+
+        return walletBatchRepository.insertMissing(depositWalletIds)
+                .thenMany(walletBatchRepository.lockAll(walletIds))
+                .collectMap(Wallet::getId, Wallet::getBalance)
+                .flatMap(balances -> {
+                    Map<UUID, Money> running = new HashMap<>(balances);
+                    Map<UUID, Money> changed = new LinkedHashMap<>();
+                    List<OperationOutcome> outcomes = new ArrayList<>(chunk.size());
+                    for (WalletOperationRequest request : chunk) {
+                        OperationOutcome outcome = OperationOutcome.apply(
+                                request.walletId(),
+                                request.operationType(),
+                                Money.ofUnits(request.amount()),
+                                running.getOrDefault(request.walletId(), Money.ZERO));
+                        if (outcome.isSuccess()) {
+                            running.put(request.walletId(), outcome.change().balanceAfter());
+                            changed.put(request.walletId(), outcome.change().balanceAfter());
+                        }
+                        outcomes.add(outcome);
+                    }
+                    return walletBatchRepository.updateBalances(changed)
+                            .then(ledgerWriter.write(OperationOutcome.changes(outcomes)))
+                            .thenReturn(outcomes);
+                });
+    }
+
+}
@@ -0,0 +1,30 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.util.UUID;
+
+/**
+ * Движок, применяющий операции к балансу кошелька.
+ * Реализация выбирается свойством {@code wallet.engine.mode}.
+ */
+public interface WalletEngine {
+
+    /**
+     * Применяет операцию и возвращает изменение баланса после фиксации транзакции.
+     */
+    default Mono<BalanceChange> apply(UUID walletId, OperationType operationType, long amount) {
+        return apply(walletId, operationType, amount, null);
+    }
+
+    /**
+     * Применяет операцию и записывает ключ идемпотентности в той же транзакции, что и баланс.
+     * Если ключ уже записан, операция не применяется и завершается
+     * {@link org.springframework.dao.DuplicateKeyException}. Без ключа ({@code null}) работает как
+     * {@link #apply(UUID, OperationType, long)}.
+     */
+    Mono<BalanceChange> apply(UUID walletId, OperationType operationType, long amount, String idempotencyKey);
+
+}
@@ -0,0 +1,115 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.repository.WalletTransferRepository;
+import ru.iakovlysenko.wallet.repository.WalletTransferRepository.WalletBalance;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Исполнитель переводов между кошельками.
+ * Перевод и выплата выполняются одним SQL-выражением независимо от режима движка; движки, держащие баланс
+ * в памяти, обнаруживают такую запись по несовпадению баланса. В журнал перевод попадает списанием
+ * у отправителя и пополнением у каждого получателя; записи вставляются в транзакции перевода.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WalletTransferExecutor {
+
+    private final WalletTransferRepository walletTransferRepository;
+    private final WalletRepository walletRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final BalanceChangePublisher balanceChangePublisher;
+    private final LedgerWriter ledgerWriter;
+
+    /**
+     * Переводит {@code amount} и возвращает изменения отправителя и получателя.
+     */
+    public Mono<List<BalanceChange>> transfer(UUID fromWalletId, UUID toWalletId, long amount) {
+        Money amountMoney = Money.ofUnits(amount);
+        return record(walletTransferRepository.transfer(fromWalletId, toWalletId, amountMoney)
+                        .map(balances -> List.of(
+                                new BalanceChange(fromWalletId, OperationType.WITHDRAW, amountMoney,
+                                        balances.fromBalance().plus(amountMoney), balances.fromBalance()),
+                                new BalanceChange(toWalletId, OperationType.DEPOSIT, amountMoney,
+                                        balances.toBalance().minus(amountMoney), balances.toBalance()))))
+                .doOnNext(balanceChangePublisher::publish)
+                .doOnError(error -> log.error("Ошибка перевода {} -> {}: {}", fromWalletId, toWalletId, error.getMessage()))
+                .switchIfEmpty(Mono.defer(() -> insufficientFunds(fromWalletId, amountMoney)));
+    }
+
+    /**
+     * Выплачивает получателям их суммы с одного кошелька: либо все выплаты, либо ни одной.
+     * Возвращает изменение отправителя первым, затем изменения получателей в порядке первого упоминания.
+     */
+    public Mono<List<BalanceChange>> payout(UUID fromWalletId, List<UUID> toWalletIds, List<Long> amounts) {
+        Map<UUID, Money> credited = new LinkedHashMap<>();
+        List<Money> amountMoney = new ArrayList<>(amounts.size());
+        Money total = Money.ZERO;
+        for (int i = 0; i < amounts.size(); i++) {
+            Money amount = Money.ofUnits(amounts.get(i));
+            amountMoney.add(amount);
+            credited.merge(toWalletIds.get(i), amount, Money::plus);
+            total = total.plus(amount);
+        }
+        Money debited = total;
+        log.debug("Выплата: from={}, recipients={}, total={}", fromWalletId, credited.size(), debited);
+
+        return record(walletTransferRepository.payout(fromWalletId, toWalletIds, amountMoney, debited)
+                        .collectMap(WalletBalance::walletId, WalletBalance::balance)
+                        .filter(balances -> !balances.isEmpty())
+                        .map(balances -> {
+                            List<BalanceChange> changes = new ArrayList<>(credited.size() + 1);
+                            Money fromBalance = balances.get(fromWalletId);
+                            changes.add(new BalanceChange(fromWalletId, OperationType.WITHDRAW, debited,
+                                    fromBalance.plus(debited), fromBalance));
+                            credited.forEach((walletId, amount) -> {
+                                Money balance = balances.get(walletId);
+                                changes.add(new BalanceChange(walletId, OperationType.DEPOSIT, amount,
+                                        balance.minus(amount), balance));
+                            });
+                            return changes;
+                        }))
+                .doOnNext(balanceChangePublisher::publish)
+                .doOnError(error -> log.error("Ошибка выплаты с кошелька {}: {}", fromWalletId, error.getMessage()))
+                .switchIfEmpty(Mono.defer(() -> insufficientFunds(fromWalletId, debited)));
+    }
+
+    /**
+     * Записывает изменения в журнал в одной транзакции с выражением перевода.
+     */
+    private Mono<List<BalanceChange>> record(Mono<List<BalanceChange>> transfer) {
+        if (!ledgerWriter.isEnabled()) {
+            return transfer;
+        }
+        return transactionalOperator.transactional(transfer
+                .flatMap(changes -> ledgerWriter.write(changes).thenReturn(changes)));
+    }
+
+    /**
+     * Медленный путь: выражение ничего не изменило, читаем баланс отправителя только ради сообщения об ошибке.
+     */
+    private Mono<List<BalanceChange>> insufficientFunds(UUID walletId, Money amount) {
+        return walletRepository.findById(walletId)
+                .map(Wallet::getBalance)
+                .defaultIfEmpty(Money.ZERO)
+                .flatMap(balance -> Mono.error(new InsufficientFundsException(balance, amount)));
+    }
+
+}
@@ -0,0 +1,55 @@
+package ru.iakovlysenko.wallet.service.history;
+
+import ru.iakovlysenko.wallet.exception.InvalidCursorException;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Позиция в истории операций: ключ {@code (created_at, id)} последней отданной записи.
+ * Клиенту передается непрозрачной строкой base64url.
+ * @param createdAt
+ * @param id
+ */
+public record HistoryCursor(
+        LocalDateTime createdAt,
+        UUID id
+) {
+
+    private static final char SEPARATOR = '|';
+
+    public static HistoryCursor after(WalletOperation operation) {
+        return new HistoryCursor(operation.createdAt(), operation.id());
+    }
+
+    /**
+     * Разбирает курсор клиента; {@code null} означает начало истории.
+     */
+    public static HistoryCursor decode(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new InvalidCursorException(cursor);
+            }
+            return new HistoryCursor(
+                    LocalDateTime.parse(value.substring(0, separator)),
+                    UUID.fromString(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt.toString() + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+}
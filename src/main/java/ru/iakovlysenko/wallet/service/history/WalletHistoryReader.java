@@ -0,0 +1,70 @@
+package ru.iakovlysenko.wallet.service.history;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletHistoryProperties;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Чтение истории операций кошелька из журнала от новых записей к старым.
+ * Журнал пишется в транзакции операции, поэтому операция видна в истории сразу после фиксации.
+ * Выгрузка читает журнал частями по {@code stream-chunk-size} записей: следующая часть запрашивается
+ * только после того, как клиент принял предыдущую, так что в памяти не больше одной части,
+ * а соединение с БД не удерживается, пока медленный клиент дочитывает ответ.
+ */
+@Component
+@RequiredArgsConstructor
+public class WalletHistoryReader {
+
+    private final WalletOperationRepository walletOperationRepository;
+    private final WalletHistoryProperties properties;
+
+    /**
+     * Возвращает страницу истории после курсора {@code after} ({@code null} - с начала).
+     * Читается на одну запись больше страницы, чтобы без отдельного запроса узнать, есть ли следующая.
+     */
+    public Mono<HistoryPage> page(UUID walletId, HistoryCursor after, Integer limit) {
+        int pageSize = limit != null ? limit : properties.getPageSize();
+        return read(walletId, after, pageSize + 1)
+                .map(operations -> operations.size() > pageSize
+                        ? new HistoryPage(operations.subList(0, pageSize), HistoryCursor.after(operations.get(pageSize - 1)))
+                        : new HistoryPage(operations, null));
+    }
+
+    /**
+     * Выгружает всю историю после курсора {@code after} с учетом скорости чтения клиента.
+     */
+    public Flux<WalletOperation> stream(UUID walletId, HistoryCursor after) {
+        int chunkSize = properties.getStreamChunkSize();
+        return read(walletId, after, chunkSize)
+                .expand(chunk -> chunk.size() < chunkSize
+                        ? Mono.empty()
+                        : read(walletId, HistoryCursor.after(chunk.get(chunk.size() - 1)), chunkSize))
+                .concatMapIterable(Function.identity(), 1);
+    }
+
+    private Mono<List<WalletOperation>> read(UUID walletId, HistoryCursor after, int limit) {
+        return after == null
+                ? walletOperationRepository.findPage(walletId, null, null, limit).collectList()
+                : walletOperationRepository.findPage(walletId, after.createdAt(), after.id(), limit).collectList();
+    }
+
+    /**
+     * Страница истории.
+     * @param operations
+     * @param next курсор следующей страницы, {@code null} на последней странице
+     */
+    public record HistoryPage(
+            List<WalletOperation> operations,
+            HistoryCursor next
+    ) {
+    }
+
+}
@@ -0,0 +1,113 @@
+package ru.iakovlysenko.wallet.service.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletIdempotencyProperties;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Хранилище результатов операций по ключу идемпотентности.
+ * Перед таблицей {@code idempotency_keys} стоит кеш узла с вытеснением по размеру и времени жизни:
+ * повтор запроса на том же узле обходится одним обращением к памяти. В таблицу ключ пишет движок
+ * в транзакции изменения баланса, хранилище только читает её при промахе и раз в {@code purge-interval}
+ * удаляет ключи старше {@code retention} порциями по {@code purge-batch-size}.
+ * Метрики кеша публикуются как {@code cache.*} с тегом {@code cache=wallet.idempotency}.
+ * При шардировании устаревшие ключи удаляются на каждом шарде по очереди.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final ShardRouter shardRouter;
+    private final Cache<String, IdempotencyRecord> cache;
+    private final Duration retention;
+    private final Duration purgeInterval;
+    private final int purgeBatchSize;
+
+    private Disposable purge;
+
+    public IdempotencyStore(IdempotencyKeyRepository idempotencyKeyRepository,
+                            ShardRouter shardRouter,
+                            WalletIdempotencyProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.shardRouter = shardRouter;
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(properties.getCacheMaxSize())
+                .expireAfterWrite(properties.getCacheTtl())
+                .recordStats()
+                .<String, IdempotencyRecord>build(), "wallet.idempotency");
+        this.retention = properties.getRetention();
+        this.purgeInterval = properties.getPurgeInterval();
+        this.purgeBatchSize = properties.getPurgeBatchSize();
+    }
+
+    @PostConstruct
+    void start() {
+        purge = Flux.interval(purgeInterval, purgeInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.fromIterable(shardRouter.shards())
+                        .concatMap(shard -> shard.bind(purgeExpired())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        purge.dispose();
+    }
+
+    /**
+     * Возвращает результат из памяти узла без обращения к БД.
+     */
+    public IdempotencyRecord getIfPresent(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Читает результат из БД и запоминает его в памяти узла.
+     */
+    public Mono<IdempotencyRecord> load(String key) {
+        return idempotencyKeyRepository.findByKey(key)
+                .doOnNext(this::put);
+    }
+
+    /**
+     * Запоминает результат зафиксированной операции.
+     */
+    public void put(IdempotencyRecord record) {
+        cache.put(record.key(), record);
+    }
+
+    /**
+     * Удаляет устаревшие ключи порциями, пока очередная порция не окажется неполной.
+     */
+    Mono<Long> purgeExpired() {
+        LocalDateTime before = LocalDateTime.now().minus(retention);
+        return idempotencyKeyRepository.deleteCreatedBefore(before, purgeBatchSize)
+                .expand(deleted -> deleted < purgeBatchSize
+                        ? Mono.empty()
+                        : idempotencyKeyRepository.deleteCreatedBefore(before, purgeBatchSize))
+                .reduce(0L, Long::sum)
+                .doOnNext(deleted -> log.debug("Удалено устаревших ключей идемпотентности: {}", deleted))
+                .onErrorResume(error -> {
+                    log.warn("Ошибка удаления устаревших ключей идемпотентности: {}", error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+}
@@ -0,0 +1,399 @@
+package ru.iakovlysenko.wallet.service.jdbc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import ru.iakovlysenko.wallet.config.WalletBatchProperties;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryPageResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.dto.WalletPayoutRequest;
+import ru.iakovlysenko.wallet.dto.WalletPayoutResponse;
+import ru.iakovlysenko.wallet.dto.WalletTransferResponse;
+import ru.iakovlysenko.wallet.exception.IdempotencyKeyReuseException;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.repository.JdbcWalletRepository;
+import ru.iakovlysenko.wallet.repository.WalletTransferRepository;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.WalletServiceImpl;
+import ru.iakovlysenko.wallet.service.cache.BalanceCache;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangePublisher;
+import ru.iakovlysenko.wallet.service.engine.OperationOutcome;
+import ru.iakovlysenko.wallet.service.idempotency.IdempotencyStore;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Реализация {@link WalletService} на блокирующем JDBC, включается {@code wallet.jdbc.enabled}.
+ * Каждый запрос выполняется одной задачей планировщика {@code jdbcScheduler} - на своем виртуальном потоке,
+ * если он доступен, - без цепочки реактивных операторов вокруг обращений к БД.
+ * Операции выполняются атомарными выражениями независимо от {@code wallet.engine.mode}, пакеты - частями
+ * по {@code wallet.batch.chunk-size} в транзакции каждая, переводы - выражениями {@link WalletTransferRepository}.
+ * Запись журнала одиночной операции вставляется тем же выражением, что и баланс, записи пакетов и переводов -
+ * пакетом JDBC в транзакции баланса. Изменения публикуются слушателям после фиксации, как и в реактивной
+ * реализации, поэтому кеш баланса и подписки работают без изменений. Подписки и история читаются реактивной
+ * реализацией.
+ * Баланс читается с основной базы и при включенной реплике. Шардирование не поддерживается.
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "wallet.jdbc", name = "enabled", havingValue = "true")
+public class JdbcWalletService implements WalletService {
+
+    private final JdbcWalletRepository jdbcWalletRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Scheduler scheduler;
+    private final BalanceChangePublisher balanceChangePublisher;
+    private final LedgerWriter ledgerWriter;
+    private final BalanceCache balanceCache;
+    private final IdempotencyStore idempotencyStore;
+    private final WalletMetrics walletMetrics;
+    private final WalletServiceImpl reactiveWalletService;
+    private final int chunkSize;
+
+    public JdbcWalletService(JdbcWalletRepository jdbcWalletRepository,
+                             TransactionTemplate jdbcTransactionTemplate,
+                             Scheduler jdbcScheduler,
+                             BalanceChangePublisher balanceChangePublisher,
+                             LedgerWriter ledgerWriter,
+                             BalanceCache balanceCache,
+                             IdempotencyStore idempotencyStore,
+                             WalletMetrics walletMetrics,
+                             WalletServiceImpl reactiveWalletService,
+                             ShardRouter shardRouter,
+                             WalletBatchProperties batchProperties) {
+        if (shardRouter.isSharded()) {
+            throw new IllegalStateException("Режим исполнения через JDBC не поддерживает шардирование");
+        }
+        this.jdbcWalletRepository = jdbcWalletRepository;
+        this.transactionTemplate = jdbcTransactionTemplate;
+        this.scheduler = jdbcScheduler;
+        this.balanceChangePublisher = balanceChangePublisher;
+        this.ledgerWriter = ledgerWriter;
+        this.balanceCache = balanceCache;
+        this.idempotencyStore = idempotencyStore;
+        this.walletMetrics = walletMetrics;
+        this.reactiveWalletService = reactiveWalletService;
+        this.chunkSize = batchProperties.getChunkSize();
+    }
+
+    @Override
+    public Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount) {
+        return walletMetrics.timeOperation(operationType, blocking(() -> {
+            BalanceChange change = update(walletId, operationType, Money.ofUnits(amount));
+            balanceChangePublisher.publish(change);
+            return new WalletOperationResponse(
+                    change.walletId(),
+                    change.balanceAfter(),
+                    operationType.successMessage());
+        }));
+    }
+
+    /**
+     * Ключ идемпотентности записывается в одной транзакции с балансом. Если ключ уже записан другим запросом,
+     * ответ восстанавливается из БД.
+     */
+    @Override
+    public Mono<WalletOperationResponse> performOperation(UUID walletId, OperationType operationType, Long amount,
+                                                          String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return performOperation(walletId, operationType, amount);
+        }
+        return walletMetrics.timeOperation(operationType, blocking(() -> {
+            IdempotencyRecord cached = idempotencyStore.getIfPresent(idempotencyKey);
+            if (cached != null) {
+                return replay(cached, walletId, operationType, amount);
+            }
+            BalanceChange change;
+            try {
+                change = transactionTemplate.execute(status -> {
+                    BalanceChange applied = update(walletId, operationType, Money.ofUnits(amount));
+                    jdbcWalletRepository.insertIdempotencyKey(
+                            IdempotencyRecord.of(idempotencyKey, applied, LocalDateTime.now()));
+                    return applied;
+                });
+            } catch (DuplicateKeyException ex) {
+                IdempotencyRecord stored = jdbcWalletRepository.findIdempotencyKey(idempotencyKey).orElseThrow(() -> ex);
+                idempotencyStore.put(stored);
+                return replay(stored, walletId, operationType, amount);
+            }
+            balanceChangePublisher.publish(change);
+            IdempotencyRecord record = IdempotencyRecord.of(idempotencyKey, change, LocalDateTime.now());
+            idempotencyStore.put(record);
+            return toResponse(record);
+        }));
+    }
+
+    /**
+     * Операция одним выражением; при включенном журнале его запись вставляется тем же выражением,
+     * поэтому операции без ключа идемпотентности не нужна явная транзакция.
+     */
+    private BalanceChange update(UUID walletId, OperationType operationType, Money amount) {
+        boolean recorded = ledgerWriter.isEnabled();
+        if (operationType == OperationType.DEPOSIT) {
+            Money balance = recorded
+                    ? jdbcWalletRepository.depositRecorded(walletId, amount, UUID.randomUUID(), LocalDateTime.now())
+                    : jdbcWalletRepository.deposit(walletId, amount);
+            return new BalanceChange(walletId, operationType, amount, balance.minus(amount), balance);
+        }
+        Money balance = (recorded
+                ? jdbcWalletRepository.withdrawRecorded(walletId, amount, UUID.randomUUID(), LocalDateTime.now())
+                : jdbcWalletRepository.withdraw(walletId, amount))
+                .orElseThrow(() -> insufficientFunds(walletId, amount));
+        return new BalanceChange(walletId, operationType, amount, balance.plus(amount), balance);
+    }
+
+    /**
+     * Выполняет вызов в транзакции, если включен журнал, чтобы его записи зафиксировались вместе с балансом.
+     */
+    private <T> T withLedger(Supplier<T> call) {
+        return ledgerWriter.isEnabled() ? transactionTemplate.execute(status -> call.get()) : call.get();
+    }
+
+    private void record(List<BalanceChange> changes) {
+        jdbcWalletRepository.insertOperations(ledgerWriter.operations(changes));
+    }
+
+    /**
+     * Медленный путь: строка не обновилась, читаем текущий баланс только ради сообщения об ошибке.
+     */
+    private InsufficientFundsException insufficientFunds(UUID walletId, Money amount) {
+        Money balance = jdbcWalletRepository.findBalance(walletId).orElse(Money.ZERO);
+        log.debug("Списание отклонено: id={}, balance={}, amount={}", walletId, balance, amount);
+        return new InsufficientFundsException(balance, amount);
+    }
+
+    private WalletOperationResponse replay(IdempotencyRecord record, UUID walletId,
+                                           OperationType operationType, Long amount) {
+        if (!record.matches(walletId, operationType, Money.ofUnits(amount))) {
+            throw new IdempotencyKeyReuseException(record.key());
+        }
+        log.debug("Повтор операции по ключу идемпотентности: key={}, walletId={}", record.key(), walletId);
+        return toResponse(record);
+    }
+
+    private WalletOperationResponse toResponse(IdempotencyRecord record) {
+        return new WalletOperationResponse(
+                record.walletId(),
+                record.balance(),
+                record.operationType().successMessage());
+    }
+
+    @Override
+    public Mono<WalletBalanceResponse> getBalance(UUID walletId) {
+        return walletMetrics.timeBalanceRead(false, balanceCache.get(walletId,
+                        id -> blocking(() -> jdbcWalletRepository.findBalance(id).orElse(null)))
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException("Кошелек не найден: " + walletId)))
+                .map(balance -> new WalletBalanceResponse(walletId, balance)));
+    }
+
+    @Override
+    public Mono<WalletBalanceResponse> getConsistentBalance(UUID walletId) {
+        return walletMetrics.timeBalanceRead(true, blocking(() -> jdbcWalletRepository.findBalance(walletId)
+                .map(balance -> new WalletBalanceResponse(walletId, balance))
+                .orElseThrow(() -> new WalletNotFoundException("Кошелек не найден: " + walletId))));
+    }
+
+    @Override
+    public Flux<WalletBalanceResponse> streamBalance(UUID walletId) {
+        return reactiveWalletService.streamBalance(walletId);
+    }
+
+    @Override
+    public Flux<WalletBatchItemResponse> performBatch(List<WalletOperationRequest> requests) {
+        return blocking(() -> {
+            List<WalletBatchItemResponse> items = new ArrayList<>(requests.size());
+            for (int from = 0; from < requests.size(); from += chunkSize) {
+                List<WalletOperationRequest> chunk = requests.subList(from, Math.min(from + chunkSize, requests.size()));
+                List<OperationOutcome> outcomes;
+                try {
+                    outcomes = transactionTemplate.execute(status -> executeChunk(chunk));
+                    balanceChangePublisher.publish(OperationOutcome.changes(outcomes));
+                } catch (RuntimeException ex) {
+                    log.error("Ошибка части пакета через JDBC: operations={}, error={}", chunk.size(), ex.getMessage());
+                    outcomes = OperationOutcome.aborted(chunk.size(), ex);
+                }
+                for (int i = 0; i < chunk.size(); i++) {
+                    items.add(toBatchItem(chunk.get(i), outcomes.get(i)));
+                }
+            }
+            return items;
+        }).flatMapIterable(items -> items);
+    }
+
+    /**
+     * Выполняет часть пакета тремя выражениями, как {@link ru.iakovlysenko.wallet.service.engine.WalletBatchExecutor}:
+     * создание кошельков для пополнений, блокировка строк, запись балансов и журнала.
+     */
+    private List<OperationOutcome> executeChunk(List<WalletOperationRequest> chunk) {
+        Set<UUID> walletIds = new TreeSet<>();
+        Set<UUID> depositWalletIds = new TreeSet<>();
+        for (WalletOperationRequest request : chunk) {
+            walletIds.add(request.walletId());
+            if (request.operationType() == OperationType.DEPOSIT) {
+                depositWalletIds.add(request.walletId());
+            }
+        }
+        log.debug("Выполнение части пакета через JDBC: operations={}, wallets={}", chunk.size(), walletIds.size());
+
+        jdbcWalletRepository.insertMissing(depositWalletIds);
+        Map<UUID, Money> running = new HashMap<>(jdbcWalletRepository.lockAll(walletIds));
+        Map<UUID, Money> changed = new LinkedHashMap<>();
+        List<OperationOutcome> outcomes = new ArrayList<>(chunk.size());
+        for (WalletOperationRequest request : chunk) {
+            OperationOutcome outcome = OperationOutcome.apply(
+                    request.walletId(),
+                    request.operationType(),
+                    Money.ofUnits(request.amount()),
+                    running.getOrDefault(request.walletId(), Money.ZERO));
+            if (outcome.isSuccess()) {
+                running.put(request.walletId(), outcome.change().balanceAfter());
+                changed.put(request.walletId(), outcome.change().balanceAfter());
+            }
+            outcomes.add(outcome);
+        }
+        jdbcWalletRepository.updateBalances(changed);
+        record(OperationOutcome.changes(outcomes));
+        return outcomes;
+    }
+
+    private WalletBatchItemResponse toBatchItem(WalletOperationRequest request, OperationOutcome outcome) {
+        if (outcome.isSuccess()) {
+            return new WalletBatchItemResponse(
+                    request.walletId(),
+                    HttpStatus.OK.value(),
+                    outcome.change().balanceAfter(),
+                    request.operationType().successMessage());
+        }
+        if (outcome.isRejected()) {
+            return new WalletBatchItemResponse(
+                    request.walletId(),
+                    HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    null,
+                    outcome.error().getMessage());
+        }
+        return new WalletBatchItemResponse(
+                request.walletId(),
+                HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                null,
+                "Внутренняя ошибка сервера");
+    }
+
+    @Override
+    public Mono<WalletTransferResponse> transfer(UUID fromWalletId, UUID toWalletId, Long amount) {
+        Money amountMoney = Money.ofUnits(amount);
+        return walletMetrics.timeTransfer(false, blocking(() -> {
+            List<BalanceChange> changes = withLedger(() -> {
+                WalletTransferRepository.TransferBalances balances = jdbcWalletRepository
+                        .transfer(fromWalletId, toWalletId, amountMoney)
+                        .orElseThrow(() -> insufficientFunds(fromWalletId, amountMoney));
+                List<BalanceChange> applied = List.of(
+                        new BalanceChange(fromWalletId, OperationType.WITHDRAW, amountMoney,
+                                balances.fromBalance().plus(amountMoney), balances.fromBalance()),
+                        new BalanceChange(toWalletId, OperationType.DEPOSIT, amountMoney,
+                                balances.toBalance().minus(amountMoney), balances.toBalance()));
+                record(applied);
+                return applied;
+            });
+            balanceChangePublisher.publish(changes);
+            return new WalletTransferResponse(
+                    fromWalletId,
+                    changes.get(0).balanceAfter(),
+                    toWalletId,
+                    changes.get(1).balanceAfter(),
+                    "Перевод выполнен успешно");
+        }));
+    }
+
+    @Override
+    public Mono<WalletPayoutResponse> payout(WalletPayoutRequest request) {
+        UUID fromWalletId = request.fromWalletId();
+        List<UUID> toWalletIds = new ArrayList<>(request.payouts().size());
+        List<Money> amounts = new ArrayList<>(request.payouts().size());
+        Map<UUID, Money> credited = new LinkedHashMap<>();
+        Money total = Money.ZERO;
+        for (WalletPayoutRequest.Payout payout : request.payouts()) {
+            Money amount = Money.ofUnits(payout.amount());
+            toWalletIds.add(payout.toWalletId());
+            amounts.add(amount);
+            credited.merge(payout.toWalletId(), amount, Money::plus);
+            total = total.plus(amount);
+        }
+        Money debited = total;
+        return walletMetrics.timeTransfer(true, blocking(() -> {
+            List<BalanceChange> changes = withLedger(() -> {
+                Map<UUID, Money> balances = new HashMap<>();
+                jdbcWalletRepository.payout(fromWalletId, toWalletIds, amounts, debited)
+                        .forEach(balance -> balances.put(balance.walletId(), balance.balance()));
+                if (balances.isEmpty()) {
+                    throw insufficientFunds(fromWalletId, debited);
+                }
+                List<BalanceChange> applied = new ArrayList<>(credited.size() + 1);
+                Money fromBalance = balances.get(fromWalletId);
+                applied.add(new BalanceChange(fromWalletId, OperationType.WITHDRAW, debited,
+                        fromBalance.plus(debited), fromBalance));
+                credited.forEach((walletId, amount) -> {
+                    Money balance = balances.get(walletId);
+                    applied.add(new BalanceChange(walletId, OperationType.DEPOSIT, amount, balance.minus(amount), balance));
+                });
+                record(applied);
+                return applied;
+            });
+            balanceChangePublisher.publish(changes);
+            return new WalletPayoutResponse(
+                    fromWalletId,
+                    changes.get(0).balanceAfter(),
+                    changes.subList(1, changes.size()).stream()
+                            .map(change -> new WalletBalanceResponse(change.walletId(), change.balanceAfter()))
+                            .toList(),
+                    String.format("Выплаты выполнены успешно: %d", toWalletIds.size()));
+        }));
+    }
+
+    @Override
+    public Mono<WalletHistoryPageResponse> getOperations(UUID walletId, String cursor, Integer limit) {
+        return reactiveWalletService.getOperations(walletId, cursor, limit);
+    }
+
+    @Override
+    public Flux<WalletHistoryItemResponse> streamOperations(UUID walletId, String cursor) {
+        return reactiveWalletService.streamOperations(walletId, cursor);
+    }
+
+    /**
+     * Выполняет блокирующий вызов задачей планировщика JDBC. {@code null} - пустой результат.
+     */
+    private <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(scheduler);
+    }
+
+}
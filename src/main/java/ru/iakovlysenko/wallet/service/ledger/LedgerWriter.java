@@ -0,0 +1,89 @@
+package ru.iakovlysenko.wallet.service.ledger;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Журнал операций {@code wallet_operations}.
+ * Записи вставляются в транзакции, которая меняет баланс, многострочными INSERT по {@code wallet.ledger.flush-size}
+ * записей: баланс и журнал фиксируются или откатываются вместе, поэтому журнал не теряет записи при сбое узла или БД.
+ * Ошибка записи журнала откатывает операцию и возвращается вызывающему.
+ * Движки вызывают {@link #write} внутри своей транзакции, атомарный движок и JDBC-реализация
+ * вставляют запись одиночной операции тем же выражением, что и баланс.
+ * При отключенном журнале ({@code wallet.ledger.enabled=false}) записи не создаются.
+ */
+@Component
+public class LedgerWriter {
+
+    /**
+     * Предел Postgres на число параметров одного выражения.
+     */
+    public static final int MAX_ROWS = 65_535 / WalletOperationRepository.COLUMNS;
+
+    private final WalletOperationRepository walletOperationRepository;
+    private final boolean enabled;
+    private final int flushSize;
+
+    public LedgerWriter(WalletOperationRepository walletOperationRepository, WalletLedgerProperties properties) {
+        this.walletOperationRepository = walletOperationRepository;
+        this.enabled = properties.isEnabled();
+        this.flushSize = Math.max(1, Math.min(properties.getFlushSize(), MAX_ROWS));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Вставляет записи изменений в текущей транзакции.
+     */
+    public Mono<Void> write(List<BalanceChange> changes) {
+        List<WalletOperation> operations = operations(changes);
+        if (operations.isEmpty()) {
+            return Mono.empty();
+        }
+        if (operations.size() <= flushSize) {
+            return walletOperationRepository.insertAll(operations).then();
+        }
+        List<List<WalletOperation>> parts = new ArrayList<>();
+        for (int from = 0; from < operations.size(); from += flushSize) {
+            parts.add(operations.subList(from, Math.min(from + flushSize, operations.size())));
+        }
+        return Flux.fromIterable(parts)
+                .concatMap(walletOperationRepository::insertAll)
+                .then();
+    }
+
+    /**
+     * Записи журнала для изменений; пустой список при отключенном журнале.
+     */
+    public List<WalletOperation> operations(List<BalanceChange> changes) {
+        if (!enabled || changes.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<WalletOperation> operations = new ArrayList<>(changes.size());
+        for (BalanceChange change : changes) {
+            operations.add(new WalletOperation(
+                    UUID.randomUUID(),
+                    change.walletId(),
+                    change.operationType(),
+                    change.amount(),
+                    change.balanceBefore(),
+                    change.balanceAfter(),
+                    now));
+        }
+        return operations;
+    }
+
+}
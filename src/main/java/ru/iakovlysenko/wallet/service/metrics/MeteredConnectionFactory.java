@@ -0,0 +1,48 @@
+package ru.iakovlysenko.wallet.service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ConnectionFactory} с замером ожидания соединения из пула: таймер {@code wallet.r2dbc.acquire}.
+ * Занятые, свободные и ожидающие соединения публикует Spring Boot как {@code r2dbc.pool.*},
+ * пул находится через {@link Wrapped#unwrap()}.
+ */
+public class MeteredConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory> {
+
+    private final ConnectionFactory delegate;
+    private final Timer acquireTimer;
+
+    public MeteredConnectionFactory(ConnectionFactory delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.acquireTimer = Timer.builder("wallet.r2dbc.acquire").register(meterRegistry);
+    }
+
+    @Override
+    public Mono<? extends Connection> create() {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return Mono.from(delegate.create())
+                    .doOnNext(connection ->
+                            acquireTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return delegate;
+    }
+
+}
@@ -0,0 +1,62 @@
+package ru.iakovlysenko.wallet.service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.transaction.reactive.TransactionCallback;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TransactionalOperator} с замером длительности транзакции.
+ * Таймер {@code wallet.transaction} с тегом {@code outcome}: {@code commit} или {@code rollback}.
+ */
+public class MeteredTransactionalOperator implements TransactionalOperator {
+
+    private final TransactionalOperator delegate;
+    private final Timer commitTimer;
+    private final Timer rollbackTimer;
+
+    public MeteredTransactionalOperator(TransactionalOperator delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.commitTimer = Timer.builder("wallet.transaction").tag("outcome", "commit").register(meterRegistry);
+        this.rollbackTimer = Timer.builder("wallet.transaction").tag("outcome", "rollback").register(meterRegistry);
+    }
+
+    @Override
+    public <T> Flux<T> transactional(Flux<T> flux) {
+        return Flux.defer(() -> {
+            long started = System.nanoTime();
+            return delegate.transactional(flux)
+                    .doOnComplete(() -> record(commitTimer, started))
+                    .doOnError(error -> record(rollbackTimer, started));
+        });
+    }
+
+    @Override
+    public <T> Mono<T> transactional(Mono<T> mono) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return delegate.transactional(mono)
+                    .doOnSuccess(value -> record(commitTimer, started))
+                    .doOnError(error -> record(rollbackTimer, started));
+        });
+    }
+
+    @Override
+    public <T> Flux<T> execute(TransactionCallback<T> action) {
+        return Flux.defer(() -> {
+            long started = System.nanoTime();
+            return delegate.execute(action)
+                    .doOnComplete(() -> record(commitTimer, started))
+                    .doOnError(error -> record(rollbackTimer, started));
+        });
+    }
+
+    private static void record(Timer timer, long started) {
+        timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+}
@@ -0,0 +1,182 @@
+package ru.iakovlysenko.wallet.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletMetricsProperties;
+import ru.iakovlysenko.wallet.exception.ConcurrentUpdateException;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики операций с кошельками.
+ * <ul>
+ *     <li>{@code wallet.operation} — время {@code performOperation} с тегами {@code type} и {@code outcome};</li>
+ *     <li>{@code wallet.balance.read} — время {@code getBalance} с тегами {@code consistency} и {@code outcome};</li>
+ *     <li>{@code wallet.transfer} — время перевода и выплаты с тегами {@code kind} и {@code outcome};</li>
+ *     <li>{@code wallet.retries} — число повторов с тегом {@code component}.</li>
+ * </ul>
+ * Таймеры и счетчики создаются заранее, на горячем пути нет поиска в реестре.
+ */
+@Component
+public class WalletMetrics {
+
+    /**
+     * Исход операции для тега {@code outcome}.
+     */
+    public enum Outcome {
+        OK("ok"),
+        INSUFFICIENT_FUNDS("insufficient_funds"),
+        NOT_FOUND("not_found"),
+        CONFLICT("conflict"),
+        ERROR("error");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+
+        static Outcome of(Throwable error) {
+            if (error instanceof InsufficientFundsException) {
+                return INSUFFICIENT_FUNDS;
+            }
+            if (error instanceof WalletNotFoundException) {
+                return NOT_FOUND;
+            }
+            if (error instanceof ConcurrentUpdateException) {
+                return CONFLICT;
+            }
+            return ERROR;
+        }
+    }
+
+    /**
+     * Компонент с повторами для тега {@code component}.
+     */
+    public enum RetryComponent {
+        CLASSIC("classic"),
+        SINGLE_WRITER("single-writer");
+
+        private final String tag;
+
+        RetryComponent(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final String CACHED = "cached";
+    private static final String CONSISTENT = "consistent";
+    private static final String TRANSFER = "transfer";
+    private static final String PAYOUT = "payout";
+
+    private final MeterRegistry meterRegistry;
+    private final double traceSampleRate;
+    private final Timer[][] operationTimers;
+    private final Timer[] cachedBalanceTimers;
+    private final Timer[] consistentBalanceTimers;
+    private final Timer[] transferTimers;
+    private final Timer[] payoutTimers;
+    private final Counter[] retryCounters;
+
+    public WalletMetrics(MeterRegistry meterRegistry, WalletMetricsProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.traceSampleRate = properties.getTraceSampleRate();
+
+        OperationType[] types = OperationType.values();
+        this.operationTimers = new Timer[types.length][];
+        for (OperationType type : types) {
+            operationTimers[type.ordinal()] = timers("wallet.operation", "type", type.name());
+        }
+        this.cachedBalanceTimers = timers("wallet.balance.read", "consistency", CACHED);
+        this.consistentBalanceTimers = timers("wallet.balance.read", "consistency", CONSISTENT);
+        this.transferTimers = timers("wallet.transfer", "kind", TRANSFER);
+        this.payoutTimers = timers("wallet.transfer", "kind", PAYOUT);
+
+        RetryComponent[] components = RetryComponent.values();
+        this.retryCounters = new Counter[components.length];
+        for (RetryComponent component : components) {
+            retryCounters[component.ordinal()] = Counter.builder("wallet.retries")
+                    .tag("component", component.tag)
+                    .register(meterRegistry);
+        }
+    }
+
+    private Timer[] timers(String name, String tagKey, String tagValue) {
+        Outcome[] outcomes = Outcome.values();
+        Timer[] timers = new Timer[outcomes.length];
+        for (Outcome outcome : outcomes) {
+            timers[outcome.ordinal()] = Timer.builder(name)
+                    .tag(tagKey, tagValue)
+                    .tag("outcome", outcome.tag)
+                    .register(meterRegistry);
+        }
+        return timers;
+    }
+
+    /**
+     * Замеряет операцию от подписки до результата.
+     */
+    public <T> Mono<T> timeOperation(OperationType type, Mono<T> operation) {
+        return time(operation, operationTimers[type.ordinal()]);
+    }
+
+    /**
+     * Замеряет чтение баланса; {@code consistent} — чтение из БД в обход кеша.
+     */
+    public <T> Mono<T> timeBalanceRead(boolean consistent, Mono<T> read) {
+        return time(read, consistent ? consistentBalanceTimers : cachedBalanceTimers);
+    }
+
+    /**
+     * Замеряет перевод; {@code payout} — выплата с одного кошелька нескольким получателям.
+     */
+    public <T> Mono<T> timeTransfer(boolean payout, Mono<T> transfer) {
+        return time(transfer, payout ? payoutTimers : transferTimers);
+    }
+
+    private static <T> Mono<T> time(Mono<T> source, Timer[] timers) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return source
+                    .doOnSuccess(value -> record(timers, Outcome.OK, started))
+                    .doOnError(error -> record(timers, Outcome.of(error), started));
+        });
+    }
+
+    private static void record(Timer[] timers, Outcome outcome, long started) {
+        timers[outcome.ordinal()].record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Учитывает повтор в компоненте {@code component}.
+     */
+    public void recordRetry(RetryComponent component) {
+        retryCounters[component.ordinal()].increment();
+    }
+
+    /**
+     * Учитывает {@code count} повторов в компоненте {@code component}.
+     */
+    public void recordRetries(RetryComponent component, int count) {
+        retryCounters[component.ordinal()].increment(count);
+    }
+
+    /**
+     * Решает, писать ли отладочный лог горячего пути для текущей операции.
+     * Без выборки ({@code trace-sample-rate: 0}) лог и его аргументы не вычисляются даже при уровне DEBUG.
+     */
+    public boolean sampleTrace(Logger log) {
+        return traceSampleRate > 0
+                && log.isDebugEnabled()
+                && (traceSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < traceSampleRate);
+    }
+
+}
@@ -0,0 +1,110 @@
+package ru.iakovlysenko.wallet.service.partition;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletPartitioningProperties;
+import ru.iakovlysenko.wallet.repository.PartitionRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Создание месячных секций журнала операций заранее.
+ * Секции создаются на {@code months-ahead} месяцев вперед после запуска, когда схема уже обновлена Liquibase,
+ * и затем каждые {@code check-interval},
+ * так что запись журнала не попадает в секцию по умолчанию. Секционированной может быть как рабочая таблица
+ * {@code wallet_operations}, так и теневая {@code wallet_operations_partitioned} до переноса данных.
+ * При шардировании секции создаются на каждом шарде.
+ */
+@Slf4j
+@Component
+public class PartitionMaintainer {
+
+    private final PartitionRepository partitionRepository;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final Duration checkInterval;
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+
+    private Disposable maintenance;
+
+    public PartitionMaintainer(PartitionRepository partitionRepository,
+                               ShardRouter shardRouter,
+                               WalletPartitioningProperties properties) {
+        this.partitionRepository = partitionRepository;
+        this.shardRouter = shardRouter;
+        this.enabled = properties.isEnabled();
+        this.monthsAhead = properties.getMonthsAhead();
+        this.checkInterval = properties.getCheckInterval();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        maintenance = Flux.interval(Duration.ZERO, checkInterval)
+                .concatMap(tick -> Flux.fromIterable(shardRouter.shards())
+                        .concatMap(shard -> shard.bind(ensureAhead())
+                                .onErrorResume(error -> {
+                                    log.error("Ошибка создания секций журнала на шарде {}: {}", shard, error.getMessage());
+                                    return Mono.empty();
+                                })))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (maintenance != null) {
+            maintenance.dispose();
+        }
+    }
+
+    /**
+     * Создает секции с текущего месяца на {@code months-ahead} вперед в секционированной таблице журнала.
+     */
+    public Mono<Void> ensureAhead() {
+        YearMonth current = YearMonth.now();
+        return findPartitionedOperations()
+                .flatMap(parent -> Flux.range(0, monthsAhead + 1)
+                        .concatMap(offset -> ensureMonth(parent, current.plusMonths(offset)))
+                        .then());
+    }
+
+    /**
+     * Создает секцию месяца {@code month}, если она еще не создавалась этим узлом на шарде из контекста.
+     */
+    public Mono<Void> ensureMonth(String parent, YearMonth month) {
+        return Mono.deferContextual(context -> {
+            String key = ShardRouter.shardName(context) + '/' + parent + '/' + month;
+            if (created.contains(key)) {
+                return Mono.empty();
+            }
+            return partitionRepository.createMonthPartition(parent, month)
+                    .doOnSuccess(ignored -> {
+                        created.add(key);
+                        log.debug("Секция журнала {} за {} создана", parent, month);
+                    });
+        });
+    }
+
+    private Mono<String> findPartitionedOperations() {
+        return partitionRepository.isPartitioned(PartitionRepository.OPERATIONS)
+                .flatMap(partitioned -> partitioned
+                        ? Mono.just(PartitionRepository.OPERATIONS)
+                        : partitionRepository.isPartitioned(PartitionRepository.OPERATIONS_PARTITIONED)
+                                .filter(Boolean::booleanValue)
+                                .map(shadow -> PartitionRepository.OPERATIONS_PARTITIONED));
+    }
+
+}
@@ -0,0 +1,113 @@
+package ru.iakovlysenko.wallet.service.partition;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import ru.iakovlysenko.wallet.config.WalletPartitioningProperties;
+import ru.iakovlysenko.wallet.repository.PartitionRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * Перенос данных из несекционированных {@code wallets} и {@code wallet_operations} в секционированные без остановки.
+ * Триггеры повторяют каждое изменение прежних таблиц в новых, а существующие строки копируются частями
+ * по {@code chunk-size} в порядке id с паузой {@code chunk-pause}. После копирования таблицы переименовываются
+ * в одной короткой транзакции; прежние остаются как {@code *_legacy} и удаляются вручную.
+ * Каждый шаг можно повторить: прерванный перенос продолжается при следующем запуске,
+ * а одновременный запуск на нескольких узлах лишь дублирует работу.
+ * При шардировании шарды переносятся по очереди.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.partitioning.migration", name = "enabled", havingValue = "true")
+public class PartitionMigration {
+
+    private final PartitionRepository partitionRepository;
+    private final PartitionMaintainer partitionMaintainer;
+    private final TransactionalOperator transactionalOperator;
+    private final ShardRouter shardRouter;
+    private final WalletPartitioningProperties.Migration properties;
+
+    private Disposable migration;
+
+    public PartitionMigration(PartitionRepository partitionRepository,
+                              PartitionMaintainer partitionMaintainer,
+                              TransactionalOperator transactionalOperator,
+                              ShardRouter shardRouter,
+                              WalletPartitioningProperties properties) {
+        this.partitionRepository = partitionRepository;
+        this.partitionMaintainer = partitionMaintainer;
+        this.transactionalOperator = transactionalOperator;
+        this.shardRouter = shardRouter;
+        this.properties = properties.getMigration();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        migration = Flux.fromIterable(shardRouter.shards())
+                .concatMap(shard -> shard.bind(migrate()))
+                .subscribe(
+                ignored -> { },
+                error -> log.error("Перенос в секционированные таблицы прерван: {}", error.getMessage()));
+    }
+
+    @PreDestroy
+    void stop() {
+        migration.dispose();
+    }
+
+    Mono<Void> migrate() {
+        return partitionRepository.isPartitioned(PartitionRepository.WALLETS)
+                .flatMap(done -> {
+                    if (done) {
+                        log.info("Таблицы уже секционированы, перенос не требуется");
+                        return Mono.empty();
+                    }
+                    return partitionRepository.installMirrorTriggers()
+                            .then(partitionMaintainer.ensureAhead())
+                            .then(Mono.defer(() -> copy(PartitionRepository.WALLETS, partitionRepository::copyWalletsChunk)))
+                            .then(Mono.defer(() -> copy(PartitionRepository.OPERATIONS, this::copyOperationsChunk)))
+                            .then(Mono.defer(this::swap));
+                });
+    }
+
+    /**
+     * Перед копированием части журнала создает секции всех её месяцев, чтобы старые записи
+     * не попали в секцию по умолчанию.
+     */
+    private Mono<UUID> copyOperationsChunk(UUID after, int size) {
+        return partitionRepository.findOperationMonths(after, size)
+                .concatMap(month -> partitionMaintainer.ensureMonth(PartitionRepository.OPERATIONS_PARTITIONED, month))
+                .then(partitionRepository.copyOperationsChunk(after, size));
+    }
+
+    private Mono<Long> copy(String table, BiFunction<UUID, Integer, Mono<UUID>> chunk) {
+        int chunkSize = properties.getChunkSize();
+        log.info("Копирование таблицы {} частями по {}", table, chunkSize);
+        return chunk.apply(PartitionRepository.MIN_ID, chunkSize)
+                .expand(last -> Mono.delay(properties.getChunkPause()).then(chunk.apply(last, chunkSize)))
+                .count()
+                .doOnNext(chunks -> log.info("Таблица {} скопирована: {} частей", table, chunks));
+    }
+
+    private Mono<Void> swap() {
+        Duration lockTimeout = properties.getLockTimeout();
+        return transactionalOperator.transactional(partitionRepository.swap(lockTimeout))
+                .retryWhen(Retry.fixedDelay(properties.getSwapAttempts() - 1, lockTimeout)
+                        .doBeforeRetry(signal -> log.warn("Переключение таблиц не выполнено, повтор: {}",
+                                signal.failure().getMessage())))
+                .doOnSuccess(ignored -> log.info("Таблицы переключены на секционированные, прежние сохранены как *_legacy"));
+    }
+
+}
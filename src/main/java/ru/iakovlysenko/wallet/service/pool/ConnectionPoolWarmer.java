@@ -0,0 +1,107 @@
+package ru.iakovlysenko.wallet.service.pool;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletPoolProperties;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRouter;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Прогрев пулов соединений при запуске.
+ * На каждом пуле - основной базы или каждого шарда - одновременно открывается {@code initial-size} транзакций,
+ * поэтому каждая получает отдельное соединение. В транзакции выполняются запросы {@link WalletRepository}
+ * для случайного кошелька, и драйвер сохраняет их подготовленные выражения в кеше соединения;
+ * затем транзакция откатывается. На реплике готовится только чтение кошелька.
+ * Прогрев идет до перевода приложения в готовность принимать запросы и не останавливает запуск при ошибке.
+ */
+@Slf4j
+@Component
+public class ConnectionPoolWarmer {
+
+    private final WalletRepository walletRepository;
+    private final ShardRouter shardRouter;
+    private final ReplicaRouter replicaRouter;
+    private final TransactionalOperator transactionalOperator;
+    private final boolean enabled;
+    private final int connections;
+    private final Duration timeout;
+
+    public ConnectionPoolWarmer(WalletRepository walletRepository,
+                                ShardRouter shardRouter,
+                                ReplicaRouter replicaRouter,
+                                TransactionalOperator transactionalOperator,
+                                WalletPoolProperties properties) {
+        this.walletRepository = walletRepository;
+        this.shardRouter = shardRouter;
+        this.replicaRouter = replicaRouter;
+        this.transactionalOperator = transactionalOperator;
+        this.enabled = properties.getWarmup().isEnabled();
+        this.connections = properties.getInitialSize();
+        this.timeout = properties.getWarmup().getTimeout();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled || connections <= 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            Long warmed = warmUp().block(timeout);
+            log.info("Пулы соединений прогреты: {} соединений за {} мс",
+                    warmed, Duration.ofNanos(System.nanoTime() - started).toMillis());
+        } catch (RuntimeException e) {
+            log.warn("Прогрев пулов соединений не завершен: {}", e.getMessage());
+        }
+    }
+
+    Mono<Long> warmUp() {
+        Flux<Long> shards = Flux.fromIterable(shardRouter.shards())
+                .concatMap(shard -> shard.bind(warmUp(shard.transactionalOperator(), false)));
+        Mono<Long> replica = replicaRouter.isEnabled()
+                ? replicaRouter.onReplica(warmUp(transactionalOperator, true))
+                : Mono.just(0L);
+        return shards.concatWith(replica).reduce(0L, Long::sum);
+    }
+
+    /**
+     * Одновременно открывает {@code connections} транзакций и возвращает число прогретых соединений.
+     */
+    private Mono<Long> warmUp(TransactionalOperator transactionalOperator, boolean readOnly) {
+        return Flux.range(0, connections)
+                .flatMap(i -> transactionalOperator.execute(status -> {
+                            status.setRollbackOnly();
+                            return statements(UUID.randomUUID(), readOnly);
+                        }).then(Mono.just(1L)), connections)
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Выполняет запросы репозитория кошельков. Все они не находят кошелек или откатываются вместе с транзакцией.
+     */
+    private Mono<Void> statements(UUID walletId, boolean readOnly) {
+        Mono<Void> read = walletRepository.findById(walletId).then();
+        if (readOnly) {
+            return read;
+        }
+        return read
+                .then(walletRepository.lockBalance(walletId))
+                .then(walletRepository.updateBalanceIfVersion(walletId, Money.ZERO, 0))
+                .then(walletRepository.updateBalance(walletId, Money.ZERO))
+                .then(walletRepository.withdrawAtomically(walletId, Money.ZERO))
+                .then(walletRepository.insertOrIgnore(walletId, Money.ZERO))
+                .then(walletRepository.depositAtomically(walletId, Money.ZERO))
+                .then();
+    }
+
+}
@@ -0,0 +1,275 @@
+package ru.iakovlysenko.wallet.service.reconciliation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.config.WalletReconciliationProperties;
+import ru.iakovlysenko.wallet.model.BalanceSnapshot;
+import ru.iakovlysenko.wallet.model.LedgerBalance;
+import ru.iakovlysenko.wallet.repository.ReconciliationRepository;
+import ru.iakovlysenko.wallet.repository.ShardRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Периодическая сверка балансов кошельков с журналом операций.
+ * Для каждого кошелька хранится снимок - баланс с учетом записей журнала не новее момента снимка, - и сверка
+ * читает только записи после него: баланс по журналу равен снимку плюс изменения этих записей.
+ * Без снимка расчет идет от {@code balance_before} первой записи кошелька; кошельки без записей не сверяются.
+ * Снимок совпавшего кошелька сдвигается на {@code settle} назад от начала сверки: более ранние записи
+ * уже зафиксированы, а более поздние еще могут прийти из открытых транзакций: время записи задается до фиксации.
+ * Id кошельков делятся на {@code parallelism} диапазонов, которые просматриваются одновременно частями
+ * по {@code chunk-size}; перед каждой частью сверка ждет, пока в пулах не останется больше
+ * {@code max-pending-acquires} запросов в ожидании соединения, поэтому не отнимает соединения у операций.
+ * Расхождение проверяется повторно через {@code recheck-delay} по всему журналу без снимка: если версия
+ * кошелька за это время не изменилась, а баланс не совпал, расхождение записывается в лог и метрики,
+ * если совпал - снимок перестраивается. Баланс кошелька сверка не меняет.
+ * При шардировании сверка идет по шардам по очереди.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.reconciliation", name = "enabled", havingValue = "true")
+public class LedgerReconciler {
+
+    private final ReconciliationRepository reconciliationRepository;
+    private final ShardRouter shardRouter;
+    private final WalletReconciliationProperties properties;
+    private final boolean ledgerEnabled;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> outcomes;
+    private final Counter throttled;
+    private final AtomicLong lastMismatched = new AtomicLong();
+
+    private Disposable schedule;
+
+    public LedgerReconciler(ReconciliationRepository reconciliationRepository,
+                            ShardRouter shardRouter,
+                            WalletReconciliationProperties properties,
+                            WalletLedgerProperties ledgerProperties,
+                            MeterRegistry meterRegistry) {
+        this.reconciliationRepository = reconciliationRepository;
+        this.shardRouter = shardRouter;
+        this.properties = properties;
+        this.ledgerEnabled = ledgerProperties.isEnabled();
+        this.meterRegistry = meterRegistry;
+        this.outcomes = List.of("matched", "rebuilt", "mismatched", "skipped").stream()
+                .collect(Collectors.toMap(Function.identity(), outcome -> Counter.builder("wallet.reconciliation.wallets")
+                        .description("Сверенные с журналом кошельки")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)));
+        this.throttled = Counter.builder("wallet.reconciliation.throttled")
+                .description("Отложенные из-за занятости пулов части сверки")
+                .register(meterRegistry);
+        Gauge.builder("wallet.reconciliation.mismatches", lastMismatched, AtomicLong::get)
+                .description("Расхождения баланса с журналом в последней сверке")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!ledgerEnabled) {
+            log.warn("Сверка балансов включена, но журнал операций отключен");
+            return;
+        }
+        schedule = Flux.interval(properties.getInitialDelay(), properties.getInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> reconcile()
+                        .onErrorResume(error -> {
+                            log.error("Сверка балансов с журналом прервана: {}", error.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    Mono<Result> reconcile() {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            LocalDateTime horizon = LocalDateTime.now().minus(properties.getSettle());
+            return Flux.fromIterable(shardRouter.shards())
+                    .concatMap(shard -> shard.bind(reconcileShard(horizon)))
+                    .reduce(Result.NONE, Result::plus)
+                    .doOnNext(result -> {
+                        outcomes.get("matched").increment(result.matched());
+                        outcomes.get("rebuilt").increment(result.rebuilt());
+                        outcomes.get("mismatched").increment(result.mismatched());
+                        outcomes.get("skipped").increment(result.skipped());
+                        lastMismatched.set(result.mismatched());
+                        log.info("Сверка балансов с журналом за {} мс: совпало {}, снимков перестроено {}, "
+                                        + "расхождений {}, пропущено {}",
+                                Duration.ofNanos(System.nanoTime() - started).toMillis(),
+                                result.matched(), result.rebuilt(), result.mismatched(), result.skipped());
+                    });
+        });
+    }
+
+    private Mono<Result> reconcileShard(LocalDateTime horizon) {
+        int parallelism = properties.getParallelism();
+        return Flux.fromIterable(ranges(parallelism))
+                .flatMap(range -> scan(range, horizon), parallelism)
+                .reduce(Result.NONE, Result::plus)
+                .flatMap(result -> result.suspects().isEmpty()
+                        ? Mono.just(result)
+                        : Mono.delay(properties.getRecheckDelay())
+                                .then(recheck(result.suspects(), horizon))
+                                .map(rechecked -> result.withoutSuspects().plus(rechecked)));
+    }
+
+    private Mono<Result> scan(Range range, LocalDateTime horizon) {
+        return scanChunk(range.after(), range.before(), horizon)
+                .expand(result -> result.last() == null
+                        ? Mono.empty()
+                        : Mono.delay(properties.getChunkPause()).then(scanChunk(result.last(), range.before(), horizon)))
+                .reduce(Result.NONE, Result::plus);
+    }
+
+    /**
+     * Сверяет часть диапазона и сдвигает снимки совпавших кошельков. {@code last} результата - последний id
+     * полной части или {@code null}, если диапазон просмотрен до конца.
+     */
+    private Mono<Result> scanChunk(UUID after, UUID before, LocalDateTime horizon) {
+        int chunkSize = properties.getChunkSize();
+        return throttle()
+                .then(reconciliationRepository.findAfterSnapshot(after, before, chunkSize, horizon).collectList())
+                .flatMap(rows -> {
+                    List<BalanceSnapshot> snapshots = new ArrayList<>(rows.size());
+                    List<LedgerBalance> suspects = new ArrayList<>();
+                    long skipped = 0;
+                    for (LedgerBalance row : rows) {
+                        if (!row.isVerifiable()) {
+                            skipped++;
+                        } else if (row.matches()) {
+                            snapshots.add(row.snapshot(horizon));
+                        } else {
+                            suspects.add(row);
+                        }
+                    }
+                    UUID last = rows.size() == chunkSize ? rows.get(rows.size() - 1).walletId() : null;
+                    return reconciliationRepository.saveSnapshots(snapshots)
+                            .thenReturn(new Result(last, snapshots.size(), 0, 0, skipped, suspects));
+                });
+    }
+
+    /**
+     * Повторно сверяет расхождения по всему журналу. Кошелек, изменившийся после первой проверки, пропускается
+     * до следующей сверки.
+     */
+    private Mono<Result> recheck(List<LedgerBalance> suspects, LocalDateTime horizon) {
+        Map<UUID, LedgerBalance> first = suspects.stream()
+                .collect(Collectors.toMap(LedgerBalance::walletId, Function.identity()));
+        return Flux.fromIterable(suspects)
+                .buffer(properties.getChunkSize())
+                .concatMap(chunk -> throttle().then(reconciliationRepository.findByWholeLedger(
+                        chunk.stream().map(LedgerBalance::walletId).toList(), horizon).collectList()))
+                .concatMap(rows -> {
+                    List<BalanceSnapshot> snapshots = new ArrayList<>();
+                    long mismatched = 0;
+                    long skipped = 0;
+                    for (LedgerBalance row : rows) {
+                        if (row.version() != first.get(row.walletId()).version() || !row.isVerifiable()) {
+                            skipped++;
+                        } else if (row.matches()) {
+                            snapshots.add(row.snapshot(horizon));
+                        } else {
+                            mismatched++;
+                            log.error("Баланс кошелька {} не совпадает с журналом операций: в кошельке {}, по журналу {}",
+                                    row.walletId(), row.balance(), row.expected());
+                        }
+                    }
+                    return reconciliationRepository.saveSnapshots(snapshots)
+                            .thenReturn(new Result(null, 0, snapshots.size(), mismatched, skipped, List.of()));
+                })
+                .reduce(Result.NONE, Result::plus);
+    }
+
+    /**
+     * Ждет, пока в пулах не останется больше {@code max-pending-acquires} запросов в ожидании соединения.
+     */
+    private Mono<Void> throttle() {
+        return Mono.fromSupplier(this::pendingAcquires)
+                .filter(pending -> pending <= properties.getMaxPendingAcquires())
+                .repeatWhenEmpty(attempts -> attempts.concatMap(attempt -> {
+                    throttled.increment();
+                    return Mono.delay(properties.getThrottleBackoff());
+                }))
+                .then();
+    }
+
+    private double pendingAcquires() {
+        return meterRegistry.find("r2dbc.pool.pending").gauges().stream()
+                .mapToDouble(Gauge::value)
+                .sum();
+    }
+
+    /**
+     * Делит пространство id на {@code count} интервалов по старшим битам. Границы вида {@code xxxxxxxx-...-0000}
+     * не бывают id случайных UUID, поэтому исключение их из обоих соседних интервалов ничего не теряет.
+     */
+    static List<Range> ranges(int count) {
+        List<Range> ranges = new ArrayList<>(count);
+        long step = Long.divideUnsigned(-1L, count);
+        UUID after = ShardRepository.MIN_ID;
+        for (int i = 1; i < count; i++) {
+            UUID bound = new UUID(step * i, 0);
+            ranges.add(new Range(after, bound));
+            after = bound;
+        }
+        ranges.add(new Range(after, ReconciliationRepository.MAX_ID));
+        return ranges;
+    }
+
+    /**
+     * Интервал id {@code (after, before)}.
+     */
+    record Range(UUID after, UUID before) {
+    }
+
+    /**
+     * Итог сверки части, диапазона, шарда или всей сверки.
+     */
+    record Result(UUID last, long matched, long rebuilt, long mismatched, long skipped, List<LedgerBalance> suspects) {
+
+        static final Result NONE = new Result(null, 0, 0, 0, 0, List.of());
+
+        Result plus(Result other) {
+            List<LedgerBalance> merged = suspects;
+            if (!other.suspects.isEmpty()) {
+                merged = new ArrayList<>(suspects);
+                merged.addAll(other.suspects);
+            }
+            return new Result(last, matched + other.matched, rebuilt + other.rebuilt,
+                    mismatched + other.mismatched, skipped + other.skipped, merged);
+        }
+
+        Result withoutSuspects() {
+            return new Result(last, matched, rebuilt, mismatched, skipped, List.of());
+        }
+
+    }
+
+}
@@ -0,0 +1,192 @@
+package ru.iakovlysenko.wallet.service.replica;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletReplicaProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.repository.ReplicaRepository;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangeListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Выбор базы для чтения баланса и истории кошелька.
+ * Чтение уходит на реплику, если её отставание, которое проверяется раз в {@code lag-check-interval},
+ * не больше {@code max-lag}, а кошелек не изменялся на этом узле последние {@code read-your-writes-window}.
+ * Иначе, как и при недоступной реплике, чтение идет на основную базу. Изменения, сделанные через другие узлы,
+ * могут быть видны с задержкой до {@code max-lag}; о них узел узнает из уведомлений согласования кешей.
+ * Метрики: {@code wallet.replica.lag} — последнее отставание, {@code wallet.replica.reads{target}} — число чтений
+ * с реплики ({@code replica}) и основной базы ({@code primary}).
+ */
+@Slf4j
+@Component
+public class ReplicaRouter implements BalanceChangeListener {
+
+    /**
+     * Ключ выбора базы в контексте Reactor.
+     */
+    public static final String TARGET_KEY = "wallet.replica";
+
+    /**
+     * Значение ключа {@link #TARGET_KEY} для чтения с реплики.
+     */
+    public static final String REPLICA = "replica";
+
+    private final ReplicaRepository replicaRepository;
+    private final boolean enabled;
+    private final Duration maxLag;
+    private final Duration lagCheckInterval;
+    private final Cache<UUID, Boolean> recentWrites;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    private volatile Duration lag;
+    private Disposable lagCheck;
+
+    public ReplicaRouter(ReplicaRepository replicaRepository,
+                         WalletReplicaProperties properties,
+                         WalletShardingProperties shardingProperties,
+                         MeterRegistry meterRegistry) {
+        this.replicaRepository = replicaRepository;
+        if (properties.isEnabled() && shardingProperties.isEnabled()) {
+            log.warn("Чтение с реплики не поддерживается при шардировании и отключено");
+        }
+        this.enabled = properties.isEnabled() && !shardingProperties.isEnabled();
+        this.maxLag = properties.getMaxLag();
+        this.lagCheckInterval = properties.getLagCheckInterval();
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(properties.getRecentWritesMaxSize())
+                .expireAfterWrite(properties.getReadYourWritesWindow())
+                .build();
+        this.replicaReads = reads(meterRegistry, REPLICA);
+        this.primaryReads = reads(meterRegistry, "primary");
+        Gauge.builder("wallet.replica.lag", this,
+                        router -> router.lag != null ? router.lag.toMillis() / 1000.0 : Double.NaN)
+                .description("Отставание реплики")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private static Counter reads(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("wallet.replica.reads")
+                .description("Чтения баланса и истории по базам")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        lagCheck = Flux.interval(Duration.ZERO, lagCheckInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> checkLag())
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (lagCheck != null) {
+            lagCheck.dispose();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Выполняет запросы {@code mono} на реплике независимо от её отставания.
+     */
+    public <T> Mono<T> onReplica(Mono<T> mono) {
+        return mono.contextWrite(context -> context.put(TARGET_KEY, REPLICA));
+    }
+
+    /**
+     * Выполняет чтение кошелька на реплике, если она достаточно свежая для него.
+     */
+    public <T> Mono<T> read(UUID walletId, Mono<T> mono) {
+        if (!enabled) {
+            return mono;
+        }
+        return Mono.defer(() -> useReplica(walletId)
+                ? onReplica(mono)
+                : mono);
+    }
+
+    /**
+     * Выполняет поток чтений кошелька на реплике, если она достаточно свежая для него в момент подписки.
+     */
+    public <T> Flux<T> readMany(UUID walletId, Flux<T> flux) {
+        if (!enabled) {
+            return flux;
+        }
+        return Flux.defer(() -> useReplica(walletId)
+                ? flux.contextWrite(context -> context.put(TARGET_KEY, REPLICA))
+                : flux);
+    }
+
+    @Override
+    public void onCommitted(List<BalanceChange> changes) {
+        for (BalanceChange change : changes) {
+            markWritten(change.walletId());
+        }
+    }
+
+    /**
+     * Отмечает кошелек измененным: до конца окна {@code read-your-writes-window} он читается с основной базы.
+     * Вызывается и для изменений с других узлов, чтобы кеш не перезагрузился с отстающей реплики.
+     */
+    public void markWritten(UUID walletId) {
+        if (enabled) {
+            recentWrites.put(walletId, Boolean.TRUE);
+        }
+    }
+
+    private boolean useReplica(UUID walletId) {
+        Duration current = lag;
+        boolean replica = current != null
+                && current.compareTo(maxLag) <= 0
+                && recentWrites.getIfPresent(walletId) == null;
+        (replica ? replicaReads : primaryReads).increment();
+        return replica;
+    }
+
+    /**
+     * Читает отставание реплики. Ошибка выводит реплику из чтения до следующей успешной проверки.
+     */
+    Mono<Void> checkLag() {
+        return onReplica(replicaRepository.findLag())
+                .timeout(lagCheckInterval.plus(maxLag))
+                .doOnNext(current -> {
+                    if (lag == null) {
+                        log.info("Реплика доступна для чтения, отставание {}", current);
+                    }
+                    lag = current;
+                })
+                .onErrorResume(error -> {
+                    if (lag != null) {
+                        log.warn("Реплика недоступна, чтение идет с основной базы: {}", error.getMessage());
+                    }
+                    lag = null;
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+}
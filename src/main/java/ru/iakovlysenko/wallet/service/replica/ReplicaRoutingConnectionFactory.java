@@ -0,0 +1,38 @@
+package ru.iakovlysenko.wallet.service.replica;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Фабрика соединений, выбирающая реплику по ключу {@link ReplicaRouter#TARGET_KEY} из контекста Reactor.
+ * Все остальные запросы, в том числе транзакции, идут на основную базу. Пулы закрываются вместе с фабрикой.
+ */
+public class ReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements DisposableBean {
+
+    private final List<ConnectionPool> pools;
+
+    public ReplicaRoutingConnectionFactory(ConnectionFactory primary, ConnectionFactory replica,
+                                           List<ConnectionPool> pools) {
+        this.pools = pools;
+        setTargetConnectionFactories(Map.of(ReplicaRouter.REPLICA, replica));
+        setDefaultTargetConnectionFactory(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(ReplicaRouter.TARGET_KEY)));
+    }
+
+    @Override
+    public void destroy() {
+        pools.forEach(ConnectionPool::dispose);
+    }
+
+}
@@ -0,0 +1,69 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Шард кошельков: имя базы данных и транзакции на ней.
+ * Запросы направляются на шард через контекст Reactor: {@link #bind} записывает имя шарда
+ * под ключом {@link ShardRouter#SHARD_KEY}, маршрутизирующая фабрика соединений читает его при получении соединения.
+ * Транзакция {@link #transactionalOperator()} всегда открывается заново на этом шарде и не присоединяется
+ * к транзакции вызывающего, которая может идти на другом шарде.
+ */
+public final class Shard {
+
+    private final String name;
+    private final boolean routed;
+    private final TransactionalOperator transactionalOperator;
+
+    private Shard(String name, boolean routed, TransactionalOperator transactionalOperator) {
+        this.name = name;
+        this.routed = routed;
+        this.transactionalOperator = routed
+                ? new ShardTransactionalOperator(transactionalOperator, name)
+                : transactionalOperator;
+    }
+
+    /**
+     * Шард одной из нескольких баз данных.
+     */
+    public static Shard routed(String name, TransactionalOperator transactionalOperator) {
+        return new Shard(name, true, transactionalOperator);
+    }
+
+    /**
+     * Единственная база без маршрутизации: привязка к шарду ничего не меняет.
+     */
+    public static Shard single(TransactionalOperator transactionalOperator) {
+        return new Shard("default", false, transactionalOperator);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public TransactionalOperator transactionalOperator() {
+        return transactionalOperator;
+    }
+
+    /**
+     * Выполняет запросы {@code mono} на этом шарде.
+     */
+    public <T> Mono<T> bind(Mono<T> mono) {
+        return routed ? mono.contextWrite(context -> context.put(ShardRouter.SHARD_KEY, name)) : mono;
+    }
+
+    /**
+     * Выполняет запросы {@code flux} на этом шарде.
+     */
+    public <T> Flux<T> bind(Flux<T> flux) {
+        return routed ? flux.contextWrite(context -> context.put(ShardRouter.SHARD_KEY, name)) : flux;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,210 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.ShardRepository;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Перенос кошельков с прежних шардов на шарды нового кольца без остановки.
+ * Прежние шарды просматриваются частями по {@code chunk-size} id с паузой {@code chunk-pause}, кошельки,
+ * которые на новом кольце принадлежат другому шарду, переносятся по одному в транзакции прежнего шарда:
+ * строка кошелька блокируется, кошелек, журнал и ключи идемпотентности копируются на новый шард,
+ * затем кошелек отмечается перенесенным и удаляется. Запись в кошелек во время переноса ждет блокировки,
+ * после фиксации её отклоняет триггер, и маршрутизатор повторяет запрос на новом шарде.
+ * Проходы повторяются, пока очередной не перенесет ни одного кошелька; после этого триггеры снимаются.
+ * Если часть кошельков перенести не удалось, триггеры остаются, а перенос продолжится при следующем запуске.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "wallet.sharding.rebalance", name = "enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    /**
+     * Наибольшая страница журнала, которую можно вставить одним выражением.
+     */
+    private static final int LEDGER_PAGE_SIZE = 65_535 / WalletOperationRepository.COLUMNS;
+
+    /**
+     * Наибольшая часть ключей идемпотентности, которую можно вставить одним выражением.
+     */
+    private static final int KEYS_CHUNK_SIZE = 65_535 / IdempotencyKeyRepository.COLUMNS;
+
+    private final ShardRouter shardRouter;
+    private final ShardRepository shardRepository;
+    private final WalletOperationRepository walletOperationRepository;
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final WalletShardingProperties.Rebalance properties;
+
+    private Disposable rebalance;
+
+    public ShardRebalancer(ShardRouter shardRouter,
+                           ShardRepository shardRepository,
+                           WalletOperationRepository walletOperationRepository,
+                           IdempotencyKeyRepository idempotencyKeyRepository,
+                           WalletShardingProperties properties) {
+        this.shardRouter = shardRouter;
+        this.shardRepository = shardRepository;
+        this.walletOperationRepository = walletOperationRepository;
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.properties = properties.getRebalance();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!shardRouter.isRebalancing()) {
+            log.warn("Перенос кошельков включен, но прежние шарды не заданы");
+            return;
+        }
+        rebalance = rebalance().subscribe(
+                ignored -> { },
+                error -> log.error("Перенос кошельков между шардами прерван: {}", error.getMessage()));
+    }
+
+    @PreDestroy
+    void stop() {
+        if (rebalance != null) {
+            rebalance.dispose();
+        }
+    }
+
+    Mono<Void> rebalance() {
+        List<Shard> sources = shardRouter.previousShards();
+        return Flux.fromIterable(sources)
+                .concatMap(source -> source.bind(shardRepository.installMoveTriggers()))
+                .then(Mono.defer(this::pass))
+                .expand(progress -> progress.moved() > 0 ? pass() : Mono.empty())
+                .reduce((total, pass) -> new Progress(null, total.moved() + pass.moved(), pass.failed()))
+                .flatMap(total -> {
+                    if (total.failed() > 0) {
+                        log.error("Перенос кошельков завершен с ошибками: перенесено {}, не перенесено {}; "
+                                + "триггеры переноса оставлены до следующего запуска", total.moved(), total.failed());
+                        return Mono.empty();
+                    }
+                    log.info("Перенос кошельков завершен: перенесено {}", total.moved());
+                    return Flux.fromIterable(sources)
+                            .concatMap(source -> source.bind(shardRepository.dropMoveTriggers()))
+                            .then();
+                });
+    }
+
+    /**
+     * Просматривает все прежние шарды и переносит кошельки, принадлежащие другим шардам.
+     */
+    private Mono<Progress> pass() {
+        return Flux.fromIterable(shardRouter.previousShards())
+                .concatMap(this::scan)
+                .reduce(Progress.NONE, Progress::plus)
+                .doOnNext(progress -> log.info("Проход переноса кошельков: перенесено {}, не перенесено {}",
+                        progress.moved(), progress.failed()));
+    }
+
+    private Mono<Progress> scan(Shard source) {
+        int chunkSize = properties.getChunkSize();
+        return scanChunk(source, ShardRepository.MIN_ID, chunkSize)
+                .expand(progress -> progress.last() == null
+                        ? Mono.empty()
+                        : Mono.delay(properties.getChunkPause()).then(scanChunk(source, progress.last(), chunkSize)))
+                .reduce(Progress.NONE, Progress::plus);
+    }
+
+    /**
+     * Переносит кошельки из части id шарда. {@code last} результата - последний id полной части
+     * или {@code null}, если шард просмотрен до конца.
+     */
+    private Mono<Progress> scanChunk(Shard source, UUID after, int chunkSize) {
+        return source.bind(shardRepository.findIdsAfter(after, chunkSize).collectList())
+                .flatMap(ids -> Flux.fromIterable(ids)
+                        .filter(walletId -> shardRouter.shardFor(walletId) != source)
+                        .concatMap(walletId -> move(walletId, source, shardRouter.shardFor(walletId))
+                                .map(moved -> moved ? Progress.MOVED : Progress.NONE)
+                                .onErrorResume(error -> {
+                                    log.error("Ошибка переноса кошелька {} с шарда {}: {}",
+                                            walletId, source, error.getMessage());
+                                    return Mono.just(Progress.FAILED);
+                                }))
+                        .reduce(new Progress(ids.size() == chunkSize ? ids.get(ids.size() - 1) : null, 0, 0),
+                                Progress::plus));
+    }
+
+    /**
+     * Переносит кошелек в транзакции прежнего шарда. Запись на новый шард идет в его собственных транзакциях,
+     * поэтому все чтения прежнего шарда полностью собираются до неё. Копия от прерванного переноса
+     * на новом шарде перед записью удаляется. Возвращает {@code false}, если кошелька на шарде уже нет.
+     */
+    Mono<Boolean> move(UUID walletId, Shard source, Shard target) {
+        Mono<Boolean> move = shardRepository.lockForMove(walletId)
+                .flatMap(wallet -> target.transactionalOperator().transactional(
+                                walletOperationRepository.deleteByWalletId(walletId)
+                                        .then(idempotencyKeyRepository.deleteByWalletId(walletId))
+                                        .then(shardRepository.upsert(wallet)))
+                        .then(copyLedger(walletId, target))
+                        .then(copyIdempotencyKeys(walletId, target))
+                        .then(shardRepository.markMoved(walletId, target.name()))
+                        .then(walletOperationRepository.deleteByWalletId(walletId))
+                        .then(idempotencyKeyRepository.deleteByWalletId(walletId))
+                        .then(shardRepository.delete(walletId))
+                        .doOnNext(ignored -> log.debug("Кошелек {} перенесен с шарда {} на {}", walletId, source, target))
+                        .thenReturn(true))
+                .defaultIfEmpty(false);
+        return source.transactionalOperator().transactional(move);
+    }
+
+    private Mono<Long> copyLedger(UUID walletId, Shard target) {
+        return copyLedgerPage(walletId, target, null)
+                .expand(last -> copyLedgerPage(walletId, target, last))
+                .count();
+    }
+
+    /**
+     * Копирует страницу журнала после записи {@code after}. Возвращает последнюю запись полной страницы.
+     */
+    private Mono<WalletOperation> copyLedgerPage(UUID walletId, Shard target, WalletOperation after) {
+        return walletOperationRepository.findPage(walletId,
+                        after != null ? after.createdAt() : null,
+                        after != null ? after.id() : null,
+                        LEDGER_PAGE_SIZE)
+                .collectList()
+                .filter(page -> !page.isEmpty())
+                .flatMap(page -> target.transactionalOperator()
+                        .transactional(walletOperationRepository.insertAll(page))
+                        .then(Mono.justOrEmpty(page.size() == LEDGER_PAGE_SIZE ? page.get(page.size() - 1) : null)));
+    }
+
+    private Mono<Void> copyIdempotencyKeys(UUID walletId, Shard target) {
+        return idempotencyKeyRepository.findByWalletId(walletId)
+                .collectList()
+                .flatMapMany(records -> Flux.fromIterable(records).buffer(KEYS_CHUNK_SIZE))
+                .concatMap(chunk -> target.transactionalOperator().transactional(idempotencyKeyRepository.insertAll(chunk)))
+                .then();
+    }
+
+    /**
+     * Итог переноса части, шарда или прохода.
+     */
+    private record Progress(UUID last, long moved, long failed) {
+
+        private static final Progress NONE = new Progress(null, 0, 0);
+        private static final Progress MOVED = new Progress(null, 1, 0);
+        private static final Progress FAILED = new Progress(null, 0, 1);
+
+        private Progress plus(Progress other) {
+            return new Progress(last, moved + other.moved, failed + other.failed);
+        }
+
+    }
+
+}
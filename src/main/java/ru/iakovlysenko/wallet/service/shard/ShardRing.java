@@ -0,0 +1,73 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Кольцо согласованного хеширования.
+ * Каждый шард занимает {@code virtualNodes} точек, кошелек принадлежит шарду первой точки не меньше хеша его id.
+ * Положение точек зависит только от имени шарда, поэтому при добавлении шарда к нему переходит
+ * около {@code 1/N} кошельков, а остальные остаются на месте.
+ * Поиск выполняется двоичным поиском по отсортированному массиву без выделения памяти.
+ */
+public final class ShardRing {
+
+    private final long[] points;
+    private final String[] owners;
+
+    public ShardRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Кольцо шардов не может быть пустым");
+        }
+        List<Point> sorted = shards.stream()
+                .flatMap(shard -> IntStream.range(0, virtualNodes)
+                        .mapToObj(replica -> new Point(point(shard, replica), shard)))
+                .sorted(Comparator.comparingLong(Point::hash).thenComparing(Point::owner))
+                .toList();
+        this.points = new long[sorted.size()];
+        this.owners = new String[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            points[i] = sorted.get(i).hash();
+            owners[i] = sorted.get(i).owner();
+        }
+    }
+
+    /**
+     * Возвращает имя шарда кошелька.
+     */
+    public String shardFor(UUID walletId) {
+        int index = Arrays.binarySearch(points, hash(walletId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    static long hash(UUID walletId) {
+        return mix(walletId.getMostSignificantBits() ^ mix(walletId.getLeastSignificantBits()));
+    }
+
+    private static long point(String shard, int replica) {
+        return mix(((long) shard.hashCode() << 32) | (replica & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Финальное перемешивание MurmurHash3: близкие значения расходятся по всему диапазону {@code long}.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private record Point(long hash, String owner) {
+    }
+
+}
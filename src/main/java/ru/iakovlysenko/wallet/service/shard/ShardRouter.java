@@ -0,0 +1,252 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import io.r2dbc.spi.R2dbcException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.exception.CrossShardOperationException;
+import ru.iakovlysenko.wallet.repository.ShardRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Маршрутизация запросов кошелька на шард.
+ * Шард кошелька определяется кольцом согласованного хеширования по id. Запросы привязываются к шарду
+ * через контекст Reactor, поэтому репозитории и движки работают с одной маршрутизирующей фабрикой соединений,
+ * а транзакция открывается на пуле того шарда, который записан в контексте при её начале.
+ * Если задано {@code rebalance.previous-shards}, кошелек, сменивший шард на новом кольце, ищется сначала
+ * на прежнем шарде и обслуживается там, пока перенос его не удалит. Запрос, завершившийся ошибкой или пустым
+ * результатом на прежнем шарде, повторяется на новом, если кошелька на прежнем уже нет: такой запрос
+ * ничего не изменил, так как запись в перенесенный кошелек отклоняют триггеры переноса.
+ * Без шардирования маршрутизатор состоит из одного шарда без привязки и ничего не добавляет к запросам.
+ */
+@Slf4j
+@Component
+public class ShardRouter {
+
+    /**
+     * Ключ имени шарда в контексте Reactor.
+     */
+    public static final String SHARD_KEY = "wallet.shard";
+
+    private final ShardRepository shardRepository;
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+    private final ShardRing ring;
+    private final ShardRing previousRing;
+    private final List<Shard> previousShards = new ArrayList<>();
+    private final Shard single;
+
+    public ShardRouter(ShardRepository shardRepository,
+                       ReactiveTransactionManager transactionManager,
+                       TransactionalOperator transactionalOperator,
+                       WalletShardingProperties properties) {
+        this.shardRepository = shardRepository;
+        if (!properties.isEnabled()) {
+            this.single = Shard.single(transactionalOperator);
+            this.shards.put(single.name(), single);
+            this.ring = null;
+            this.previousRing = null;
+            return;
+        }
+
+        DefaultTransactionDefinition requiresNew = new DefaultTransactionDefinition();
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        TransactionalOperator independent = TransactionalOperator.create(transactionManager, requiresNew);
+        for (WalletShardingProperties.Shard shard : properties.getShards()) {
+            shards.put(shard.getName(), Shard.routed(shard.getName(), independent));
+        }
+        this.single = null;
+        this.ring = new ShardRing(shards.keySet(), properties.getVirtualNodes());
+
+        List<String> previousShards = properties.getRebalance().getPreviousShards();
+        if (previousShards.isEmpty()) {
+            this.previousRing = null;
+        } else {
+            if (!shards.keySet().containsAll(previousShards)) {
+                throw new IllegalArgumentException("Прежние шарды должны входить в список шардов: " + previousShards);
+            }
+            this.previousRing = new ShardRing(previousShards, properties.getVirtualNodes());
+            previousShards.forEach(name -> this.previousShards.add(shards.get(name)));
+            log.info("Шарды {}, прежние шарды {}: кошельки ищутся на прежнем шарде до переноса",
+                    shards.keySet(), previousShards);
+        }
+    }
+
+    public boolean isSharded() {
+        return single == null;
+    }
+
+    /**
+     * Включен ли поиск кошельков на прежнем кольце.
+     */
+    public boolean isRebalancing() {
+        return previousRing != null;
+    }
+
+    public Collection<Shard> shards() {
+        return shards.values();
+    }
+
+    /**
+     * Шарды кольца до добавления новых, с которых переносятся кошельки.
+     */
+    public List<Shard> previousShards() {
+        return previousShards;
+    }
+
+    /**
+     * Шард кошелька на текущем кольце.
+     */
+    public Shard shardFor(UUID walletId) {
+        return single != null ? single : shards.get(ring.shardFor(walletId));
+    }
+
+    /**
+     * Шард кошелька на кольце до добавления шардов.
+     */
+    public Shard previousShardFor(UUID walletId) {
+        return previousRing != null ? shards.get(previousRing.shardFor(walletId)) : shardFor(walletId);
+    }
+
+    /**
+     * Выполняет запросы кошелька на его шарде.
+     */
+    public <T> Mono<T> route(UUID walletId, Supplier<Mono<T>> call) {
+        if (single != null) {
+            return call.get();
+        }
+        if (previousRing == null) {
+            return shardFor(walletId).bind(call.get());
+        }
+        return route(List.of(walletId), call);
+    }
+
+    /**
+     * Выполняет запросы нескольких кошельков на их общем шарде.
+     * Кошельки на разных шардах отклоняются с {@link CrossShardOperationException}.
+     */
+    public <T> Mono<T> route(Collection<UUID> walletIds, Supplier<Mono<T>> call) {
+        if (single != null) {
+            return call.get();
+        }
+        if (previousRing == null) {
+            return locateCommon(walletIds).flatMap(shard -> shard.bind(call.get()));
+        }
+        return locateCommon(walletIds).flatMap(shard -> shard.bind(call.get())
+                .materialize()
+                .flatMap(signal -> signal.isOnNext()
+                        ? Mono.just(signal.get())
+                        : relocate(walletIds, shard, call, signal.getThrowable())));
+    }
+
+    /**
+     * Выполняет поток запросов кошелька на шарде, где кошелек находится в момент подписки.
+     */
+    public <T> Flux<T> routeMany(UUID walletId, Supplier<Flux<T>> call) {
+        if (single != null) {
+            return call.get();
+        }
+        if (previousRing == null) {
+            return shardFor(walletId).bind(call.get());
+        }
+        return locate(List.of(walletId)).flatMapMany(placement -> placement.get(walletId).bind(call.get()));
+    }
+
+    /**
+     * Определяет шард каждого кошелька. Во время перераспределения кошельки, сменившие шард,
+     * проверяются на прежнем шарде одним запросом на шард.
+     */
+    public Mono<Map<UUID, Shard>> locate(Collection<UUID> walletIds) {
+        return Mono.defer(() -> {
+            Map<UUID, Shard> placement = new HashMap<>();
+            Map<Shard, Set<UUID>> moving = new LinkedHashMap<>();
+            for (UUID walletId : walletIds) {
+                Shard current = shardFor(walletId);
+                Shard previous = previousShardFor(walletId);
+                placement.put(walletId, current);
+                if (previous != current) {
+                    moving.computeIfAbsent(previous, shard -> new HashSet<>()).add(walletId);
+                }
+            }
+            if (moving.isEmpty()) {
+                return Mono.just(placement);
+            }
+            return Flux.fromIterable(moving.entrySet())
+                    .concatMap(entry -> entry.getKey().bind(shardRepository.findExisting(entry.getValue()))
+                            .doOnNext(walletId -> placement.put(walletId, entry.getKey())))
+                    .then(Mono.fromSupplier(() -> placement));
+        });
+    }
+
+    private Mono<Shard> locateCommon(Collection<UUID> walletIds) {
+        return locate(walletIds).flatMap(placement -> {
+            Set<Shard> distinct = new HashSet<>(placement.values());
+            if (distinct.size() > 1) {
+                return Mono.error(new CrossShardOperationException(
+                        "Кошельки операции находятся на разных шардах: " + distinct));
+            }
+            return Mono.just(distinct.iterator().next());
+        });
+    }
+
+    /**
+     * Повторяет запрос на новом шарде, если за время запроса кошельки были перенесены.
+     * Иначе возвращает исходный результат: ошибку или пустой ответ.
+     */
+    private <T> Mono<T> relocate(Collection<UUID> walletIds, Shard shard, Supplier<Mono<T>> call, Throwable error) {
+        Mono<T> original = error != null ? Mono.error(error) : Mono.empty();
+        return locateCommon(walletIds).flatMap(current -> {
+            if (current == shard) {
+                return original;
+            }
+            log.debug("Кошельки {} перенесены с шарда {} на {}, повтор запроса", walletIds, shard, current);
+            return current.bind(call.get());
+        });
+    }
+
+    /**
+     * Переносит имя шарда из контекста вызывающего в контекст собственной подписки движка.
+     */
+    public static Function<Context, Context> propagate(ContextView from) {
+        return context -> from.hasKey(SHARD_KEY) ? context.put(SHARD_KEY, from.get(SHARD_KEY)) : context;
+    }
+
+    /**
+     * Имя шарда из контекста или {@code null} без шардирования.
+     */
+    public static String shardName(ContextView context) {
+        return context.getOrDefault(SHARD_KEY, null);
+    }
+
+    /**
+     * Отклонена ли запись триггером переноса как запись в перенесенный кошелек.
+     */
+    public static boolean isMoved(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof R2dbcException r2dbcException
+                    && ShardRepository.WALLET_MOVED.equals(r2dbcException.getSqlState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,41 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Фабрика соединений, выбирающая пул шарда по ключу {@link ShardRouter#SHARD_KEY} из контекста Reactor.
+ * Запросы без ключа идут на первый шард. Пулы шардов закрываются вместе с фабрикой.
+ */
+public class ShardRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements DisposableBean {
+
+    private final Map<String, ConnectionPool> pools;
+
+    public ShardRoutingConnectionFactory(Map<String, ConnectionPool> pools, Map<String, ConnectionFactory> targets) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("Не задан ни один шард");
+        }
+        this.pools = pools;
+        setTargetConnectionFactories(new LinkedHashMap<>(targets));
+        setDefaultTargetConnectionFactory(targets.values().iterator().next());
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(ShardRouter.SHARD_KEY)));
+    }
+
+    @Override
+    public void destroy() {
+        pools.values().forEach(ConnectionPool::dispose);
+    }
+
+}
@@ -0,0 +1,41 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import org.springframework.transaction.reactive.TransactionCallback;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link TransactionalOperator}, открывающий транзакцию на заданном шарде.
+ * Имя шарда записывается в контекст снаружи транзакции, поэтому менеджер транзакций
+ * берет соединение уже из пула этого шарда.
+ */
+class ShardTransactionalOperator implements TransactionalOperator {
+
+    private final TransactionalOperator delegate;
+    private final String shard;
+
+    ShardTransactionalOperator(TransactionalOperator delegate, String shard) {
+        this.delegate = delegate;
+        this.shard = shard;
+    }
+
+    @Override
+    public <T> Flux<T> transactional(Flux<T> flux) {
+        return delegate.transactional(flux)
+                .contextWrite(context -> context.put(ShardRouter.SHARD_KEY, shard));
+    }
+
+    @Override
+    public <T> Mono<T> transactional(Mono<T> mono) {
+        return delegate.transactional(mono)
+                .contextWrite(context -> context.put(ShardRouter.SHARD_KEY, shard));
+    }
+
+    @Override
+    public <T> Flux<T> execute(TransactionCallback<T> action) {
+        return delegate.execute(action)
+                .contextWrite(context -> context.put(ShardRouter.SHARD_KEY, shard));
+    }
+
+}
@@ -0,0 +1,206 @@
+package ru.iakovlysenko.wallet.service.stream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import ru.iakovlysenko.wallet.config.WalletStreamProperties;
+import ru.iakovlysenko.wallet.exception.TooManySubscribersException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangeListener;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поток изменений баланса для подписчиков.
+ * На каждый кошелек с подписчиками заводится один общий канал с последним балансом: новый подписчик сразу
+ * получает текущий баланс, дальше каждое зафиксированное изменение. Канал удаляется вместе с последним подписчиком,
+ * так что изменения кошельков без подписчиков обходятся одним поиском в таблице.
+ * Изменение принимается, только если его баланс до операции совпадает с последним отданным, как в {@code BalanceCache};
+ * иначе (изменения пришли не по порядку) баланс перечитывается из БД. Изменения других узлов сюда не приходят:
+ * по их уведомлениям {@code BalanceCacheCoherence} перечитывает баланс через {@link #reload}.
+ * Медленный подписчик получает только последний баланс: промежуточные значения для него отбрасываются.
+ */
+@Slf4j
+@Component
+public class BalanceStream implements BalanceChangeListener {
+
+    private final WalletRepository walletRepository;
+    private final ShardRouter shardRouter;
+    private final int maxSubscribers;
+    private final ConcurrentMap<UUID, WalletChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    public BalanceStream(WalletRepository walletRepository,
+                         ShardRouter shardRouter,
+                         WalletStreamProperties properties,
+                         MeterRegistry meterRegistry) {
+        this.walletRepository = walletRepository;
+        this.shardRouter = shardRouter;
+        this.maxSubscribers = properties.getMaxSubscribers();
+        Gauge.builder("wallet.stream.subscribers", subscribers, AtomicInteger::get)
+                .description("Подписки на изменения баланса")
+                .register(meterRegistry);
+        Gauge.builder("wallet.stream.wallets", channels, Map::size)
+                .description("Кошельки с подписчиками")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Подписывает на баланс кошелька: текущий баланс, затем баланс после каждого изменения.
+     * Доставка идет вне потока, зафиксировавшего операцию.
+     */
+    public Flux<Money> subscribe(UUID walletId) {
+        return Flux.defer(() -> {
+            if (subscribers.incrementAndGet() > maxSubscribers) {
+                subscribers.decrementAndGet();
+                return Flux.error(new TooManySubscribersException(maxSubscribers));
+            }
+            WalletChannel channel = acquire(walletId);
+            return channel.sink.asFlux()
+                    .onBackpressureLatest()
+                    .publishOn(Schedulers.parallel(), 1)
+                    .doFinally(signal -> release(walletId));
+        });
+    }
+
+    @Override
+    public void onCommitted(List<BalanceChange> changes) {
+        if (channels.isEmpty()) {
+            return;
+        }
+        for (BalanceChange change : changes) {
+            WalletChannel channel = channels.get(change.walletId());
+            if (channel != null) {
+                channel.onChange(change);
+            }
+        }
+    }
+
+    /**
+     * Перечитывает баланс кошелька из БД, если на него есть подписчики.
+     */
+    public void reload(UUID walletId) {
+        WalletChannel channel = channels.get(walletId);
+        if (channel != null) {
+            channel.reload();
+        }
+    }
+
+    /**
+     * Перечитывает балансы всех кошельков с подписчиками.
+     */
+    public void reloadAll() {
+        channels.values().forEach(WalletChannel::reload);
+    }
+
+    private WalletChannel acquire(UUID walletId) {
+        WalletChannel channel = channels.compute(walletId, (id, existing) -> {
+            WalletChannel acquired = existing != null ? existing : new WalletChannel(id);
+            acquired.subscribers++;
+            return acquired;
+        });
+        channel.loadIfUnknown();
+        return channel;
+    }
+
+    private void release(UUID walletId) {
+        channels.computeIfPresent(walletId, (id, channel) -> --channel.subscribers == 0 ? null : channel);
+        subscribers.decrementAndGet();
+    }
+
+    /**
+     * Канал одного кошелька. Методы синхронизированы: изменения приходят из потоков разных операций,
+     * а отправка в {@link Sinks.Many} должна быть последовательной.
+     */
+    private final class WalletChannel {
+
+        private final UUID walletId;
+        private final Sinks.Many<Money> sink = Sinks.many().replay().latest();
+
+        /**
+         * Меняется только внутри {@code compute} по ключу кошелька.
+         */
+        private int subscribers;
+
+        private Money last;
+        private boolean loading;
+        private boolean stale;
+
+        private WalletChannel(UUID walletId) {
+            this.walletId = walletId;
+        }
+
+        synchronized void onChange(BalanceChange change) {
+            if (!loading && change.balanceBefore().equals(last)) {
+                emit(change.balanceAfter());
+                return;
+            }
+            stale = true;
+            load();
+        }
+
+        synchronized void reload() {
+            load();
+        }
+
+        synchronized void loadIfUnknown() {
+            if (last == null) {
+                load();
+            }
+        }
+
+        /**
+         * Перечитывает баланс из БД. Одновременно выполняется не больше одного чтения;
+         * изменение, пришедшее во время чтения, запускает следующее.
+         */
+        private void load() {
+            if (loading) {
+                stale = true;
+                return;
+            }
+            loading = true;
+            stale = false;
+            shardRouter.route(walletId, () -> walletRepository.findById(walletId))
+                    .map(Wallet::getBalance)
+                    .subscribe(this::onLoaded, this::onLoadFailed, this::onLoadCompleted);
+        }
+
+        private synchronized void onLoaded(Money balance) {
+            if (!balance.equals(last)) {
+                emit(balance);
+            }
+        }
+
+        private synchronized void onLoadCompleted() {
+            loading = false;
+            if (stale) {
+                load();
+            }
+        }
+
+        private synchronized void onLoadFailed(Throwable error) {
+            log.warn("Ошибка чтения баланса для подписчиков кошелька {}: {}", walletId, error.getMessage());
+            loading = false;
+        }
+
+        private void emit(Money balance) {
+            last = balance;
+            sink.tryEmitNext(balance);
+        }
+
+    }
+
+}
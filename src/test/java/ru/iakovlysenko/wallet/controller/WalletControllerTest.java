@@ -1,29 +1,59 @@
 package ru.iakovlysenko.wallet.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.controller.codec.WalletMediaTypes;
 import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletHistoryPageResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
 import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.dto.WalletTransferResponse;
+import ru.iakovlysenko.wallet.exception.IdempotencyKeyReuseException;
 import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.InvalidCursorException;
 import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.Money;
 import ru.iakovlysenko.wallet.model.OperationType;
 import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.admission.OperationAdmission;
 
-import java.math.BigDecimal;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(WalletControllerImpl.class)
+@Import({WalletOperationPipeline.class, OperationAdmission.class, SimpleMeterRegistry.class})
 class WalletControllerTest {
 
+    private static final ObjectMapper CBOR = new ObjectMapper(new CBORFactory());
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -36,11 +66,11 @@ class WalletControllerTest {
         UUID walletId = UUID.randomUUID();
         WalletOperationResponse response = new WalletOperationResponse(
                 walletId,
-                BigDecimal.valueOf(1000),
+                Money.ofUnits(1000),
                 "Операция DEPOSIT выполнена успешно"
         );
 
-        when(walletService.performOperation(eq(walletId), eq(OperationType.DEPOSIT), eq(1000L)))
+        when(walletService.performOperation(eq(walletId), eq(OperationType.DEPOSIT), eq(1000L), isNull()))
                 .thenReturn(Mono.just(response));
 
         webTestClient.post()
@@ -67,11 +97,11 @@ class WalletControllerTest {
         UUID walletId = UUID.randomUUID();
         WalletOperationResponse response = new WalletOperationResponse(
                 walletId,
-                BigDecimal.valueOf(500),
+                Money.ofUnits(500),
                 "Операция WITHDRAW выполнена успешно"
         );
 
-        when(walletService.performOperation(eq(walletId), eq(OperationType.WITHDRAW), eq(500L)))
+        when(walletService.performOperation(eq(walletId), eq(OperationType.WITHDRAW), eq(500L), isNull()))
                 .thenReturn(Mono.just(response));
 
         webTestClient.post()
@@ -96,7 +126,7 @@ class WalletControllerTest {
     void testWithdrawInsufficientFunds() {
         UUID walletId = UUID.randomUUID();
 
-        when(walletService.performOperation(eq(walletId), eq(OperationType.WITHDRAW), eq(1000L)))
+        when(walletService.performOperation(eq(walletId), eq(OperationType.WITHDRAW), eq(1000L), isNull()))
                 .thenReturn(Mono.error(new InsufficientFundsException("Недостаточно средств")));
 
         webTestClient.post()
@@ -116,13 +146,52 @@ class WalletControllerTest {
                 .jsonPath("$.message").exists();
     }
 
+    @Test
+    @DisplayName("Тест API операции с ключом идемпотентности: ключ передается в сервис, повтор с другим запросом отклоняется")
+    void testIdempotencyKey() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletService.performOperation(eq(walletId), eq(OperationType.DEPOSIT), eq(1000L), eq("order-42")))
+                .thenReturn(Mono.error(new IdempotencyKeyReuseException("order-42")));
+
+        webTestClient.post()
+                .uri("/api/v1/wallet")
+                .header("Idempotency-Key", "order-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {
+                            "walletId": "%s",
+                            "operationType": "DEPOSIT",
+                            "amount": 1000
+                        }
+                        """.formatted(walletId))
+                .exchange()
+                .expectStatus().isEqualTo(422)
+                .expectBody()
+                .jsonPath("$.message").value(message -> ((String) message).contains("order-42"));
+
+        webTestClient.post()
+                .uri("/api/v1/wallet")
+                .header("Idempotency-Key", "k".repeat(256))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {
+                            "walletId": "%s",
+                            "operationType": "DEPOSIT",
+                            "amount": 1000
+                        }
+                        """.formatted(walletId))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     @DisplayName("Тест API получения баланса кошелька")
     void testGetBalance() {
         UUID walletId = UUID.randomUUID();
         WalletBalanceResponse response = new WalletBalanceResponse(
                 walletId,
-                BigDecimal.valueOf(1500)
+                Money.ofUnits(1500)
         );
 
         when(walletService.getBalance(walletId))
@@ -137,6 +206,23 @@ class WalletControllerTest {
                 .jsonPath("$.balance").isEqualTo(1500);
     }
 
+    @Test
+    @DisplayName("Тест API получения баланса с Cache-Control: no-cache: чтение в обход кеша")
+    void testGetConsistentBalance() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletService.getConsistentBalance(walletId))
+                .thenReturn(Mono.just(new WalletBalanceResponse(walletId, Money.ofUnits(1500))));
+
+        webTestClient.get()
+                .uri("/api/v1/wallets/" + walletId)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.balance").isEqualTo(1500);
+    }
+
     @Test
     @DisplayName("Тест API получения баланса несуществующего кошелька: возврат статуса 404")
     void testGetBalanceNotFound() {
@@ -184,4 +270,261 @@ class WalletControllerTest {
                 .expectStatus().isBadRequest();
     }
 
+    @Test
+    @DisplayName("Тест API пакета операций: результаты возвращаются по каждой операции")
+    void testBatchOperation() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletService.performBatch(anyList()))
+                .thenReturn(Flux.just(
+                        new WalletBatchItemResponse(walletId, 200, Money.ofUnits(1000), "Операция DEPOSIT выполнена успешно"),
+                        new WalletBatchItemResponse(walletId, 422, null, "Недостаточно средств")));
+
+        webTestClient.post()
+                .uri("/api/v1/wallets/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        [
+                            {"walletId": "%1$s", "operationType": "DEPOSIT", "amount": 1000},
+                            {"walletId": "%1$s", "operationType": "WITHDRAW", "amount": 5000}
+                        ]
+                        """.formatted(walletId))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].status").isEqualTo(200)
+                .jsonPath("$[0].balance").isEqualTo(1000)
+                .jsonPath("$[1].status").isEqualTo(422);
+    }
+
+    @Test
+    @DisplayName("Тест валидации пакета: некорректная операция в пакете должна возвращать статус 400")
+    void testBatchValidationError() {
+        webTestClient.post()
+                .uri("/api/v1/wallets/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        [
+                            {"walletId": "%s", "operationType": "DEPOSIT", "amount": -1}
+                        ]
+                        """.formatted(UUID.randomUUID()))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("VALIDATION_ERROR");
+    }
+
+    @Test
+    @DisplayName("Тест API перевода: возвращаются балансы отправителя и получателя")
+    void testTransfer() {
+        UUID fromWalletId = UUID.randomUUID();
+        UUID toWalletId = UUID.randomUUID();
+
+        when(walletService.transfer(fromWalletId, toWalletId, 300L))
+                .thenReturn(Mono.just(new WalletTransferResponse(
+                        fromWalletId, Money.ofUnits(700), toWalletId, Money.ofUnits(300), "Перевод выполнен успешно")));
+
+        webTestClient.post()
+                .uri("/api/v1/wallets/transfer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {
+                            "fromWalletId": "%s",
+                            "toWalletId": "%s",
+                            "amount": 300
+                        }
+                        """.formatted(fromWalletId, toWalletId))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.fromBalance").isEqualTo(700)
+                .jsonPath("$.toBalance").isEqualTo(300);
+    }
+
+    @Test
+    @DisplayName("Тест валидации перевода: перевод на тот же кошелек должен возвращать статус 400")
+    void testTransferToSameWallet() {
+        UUID walletId = UUID.randomUUID();
+
+        webTestClient.post()
+                .uri("/api/v1/wallets/transfer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {
+                            "fromWalletId": "%1$s",
+                            "toWalletId": "%1$s",
+                            "amount": 300
+                        }
+                        """.formatted(walletId))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("VALIDATION_ERROR");
+    }
+
+    @Test
+    @DisplayName("Тест API истории операций: страница с курсором следующей страницы")
+    void testGetOperationsPage() {
+        UUID walletId = UUID.randomUUID();
+        WalletHistoryItemResponse item = new WalletHistoryItemResponse(UUID.randomUUID(), OperationType.DEPOSIT,
+                Money.ofUnits(100), Money.ZERO, Money.ofUnits(100), LocalDateTime.now());
+
+        when(walletService.getOperations(walletId, null, 1))
+                .thenReturn(Mono.just(new WalletHistoryPageResponse(walletId, List.of(item), "next")));
+
+        webTestClient.get()
+                .uri("/api/v1/wallets/{walletId}/operations?limit=1", walletId)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(1)
+                .jsonPath("$.items[0].balanceAfter").isEqualTo(100)
+                .jsonPath("$.nextCursor").isEqualTo("next");
+    }
+
+    @Test
+    @DisplayName("Тест API истории операций: некорректный курсор и размер страницы возвращают статус 400")
+    void testGetOperationsBadRequest() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletService.getOperations(walletId, "broken", null))
+                .thenReturn(Mono.error(new InvalidCursorException("broken")));
+
+        webTestClient.get()
+                .uri("/api/v1/wallets/{walletId}/operations?cursor=broken", walletId)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("INVALID_CURSOR");
+
+        webTestClient.get()
+                .uri("/api/v1/wallets/{walletId}/operations?limit=0", walletId)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Тест API выгрузки истории операций: записи отдаются в NDJSON")
+    void testStreamOperations() {
+        UUID walletId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+
+        when(walletService.streamOperations(walletId, null))
+                .thenReturn(Flux.just(
+                        new WalletHistoryItemResponse(UUID.randomUUID(), OperationType.WITHDRAW,
+                                Money.ofUnits(50), Money.ofUnits(100), Money.ofUnits(50), now),
+                        new WalletHistoryItemResponse(UUID.randomUUID(), OperationType.DEPOSIT,
+                                Money.ofUnits(100), Money.ZERO, Money.ofUnits(100), now.minusSeconds(1))));
+
+        webTestClient.get()
+                .uri("/api/v1/wallets/{walletId}/operations", walletId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(WalletHistoryItemResponse.class)
+                .getResponseBody()
+                .map(WalletHistoryItemResponse::operationType)
+                .as(StepVerifier::create)
+                .expectNext(OperationType.WITHDRAW, OperationType.DEPOSIT)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест API потока баланса: изменения баланса отдаются событиями SSE")
+    void testStreamBalance() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletService.streamBalance(walletId))
+                .thenReturn(Flux.just(
+                        new WalletBalanceResponse(walletId, Money.ofUnits(100)),
+                        new WalletBalanceResponse(walletId, Money.ofUnits(150))));
+
+        webTestClient.get()
+                .uri("/api/v1/wallets/{walletId}/stream", walletId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(WalletBalanceResponse.class)
+                .getResponseBody()
+                .take(2)
+                .map(WalletBalanceResponse::balance)
+                .as(StepVerifier::create)
+                .expectNext(Money.ofUnits(100), Money.ofUnits(150))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест API операции в CBOR: запрос и ответ кодируются CBOR")
+    void testCborOperation() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        when(walletService.performOperation(eq(walletId), eq(OperationType.DEPOSIT), eq(1000L), isNull()))
+                .thenReturn(Mono.just(new WalletOperationResponse(walletId, Money.ofUnits(1000),
+                        OperationType.DEPOSIT.successMessage())));
+
+        byte[] body = webTestClient.post()
+                .uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+                .bodyValue(CBOR.writeValueAsBytes(new WalletOperationRequest(walletId, OperationType.DEPOSIT, 1000L)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_CBOR)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        WalletOperationResponse response = CBOR.readValue(body, WalletOperationResponse.class);
+        assertThat(response.balance()).isEqualTo(Money.ofUnits(1000));
+        assertThat(response.message()).isEqualTo("Операция DEPOSIT выполнена успешно");
+    }
+
+    @Test
+    @DisplayName("Тест API потока операций: результаты возвращаются кадрами в порядке операций, ошибка не обрывает поток")
+    void testCborStreamOperations() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        when(walletService.performOperation(walletId, OperationType.DEPOSIT, 1000L, "key-1"))
+                .thenReturn(Mono.just(new WalletOperationResponse(walletId, Money.ofUnits(1000),
+                        OperationType.DEPOSIT.successMessage())));
+        when(walletService.performOperation(walletId, OperationType.WITHDRAW, 5000L, null))
+                .thenReturn(Mono.error(new InsufficientFundsException("Недостаточно средств")));
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(frames);
+        for (WalletOperationFrame request : List.of(
+                new WalletOperationFrame(walletId, OperationType.DEPOSIT, 1000L, "key-1"),
+                new WalletOperationFrame(walletId, OperationType.WITHDRAW, 5000L, null),
+                new WalletOperationFrame(walletId, OperationType.DEPOSIT, -1L, null))) {
+            byte[] frame = CBOR.writeValueAsBytes(request);
+            output.writeInt(frame.length);
+            output.write(frame);
+        }
+
+        byte[] body = webTestClient.post()
+                .uri("/api/v1/wallet")
+                .contentType(WalletMediaTypes.CBOR_STREAM)
+                .accept(WalletMediaTypes.CBOR_STREAM)
+                .bodyValue(frames.toByteArray())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+        List<WalletBatchItemResponse> items = new ArrayList<>();
+        while (input.available() > 0) {
+            byte[] frame = new byte[input.readInt()];
+            input.readFully(frame);
+            items.add(CBOR.readValue(frame, WalletBatchItemResponse.class));
+        }
+        assertThat(items).extracting(WalletBatchItemResponse::status).containsExactly(200, 422, 400);
+        assertThat(items.get(0).balance()).isEqualTo(Money.ofUnits(1000));
+        assertThat(items.get(2).message()).startsWith("amount:");
+    }
+
 }
@@ -0,0 +1,100 @@
+package ru.iakovlysenko.wallet.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletBinaryProperties;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
+import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.admission.AdaptiveConcurrencyLimiter;
+import ru.iakovlysenko.wallet.service.admission.OperationAdmission;
+import ru.iakovlysenko.wallet.service.admission.WalletRateLimiter;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WalletOperationPipelineTest {
+
+    @Mock
+    private WalletService walletService;
+
+    @Mock
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Mock
+    private WalletRateLimiter walletRateLimiter;
+
+    private WalletOperationPipeline operationPipeline;
+
+    @BeforeEach
+    void setUp() {
+        operationPipeline = new WalletOperationPipeline(walletService,
+                Validation.buildDefaultValidatorFactory().getValidator(), new WalletBinaryProperties(),
+                new OperationAdmission(concurrencyLimiter, walletRateLimiter, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    @DisplayName("Тест потока операций: операция кошелька ждет предыдущую, другие кошельки выполняются параллельно")
+    void testSameWalletOperationsKeepOrder() {
+        UUID walletId = UUID.randomUUID();
+        UUID otherWalletId = UUID.randomUUID();
+        when(concurrencyLimiter.tryAcquire()).thenReturn(true);
+        when(walletRateLimiter.tryAcquire(any())).thenReturn(0L);
+        Sinks.One<WalletOperationResponse> deposit = Sinks.one();
+        when(walletService.performOperation(walletId, OperationType.DEPOSIT, 1000L, "key-1"))
+                .thenReturn(deposit.asMono());
+        when(walletService.performOperation(otherWalletId, OperationType.DEPOSIT, 10L, null))
+                .thenReturn(Mono.just(new WalletOperationResponse(otherWalletId, Money.ofUnits(10), "ok")));
+        when(walletService.performOperation(walletId, OperationType.WITHDRAW, 600L, null))
+                .thenReturn(Mono.just(new WalletOperationResponse(walletId, Money.ofUnits(400), "ok")));
+
+        StepVerifier.create(operationPipeline.performAll(Flux.just(
+                        new WalletOperationFrame(walletId, OperationType.DEPOSIT, 1000L, "key-1"),
+                        new WalletOperationFrame(otherWalletId, OperationType.DEPOSIT, 10L, null),
+                        new WalletOperationFrame(walletId, OperationType.WITHDRAW, 600L, null))))
+                .then(() -> {
+                    verify(walletService).performOperation(otherWalletId, OperationType.DEPOSIT, 10L, null);
+                    verify(walletService, never()).performOperation(walletId, OperationType.WITHDRAW, 600L, null);
+                    deposit.tryEmitValue(new WalletOperationResponse(walletId, Money.ofUnits(1000), "ok"));
+                })
+                .assertNext(item -> assertThat(item.balance()).isEqualTo(Money.ofUnits(1000)))
+                .assertNext(item -> assertThat(item.balance()).isEqualTo(Money.ofUnits(10)))
+                .assertNext(item -> assertThat(item.balance()).isEqualTo(Money.ofUnits(400)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест потока операций: кадр сверх частоты кошелька получает 429 и не выполняется")
+    void testWalletRateLimitedFrame() {
+        UUID walletId = UUID.randomUUID();
+        when(concurrencyLimiter.tryAcquire()).thenReturn(true);
+        when(walletRateLimiter.tryAcquire(walletId)).thenReturn(1_000_000L);
+
+        StepVerifier.create(operationPipeline.performAll(Flux.just(
+                        new WalletOperationFrame(walletId, OperationType.DEPOSIT, 1000L, null))))
+                .assertNext(item -> assertThat(item.status()).isEqualTo(429))
+                .verifyComplete();
+
+        verify(concurrencyLimiter).release();
+        verify(walletService, never()).performOperation(any(), any(), any(), any());
+    }
+
+}
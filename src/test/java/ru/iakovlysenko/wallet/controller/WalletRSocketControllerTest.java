@@ -0,0 +1,155 @@
+package ru.iakovlysenko.wallet.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.web.util.pattern.PathPatternRouteMatcher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletBinaryProperties;
+import ru.iakovlysenko.wallet.dto.ErrorResponse;
+import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
+import ru.iakovlysenko.wallet.dto.WalletBatchItemResponse;
+import ru.iakovlysenko.wallet.dto.WalletOperationFrame;
+import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.service.WalletService;
+import ru.iakovlysenko.wallet.service.admission.OperationAdmission;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WalletRSocketControllerTest {
+
+    @Mock
+    private WalletService walletService;
+
+    private CloseableChannel server;
+    private RSocketRequester requester;
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        RSocketStrategies strategies = RSocketStrategies.builder()
+                .encoder(new Jackson2CborEncoder())
+                .decoder(new Jackson2CborDecoder())
+                .routeMatcher(new PathPatternRouteMatcher())
+                .build();
+        RSocketMessageHandler handler = new RSocketMessageHandler();
+        handler.setRSocketStrategies(strategies);
+        OperationAdmission operationAdmission = new OperationAdmission(null, null, new SimpleMeterRegistry());
+        handler.setHandlers(List.of(new WalletRSocketControllerImpl(walletService, new WalletOperationPipeline(
+                walletService, Validation.buildDefaultValidatorFactory().getValidator(), new WalletBinaryProperties(),
+                operationAdmission), operationAdmission)));
+        handler.afterPropertiesSet();
+        server = RSocketServer.create(handler.responder()).bind(TcpServerTransport.create("localhost", 0)).block();
+        requester = RSocketRequester.builder()
+                .rsocketStrategies(strategies)
+                .dataMimeType(MediaType.APPLICATION_CBOR)
+                .tcp("localhost", server.address().getPort());
+        walletId = UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        requester.dispose();
+        server.dispose();
+    }
+
+    @Test
+    @DisplayName("Тест RSocket операции: request-response возвращает баланс после операции")
+    void testPerformOperation() {
+        when(walletService.performOperation(walletId, OperationType.DEPOSIT, 1000L, null))
+                .thenReturn(Mono.just(new WalletOperationResponse(walletId, Money.ofUnits(1000),
+                        OperationType.DEPOSIT.successMessage())));
+
+        StepVerifier.create(requester.route("wallet.operation")
+                        .data(new WalletOperationFrame(walletId, OperationType.DEPOSIT, 1000L, null))
+                        .retrieveMono(WalletBatchItemResponse.class))
+                .assertNext(item -> {
+                    assertThat(item.status()).isEqualTo(200);
+                    assertThat(item.balance()).isEqualTo(Money.ofUnits(1000));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест RSocket потока операций: request-channel возвращает результаты по порядку, ошибка не обрывает канал")
+    void testPerformOperations() {
+        when(walletService.performOperation(walletId, OperationType.DEPOSIT, 1000L, null))
+                .thenReturn(Mono.just(new WalletOperationResponse(walletId, Money.ofUnits(1000),
+                        OperationType.DEPOSIT.successMessage())));
+        when(walletService.performOperation(walletId, OperationType.WITHDRAW, 5000L, null))
+                .thenReturn(Mono.error(new InsufficientFundsException("Недостаточно средств")));
+
+        StepVerifier.create(requester.route("wallet.operations")
+                        .data(Flux.just(
+                                new WalletOperationFrame(walletId, OperationType.WITHDRAW, 5000L, null),
+                                new WalletOperationFrame(walletId, OperationType.DEPOSIT, null, null),
+                                new WalletOperationFrame(walletId, OperationType.DEPOSIT, 1000L, null)))
+                        .retrieveFlux(WalletBatchItemResponse.class))
+                .assertNext(item -> assertThat(item.status()).isEqualTo(422))
+                .assertNext(item -> assertThat(item.status()).isEqualTo(400))
+                .assertNext(item -> assertThat(item.balance()).isEqualTo(Money.ofUnits(1000)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест RSocket баланса: request-response и request-stream с изменениями баланса")
+    void testBalance() {
+        when(walletService.getBalance(walletId))
+                .thenReturn(Mono.just(new WalletBalanceResponse(walletId, Money.ofUnits(500))));
+        when(walletService.streamBalance(walletId)).thenReturn(Flux.just(
+                new WalletBalanceResponse(walletId, Money.ofUnits(500)),
+                new WalletBalanceResponse(walletId, Money.ofUnits(700))));
+
+        StepVerifier.create(requester.route("wallets.{walletId}.balance", walletId)
+                        .retrieveMono(WalletBalanceResponse.class))
+                .assertNext(balance -> assertThat(balance.balance()).isEqualTo(Money.ofUnits(500)))
+                .verifyComplete();
+        StepVerifier.create(requester.route("wallets.{walletId}.stream", walletId)
+                        .retrieveFlux(WalletBalanceResponse.class))
+                .assertNext(balance -> assertThat(balance.balance()).isEqualTo(Money.ofUnits(500)))
+                .assertNext(balance -> assertThat(balance.balance()).isEqualTo(Money.ofUnits(700)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест RSocket баланса: неизвестный кошелек возвращает тело ошибки со статусом 404")
+    void testBalanceNotFound() {
+        when(walletService.getBalance(walletId))
+                .thenReturn(Mono.error(new WalletNotFoundException("Кошелек не найден: " + walletId)));
+
+        StepVerifier.create(requester.route("wallets.{walletId}.balance", walletId)
+                        .retrieveMono(ErrorResponse.class))
+                .assertNext(error -> {
+                    assertThat(error.error()).isEqualTo("NOT_FOUND");
+                    assertThat(error.status()).isEqualTo(404);
+                })
+                .verifyComplete();
+    }
+
+}
@@ -0,0 +1,83 @@
+package ru.iakovlysenko.wallet.controller.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+class LengthDelimitedCborCodecTest {
+
+    private static final ResolvableType REQUEST_TYPE = ResolvableType.forClass(WalletOperationRequest.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new CBORFactory());
+    private final LengthDelimitedCborEncoder encoder = new LengthDelimitedCborEncoder(objectMapper);
+    private final LengthDelimitedCborDecoder decoder = new LengthDelimitedCborDecoder(objectMapper, 1024);
+
+    @Test
+    @DisplayName("Тест потока CBOR: кадры читаются при любом разбиении тела на буферы")
+    void testRoundTripAcrossChunks() {
+        List<WalletOperationRequest> requests = List.of(
+                new WalletOperationRequest(UUID.randomUUID(), OperationType.DEPOSIT, 1000L),
+                new WalletOperationRequest(UUID.randomUUID(), OperationType.WITHDRAW, 1L),
+                new WalletOperationRequest(UUID.randomUUID(), OperationType.DEPOSIT, Long.MAX_VALUE));
+        byte[] body = encode(requests);
+
+        for (int chunkSize : new int[]{1, 3, 7, body.length}) {
+            StepVerifier.create(decoder.decode(chunks(body, chunkSize), REQUEST_TYPE, WalletMediaTypes.CBOR_STREAM, Map.of()))
+                    .expectNextSequence(requests)
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    @DisplayName("Тест потока CBOR: оборванный и слишком большой кадры отклоняются")
+    void testInvalidFrames() {
+        byte[] body = encode(List.of(new WalletOperationRequest(UUID.randomUUID(), OperationType.DEPOSIT, 1L)));
+
+        StepVerifier.create(decoder.decode(chunks(Arrays.copyOf(body, body.length - 1), 4),
+                        REQUEST_TYPE, WalletMediaTypes.CBOR_STREAM, Map.of()))
+                .expectError(DecodingException.class)
+                .verify();
+        StepVerifier.create(decoder.decode(chunks(new byte[]{0, 0, 4, 1, 0}, 5),
+                        REQUEST_TYPE, WalletMediaTypes.CBOR_STREAM, Map.of()))
+                .expectError(DataBufferLimitException.class)
+                .verify();
+    }
+
+    private byte[] encode(List<WalletOperationRequest> requests) {
+        return DataBufferUtils.join(encoder.encode(Flux.fromIterable(requests), DefaultDataBufferFactory.sharedInstance,
+                        REQUEST_TYPE, WalletMediaTypes.CBOR_STREAM, Map.of()))
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    return bytes;
+                })
+                .block();
+    }
+
+    private static Flux<DataBuffer> chunks(byte[] body, int chunkSize) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int from = 0; from < body.length; from += chunkSize) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(
+                    Arrays.copyOfRange(body, from, Math.min(body.length, from + chunkSize))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+
+}
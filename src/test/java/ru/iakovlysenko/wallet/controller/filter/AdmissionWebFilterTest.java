@@ -0,0 +1,184 @@
+package ru.iakovlysenko.wallet.controller.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import ru.iakovlysenko.wallet.config.WalletAdmissionProperties;
+import ru.iakovlysenko.wallet.config.WalletJdbcProperties;
+import ru.iakovlysenko.wallet.config.WalletPoolProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.controller.codec.WalletMediaTypes;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.service.admission.AdaptiveConcurrencyLimiter;
+import ru.iakovlysenko.wallet.service.admission.WalletRateLimiter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+class AdmissionWebFilterTest {
+
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WalletAdmissionProperties properties = new WalletAdmissionProperties();
+        properties.setWalletRate(1);
+        properties.setWalletBurst(1);
+        properties.setMaxConcurrent(1);
+        concurrencyLimiter = new AdaptiveConcurrencyLimiter(properties, new WalletPoolProperties(),
+                new WalletShardingProperties(), new WalletJdbcProperties(), meterRegistry);
+        AdmissionWebFilter filter = new AdmissionWebFilter(concurrencyLimiter,
+                new WalletRateLimiter(properties, meterRegistry), new ObjectMapper(), properties, meterRegistry);
+        webTestClient = WebTestClient.bindToRouterFunction(RouterFunctions.route()
+                        .route(POST("/api/v1/wallet"), request -> request.bodyToMono(String.class)
+                                .flatMap(body -> ServerResponse.ok().bodyValue(body)))
+                        .route(GET("/api/v1/wallets/{walletId}"), request -> ServerResponse.ok().build())
+                        .build())
+                .webFilter(filter)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Тест допуска: повтор операции с кошельком сверх частоты отклоняется, тело допущенной доходит до обработчика")
+    void testWalletRateLimited() {
+        UUID walletId = UUID.randomUUID();
+        String body = """
+                {"walletId": "%s", "operationType": "DEPOSIT", "amount": 1}""".formatted(walletId);
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(body);
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isEqualTo(429)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1")
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("WALLET_RATE_LIMITED");
+
+        webTestClient.get().uri("/api/v1/wallets/{walletId}", walletId)
+                .exchange()
+                .expectStatus().isEqualTo(429);
+        webTestClient.get().uri("/api/v1/wallets/{walletId}", UUID.randomUUID())
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    @DisplayName("Тест допуска: запрос сверх предела одновременных запросов отклоняется, место освобождается после ответа")
+    void testOverloaded() {
+        assertThat(concurrencyLimiter.tryAcquire()).isTrue();
+
+        webTestClient.get().uri("/api/v1/wallets/{walletId}", UUID.randomUUID())
+                .exchange()
+                .expectStatus().isEqualTo(429)
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("OVERLOADED");
+
+        concurrencyLimiter.release();
+        webTestClient.get().uri("/api/v1/wallets/{walletId}", UUID.randomUUID())
+                .exchange()
+                .expectStatus().isOk();
+        assertThat(concurrencyLimiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Тест допуска: id кошелька берется из пути и поля верхнего уровня тела JSON")
+    void testWalletIdExtraction() {
+        UUID walletId = UUID.randomUUID();
+        UUID nested = UUID.randomUUID();
+
+        assertThat(AdmissionWebFilter.pathWalletId("/api/v1/wallets/" + walletId + "/operations")).isEqualTo(walletId);
+        assertThat(AdmissionWebFilter.pathWalletId("/api/v1/wallets/transfer")).isNull();
+        assertThat(jsonWalletId("{\"toWalletId\":\"" + UUID.randomUUID()
+                + "\",\"fromWalletId\" : \"" + walletId + "\"}", "fromWalletId")).isEqualTo(walletId);
+        assertThat(jsonWalletId("{\"meta\":{\"walletId\":\"" + nested + "\"},\"walletId\":\"" + walletId + "\"}",
+                "walletId")).isEqualTo(walletId);
+        assertThat(jsonWalletId("{\"meta\":{\"walletId\":\"" + nested + "\"}}", "walletId")).isNull();
+        assertThat(jsonWalletId("{\"walletId\":\"not-a-uuid\"}", "walletId")).isNull();
+        assertThat(jsonWalletId("{\"walletId\":", "walletId")).isNull();
+    }
+
+    @Test
+    @DisplayName("Тест допуска: id кошелька читается из тела CBOR без сдвига позиции буфера")
+    void testCborWalletIdExtraction() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        CBORFactory cbor = new CBORFactory();
+        byte[] body = new ObjectMapper(cbor)
+                .writeValueAsBytes(new WalletOperationRequest(walletId, OperationType.DEPOSIT, 1L));
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(body);
+
+        assertThat(AdmissionWebFilter.bodyWalletId(buffer, "walletId", cbor)).isEqualTo(walletId);
+        assertThat(buffer.readableByteCount()).isEqualTo(body.length);
+        assertThat(AdmissionWebFilter.bodyWalletId(buffer, "fromWalletId", cbor)).isNull();
+    }
+
+    @Test
+    @DisplayName("Тест допуска: тело больше 16 КБ доходит до обработчика")
+    void testLargeBodyForwarded() {
+        String body = """
+                {"walletId": "%s", "operationType": "DEPOSIT", "amount": 1, "comment": "%s"}"""
+                .formatted(UUID.randomUUID(), "x".repeat(32 * 1024));
+
+        webTestClient.post().uri("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(body);
+    }
+
+    @Test
+    @DisplayName("Тест допуска: потоковый запрос определяется по маршруту, а не только по заголовку Accept")
+    void testStreamingRoutes() {
+        String wallet = "/api/v1/wallets/" + UUID.randomUUID();
+
+        assertThat(isStreaming(MockServerHttpRequest.get(wallet + "/stream").build())).isTrue();
+        assertThat(isStreaming(MockServerHttpRequest.get(wallet + "/operations")
+                .accept(MediaType.APPLICATION_NDJSON).build())).isTrue();
+        assertThat(isStreaming(MockServerHttpRequest.get(wallet + "/operations")
+                .accept(MediaType.APPLICATION_JSON).build())).isFalse();
+        assertThat(isStreaming(MockServerHttpRequest.get(wallet)
+                .accept(MediaType.TEXT_EVENT_STREAM).build())).isFalse();
+        assertThat(isStreaming(MockServerHttpRequest.post("/api/v1/wallets/batch")
+                .accept(MediaType.APPLICATION_NDJSON).build())).isFalse();
+        assertThat(isStreaming(MockServerHttpRequest.post("/api/v1/wallet")
+                .contentType(WalletMediaTypes.CBOR_STREAM).build())).isTrue();
+        assertThat(isStreaming(MockServerHttpRequest.post("/api/v1/wallet")
+                .contentType(MediaType.APPLICATION_CBOR).build())).isFalse();
+    }
+
+    private static UUID jsonWalletId(String json, String field) {
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(json.getBytes(StandardCharsets.UTF_8));
+        return AdmissionWebFilter.bodyWalletId(buffer, field, new JsonFactory());
+    }
+
+    private static boolean isStreaming(MockServerHttpRequest request) {
+        return AdmissionWebFilter.isStreaming(request, request.getPath().value());
+    }
+
+}
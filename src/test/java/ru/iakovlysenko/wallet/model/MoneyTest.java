@@ -0,0 +1,47 @@
+package ru.iakovlysenko.wallet.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("Тест денег: запись совпадает с BigDecimal масштаба 2")
+    void testToString() {
+        assertThat(Money.ofUnits(1000).toString()).isEqualTo("1000.00");
+        assertThat(Money.of(new BigDecimal("250.50")).toString()).isEqualTo("250.50");
+        assertThat(new Money(5).toString()).isEqualTo("0.05");
+        assertThat(new Money(-50).toString()).isEqualTo("-0.50");
+        assertThat(Money.ofUnits(999999).toPlainString()).isEqualTo("999999");
+    }
+
+    @Test
+    @DisplayName("Тест денег: JSON совпадает с сериализацией BigDecimal из БД")
+    void testJson() throws Exception {
+        Money balance = Money.of(new BigDecimal("1050.00"));
+
+        assertThat(objectMapper.writeValueAsString(balance))
+                .isEqualTo(objectMapper.writeValueAsString(new BigDecimal("1050.00")));
+        assertThat(objectMapper.readValue("1050.5", Money.class)).isEqualTo(new Money(105050));
+    }
+
+    @Test
+    @DisplayName("Тест денег: переполнение и лишние знаки после точки приводят к ошибке")
+    void testOverflow() {
+        assertThatThrownBy(() -> new Money(Long.MAX_VALUE).plus(new Money(1)))
+                .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.ofUnits(Long.MAX_VALUE / 10))
+                .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.of(new BigDecimal("1.005")))
+                .isInstanceOf(ArithmeticException.class);
+    }
+
+}
@@ -1,28 +1,62 @@
 package ru.iakovlysenko.wallet.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletCacheProperties;
+import ru.iakovlysenko.wallet.config.WalletEngineProperties;
+import ru.iakovlysenko.wallet.config.WalletIdempotencyProperties;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.config.WalletMetricsProperties;
+import ru.iakovlysenko.wallet.config.WalletReplicaProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
 import ru.iakovlysenko.wallet.dto.WalletBalanceResponse;
 import ru.iakovlysenko.wallet.dto.WalletOperationResponse;
+import ru.iakovlysenko.wallet.exception.ConcurrentUpdateException;
+import ru.iakovlysenko.wallet.exception.IdempotencyKeyReuseException;
 import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
 import ru.iakovlysenko.wallet.exception.WalletNotFoundException;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
 import ru.iakovlysenko.wallet.model.OperationType;
 import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
 import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.cache.BalanceCache;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangePublisher;
+import ru.iakovlysenko.wallet.service.engine.ReadModifyWriteWalletEngine;
+import ru.iakovlysenko.wallet.service.engine.WalletBatchExecutor;
+import ru.iakovlysenko.wallet.service.engine.WalletTransferExecutor;
+import ru.iakovlysenko.wallet.service.history.WalletHistoryReader;
+import ru.iakovlysenko.wallet.service.idempotency.IdempotencyStore;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRouter;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
 
-import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,32 +66,68 @@ class WalletServiceTest {
     @Mock
     private WalletRepository walletRepository;
 
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Mock
+    private WalletOperationRepository walletOperationRepository;
+
     @Mock
     private TransactionalOperator transactionalOperator;
 
-    @InjectMocks
+    @Mock
+    private WalletBatchExecutor walletBatchExecutor;
+
+    @Mock
+    private WalletTransferExecutor walletTransferExecutor;
+
+    @Mock
+    private WalletHistoryReader walletHistoryReader;
+
     private WalletServiceImpl walletService;
+    private IdempotencyStore idempotencyStore;
+    private SimpleMeterRegistry meterRegistry;
 
     private UUID walletId;
     private Wallet wallet;
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        WalletMetrics walletMetrics = new WalletMetrics(meterRegistry, new WalletMetricsProperties());
+        ShardRouter shardRouter = new ShardRouter(null, null, transactionalOperator, new WalletShardingProperties());
+        idempotencyStore = new IdempotencyStore(idempotencyKeyRepository, shardRouter, new WalletIdempotencyProperties(),
+                meterRegistry);
+        WalletEngineProperties engineProperties = new WalletEngineProperties();
+        engineProperties.getRetry().setMinBackoff(Duration.ofMillis(1));
+        engineProperties.getRetry().setMaxBackoff(Duration.ofMillis(1));
+        walletService = new WalletServiceImpl(walletRepository,
+                new ReadModifyWriteWalletEngine(walletRepository, idempotencyKeyRepository, transactionalOperator,
+                        new BalanceChangePublisher(List.of()),
+                        new LedgerWriter(walletOperationRepository, new WalletLedgerProperties()),
+                        walletMetrics, engineProperties),
+                walletBatchExecutor,
+                walletTransferExecutor,
+                new BalanceCache(new WalletCacheProperties(), new SimpleMeterRegistry()),
+                walletMetrics,
+                idempotencyStore,
+                walletHistoryReader,
+                null,
+                shardRouter,
+                new ReplicaRouter(null, new WalletReplicaProperties(), new WalletShardingProperties(), meterRegistry));
         walletId = UUID.randomUUID();
-        wallet = new Wallet(walletId, BigDecimal.valueOf(1000));
+        wallet = new Wallet(walletId, Money.ofUnits(1000));
+
+        lenient().when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
     }
 
     @Test
     @DisplayName("Тест операции депозита: пополнение баланса кошелька")
     void testDepositOperation() {
-        Wallet updatedWallet = new Wallet(walletId, BigDecimal.valueOf(2000));
-
         when(walletRepository.findById(walletId))
-                .thenReturn(Mono.just(wallet))
-                .thenReturn(Mono.just(updatedWallet));
-        when(walletRepository.updateBalance(eq(walletId), eq(BigDecimal.valueOf(2000))))
-                .thenReturn(Mono.just(1));
-        when(walletRepository.insertOrIgnore(any(UUID.class), any(BigDecimal.class)))
+                .thenReturn(Mono.just(wallet));
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(2000)), eq(0L)))
                 .thenReturn(Mono.just(1));
         when(transactionalOperator.transactional(any(Mono.class)))
                 .thenAnswer(invocation -> invocation.getArgument(0));
@@ -67,23 +137,21 @@ class WalletServiceTest {
         StepVerifier.create(result)
                 .expectNextMatches(response ->
                         response.walletId().equals(walletId) &&
-                        response.balance().compareTo(BigDecimal.valueOf(2000)) == 0 &&
+                        response.balance().equals(Money.ofUnits(2000)) &&
                         response.message().contains("выполнена успешно")
                 )
                 .verifyComplete();
+
+        verify(walletOperationRepository).insertAll(argThat(operations -> operations.size() == 1
+                && operations.get(0).balanceAfter().equals(Money.ofUnits(2000))));
     }
 
     @Test
     @DisplayName("Тест операции вывода средств: списание с баланса кошелька")
     void testWithdrawOperation() {
-        Wallet updatedWallet = new Wallet(walletId, BigDecimal.valueOf(500));
-
         when(walletRepository.findById(walletId))
-                .thenReturn(Mono.just(wallet))
-                .thenReturn(Mono.just(updatedWallet));
-        when(walletRepository.updateBalance(eq(walletId), eq(BigDecimal.valueOf(500))))
-                .thenReturn(Mono.just(1));
-        when(walletRepository.insertOrIgnore(any(UUID.class), any(BigDecimal.class)))
+                .thenReturn(Mono.just(wallet));
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(500)), eq(0L)))
                 .thenReturn(Mono.just(1));
         when(transactionalOperator.transactional(any(Mono.class)))
                 .thenAnswer(invocation -> invocation.getArgument(0));
@@ -93,7 +161,7 @@ class WalletServiceTest {
         StepVerifier.create(result)
                 .expectNextMatches(response ->
                         response.walletId().equals(walletId) &&
-                        response.balance().compareTo(BigDecimal.valueOf(500)) == 0
+                        response.balance().equals(Money.ofUnits(500))
                 )
                 .verifyComplete();
     }
@@ -103,8 +171,6 @@ class WalletServiceTest {
     void testWithdrawInsufficientFunds() {
         when(walletRepository.findById(walletId))
                 .thenReturn(Mono.just(wallet));
-        when(walletRepository.insertOrIgnore(any(UUID.class), any(BigDecimal.class)))
-                .thenReturn(Mono.just(1));
         when(transactionalOperator.transactional(any(Mono.class)))
                 .thenAnswer(invocation -> invocation.getArgument(0));
 
@@ -113,21 +179,117 @@ class WalletServiceTest {
         StepVerifier.create(result)
                 .expectError(InsufficientFundsException.class)
                 .verify();
+        assertThat(meterRegistry.get("wallet.operation")
+                .tag("type", "WITHDRAW")
+                .tag("outcome", "insufficient_funds")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Тест параллельного изменения: операция повторяется с перечитанной версией кошелька")
+    void testRetryOnVersionConflict() {
+        Wallet concurrentlyUpdated = new Wallet(walletId, Money.ofUnits(1500), 1);
+
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(wallet))
+                .thenReturn(Mono.just(concurrentlyUpdated));
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(500)), eq(0L)))
+                .thenReturn(Mono.just(0));
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(1000)), eq(1L)))
+                .thenReturn(Mono.just(1));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        StepVerifier.create(walletService.performOperation(walletId, OperationType.WITHDRAW, 500L))
+                .expectNextMatches(response -> response.balance().equals(Money.ofUnits(1000)))
+                .verifyComplete();
+        assertThat(meterRegistry.get("wallet.retries").tag("component", "classic").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Тест исчерпания повторов: операция завершается ошибкой параллельного изменения")
+    void testRetryExhausted() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(wallet));
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(500)), eq(0L)))
+                .thenReturn(Mono.just(0));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        StepVerifier.create(walletService.performOperation(walletId, OperationType.WITHDRAW, 500L))
+                .expectError(ConcurrentUpdateException.class)
+                .verify();
+        verify(walletRepository, times(6)).updateBalanceIfVersion(eq(walletId), any(Money.class), eq(0L));
+    }
+
+    @Test
+    @DisplayName("Тест ключа идемпотентности: повтор на том же узле отвечает из памяти без обращения к БД")
+    void testIdempotentReplayFromCache() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(wallet));
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(1500)), eq(0L)))
+                .thenReturn(Mono.just(1));
+        when(idempotencyKeyRepository.insert(any(IdempotencyRecord.class)))
+                .thenReturn(Mono.just(1L));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        Mono<WalletOperationResponse> operation =
+                walletService.performOperation(walletId, OperationType.DEPOSIT, 500L, "order-1");
+
+        StepVerifier.create(operation.then(operation))
+                .expectNextMatches(response -> response.balance().equals(Money.ofUnits(1500)))
+                .verifyComplete();
+        verify(walletRepository, times(1)).findById(walletId);
+        verify(idempotencyKeyRepository, never()).findByKey(any());
+    }
+
+    @Test
+    @DisplayName("Тест ключа идемпотентности: ключ, записанный другим узлом, откатывает операцию и ответ читается из БД")
+    void testIdempotentReplayFromDatabase() {
+        IdempotencyRecord stored = new IdempotencyRecord("order-2", walletId, OperationType.DEPOSIT,
+                Money.ofUnits(500), Money.ofUnits(700), LocalDateTime.now());
+
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(wallet));
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(1500)), eq(0L)))
+                .thenReturn(Mono.just(1));
+        when(idempotencyKeyRepository.insert(any(IdempotencyRecord.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("duplicate key")));
+        when(idempotencyKeyRepository.findByKey("order-2"))
+                .thenReturn(Mono.just(stored));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        StepVerifier.create(walletService.performOperation(walletId, OperationType.DEPOSIT, 500L, "order-2"))
+                .expectNextMatches(response -> response.balance().equals(Money.ofUnits(700)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест ключа идемпотентности: повтор ключа с другой суммой отклоняется")
+    void testIdempotencyKeyReuse() {
+        idempotencyStore.put(new IdempotencyRecord("order-3", walletId, OperationType.DEPOSIT,
+                Money.ofUnits(500), Money.ofUnits(1500), LocalDateTime.now()));
+
+        StepVerifier.create(walletService.performOperation(walletId, OperationType.DEPOSIT, 900L, "order-3"))
+                .expectError(IdempotencyKeyReuseException.class)
+                .verify();
+        verify(walletRepository, never()).findById(walletId);
     }
 
     @Test
     @DisplayName("Тест создания кошелька при его отсутствии: автоматическое создание с нулевым балансом")
     void testCreateWalletIfNotExists() {
-        Wallet newWallet = new Wallet(walletId, BigDecimal.ZERO);
-        Wallet updatedWallet = new Wallet(walletId, BigDecimal.valueOf(1000));
+        Wallet newWallet = new Wallet(walletId, Money.ZERO);
 
         when(walletRepository.findById(walletId))
                 .thenReturn(Mono.empty())
-                .thenReturn(Mono.just(newWallet))
-                .thenReturn(Mono.just(updatedWallet));
-        when(walletRepository.insertOrIgnore(eq(walletId), eq(BigDecimal.ZERO)))
+                .thenReturn(Mono.just(newWallet));
+        when(walletRepository.insertOrIgnore(eq(walletId), eq(Money.ZERO)))
                 .thenReturn(Mono.just(1));
-        when(walletRepository.updateBalance(eq(walletId), eq(BigDecimal.valueOf(1000))))
+        when(walletRepository.updateBalanceIfVersion(eq(walletId), eq(Money.ofUnits(1000)), eq(0L)))
                 .thenReturn(Mono.just(1));
         when(transactionalOperator.transactional(any(Mono.class)))
                 .thenAnswer(invocation -> invocation.getArgument(0));
@@ -137,7 +299,7 @@ class WalletServiceTest {
         StepVerifier.create(result)
                 .expectNextMatches(response ->
                         response.walletId().equals(walletId) &&
-                        response.balance().compareTo(BigDecimal.valueOf(1000)) == 0
+                        response.balance().equals(Money.ofUnits(1000))
                 )
                 .verifyComplete();
     }
@@ -153,7 +315,7 @@ class WalletServiceTest {
         StepVerifier.create(result)
                 .expectNextMatches(response ->
                         response.walletId().equals(walletId) &&
-                        response.balance().compareTo(BigDecimal.valueOf(1000)) == 0
+                        response.balance().equals(Money.ofUnits(1000))
                 )
                 .verifyComplete();
     }
@@ -169,6 +331,36 @@ class WalletServiceTest {
         StepVerifier.create(result)
                 .expectError(WalletNotFoundException.class)
                 .verify();
+        assertThat(meterRegistry.get("wallet.balance.read")
+                .tag("consistency", "cached")
+                .tag("outcome", "not_found")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Тест получения баланса из кеша: повторное чтение не обращается к БД")
+    void testGetBalanceCached() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(wallet));
+
+        StepVerifier.create(walletService.getBalance(walletId).then(walletService.getBalance(walletId)))
+                .expectNextMatches(response -> response.balance().equals(Money.ofUnits(1000)))
+                .verifyComplete();
+
+        verify(walletRepository, times(1)).findById(walletId);
+    }
+
+    @Test
+    @DisplayName("Тест согласованного чтения баланса: кеш не используется")
+    void testGetConsistentBalance() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(wallet));
+
+        StepVerifier.create(walletService.getBalance(walletId).then(walletService.getConsistentBalance(walletId)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(walletRepository, times(2)).findById(walletId);
     }
 
 }
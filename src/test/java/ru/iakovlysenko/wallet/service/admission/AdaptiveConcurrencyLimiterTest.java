@@ -0,0 +1,61 @@
+package ru.iakovlysenko.wallet.service.admission;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.iakovlysenko.wallet.config.WalletAdmissionProperties;
+import ru.iakovlysenko.wallet.config.WalletJdbcProperties;
+import ru.iakovlysenko.wallet.config.WalletPoolProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private Timer acquireTimer;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        acquireTimer = Timer.builder("wallet.r2dbc.acquire").register(meterRegistry);
+        WalletPoolProperties poolProperties = new WalletPoolProperties();
+        poolProperties.setMaxSize(4);
+        limiter = new AdaptiveConcurrencyLimiter(new WalletAdmissionProperties(), poolProperties,
+                new WalletShardingProperties(), new WalletJdbcProperties(), meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Тест предела одновременных запросов: по умолчанию четыре запроса на соединение пула")
+    void testLimitFromPoolSize() {
+        for (int i = 0; i < 16; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        assertThat(limiter.tryAcquire()).isFalse();
+
+        limiter.release();
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Тест предела одновременных запросов: долгое ожидание соединения снижает предел до размера пула, норма - возвращает")
+    void testAdjustByAcquireWait() {
+        for (int i = 0; i < 10; i++) {
+            acquireTimer.record(Duration.ofMillis(200));
+            limiter.adjust();
+        }
+        assertThat(limiter.limit()).isEqualTo(4);
+
+        for (int i = 0; i < 10; i++) {
+            acquireTimer.record(Duration.ofMillis(1));
+            limiter.adjust();
+        }
+        assertThat(limiter.limit()).isEqualTo(16);
+    }
+
+}
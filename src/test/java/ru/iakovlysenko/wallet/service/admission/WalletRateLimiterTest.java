@@ -0,0 +1,55 @@
+package ru.iakovlysenko.wallet.service.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.iakovlysenko.wallet.config.WalletAdmissionProperties;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WalletRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+    private WalletRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        WalletAdmissionProperties properties = new WalletAdmissionProperties();
+        properties.setWalletRate(10);
+        properties.setWalletBurst(3);
+        rateLimiter = new WalletRateLimiter(properties, new SimpleMeterRegistry(), clock::get);
+    }
+
+    @Test
+    @DisplayName("Тест частоты запросов: после серии из wallet-burst запросов следующий ждет интервал")
+    void testBurstThenWait() {
+        UUID walletId = UUID.randomUUID();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.tryAcquire(walletId)).isZero();
+        }
+        assertThat(rateLimiter.tryAcquire(walletId)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(rateLimiter.tryAcquire(walletId)).isZero();
+        assertThat(rateLimiter.tryAcquire(walletId)).isPositive();
+    }
+
+    @Test
+    @DisplayName("Тест частоты запросов: исчерпанная корзина одного кошелька не ограничивает другие")
+    void testWalletsAreIndependent() {
+        UUID hot = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.tryAcquire(hot);
+        }
+
+        assertThat(rateLimiter.tryAcquire(hot)).isPositive();
+        assertThat(rateLimiter.tryAcquire(UUID.randomUUID())).isZero();
+    }
+
+}
@@ -0,0 +1,166 @@
+package ru.iakovlysenko.wallet.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.postgresql.api.Notification;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import reactor.core.publisher.Flux;
+import ru.iakovlysenko.wallet.config.WalletCacheProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRouter;
+import ru.iakovlysenko.wallet.service.stream.BalanceStream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceCacheCoherenceTest {
+
+    @Mock
+    private BalanceCache balanceCache;
+
+    @Mock
+    private ReplicaRouter replicaRouter;
+
+    @Mock
+    private BalanceStream balanceStream;
+
+    @Mock
+    private Notification notification;
+
+    private BalanceCacheCoherence localNode;
+    private BalanceCacheCoherence remoteNode;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        R2dbcProperties r2dbcProperties = new R2dbcProperties();
+        r2dbcProperties.setUrl("r2dbc:postgresql://localhost:5432/postgres");
+        r2dbcProperties.setUsername("postgres");
+        localNode = new BalanceCacheCoherence(balanceCache, replicaRouter, balanceStream, r2dbcProperties, new WalletCacheProperties(),
+                meterRegistry);
+        remoteNode = new BalanceCacheCoherence(balanceCache, replicaRouter, balanceStream, r2dbcProperties, new WalletCacheProperties(),
+                meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Тест согласования кешей: уведомление другого узла сбрасывает кошельки и перечитывает их подписки")
+    void testRemoteNotificationInvalidates() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        when(notification.getParameter())
+                .thenReturn(remoteNode.encode(new LinkedHashSet<>(List.of(first, second))));
+
+        localNode.handle(notification);
+
+        verify(balanceCache).invalidate(first);
+        verify(balanceCache).invalidate(second);
+        verify(replicaRouter).markWritten(first);
+        verify(replicaRouter).markWritten(second);
+        verify(balanceStream).reload(first);
+        verify(balanceStream).reload(second);
+    }
+
+    @Test
+    @DisplayName("Тест согласования кешей: собственное уведомление узла игнорируется")
+    void testOwnNotificationIgnored() {
+        UUID walletId = UUID.randomUUID();
+        when(notification.getParameter())
+                .thenReturn(localNode.encode(new LinkedHashSet<>(List.of(walletId))));
+
+        localNode.handle(notification);
+
+        verify(balanceCache, never()).invalidate(walletId);
+        verify(balanceStream, never()).reload(walletId);
+    }
+
+    @Test
+    @DisplayName("Тест согласования кешей: узел, пропустивший уведомления, сбрасывает кеши и подписки других узлов целиком")
+    void testFlushAllNotification() {
+        when(notification.getParameter())
+                .thenReturn(remoteNode.encode(new LinkedHashSet<>()) + "*");
+
+        localNode.handle(notification);
+
+        verify(balanceCache).invalidateAll();
+        verify(balanceCache, never()).invalidate(any());
+        verify(balanceStream).reloadAll();
+    }
+
+    @Test
+    @DisplayName("Тест согласования кешей: канал уведомлений проверяется при привязке настроек")
+    void testChannelValidated() {
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        WalletCacheProperties properties = new WalletCacheProperties();
+
+        assertThat(validator.validate(properties)).isEmpty();
+        properties.getCoherence().setChannel("wallet_changed; NOTIFY other");
+        assertThat(validator.validate(properties))
+                .extracting(violation -> violation.getPropertyPath().toString())
+                .containsExactly("coherence.channel");
+    }
+
+    @Test
+    @DisplayName("Тест согласования кешей: изменения из нескольких потоков не теряются при отправке")
+    void testConcurrentProducers() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        R2dbcProperties unreachable = new R2dbcProperties();
+        unreachable.setUrl("r2dbc:postgresql://localhost:1/postgres");
+        unreachable.setUsername("postgres");
+        WalletCacheProperties properties = new WalletCacheProperties();
+        properties.getCoherence().setReconnectDelay(Duration.ofMinutes(1));
+        BalanceCacheCoherence node = new BalanceCacheCoherence(balanceCache, replicaRouter, balanceStream, unreachable, properties,
+                meterRegistry);
+        node.start();
+        int threads = 8;
+        int changesPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                producers.add(executor.submit(() -> {
+                    for (int j = 0; j < changesPerThread; j++) {
+                        node.onCommitted(List.of(new BalanceChange(UUID.randomUUID(), OperationType.DEPOSIT,
+                                Money.ofUnits(1), Money.ZERO, Money.ofUnits(1))));
+                    }
+                }));
+            }
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+
+            Counter dropped = meterRegistry.get("wallet.cache.coherence.dropped").counter();
+            Flux.interval(Duration.ofMillis(10))
+                    .takeUntil(tick -> dropped.count() >= threads * changesPerThread)
+                    .timeout(Duration.ofSeconds(5))
+                    .blockLast();
+            assertThat(dropped.count()).isEqualTo(threads * changesPerThread);
+        } finally {
+            executor.shutdownNow();
+            node.stop();
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package ru.iakovlysenko.wallet.service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletCacheProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceCacheTest {
+
+    private BalanceCache balanceCache;
+    private AtomicInteger loads;
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        balanceCache = new BalanceCache(new WalletCacheProperties(), new SimpleMeterRegistry());
+        loads = new AtomicInteger();
+        walletId = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Тест кеша: зафиксированное изменение обновляет запись без обращения к БД")
+    void testUpdateOnCommit() {
+        load(Money.ofUnits(100));
+
+        balanceCache.onCommitted(List.of(change(100, 150)));
+
+        StepVerifier.create(balanceCache.get(walletId, id -> loader(Money.ZERO)))
+                .expectNextMatches(balance -> balance.equals(Money.ofUnits(150)))
+                .verifyComplete();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Тест кеша: изменение не по порядку сбрасывает запись")
+    void testInvalidateOnGap() {
+        load(Money.ofUnits(100));
+
+        balanceCache.onCommitted(List.of(change(150, 200)));
+
+        StepVerifier.create(balanceCache.get(walletId, id -> loader(Money.ofUnits(200))))
+                .expectNextMatches(balance -> balance.equals(Money.ofUnits(200)))
+                .verifyComplete();
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("Тест кеша: изменение во время загрузки сбрасывает запись, не дожидаясь загрузки")
+    void testInvalidateDuringLoad() {
+        Sinks.One<Money> loading = Sinks.one();
+        CompletableFuture<Money> pending = balanceCache.get(walletId, id -> loading.asMono()).toFuture();
+
+        balanceCache.onCommitted(List.of(change(100, 150)));
+        loading.tryEmitValue(Money.ofUnits(100));
+
+        assertThat(pending.join()).isEqualTo(Money.ofUnits(100));
+        StepVerifier.create(balanceCache.get(walletId, id -> loader(Money.ofUnits(150))))
+                .expectNextMatches(balance -> balance.equals(Money.ofUnits(150)))
+                .verifyComplete();
+        assertThat(loads).hasValue(1);
+    }
+
+    private void load(Money balance) {
+        StepVerifier.create(balanceCache.get(walletId, id -> loader(balance)))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    private Mono<Money> loader(Money balance) {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return balance;
+        });
+    }
+
+    private BalanceChange change(long before, long after) {
+        return new BalanceChange(walletId, OperationType.DEPOSIT, Money.ofUnits(after - before),
+                Money.ofUnits(before), Money.ofUnits(after));
+    }
+
+}
@@ -0,0 +1,150 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class AtomicWalletEngineTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Mock
+    private WalletOperationRepository walletOperationRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private AtomicWalletEngine walletEngine;
+
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        walletEngine = new AtomicWalletEngine(walletRepository, idempotencyKeyRepository, transactionalOperator,
+                new BalanceChangePublisher(List.of()),
+                new LedgerWriter(walletOperationRepository, new WalletLedgerProperties()));
+        walletId = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Тест атомарного пополнения: один запрос с записью журнала, без транзакции и предварительного чтения")
+    void testDeposit() {
+        when(walletRepository.depositAtomicallyRecorded(eq(walletId), eq(Money.ofUnits(1000)), any(), any()))
+                .thenReturn(Mono.just(Money.ofUnits(3000)));
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 1000L))
+                .expectNextMatches(change ->
+                        change.balanceBefore().equals(Money.ofUnits(2000)) &&
+                        change.balanceAfter().equals(Money.ofUnits(3000)))
+                .verifyComplete();
+
+        verify(walletRepository, never()).findById(any(UUID.class));
+        verify(transactionalOperator, never()).transactional(any(Mono.class));
+        verify(walletOperationRepository, never()).insertAll(anyList());
+    }
+
+    @Test
+    @DisplayName("Тест атомарного списания: баланс возвращается из RETURNING")
+    void testWithdraw() {
+        when(walletRepository.withdrawAtomicallyRecorded(eq(walletId), eq(Money.ofUnits(400)), any(), any()))
+                .thenReturn(Mono.just(Money.ofUnits(600)));
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.WITHDRAW, 400L))
+                .expectNextMatches(change ->
+                        change.balanceBefore().equals(Money.ofUnits(1000)) &&
+                        change.balanceAfter().equals(Money.ofUnits(600)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест атомарной операции с ключом идемпотентности: ключ записывается в транзакции с балансом")
+    void testDepositWithIdempotencyKey() {
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(walletRepository.depositAtomicallyRecorded(eq(walletId), eq(Money.ofUnits(1000)), any(), any()))
+                .thenReturn(Mono.just(Money.ofUnits(1000)));
+        when(idempotencyKeyRepository.insert(any()))
+                .thenReturn(Mono.just(1L));
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 1000L, "key-1"))
+                .expectNextMatches(change -> change.balanceAfter().equals(Money.ofUnits(1000)))
+                .verifyComplete();
+
+        verify(transactionalOperator).transactional(any(Mono.class));
+        verify(idempotencyKeyRepository).insert(argThat(record -> record.key().equals("key-1")));
+    }
+
+    @Test
+    @DisplayName("Тест атомарного пополнения без журнала: выражение без записи журнала")
+    void testDepositLedgerDisabled() {
+        WalletLedgerProperties ledgerProperties = new WalletLedgerProperties();
+        ledgerProperties.setEnabled(false);
+        walletEngine = new AtomicWalletEngine(walletRepository, idempotencyKeyRepository, transactionalOperator,
+                new BalanceChangePublisher(List.of()), new LedgerWriter(walletOperationRepository, ledgerProperties));
+        when(walletRepository.depositAtomically(eq(walletId), eq(Money.ofUnits(10))))
+                .thenReturn(Mono.just(Money.ofUnits(10)));
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 10L))
+                .expectNextMatches(change -> change.balanceAfter().equals(Money.ofUnits(10)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест атомарного списания при недостаточном балансе: должна выбрасываться исключение")
+    void testWithdrawInsufficientFunds() {
+        when(walletRepository.withdrawAtomicallyRecorded(eq(walletId), eq(Money.ofUnits(2000)), any(), any()))
+                .thenReturn(Mono.empty());
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(1000))));
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.WITHDRAW, 2000L))
+                .expectError(InsufficientFundsException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Тест атомарного списания с несуществующего кошелька: недостаточно средств")
+    void testWithdrawMissingWallet() {
+        when(walletRepository.withdrawAtomicallyRecorded(eq(walletId), eq(Money.ofUnits(10)), any(), any()))
+                .thenReturn(Mono.empty());
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.WITHDRAW, 10L))
+                .expectError(InsufficientFundsException.class)
+                .verify();
+    }
+
+}
@@ -0,0 +1,152 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.iakovlysenko.wallet.config.WalletEngineProperties;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class CoalescingWalletEngineTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Mock
+    private WalletOperationRepository walletOperationRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private CoalescingWalletEngine walletEngine;
+
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        WalletEngineProperties properties = new WalletEngineProperties();
+        properties.getCoalescing().setWindow(Duration.ofMillis(50));
+        properties.getCoalescing().setMaxBatchSize(3);
+        walletEngine = new CoalescingWalletEngine(walletRepository, idempotencyKeyRepository, transactionalOperator,
+                new BalanceChangePublisher(List.of()),
+                new LedgerWriter(walletOperationRepository, new WalletLedgerProperties()), properties);
+        walletId = UUID.randomUUID();
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenAnswer(invocation -> Mono.just((long) invocation.<List<?>>getArgument(0).size()));
+    }
+
+    @Test
+    @DisplayName("Тест группировки: три операции применяются одной блокировкой и одним обновлением")
+    void testCoalescedBatch() throws Exception {
+        when(walletRepository.lockBalance(walletId))
+                .thenReturn(Mono.just(Money.ofUnits(300)));
+        when(walletRepository.updateBalance(eq(walletId), eq(Money.ofUnits(200))))
+                .thenReturn(Mono.just(1));
+
+        CompletableFuture<BalanceChange> deposit =
+                walletEngine.apply(walletId, OperationType.DEPOSIT, 100L).toFuture();
+        CompletableFuture<BalanceChange> tooLarge =
+                walletEngine.apply(walletId, OperationType.WITHDRAW, 500L).toFuture();
+        CompletableFuture<BalanceChange> withdraw =
+                walletEngine.apply(walletId, OperationType.WITHDRAW, 200L).toFuture();
+
+        assertThat(deposit.get().balanceAfter()).isEqualTo(Money.ofUnits(400));
+        assertThatThrownBy(tooLarge::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(InsufficientFundsException.class);
+        assertThat(withdraw.get().balanceBefore()).isEqualTo(Money.ofUnits(400));
+        assertThat(withdraw.get().balanceAfter()).isEqualTo(Money.ofUnits(200));
+
+        verify(walletRepository, times(1)).lockBalance(walletId);
+        verify(walletRepository, times(1)).updateBalance(eq(walletId), any(Money.class));
+        verify(walletOperationRepository).insertAll(argThat(operations -> operations.size() == 2));
+    }
+
+    @Test
+    @DisplayName("Тест группировки: неполная группа записывается по истечении окна")
+    void testFlushByWindow() throws Exception {
+        when(walletRepository.lockBalance(walletId))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.just(Money.ZERO));
+        when(walletRepository.insertOrIgnore(eq(walletId), eq(Money.ZERO)))
+                .thenReturn(Mono.just(1));
+        when(walletRepository.updateBalance(eq(walletId), eq(Money.ofUnits(1000))))
+                .thenReturn(Mono.just(1));
+
+        BalanceChange change = walletEngine.apply(walletId, OperationType.DEPOSIT, 1000L)
+                .block(Duration.ofSeconds(5));
+
+        assertThat(change).isNotNull();
+        assertThat(change.balanceAfter()).isEqualTo(Money.ofUnits(1000));
+    }
+
+    @Test
+    @DisplayName("Тест группировки: операция с уже записанным ключом идемпотентности не применяется")
+    void testDuplicateIdempotencyKey() throws Exception {
+        when(walletRepository.lockBalance(walletId))
+                .thenReturn(Mono.just(Money.ofUnits(300)));
+        when(idempotencyKeyRepository.findExisting(anyCollection()))
+                .thenReturn(Flux.just("order-1"));
+        when(walletRepository.updateBalance(eq(walletId), eq(Money.ofUnits(500))))
+                .thenReturn(Mono.just(1));
+        when(idempotencyKeyRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
+
+        CompletableFuture<BalanceChange> replayed =
+                walletEngine.apply(walletId, OperationType.DEPOSIT, 100L, "order-1").toFuture();
+        CompletableFuture<BalanceChange> fresh =
+                walletEngine.apply(walletId, OperationType.DEPOSIT, 200L, "order-2").toFuture();
+        CompletableFuture<BalanceChange> sameBatch =
+                walletEngine.apply(walletId, OperationType.DEPOSIT, 200L, "order-2").toFuture();
+
+        assertThatThrownBy(replayed::get).hasCauseInstanceOf(DuplicateKeyException.class);
+        assertThat(fresh.get().balanceAfter()).isEqualTo(Money.ofUnits(500));
+        assertThatThrownBy(sameBatch::get).hasCauseInstanceOf(DuplicateKeyException.class);
+
+        ArgumentCaptor<List<IdempotencyRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(idempotencyKeyRepository).insertAll(captor.capture());
+        assertThat(captor.getValue()).extracting(IdempotencyRecord::key).containsExactly("order-2");
+    }
+
+}
@@ -0,0 +1,254 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletEngineProperties;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.config.WalletMetricsProperties;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.WalletBatchRepository;
+import ru.iakovlysenko.wallet.repository.WalletBatchRepository.BalanceUpdate;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class SingleWriterWalletEngineTest {
+
+    @Mock
+    private WalletBatchRepository walletBatchRepository;
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Mock
+    private WalletOperationRepository walletOperationRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private SingleWriterWalletEngine walletEngine;
+
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        walletEngine = new SingleWriterWalletEngine(walletBatchRepository, idempotencyKeyRepository, transactionalOperator,
+                new BalanceChangePublisher(List.of()),
+                new LedgerWriter(walletOperationRepository, new WalletLedgerProperties()),
+                new WalletMetrics(new SimpleMeterRegistry(), new WalletMetricsProperties()),
+                new WalletEngineProperties());
+        walletId = UUID.randomUUID();
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    @DisplayName("Тест единственного писателя: баланс читается из БД один раз, отказ сверяется с БД")
+    void testBalanceKeptInMemory() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
+        when(walletBatchRepository.findAll(Set.of(walletId)))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(300))))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(400))));
+        when(walletBatchRepository.compareAndSetBalances(anyList()))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 100L))
+                .expectNextMatches(change -> change.balanceAfter().equals(Money.ofUnits(400)))
+                .verifyComplete();
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.WITHDRAW, 500L))
+                .expectError(InsufficientFundsException.class)
+                .verify();
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.WITHDRAW, 200L))
+                .expectNextMatches(change ->
+                        change.balanceBefore().equals(Money.ofUnits(400)) &&
+                        change.balanceAfter().equals(Money.ofUnits(200)))
+                .verifyComplete();
+
+        verify(walletBatchRepository, times(2)).findAll(any(Set.class));
+        verify(walletBatchRepository, never()).insertMissing(any(Set.class));
+        verify(walletBatchRepository).compareAndSetBalances(
+                List.of(new BalanceUpdate(walletId, Money.ofUnits(400), Money.ofUnits(200))));
+        verify(walletOperationRepository, times(2)).insertAll(anyList());
+    }
+
+    @Test
+    @DisplayName("Тест единственного писателя: при записи в обход баланс перечитывается и операция повторяется")
+    void testConflictReloadsBalance() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
+        when(walletBatchRepository.findAll(Set.of(walletId)))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(300))))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(1000))));
+        when(walletBatchRepository.compareAndSetBalances(
+                eq(List.of(new BalanceUpdate(walletId, Money.ofUnits(300), Money.ofUnits(400))))))
+                .thenReturn(Flux.just(walletId));
+        when(walletBatchRepository.compareAndSetBalances(
+                eq(List.of(new BalanceUpdate(walletId, Money.ofUnits(1000), Money.ofUnits(1100))))))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 100L))
+                .expectNextMatches(change ->
+                        change.balanceBefore().equals(Money.ofUnits(1000)) &&
+                        change.balanceAfter().equals(Money.ofUnits(1100)))
+                .verifyComplete();
+
+        verify(walletBatchRepository, times(2)).findAll(any(Set.class));
+        verify(walletBatchRepository, never()).lockAll(any(Set.class));
+        verify(walletOperationRepository).insertAll(argThat(operations -> operations.size() == 1
+                && operations.get(0).balanceAfter().equals(Money.ofUnits(1100))));
+    }
+
+    @Test
+    @DisplayName("Тест единственного писателя: отказ по устаревшему балансу перечитывает баланс и повторяет операцию")
+    void testStaleRejectionReloadsBalance() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
+        when(walletBatchRepository.findAll(Set.of(walletId)))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(300))))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(1000))));
+        when(walletBatchRepository.compareAndSetBalances(
+                eq(List.of(new BalanceUpdate(walletId, Money.ofUnits(1000), Money.ofUnits(500))))))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.WITHDRAW, 500L))
+                .expectNextMatches(change ->
+                        change.balanceBefore().equals(Money.ofUnits(1000)) &&
+                        change.balanceAfter().equals(Money.ofUnits(500)))
+                .verifyComplete();
+
+        verify(walletBatchRepository, times(3)).findAll(any(Set.class));
+    }
+
+    @Test
+    @DisplayName("Тест единственного писателя: отклоненное списание не создает кошелек, пополнение создает его в транзакции")
+    void testUnknownWalletCreatedOnlyOnChange() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
+        when(walletBatchRepository.findAll(Set.of(walletId)))
+                .thenReturn(Flux.empty());
+        when(walletBatchRepository.insertMissing(Set.of(walletId)))
+                .thenReturn(Mono.just(1L));
+        when(walletBatchRepository.compareAndSetBalances(
+                eq(List.of(new BalanceUpdate(walletId, Money.ZERO, Money.ofUnits(100))))))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.WITHDRAW, 100L))
+                .expectError(InsufficientFundsException.class)
+                .verify();
+        verify(walletBatchRepository, never()).insertMissing(any(Set.class));
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 100L))
+                .expectNextMatches(change -> change.balanceAfter().equals(Money.ofUnits(100)))
+                .verifyComplete();
+        verify(walletBatchRepository).insertMissing(Set.of(walletId));
+        verify(transactionalOperator, times(2)).transactional(any(Mono.class));
+    }
+
+    @Test
+    @DisplayName("Тест единственного писателя: изменение другого писателя вытесняет баланс из памяти")
+    void testForeignChangeEvictsBalance() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
+        when(walletBatchRepository.findAll(Set.of(walletId)))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(300))))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(900))));
+        when(walletBatchRepository.compareAndSetBalances(anyList()))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 100L))
+                .expectNextCount(1)
+                .verifyComplete();
+        walletEngine.onCommitted(List.of(new BalanceChange(walletId, OperationType.DEPOSIT, Money.ofUnits(500),
+                Money.ofUnits(400), Money.ofUnits(900))));
+        StepVerifier.create(walletEngine.apply(walletId, OperationType.DEPOSIT, 100L))
+                .expectNextMatches(change ->
+                        change.balanceBefore().equals(Money.ofUnits(900)) &&
+                        change.balanceAfter().equals(Money.ofUnits(1000)))
+                .verifyComplete();
+
+        verify(walletBatchRepository, times(2)).findAll(any(Set.class));
+    }
+
+    @Test
+    @DisplayName("Тест единственного писателя: ключ, занятый другим узлом, повторяет только кошелек с этим ключом")
+    void testKeyTakenByAnotherNode() throws Exception {
+        WalletEngineProperties properties = new WalletEngineProperties();
+        properties.getSingleWriter().setLanes(1);
+        walletEngine = new SingleWriterWalletEngine(walletBatchRepository, idempotencyKeyRepository, transactionalOperator,
+                new BalanceChangePublisher(List.of()),
+                new LedgerWriter(walletOperationRepository, new WalletLedgerProperties()),
+                new WalletMetrics(new SimpleMeterRegistry(), new WalletMetricsProperties()),
+                properties);
+        UUID blockingId = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+        Sinks.Empty<Void> gate = Sinks.empty();
+        when(walletBatchRepository.findAll(Set.of(blockingId)))
+                .thenReturn(gate.asMono().thenMany(Flux.just(new Wallet(blockingId, Money.ZERO))));
+        when(walletBatchRepository.findAll(Set.of(walletId, otherId)))
+                .thenReturn(Flux.just(new Wallet(walletId, Money.ofUnits(100)), new Wallet(otherId, Money.ofUnits(100))));
+        when(walletBatchRepository.compareAndSetBalances(anyList()))
+                .thenReturn(Flux.empty());
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(1L));
+        when(idempotencyKeyRepository.findExisting(anyCollection()))
+                .thenReturn(Flux.empty())
+                .thenReturn(Flux.just("order-1"));
+        when(idempotencyKeyRepository.insertAll(anyList()))
+                .thenReturn(Mono.error(new DuplicateKeyException("order-1")));
+
+        CompletableFuture<BalanceChange> blocking =
+                walletEngine.apply(blockingId, OperationType.DEPOSIT, 10L).toFuture();
+        CompletableFuture<BalanceChange> keyed =
+                walletEngine.apply(walletId, OperationType.DEPOSIT, 10L, "order-1").toFuture();
+        CompletableFuture<BalanceChange> keyless =
+                walletEngine.apply(otherId, OperationType.DEPOSIT, 10L).toFuture();
+        gate.tryEmitEmpty();
+
+        assertThat(blocking.get().balanceAfter()).isEqualTo(Money.ofUnits(10));
+        assertThat(keyless.get().balanceAfter()).isEqualTo(Money.ofUnits(110));
+        assertThatThrownBy(keyed::get).hasCauseInstanceOf(DuplicateKeyException.class);
+
+        verify(idempotencyKeyRepository).insertAll(anyList());
+        verify(walletBatchRepository).compareAndSetBalances(
+                List.of(new BalanceUpdate(otherId, Money.ofUnits(100), Money.ofUnits(110))));
+        verify(walletBatchRepository, times(2)).findAll(any(Set.class));
+    }
+
+}
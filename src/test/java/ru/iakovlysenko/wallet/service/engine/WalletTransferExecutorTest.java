@@ -0,0 +1,141 @@
+package ru.iakovlysenko.wallet.service.engine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.repository.WalletTransferRepository;
+import ru.iakovlysenko.wallet.repository.WalletTransferRepository.TransferBalances;
+import ru.iakovlysenko.wallet.repository.WalletTransferRepository.WalletBalance;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class WalletTransferExecutorTest {
+
+    @Mock
+    private WalletTransferRepository walletTransferRepository;
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private WalletOperationRepository walletOperationRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @Mock
+    private BalanceChangeListener listener;
+
+    private WalletTransferExecutor transferExecutor;
+
+    private UUID fromWalletId;
+    private UUID toWalletId;
+
+    @BeforeEach
+    void setUp() {
+        transferExecutor = new WalletTransferExecutor(walletTransferRepository, walletRepository, transactionalOperator,
+                new BalanceChangePublisher(List.of(listener)),
+                new LedgerWriter(walletOperationRepository, new WalletLedgerProperties()));
+        fromWalletId = UUID.randomUUID();
+        toWalletId = UUID.randomUUID();
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    @DisplayName("Тест перевода: списание и зачисление пишутся в журнал в транзакции и публикуются одним списком")
+    void testTransfer() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(2L));
+        when(walletTransferRepository.transfer(fromWalletId, toWalletId, Money.ofUnits(300)))
+                .thenReturn(Mono.just(new TransferBalances(Money.ofUnits(700), Money.ofUnits(300))));
+
+        StepVerifier.create(transferExecutor.transfer(fromWalletId, toWalletId, 300L))
+                .assertNext(changes -> {
+                    assertThat(changes).containsExactly(
+                            new BalanceChange(fromWalletId, OperationType.WITHDRAW, Money.ofUnits(300),
+                                    Money.ofUnits(1000), Money.ofUnits(700)),
+                            new BalanceChange(toWalletId, OperationType.DEPOSIT, Money.ofUnits(300),
+                                    Money.ZERO, Money.ofUnits(300)));
+                })
+                .verifyComplete();
+
+        verify(listener).onCommitted(anyList());
+        verify(walletOperationRepository).insertAll(argThat(operations -> operations.size() == 2));
+    }
+
+    @Test
+    @DisplayName("Тест перевода: при нехватке средств ничего не публикуется")
+    void testTransferInsufficientFunds() {
+        when(walletTransferRepository.transfer(fromWalletId, toWalletId, Money.ofUnits(300)))
+                .thenReturn(Mono.empty());
+        when(walletRepository.findById(fromWalletId))
+                .thenReturn(Mono.just(new Wallet(fromWalletId, Money.ofUnits(100))));
+
+        StepVerifier.create(transferExecutor.transfer(fromWalletId, toWalletId, 300L))
+                .expectError(InsufficientFundsException.class)
+                .verify();
+
+        verify(listener, never()).onCommitted(anyList());
+        verify(walletOperationRepository, never()).insertAll(anyList());
+    }
+
+    @Test
+    @DisplayName("Тест выплаты: суммы одному получателю складываются")
+    void testPayoutAggregatesRecipients() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(3L));
+        UUID otherWalletId = UUID.randomUUID();
+        when(walletTransferRepository.payout(eq(fromWalletId), anyList(), anyList(), eq(Money.ofUnits(60))))
+                .thenReturn(Flux.just(
+                        new WalletBalance(fromWalletId, Money.ofUnits(40)),
+                        new WalletBalance(otherWalletId, Money.ofUnits(20)),
+                        new WalletBalance(toWalletId, Money.ofUnits(40))));
+
+        StepVerifier.create(transferExecutor.payout(fromWalletId,
+                        List.of(toWalletId, otherWalletId, toWalletId), List.of(10L, 20L, 30L)))
+                .assertNext(changes -> {
+                    assertThat(changes).extracting(BalanceChange::walletId)
+                            .containsExactly(fromWalletId, toWalletId, otherWalletId);
+                    assertThat(changes.get(0).balanceBefore()).isEqualTo(Money.ofUnits(100));
+                    assertThat(changes.get(1).amount()).isEqualTo(Money.ofUnits(40));
+                    assertThat(changes.get(1).balanceBefore()).isEqualTo(Money.ZERO);
+                })
+                .verifyComplete();
+
+        ArgumentCaptor<List<Money>> captor = ArgumentCaptor.forClass(List.class);
+        verify(walletTransferRepository).payout(eq(fromWalletId), anyList(), captor.capture(), eq(Money.ofUnits(60)));
+        assertThat(captor.getValue()).hasSize(3);
+    }
+
+}
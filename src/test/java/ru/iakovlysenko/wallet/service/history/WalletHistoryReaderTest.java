@@ -0,0 +1,115 @@
+package ru.iakovlysenko.wallet.service.history;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletHistoryProperties;
+import ru.iakovlysenko.wallet.exception.InvalidCursorException;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WalletHistoryReaderTest {
+
+    @Mock
+    private WalletOperationRepository walletOperationRepository;
+
+    private WalletHistoryReader historyReader;
+
+    private UUID walletId;
+    private List<WalletOperation> operations;
+
+    @BeforeEach
+    void setUp() {
+        WalletHistoryProperties properties = new WalletHistoryProperties();
+        properties.setPageSize(2);
+        properties.setStreamChunkSize(2);
+        historyReader = new WalletHistoryReader(walletOperationRepository, properties);
+        walletId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        operations = IntStream.range(0, 5)
+                .mapToObj(i -> new WalletOperation(UUID.randomUUID(), walletId, OperationType.DEPOSIT,
+                        Money.ofUnits(100), Money.ofUnits(500 - 100L * (i + 1)), Money.ofUnits(500 - 100L * i),
+                        now.minusSeconds(i)))
+                .toList();
+    }
+
+    @Test
+    @DisplayName("Тест истории: страница содержит курсор последней записи, если есть следующая")
+    void testPageWithNextCursor() {
+        when(walletOperationRepository.findPage(walletId, null, null, 3))
+                .thenReturn(Flux.fromIterable(operations.subList(0, 3)));
+
+        StepVerifier.create(historyReader.page(walletId, null, null))
+                .assertNext(page -> {
+                    assertThat(page.operations()).containsExactlyElementsOf(operations.subList(0, 2));
+                    assertThat(page.next()).isEqualTo(HistoryCursor.after(operations.get(1)));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест истории: на последней странице курсора нет")
+    void testLastPage() {
+        HistoryCursor cursor = HistoryCursor.after(operations.get(3));
+        when(walletOperationRepository.findPage(walletId, cursor.createdAt(), cursor.id(), 3))
+                .thenReturn(Flux.just(operations.get(4)));
+
+        StepVerifier.create(historyReader.page(walletId, cursor, null))
+                .assertNext(page -> {
+                    assertThat(page.operations()).containsExactly(operations.get(4));
+                    assertThat(page.next()).isNull();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест выгрузки: части читаются по курсору последней записи до неполной части")
+    void testStreamByChunks() {
+        when(walletOperationRepository.findPage(eq(walletId), isNull(), isNull(), eq(2)))
+                .thenReturn(Flux.fromIterable(operations.subList(0, 2)));
+        when(walletOperationRepository.findPage(walletId, operations.get(1).createdAt(), operations.get(1).id(), 2))
+                .thenReturn(Flux.fromIterable(operations.subList(2, 4)));
+        when(walletOperationRepository.findPage(walletId, operations.get(3).createdAt(), operations.get(3).id(), 2))
+                .thenReturn(Flux.just(operations.get(4)));
+
+        StepVerifier.create(historyReader.stream(walletId, null), 1)
+                .expectNext(operations.get(0))
+                .thenRequest(4)
+                .expectNextSequence(operations.subList(1, 5))
+                .verifyComplete();
+
+        verify(walletOperationRepository).findPage(walletId, operations.get(3).createdAt(), operations.get(3).id(), 2);
+    }
+
+    @Test
+    @DisplayName("Тест курсора: курсор восстанавливается из строки, некорректная строка отклоняется")
+    void testCursorEncoding() {
+        HistoryCursor cursor = HistoryCursor.after(operations.get(0));
+
+        assertThat(HistoryCursor.decode(cursor.encode())).isEqualTo(cursor);
+        assertThat(HistoryCursor.decode(null)).isNull();
+        assertThatThrownBy(() -> HistoryCursor.decode("not-a-cursor"))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+
+}
@@ -0,0 +1,193 @@
+package ru.iakovlysenko.wallet.service.jdbc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletBatchProperties;
+import ru.iakovlysenko.wallet.config.WalletCacheProperties;
+import ru.iakovlysenko.wallet.config.WalletIdempotencyProperties;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.config.WalletMetricsProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.dto.WalletOperationRequest;
+import ru.iakovlysenko.wallet.exception.InsufficientFundsException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.IdempotencyRecord;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.repository.IdempotencyKeyRepository;
+import ru.iakovlysenko.wallet.repository.JdbcWalletRepository;
+import ru.iakovlysenko.wallet.service.WalletServiceImpl;
+import ru.iakovlysenko.wallet.service.cache.BalanceCache;
+import ru.iakovlysenko.wallet.service.engine.BalanceChangePublisher;
+import ru.iakovlysenko.wallet.service.idempotency.IdempotencyStore;
+import ru.iakovlysenko.wallet.service.ledger.LedgerWriter;
+import ru.iakovlysenko.wallet.service.metrics.WalletMetrics;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JdbcWalletServiceTest {
+
+    @Mock
+    private JdbcWalletRepository jdbcWalletRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Mock
+    private WalletServiceImpl reactiveWalletService;
+
+    private final List<BalanceChange> published = new ArrayList<>();
+    private IdempotencyStore idempotencyStore;
+    private JdbcWalletService walletService;
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ShardRouter shardRouter = new ShardRouter(null, null, null, new WalletShardingProperties());
+        idempotencyStore = new IdempotencyStore(idempotencyKeyRepository, shardRouter,
+                new WalletIdempotencyProperties(), meterRegistry);
+        WalletBatchProperties batchProperties = new WalletBatchProperties();
+        batchProperties.setChunkSize(2);
+        walletService = new JdbcWalletService(jdbcWalletRepository,
+                transactionTemplate,
+                Schedulers.immediate(),
+                new BalanceChangePublisher(List.of(published::addAll)),
+                new LedgerWriter(null, new WalletLedgerProperties()),
+                new BalanceCache(new WalletCacheProperties(), meterRegistry),
+                idempotencyStore,
+                new WalletMetrics(meterRegistry, new WalletMetricsProperties()),
+                reactiveWalletService,
+                shardRouter,
+                batchProperties);
+        walletId = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Тест операции через JDBC: пополнение с журналом выполняется одним выражением без транзакции")
+    void testDeposit() {
+        when(jdbcWalletRepository.depositRecorded(eq(walletId), eq(Money.ofUnits(100)), any(), any()))
+                .thenReturn(Money.ofUnits(150));
+
+        StepVerifier.create(walletService.performOperation(walletId, OperationType.DEPOSIT, 100L))
+                .assertNext(response -> assertThat(response.balance()).isEqualTo(Money.ofUnits(150)))
+                .verifyComplete();
+
+        assertThat(published).containsExactly(new BalanceChange(walletId, OperationType.DEPOSIT,
+                Money.ofUnits(100), Money.ofUnits(50), Money.ofUnits(150)));
+        verify(transactionTemplate, never()).execute(any());
+        verify(jdbcWalletRepository, never()).insertOperations(anyList());
+    }
+
+    @Test
+    @DisplayName("Тест операции через JDBC: списание сверх баланса отклоняется с текущим балансом")
+    void testWithdrawInsufficientFunds() {
+        when(jdbcWalletRepository.withdrawRecorded(eq(walletId), eq(Money.ofUnits(100)), any(), any()))
+                .thenReturn(Optional.empty());
+        when(jdbcWalletRepository.findBalance(walletId)).thenReturn(Optional.of(Money.ofUnits(30)));
+
+        StepVerifier.create(walletService.performOperation(walletId, OperationType.WITHDRAW, 100L))
+                .expectError(InsufficientFundsException.class)
+                .verify();
+
+        assertThat(published).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Тест операции через JDBC: повтор ключа идемпотентности другим запросом восстанавливает ответ из БД")
+    void testDuplicateIdempotencyKeyReplays() {
+        IdempotencyRecord stored = new IdempotencyRecord("key-1", walletId, OperationType.DEPOSIT,
+                Money.ofUnits(100), Money.ofUnits(700), LocalDateTime.now());
+        when(transactionTemplate.execute(any())).thenThrow(new DuplicateKeyException("key-1"));
+        when(jdbcWalletRepository.findIdempotencyKey("key-1")).thenReturn(Optional.of(stored));
+
+        StepVerifier.create(walletService.performOperation(walletId, OperationType.DEPOSIT, 100L, "key-1"))
+                .assertNext(response -> assertThat(response.balance()).isEqualTo(Money.ofUnits(700)))
+                .verifyComplete();
+
+        assertThat(idempotencyStore.getIfPresent("key-1")).isEqualTo(stored);
+        assertThat(published).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Тест пакета через JDBC: части выполняются в своих транзакциях, операции применяются по порядку")
+    void testBatchChunks() {
+        UUID otherWalletId = UUID.randomUUID();
+        executeInTransaction();
+        when(jdbcWalletRepository.lockAll(any()))
+                .thenReturn(Map.of(walletId, Money.ofUnits(10)))
+                .thenReturn(Map.of(otherWalletId, Money.ZERO));
+
+        StepVerifier.create(walletService.performBatch(List.of(
+                        new WalletOperationRequest(walletId, OperationType.DEPOSIT, 5L),
+                        new WalletOperationRequest(walletId, OperationType.WITHDRAW, 20L),
+                        new WalletOperationRequest(otherWalletId, OperationType.WITHDRAW, 1L))))
+                .assertNext(item -> assertThat(item.balance()).isEqualTo(Money.ofUnits(15)))
+                .assertNext(item -> assertThat(item.status()).isEqualTo(422))
+                .assertNext(item -> assertThat(item.status()).isEqualTo(422))
+                .verifyComplete();
+
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(jdbcWalletRepository).updateBalances(Map.of(walletId, Money.ofUnits(15)));
+        assertThat(published).hasSize(1);
+        verify(jdbcWalletRepository).insertOperations(argThat(operations -> operations.size() == 1));
+    }
+
+    @Test
+    @DisplayName("Тест пакета через JDBC: ошибка части возвращает 500 для ее операций и сохраняет итоги зафиксированных частей")
+    void testBatchChunkFailure() {
+        UUID otherWalletId = UUID.randomUUID();
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null))
+                .thenThrow(new IllegalStateException("db down"));
+        when(jdbcWalletRepository.lockAll(any()))
+                .thenReturn(Map.of(walletId, Money.ofUnits(10)));
+
+        StepVerifier.create(walletService.performBatch(List.of(
+                        new WalletOperationRequest(walletId, OperationType.DEPOSIT, 5L),
+                        new WalletOperationRequest(walletId, OperationType.WITHDRAW, 20L),
+                        new WalletOperationRequest(otherWalletId, OperationType.DEPOSIT, 1L))))
+                .assertNext(item -> assertThat(item.balance()).isEqualTo(Money.ofUnits(15)))
+                .assertNext(item -> assertThat(item.status()).isEqualTo(422))
+                .assertNext(item -> assertThat(item.status()).isEqualTo(500))
+                .verifyComplete();
+
+        assertThat(published).hasSize(1);
+    }
+
+    private void executeInTransaction() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+}
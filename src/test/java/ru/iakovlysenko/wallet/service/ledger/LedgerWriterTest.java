@@ -0,0 +1,105 @@
+package ru.iakovlysenko.wallet.service.ledger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.WalletOperation;
+import ru.iakovlysenko.wallet.repository.WalletOperationRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerWriterTest {
+
+    @Mock
+    private WalletOperationRepository walletOperationRepository;
+
+    @Captor
+    private ArgumentCaptor<List<WalletOperation>> operationsCaptor;
+
+    @Test
+    @DisplayName("Тест журнала: изменения транзакции вставляются одним выражением")
+    void testWriteInsertsAllChanges() {
+        when(walletOperationRepository.insertAll(anyList())).thenReturn(Mono.just(3L));
+        LedgerWriter ledgerWriter = new LedgerWriter(walletOperationRepository, new WalletLedgerProperties());
+        UUID walletId = UUID.randomUUID();
+
+        StepVerifier.create(ledgerWriter.write(List.of(
+                        change(walletId, 0, 100),
+                        change(walletId, 100, 200),
+                        change(walletId, 200, 300))))
+                .verifyComplete();
+
+        verify(walletOperationRepository).insertAll(operationsCaptor.capture());
+        assertThat(operationsCaptor.getValue()).hasSize(3);
+        assertThat(operationsCaptor.getValue().get(2).balanceAfter()).isEqualTo(Money.ofUnits(300));
+    }
+
+    @Test
+    @DisplayName("Тест журнала: записи сверх flush-size вставляются несколькими выражениями")
+    void testWriteSplitsByFlushSize() {
+        when(walletOperationRepository.insertAll(anyList()))
+                .thenReturn(Mono.just(2L))
+                .thenReturn(Mono.just(1L));
+        WalletLedgerProperties properties = new WalletLedgerProperties();
+        properties.setFlushSize(2);
+        LedgerWriter ledgerWriter = new LedgerWriter(walletOperationRepository, properties);
+        UUID walletId = UUID.randomUUID();
+
+        StepVerifier.create(ledgerWriter.write(List.of(
+                        change(walletId, 0, 100),
+                        change(walletId, 100, 200),
+                        change(walletId, 200, 300))))
+                .verifyComplete();
+
+        verify(walletOperationRepository, times(2)).insertAll(operationsCaptor.capture());
+        assertThat(operationsCaptor.getAllValues()).extracting(List::size).containsExactly(2, 1);
+    }
+
+    @Test
+    @DisplayName("Тест журнала: ошибка вставки возвращается вызывающему и откатывает его транзакцию")
+    void testWriteFailurePropagates() {
+        when(walletOperationRepository.insertAll(anyList())).thenReturn(Mono.error(new IllegalStateException("db down")));
+        LedgerWriter ledgerWriter = new LedgerWriter(walletOperationRepository, new WalletLedgerProperties());
+
+        StepVerifier.create(ledgerWriter.write(List.of(change(UUID.randomUUID(), 0, 100))))
+                .verifyErrorMessage("db down");
+    }
+
+    @Test
+    @DisplayName("Тест журнала: отключенный журнал ничего не пишет")
+    void testDisabledWritesNothing() {
+        WalletLedgerProperties properties = new WalletLedgerProperties();
+        properties.setEnabled(false);
+        LedgerWriter ledgerWriter = new LedgerWriter(walletOperationRepository, properties);
+
+        StepVerifier.create(ledgerWriter.write(List.of(change(UUID.randomUUID(), 0, 100))))
+                .verifyComplete();
+
+        verify(walletOperationRepository, never()).insertAll(anyList());
+    }
+
+    private BalanceChange change(UUID walletId, long before, long after) {
+        return new BalanceChange(walletId, OperationType.DEPOSIT, Money.ofUnits(after - before),
+                Money.ofUnits(before), Money.ofUnits(after));
+    }
+
+}
@@ -0,0 +1,70 @@
+package ru.iakovlysenko.wallet.service.partition;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletPartitioningProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.repository.PartitionRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.YearMonth;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionMaintainerTest {
+
+    @Mock
+    private PartitionRepository partitionRepository;
+
+    private PartitionMaintainer partitionMaintainer;
+
+    @BeforeEach
+    void setUp() {
+        WalletPartitioningProperties properties = new WalletPartitioningProperties();
+        properties.setMonthsAhead(2);
+        partitionMaintainer = new PartitionMaintainer(partitionRepository,
+                new ShardRouter(null, null, null, new WalletShardingProperties()), properties);
+    }
+
+    @Test
+    @DisplayName("Тест секций: до переноса секции создаются в теневой таблице журнала один раз")
+    void testEnsureAheadForShadowTable() {
+        when(partitionRepository.isPartitioned(PartitionRepository.OPERATIONS)).thenReturn(Mono.just(false));
+        when(partitionRepository.isPartitioned(PartitionRepository.OPERATIONS_PARTITIONED)).thenReturn(Mono.just(true));
+        when(partitionRepository.createMonthPartition(eq(PartitionRepository.OPERATIONS_PARTITIONED), any()))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(partitionMaintainer.ensureAhead()).verifyComplete();
+        StepVerifier.create(partitionMaintainer.ensureAhead()).verifyComplete();
+
+        YearMonth current = YearMonth.now();
+        for (int offset = 0; offset <= 2; offset++) {
+            verify(partitionRepository, times(1))
+                    .createMonthPartition(PartitionRepository.OPERATIONS_PARTITIONED, current.plusMonths(offset));
+        }
+    }
+
+    @Test
+    @DisplayName("Тест секций: без секционированной таблицы журнала секции не создаются")
+    void testEnsureAheadWithoutPartitionedTable() {
+        when(partitionRepository.isPartitioned(anyString())).thenReturn(Mono.just(false));
+
+        StepVerifier.create(partitionMaintainer.ensureAhead()).verifyComplete();
+
+        verify(partitionRepository, never()).createMonthPartition(anyString(), any());
+    }
+
+}
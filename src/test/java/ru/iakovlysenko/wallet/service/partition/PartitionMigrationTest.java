@@ -0,0 +1,96 @@
+package ru.iakovlysenko.wallet.service.partition;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletPartitioningProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.repository.PartitionRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class PartitionMigrationTest {
+
+    @Mock
+    private PartitionRepository partitionRepository;
+
+    @Mock
+    private PartitionMaintainer partitionMaintainer;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private PartitionMigration partitionMigration;
+
+    @BeforeEach
+    void setUp() {
+        WalletPartitioningProperties properties = new WalletPartitioningProperties();
+        properties.getMigration().setChunkSize(2);
+        properties.getMigration().setChunkPause(Duration.ZERO);
+        partitionMigration = new PartitionMigration(partitionRepository, partitionMaintainer, transactionalOperator,
+                new ShardRouter(null, null, null, new WalletShardingProperties()), properties);
+    }
+
+    @Test
+    @DisplayName("Тест переноса: триггеры, копирование частями до конца таблицы, затем переключение")
+    void testMigrate() {
+        UUID firstChunkEnd = UUID.randomUUID();
+        UUID operationsChunkEnd = UUID.randomUUID();
+        YearMonth month = YearMonth.of(2025, 3);
+        when(partitionRepository.isPartitioned(PartitionRepository.WALLETS)).thenReturn(Mono.just(false));
+        when(partitionRepository.installMirrorTriggers()).thenReturn(Mono.empty());
+        when(partitionMaintainer.ensureAhead()).thenReturn(Mono.empty());
+        when(partitionRepository.copyWalletsChunk(PartitionRepository.MIN_ID, 2)).thenReturn(Mono.just(firstChunkEnd));
+        when(partitionRepository.copyWalletsChunk(firstChunkEnd, 2)).thenReturn(Mono.empty());
+        when(partitionRepository.findOperationMonths(any(UUID.class), anyInt()))
+                .thenReturn(Flux.just(month))
+                .thenReturn(Flux.empty());
+        when(partitionMaintainer.ensureMonth(PartitionRepository.OPERATIONS_PARTITIONED, month)).thenReturn(Mono.empty());
+        when(partitionRepository.copyOperationsChunk(PartitionRepository.MIN_ID, 2)).thenReturn(Mono.just(operationsChunkEnd));
+        when(partitionRepository.copyOperationsChunk(operationsChunkEnd, 2)).thenReturn(Mono.empty());
+        when(partitionRepository.swap(any(Duration.class))).thenReturn(Mono.empty());
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        StepVerifier.create(partitionMigration.migrate()).verifyComplete();
+
+        InOrder order = inOrder(partitionRepository, partitionMaintainer);
+        order.verify(partitionRepository).installMirrorTriggers();
+        order.verify(partitionRepository).copyWalletsChunk(firstChunkEnd, 2);
+        order.verify(partitionMaintainer).ensureMonth(PartitionRepository.OPERATIONS_PARTITIONED, month);
+        order.verify(partitionRepository).copyOperationsChunk(operationsChunkEnd, 2);
+        order.verify(partitionRepository).swap(any(Duration.class));
+    }
+
+    @Test
+    @DisplayName("Тест переноса: уже секционированные таблицы не переносятся повторно")
+    void testAlreadyMigrated() {
+        when(partitionRepository.isPartitioned(PartitionRepository.WALLETS)).thenReturn(Mono.just(true));
+
+        StepVerifier.create(partitionMigration.migrate()).verifyComplete();
+
+        verify(partitionRepository, never()).installMirrorTriggers();
+        verify(partitionRepository, never()).swap(any(Duration.class));
+    }
+
+}
@@ -0,0 +1,118 @@
+package ru.iakovlysenko.wallet.service.pool;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.ReactiveTransaction;
+import org.springframework.transaction.reactive.TransactionCallback;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletPoolProperties;
+import ru.iakovlysenko.wallet.config.WalletReplicaProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.replica.ReplicaRouter;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionPoolWarmerTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @Mock
+    private ReactiveTransaction transaction;
+
+    private WalletPoolProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WalletPoolProperties();
+        properties.setInitialSize(3);
+        when(transactionalOperator.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return Flux.from(callback.doInTransaction(transaction));
+        });
+    }
+
+    private void stubWrites() {
+        when(walletRepository.lockBalance(any())).thenReturn(Mono.empty());
+        when(walletRepository.updateBalanceIfVersion(any(), any(), anyLong())).thenReturn(Mono.just(0));
+        when(walletRepository.updateBalance(any(), any())).thenReturn(Mono.just(0));
+        when(walletRepository.withdrawAtomically(any(), any())).thenReturn(Mono.empty());
+        when(walletRepository.insertOrIgnore(any(), any())).thenReturn(Mono.just(1));
+        when(walletRepository.depositAtomically(any(), any())).thenReturn(Mono.just(Money.ZERO));
+    }
+
+    @Test
+    @DisplayName("Тест прогрева: каждое соединение пула готовит запросы репозитория в откатываемой транзакции")
+    void testWarmUpPrimary() {
+        when(walletRepository.findById(any(UUID.class))).thenReturn(Mono.empty());
+        stubWrites();
+
+        StepVerifier.create(warmer(new WalletReplicaProperties()).warmUp()).expectNext(3L).verifyComplete();
+
+        verify(transactionalOperator, times(3)).execute(any());
+        verify(transaction, times(3)).setRollbackOnly();
+        ArgumentCaptor<UUID> ids = ArgumentCaptor.forClass(UUID.class);
+        verify(walletRepository, times(3)).depositAtomically(ids.capture(), any());
+        assertEquals(3, new HashSet<>(ids.getAllValues()).size());
+    }
+
+    @Test
+    @DisplayName("Тест прогрева: на реплике готовится только чтение кошелька")
+    void testWarmUpReplica() {
+        when(walletRepository.findById(any(UUID.class))).thenReturn(Mono.empty());
+        stubWrites();
+        WalletReplicaProperties replica = new WalletReplicaProperties();
+        replica.setEnabled(true);
+
+        StepVerifier.create(warmer(replica).warmUp()).expectNext(6L).verifyComplete();
+
+        verify(walletRepository, times(6)).findById(any(UUID.class));
+        verify(walletRepository, times(3)).depositAtomically(any(), any());
+    }
+
+    @Test
+    @DisplayName("Тест прогрева: ошибка запроса не прерывает запуск приложения")
+    void testWarmUpFailure() {
+        stubWrites();
+        when(walletRepository.findById(any(UUID.class))).thenReturn(Mono.error(new IllegalStateException("down")));
+
+        assertDoesNotThrow(() -> warmer(new WalletReplicaProperties()).start());
+        verify(transaction, atLeastOnce()).setRollbackOnly();
+    }
+
+    private ConnectionPoolWarmer warmer(WalletReplicaProperties replicaProperties) {
+        WalletShardingProperties shardingProperties = new WalletShardingProperties();
+        return new ConnectionPoolWarmer(walletRepository,
+                new ShardRouter(null, null, transactionalOperator, shardingProperties),
+                new ReplicaRouter(null, replicaProperties, shardingProperties, new SimpleMeterRegistry()),
+                transactionalOperator,
+                properties);
+    }
+
+}
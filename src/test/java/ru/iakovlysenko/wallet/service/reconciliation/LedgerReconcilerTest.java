@@ -0,0 +1,146 @@
+package ru.iakovlysenko.wallet.service.reconciliation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletLedgerProperties;
+import ru.iakovlysenko.wallet.config.WalletReconciliationProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.model.BalanceSnapshot;
+import ru.iakovlysenko.wallet.model.LedgerBalance;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.repository.ReconciliationRepository;
+import ru.iakovlysenko.wallet.repository.ShardRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerReconcilerTest {
+
+    @Mock
+    private ReconciliationRepository reconciliationRepository;
+
+    private WalletReconciliationProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WalletReconciliationProperties();
+        properties.setParallelism(1);
+        properties.setChunkSize(10);
+        properties.setRecheckDelay(Duration.ZERO);
+    }
+
+    @Test
+    @DisplayName("Тест сверки: снимок совпавшего кошелька сдвигается на изменения записей до границы")
+    void testMatchedAdvancesSnapshot() {
+        UUID walletId = UUID.randomUUID();
+        LedgerBalance row = new LedgerBalance(walletId, Money.ofUnits(130), 5, Money.ofUnits(100),
+                LocalDateTime.now().minusDays(1), Money.ofUnits(20), Money.ofUnits(30));
+        when(reconciliationRepository.saveSnapshots(any())).thenReturn(Mono.just(0L));
+        when(reconciliationRepository.findAfterSnapshot(any(), any(), anyInt(), any())).thenReturn(Flux.just(row));
+
+        StepVerifier.create(reconciler().reconcile())
+                .assertNext(result -> assertThat(result.matched()).isEqualTo(1))
+                .verifyComplete();
+
+        ArgumentCaptor<List<BalanceSnapshot>> snapshots = snapshotsCaptor();
+        verify(reconciliationRepository).saveSnapshots(snapshots.capture());
+        assertThat(snapshots.getValue()).singleElement()
+                .satisfies(snapshot -> assertThat(snapshot.balance()).isEqualTo(Money.ofUnits(120)));
+    }
+
+    @Test
+    @DisplayName("Тест сверки: расхождение, подтвержденное по всему журналу, не меняет снимок")
+    void testConfirmedMismatch() {
+        UUID walletId = UUID.randomUUID();
+        LedgerBalance row = new LedgerBalance(walletId, Money.ofUnits(500), 5, Money.ofUnits(100),
+                null, Money.ZERO, Money.ofUnits(30));
+        when(reconciliationRepository.saveSnapshots(any())).thenReturn(Mono.just(0L));
+        when(reconciliationRepository.findAfterSnapshot(any(), any(), anyInt(), any())).thenReturn(Flux.just(row));
+        when(reconciliationRepository.findByWholeLedger(any(), any())).thenReturn(Flux.just(row));
+
+        StepVerifier.create(reconciler().reconcile())
+                .assertNext(result -> {
+                    assertThat(result.mismatched()).isEqualTo(1);
+                    assertThat(result.matched()).isZero();
+                })
+                .verifyComplete();
+
+        ArgumentCaptor<List<BalanceSnapshot>> snapshots = snapshotsCaptor();
+        verify(reconciliationRepository, times(2)).saveSnapshots(snapshots.capture());
+        assertThat(snapshots.getAllValues()).allSatisfy(saved -> assertThat(saved).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Тест сверки: кошелек, изменившийся до повторной проверки, пропускается, а совпавший по журналу - перестраивается")
+    void testRecheckSkipsChangedAndRebuilds() {
+        UUID changed = UUID.randomUUID();
+        UUID stale = UUID.randomUUID();
+        LedgerBalance changedRow = new LedgerBalance(changed, Money.ofUnits(50), 1, Money.ZERO,
+                null, Money.ZERO, Money.ofUnits(40));
+        LedgerBalance staleRow = new LedgerBalance(stale, Money.ofUnits(70), 3, Money.ofUnits(10),
+                LocalDateTime.now().minusDays(1), Money.ZERO, Money.ofUnits(10));
+        when(reconciliationRepository.saveSnapshots(any())).thenReturn(Mono.just(0L));
+        when(reconciliationRepository.findAfterSnapshot(any(), any(), anyInt(), any()))
+                .thenReturn(Flux.just(changedRow, staleRow));
+        when(reconciliationRepository.findByWholeLedger(any(), any())).thenReturn(Flux.just(
+                new LedgerBalance(changed, Money.ofUnits(60), 2, Money.ZERO, null, Money.ZERO, Money.ofUnits(60)),
+                new LedgerBalance(stale, Money.ofUnits(70), 3, Money.ZERO, null, Money.ofUnits(70), Money.ofUnits(70))));
+
+        StepVerifier.create(reconciler().reconcile())
+                .assertNext(result -> {
+                    assertThat(result.skipped()).isEqualTo(1);
+                    assertThat(result.rebuilt()).isEqualTo(1);
+                    assertThat(result.mismatched()).isZero();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест сверки: диапазоны id покрывают все пространство UUID по возрастанию")
+    void testRanges() {
+        List<LedgerReconciler.Range> ranges = LedgerReconciler.ranges(4);
+
+        assertThat(ranges).hasSize(4);
+        assertThat(ranges.get(0).after()).isEqualTo(ShardRepository.MIN_ID);
+        assertThat(ranges.get(3).before()).isEqualTo(ReconciliationRepository.MAX_ID);
+        for (int i = 1; i < ranges.size(); i++) {
+            assertThat(ranges.get(i).after()).isEqualTo(ranges.get(i - 1).before());
+            assertThat(Long.compareUnsigned(ranges.get(i).after().getMostSignificantBits(),
+                    ranges.get(i - 1).after().getMostSignificantBits())).isPositive();
+        }
+    }
+
+    private LedgerReconciler reconciler() {
+        return new LedgerReconciler(reconciliationRepository,
+                new ShardRouter(null, null, null, new WalletShardingProperties()),
+                properties,
+                new WalletLedgerProperties(),
+                new SimpleMeterRegistry());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<BalanceSnapshot>> snapshotsCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+}
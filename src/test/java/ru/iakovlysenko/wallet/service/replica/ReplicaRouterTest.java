@@ -0,0 +1,101 @@
+package ru.iakovlysenko.wallet.service.replica;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletReplicaProperties;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.repository.ReplicaRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRouterTest {
+
+    private static final String PRIMARY = "primary";
+
+    @Mock
+    private ReplicaRepository replicaRepository;
+
+    private WalletReplicaProperties properties;
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WalletReplicaProperties();
+        properties.setEnabled(true);
+        properties.setMaxLag(Duration.ofMillis(500));
+        walletId = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Тест реплики: без реплики чтение идет на основную базу")
+    void testDisabled() {
+        properties.setEnabled(false);
+        ReplicaRouter router = router();
+
+        StepVerifier.create(router.read(walletId, target())).expectNext(PRIMARY).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест реплики: до первой проверки отставания чтение идет на основную базу, после - на реплику")
+    void testReadFromFreshReplica() {
+        ReplicaRouter router = router();
+        when(replicaRepository.findLag()).thenReturn(Mono.just(Duration.ofMillis(100)));
+
+        StepVerifier.create(router.read(walletId, target())).expectNext(PRIMARY).verifyComplete();
+        StepVerifier.create(router.checkLag()).verifyComplete();
+        StepVerifier.create(router.read(walletId, target())).expectNext(ReplicaRouter.REPLICA).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест реплики: при отставании больше max-lag или ошибке проверки чтение идет на основную базу")
+    void testLaggingReplica() {
+        ReplicaRouter router = router();
+        when(replicaRepository.findLag())
+                .thenReturn(Mono.just(Duration.ofSeconds(2)))
+                .thenReturn(Mono.error(new IllegalStateException("down")));
+
+        StepVerifier.create(router.checkLag()).verifyComplete();
+        StepVerifier.create(router.read(walletId, target())).expectNext(PRIMARY).verifyComplete();
+        StepVerifier.create(router.checkLag()).verifyComplete();
+        StepVerifier.create(router.read(walletId, target())).expectNext(PRIMARY).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест реплики: недавно измененный кошелек читается с основной базы, остальные - с реплики")
+    void testReadYourWrites() {
+        ReplicaRouter router = router();
+        when(replicaRepository.findLag()).thenReturn(Mono.just(Duration.ZERO));
+        UUID otherWalletId = UUID.randomUUID();
+
+        StepVerifier.create(router.checkLag()).verifyComplete();
+        router.onCommitted(List.of(new BalanceChange(walletId, OperationType.DEPOSIT, Money.ofUnits(10),
+                Money.ZERO, Money.ofUnits(10))));
+
+        StepVerifier.create(router.read(walletId, target())).expectNext(PRIMARY).verifyComplete();
+        StepVerifier.create(router.read(otherWalletId, target())).expectNext(ReplicaRouter.REPLICA).verifyComplete();
+    }
+
+    private ReplicaRouter router() {
+        return new ReplicaRouter(replicaRepository, properties, new WalletShardingProperties(), new SimpleMeterRegistry());
+    }
+
+    private Mono<String> target() {
+        return Mono.deferContextual(context -> Mono.just(context.getOrDefault(ReplicaRouter.TARGET_KEY, PRIMARY)));
+    }
+
+}
@@ -0,0 +1,63 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardRingTest {
+
+    private static final int WALLETS = 30_000;
+
+    @Test
+    @DisplayName("Тест кольца: шард кошелька не зависит от порядка объявления шардов")
+    void testStableMapping() {
+        ShardRing ring = new ShardRing(List.of("a", "b", "c"), 256);
+        ShardRing reordered = new ShardRing(List.of("c", "a", "b"), 256);
+
+        for (int i = 0; i < 1000; i++) {
+            UUID walletId = UUID.randomUUID();
+            assertThat(reordered.shardFor(walletId)).isEqualTo(ring.shardFor(walletId));
+        }
+    }
+
+    @Test
+    @DisplayName("Тест кольца: кошельки распределяются по шардам примерно поровну")
+    void testDistribution() {
+        ShardRing ring = new ShardRing(List.of("a", "b", "c", "d"), 256);
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (int i = 0; i < WALLETS; i++) {
+            counts.merge(ring.shardFor(UUID.randomUUID()), 1, Integer::sum);
+        }
+
+        assertThat(counts).hasSize(4);
+        counts.values().forEach(count -> assertThat(count).isBetween(WALLETS / 4 * 8 / 10, WALLETS / 4 * 12 / 10));
+    }
+
+    @Test
+    @DisplayName("Тест кольца: при добавлении шарда на него переходит около 1/N кошельков, остальные остаются на месте")
+    void testAddShardMovesOnlyItsShare() {
+        ShardRing before = new ShardRing(List.of("a", "b", "c"), 256);
+        ShardRing after = new ShardRing(List.of("a", "b", "c", "d"), 256);
+        int moved = 0;
+
+        for (int i = 0; i < WALLETS; i++) {
+            UUID walletId = UUID.randomUUID();
+            String previous = before.shardFor(walletId);
+            String current = after.shardFor(walletId);
+            if (!previous.equals(current)) {
+                assertThat(current).isEqualTo("d");
+                moved++;
+            }
+        }
+
+        assertThat(moved).isBetween(WALLETS / 4 * 8 / 10, WALLETS / 4 * 12 / 10);
+    }
+
+}
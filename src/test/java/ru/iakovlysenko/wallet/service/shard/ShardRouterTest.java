@@ -0,0 +1,113 @@
+package ru.iakovlysenko.wallet.service.shard;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.ReactiveTransactionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.exception.CrossShardOperationException;
+import ru.iakovlysenko.wallet.repository.ShardRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ShardRouterTest {
+
+    @Mock
+    private ShardRepository shardRepository;
+
+    @Mock
+    private ReactiveTransactionManager transactionManager;
+
+    @Test
+    @DisplayName("Тест маршрутизации: без шардирования запрос выполняется без привязки к шарду")
+    void testUnshardedPassThrough() {
+        ShardRouter router = new ShardRouter(shardRepository, transactionManager, null, new WalletShardingProperties());
+
+        StepVerifier.create(router.route(List.of(UUID.randomUUID(), UUID.randomUUID()), this::currentShard))
+                .expectNext("none")
+                .verifyComplete();
+        verifyNoInteractions(shardRepository);
+    }
+
+    @Test
+    @DisplayName("Тест маршрутизации: запрос кошелька выполняется на его шарде")
+    void testRouteBindsShard() {
+        ShardRouter router = new ShardRouter(shardRepository, transactionManager, null, properties());
+        UUID walletId = UUID.randomUUID();
+
+        StepVerifier.create(router.route(walletId, this::currentShard))
+                .expectNext(router.shardFor(walletId).name())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Тест маршрутизации: операция над кошельками разных шардов отклоняется")
+    void testCrossShardRejected() {
+        ShardRouter router = new ShardRouter(shardRepository, transactionManager, null, properties());
+        UUID first = UUID.randomUUID();
+        UUID second = walletOn(router, shard -> shard != router.shardFor(first));
+
+        StepVerifier.create(router.route(List.of(first, second), this::currentShard))
+                .expectError(CrossShardOperationException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Тест маршрутизации: запрос, не нашедший кошелек на прежнем шарде, повторяется на новом после переноса")
+    void testRebalanceRelocates() {
+        WalletShardingProperties properties = properties();
+        properties.getRebalance().setPreviousShards(List.of("a", "b"));
+        ShardRouter router = new ShardRouter(shardRepository, transactionManager, null, properties);
+        UUID walletId = walletOn(router, shard -> shard.name().equals("c"));
+        List<String> attempts = new ArrayList<>();
+        when(shardRepository.findExisting(any()))
+                .thenReturn(Flux.just(walletId))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(router.route(walletId, () -> currentShard()
+                        .doOnNext(attempts::add)
+                        .filter(shard -> attempts.size() > 1)))
+                .expectNext("c")
+                .verifyComplete();
+
+        assertThat(attempts).containsExactly(router.previousShardFor(walletId).name(), "c");
+    }
+
+    private Mono<String> currentShard() {
+        return Mono.deferContextual(context -> Mono.just(context.getOrDefault(ShardRouter.SHARD_KEY, "none")));
+    }
+
+    private UUID walletOn(ShardRouter router, Predicate<Shard> condition) {
+        UUID walletId;
+        do {
+            walletId = UUID.randomUUID();
+        } while (!condition.test(router.shardFor(walletId)));
+        return walletId;
+    }
+
+    private WalletShardingProperties properties() {
+        WalletShardingProperties properties = new WalletShardingProperties();
+        properties.setEnabled(true);
+        for (String name : List.of("a", "b", "c")) {
+            WalletShardingProperties.Shard shard = new WalletShardingProperties.Shard();
+            shard.setName(name);
+            properties.getShards().add(shard);
+        }
+        return properties;
+    }
+
+}
@@ -0,0 +1,159 @@
+package ru.iakovlysenko.wallet.service.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.iakovlysenko.wallet.config.WalletShardingProperties;
+import ru.iakovlysenko.wallet.config.WalletStreamProperties;
+import ru.iakovlysenko.wallet.exception.TooManySubscribersException;
+import ru.iakovlysenko.wallet.model.BalanceChange;
+import ru.iakovlysenko.wallet.model.Money;
+import ru.iakovlysenko.wallet.model.OperationType;
+import ru.iakovlysenko.wallet.model.Wallet;
+import ru.iakovlysenko.wallet.repository.WalletRepository;
+import ru.iakovlysenko.wallet.service.shard.ShardRouter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceStreamTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    private BalanceStream balanceStream;
+    private SimpleMeterRegistry meterRegistry;
+
+    private UUID walletId;
+
+    @BeforeEach
+    void setUp() {
+        WalletStreamProperties properties = new WalletStreamProperties();
+        properties.setMaxSubscribers(2);
+        meterRegistry = new SimpleMeterRegistry();
+        balanceStream = new BalanceStream(walletRepository,
+                new ShardRouter(null, null, null, new WalletShardingProperties()), properties, meterRegistry);
+        walletId = UUID.randomUUID();
+    }
+
+    @Test
+    @DisplayName("Тест потока баланса: текущий баланс при подписке, затем изменения по порядку")
+    void testInitialBalanceAndChanges() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(100))));
+
+        StepVerifier.create(balanceStream.subscribe(walletId))
+                .expectNext(Money.ofUnits(100))
+                .then(() -> balanceStream.onCommitted(List.of(change(100, 150))))
+                .expectNext(Money.ofUnits(150))
+                .then(() -> balanceStream.onCommitted(List.of(change(150, 120))))
+                .expectNext(Money.ofUnits(120))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        verify(walletRepository, times(1)).findById(walletId);
+        assertThat(meterRegistry.get("wallet.stream.wallets").gauge().value()).isZero();
+        assertThat(meterRegistry.get("wallet.stream.subscribers").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("Тест потока баланса: изменение не по порядку заставляет перечитать баланс из БД")
+    void testOutOfOrderChangeReloads() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(100))))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(170))));
+
+        StepVerifier.create(balanceStream.subscribe(walletId))
+                .expectNext(Money.ofUnits(100))
+                .then(() -> balanceStream.onCommitted(List.of(change(150, 170))))
+                .expectNext(Money.ofUnits(170))
+                .then(() -> balanceStream.onCommitted(List.of(change(100, 150))))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Тест потока баланса: изменение другого узла перечитывает баланс подписанного кошелька")
+    void testReloadOnRemoteChange() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(100))))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(250))))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(300))));
+
+        balanceStream.reload(UUID.randomUUID());
+        StepVerifier.create(balanceStream.subscribe(walletId))
+                .expectNext(Money.ofUnits(100))
+                .then(() -> balanceStream.reload(walletId))
+                .expectNext(Money.ofUnits(250))
+                .then(balanceStream::reloadAll)
+                .expectNext(Money.ofUnits(300))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        verify(walletRepository, times(3)).findById(walletId);
+    }
+
+    @Test
+    @DisplayName("Тест потока баланса: медленный подписчик получает последний баланс без промежуточных")
+    void testSlowSubscriberConflation() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(0))));
+
+        StepVerifier.create(balanceStream.subscribe(walletId), 1)
+                .expectNext(Money.ZERO)
+                .then(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        balanceStream.onCommitted(List.of(change(i, i + 1)));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .expectNextMatches(balance -> balance.isLessThan(Money.ofUnits(100)))
+                .thenConsumeWhile(balance -> balance.isLessThan(Money.ofUnits(100)))
+                .expectNext(Money.ofUnits(100))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Тест потока баланса: подписка сверх лимита отклоняется, отписка освобождает место")
+    void testMaxSubscribers() {
+        when(walletRepository.findById(walletId))
+                .thenReturn(Mono.just(new Wallet(walletId, Money.ofUnits(100))));
+
+        var first = balanceStream.subscribe(walletId).subscribe();
+        var second = balanceStream.subscribe(walletId).subscribe();
+
+        StepVerifier.create(balanceStream.subscribe(walletId))
+                .expectError(TooManySubscribersException.class)
+                .verify(Duration.ofSeconds(5));
+
+        first.dispose();
+        StepVerifier.create(balanceStream.subscribe(walletId))
+                .expectNext(Money.ofUnits(100))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        second.dispose();
+
+        verify(walletRepository, times(1)).findById(walletId);
+    }
+
+    private BalanceChange change(long before, long after) {
+        return new BalanceChange(walletId, after > before ? OperationType.DEPOSIT : OperationType.WITHDRAW,
+                Money.ofUnits(Math.abs(after - before)), Money.ofUnits(before), Money.ofUnits(after));
+    }
+
+}